@@ -0,0 +1,203 @@
+package benchmark;
+
+import model.GameEnvironment;
+import model.enums.UnitState;
+import model.settings.GameSettings;
+import model.units.BaseUnit;
+import model.utils.MathUtils;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+
+/**
+ * Battles used by the benchmarks. A battle is named either after one of the configs of src/configs/battle_configs, such
+ * as "ai_config_2v2.json", or "generated_<units>x<size>" for a generated battle where each side lines up <units>
+ * swordmen units of <size> troops each, facing the other side.
+ *
+ * Benchmarks run from the root folder of the project, like the simulations, so that the config paths resolve.
+ */
+public final class BenchmarkBattles {
+
+    // Configs
+    public static final String GAME_CONFIG = "src/configs/game_configs/game_config.json";
+    public static final String BATTLE_CONFIG_FOLDER = "src/configs/battle_configs/";
+
+    // Generated battles reuse the terrain and the construct configs of this battle.
+    private static final String GENERATED_BASE_CONFIG = BATTLE_CONFIG_FOLDER + "ai_config_2v2.json";
+    private static final String GENERATED_PREFIX = "generated_";
+
+    // Layout of the generated battles
+    private static final int GENERATED_UNIT_WIDTH = 20;
+    private static final double GENERATED_UNIT_GAP = 400;
+    private static final double GENERATED_ARMY_GAP = 800;
+    private static final double GENERATED_MARGIN = 1000;
+
+    // Seed of the random generator, so that every run of a benchmark simulates the same battle.
+    public static final long SEED = 3;
+
+    // Frames simulated once the armies are engaged, before measuring, and the maximum number of frames to wait for
+    // the armies to engage.
+    private static final int FRAMES_AFTER_ENGAGEMENT = 100;
+    private static final int MAX_FRAMES_BEFORE_ENGAGEMENT = 3000;
+
+    private BenchmarkBattles() {}
+
+    /**
+     * Game settings of the benchmarks. These mirror the settings of HeadlessSimulation, without AI agents: the battles
+     * are driven by orderCharges() instead, which is deterministic and cheap.
+     */
+    public static GameSettings createGameSettings() {
+        GameSettings settings = new GameSettings();
+        settings.setApplyTerrainModifier(true);
+        settings.setBorderInwardCollision(false);
+        settings.setAllyCollision(true);
+        settings.setCollisionCheckingOnlyInCombat(false);
+        settings.setCavalryCollision(true);
+        settings.setEnableFlankingMechanics(true);
+        settings.setCountWrongFormationChanges(false);
+        settings.setProcessSoundBounce(false);
+        settings.setUseRoundedSurfaceCollision(true);
+        settings.setProcessUnitVision(false);
+        settings.setCreateAIAgent(false);
+        return settings;
+    }
+
+    /**
+     * Create the environment of a battle, with the random generator seeded with SEED.
+     */
+    public static GameEnvironment createBattle(String battle, GameSettings gameSettings) throws IOException {
+        MathUtils.random.setSeed(SEED);
+        return new GameEnvironment(GAME_CONFIG, getBattleConfigPath(battle), gameSettings);
+    }
+
+    /**
+     * Create the environment of a battle, and simulate it until the armies have been engaged for a little while.
+     */
+    public static GameEnvironment createEngagedBattle(String battle, GameSettings gameSettings) throws IOException {
+        GameEnvironment env = createBattle(battle, gameSettings);
+        int frame = 0;
+        while (frame < MAX_FRAMES_BEFORE_ENGAGEMENT && !isEngaged(env)) {
+            step(env);
+            frame++;
+        }
+        for (int i = 0; i < FRAMES_AFTER_ENGAGEMENT; i++) {
+            step(env);
+        }
+        return env;
+    }
+
+    /**
+     * Step the environment by one frame, and order standing units to charge.
+     */
+    public static void step(GameEnvironment env) {
+        env.step();
+        orderCharges(env);
+    }
+
+    /**
+     * Order every standing unit to attack the closest alive enemy unit. Units are visited in the order of the unit list,
+     * so that the orders don't depend on hash codes.
+     */
+    public static void orderCharges(GameEnvironment env) {
+        for (BaseUnit unit : env.getUnits()) {
+            if (unit.getNumAlives() == 0 || unit.getState() != UnitState.STANDING) continue;
+            BaseUnit closestEnemy = null;
+            double minDist = Double.MAX_VALUE;
+            for (BaseUnit other : env.getUnits()) {
+                if (other.getNumAlives() == 0 || other.getPoliticalFaction() == unit.getPoliticalFaction()) continue;
+                double dist = MathUtils.squareDistance(
+                        unit.getAverageX(), unit.getAverageY(), other.getAverageX(), other.getAverageY());
+                if (dist < minDist) {
+                    minDist = dist;
+                    closestEnemy = other;
+                }
+            }
+            if (closestEnemy != null) {
+                unit.attackUnit(closestEnemy);
+            }
+        }
+    }
+
+    /**
+     * Whether some unit is fighting.
+     */
+    private static boolean isEngaged(GameEnvironment env) {
+        for (BaseUnit unit : env.getUnits()) {
+            if (unit.getState() == UnitState.FIGHTING) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Path to the battle config of a battle. Generated battles are written to a temporary file.
+     */
+    public static String getBattleConfigPath(String battle) throws IOException {
+        if (!battle.startsWith(GENERATED_PREFIX)) {
+            return BATTLE_CONFIG_FOLDER + battle;
+        }
+        String[] dimensions = battle.substring(GENERATED_PREFIX.length()).split("x");
+        if (dimensions.length != 2) {
+            throw new IllegalArgumentException("Generated battles are named generated_<units>x<size>: " + battle);
+        }
+        return generateBattleConfig(Integer.parseInt(dimensions[0]), Integer.parseInt(dimensions[1]));
+    }
+
+    /**
+     * Write the config of a battle where each side has numUnits swordmen units of unitSize troops. Units of each side
+     * stand in a column, and the two columns face each other across the middle of the terrain.
+     */
+    @SuppressWarnings("unchecked")
+    private static String generateBattleConfig(int numUnits, int unitSize) throws IOException {
+        JSONObject config;
+        try {
+            config = (JSONObject) new JSONParser().parse(new FileReader(GENERATED_BASE_CONFIG));
+        } catch (ParseException e) {
+            throw new IOException(e);
+        }
+
+        // Line up the units
+        JSONArray units = new JSONArray();
+        double columnHeight = numUnits * GENERATED_UNIT_GAP;
+        for (int i = 0; i < numUnits; i++) {
+            double y = GENERATED_MARGIN + i * GENERATED_UNIT_GAP;
+            units.add(createUnitConfig(GENERATED_MARGIN, y, 0, unitSize, "ROME"));
+            units.add(createUnitConfig(GENERATED_MARGIN + GENERATED_ARMY_GAP, y, 180, unitSize, "GAUL"));
+        }
+        config.put("battle_config", units);
+
+        // Make the terrain large enough to hold both armies
+        JSONObject terrain = (JSONObject) config.get("terrain_config");
+        double div = ((Number) terrain.get("div")).doubleValue();
+        double size = Math.max(GENERATED_ARMY_GAP, columnHeight) + 2 * GENERATED_MARGIN;
+        long numDivs = Math.max(((Number) terrain.get("num_x")).longValue(), (long) Math.ceil(size / div));
+        terrain.put("num_x", numDivs);
+        terrain.put("num_y", numDivs);
+
+        File file = File.createTempFile("benchmark_" + numUnits + "x" + unitSize + "_", ".json");
+        file.deleteOnExit();
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write(config.toJSONString());
+        }
+        return file.getPath();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static JSONObject createUnitConfig(double x, double y, double angle, int unitSize, String faction) {
+        JSONObject unit = new JSONObject();
+        unit.put("type", "SWORDMAN");
+        unit.put("org", "unit");
+        unit.put("x", x);
+        unit.put("y", y);
+        unit.put("angle", angle);
+        unit.put("size", (long) unitSize);
+        unit.put("faction", faction);
+        unit.put("width", (long) GENERATED_UNIT_WIDTH);
+        return unit;
+    }
+}
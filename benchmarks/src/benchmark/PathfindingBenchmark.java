@@ -0,0 +1,80 @@
+package benchmark;
+
+import model.algorithms.pathfinding.Graph;
+import model.construct.Construct;
+import model.utils.MathUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time of Graph.getShortestPath() on a square grid graph of gridSize x gridSize nodes, where each node is connected to
+ * its four neighbors. Each invocation finds the paths between NUM_QUERIES pairs of random points, drawn once during
+ * setup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class PathfindingBenchmark {
+
+    // Number of path queries per invocation, and distance between two adjacent nodes of the grid
+    private static final int NUM_QUERIES = 10;
+    private static final double NODE_GAP = 200;
+
+    @Param({"5", "10", "20"})
+    public int gridSize;
+
+    private Graph graph;
+    private ArrayList<Construct> constructs;
+    private double[][] queries;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        MathUtils.random.setSeed(BenchmarkBattles.SEED);
+
+        HashMap<Integer, double[]> nodes = new HashMap<>();
+        ArrayList<int[]> edges = new ArrayList<>();
+        for (int i = 0; i < gridSize; i++) {
+            for (int j = 0; j < gridSize; j++) {
+                int index = i * gridSize + j;
+                nodes.put(index, new double[] {i * NODE_GAP, j * NODE_GAP});
+                if (i > 0) edges.add(new int[] {index - gridSize, index});
+                if (j > 0) edges.add(new int[] {index - 1, index});
+            }
+        }
+        graph = new Graph(nodes, edges);
+        constructs = new ArrayList<>();
+
+        double size = (gridSize - 1) * NODE_GAP;
+        queries = new double[NUM_QUERIES][];
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            queries[i] = new double[] {
+                    MathUtils.randDouble(0, size), MathUtils.randDouble(0, size),
+                    MathUtils.randDouble(0, size), MathUtils.randDouble(0, size)};
+        }
+    }
+
+    @Benchmark
+    public void getShortestPath(Blackhole blackhole) {
+        for (double[] query : queries) {
+            blackhole.consume(graph.getShortestPath(query[0], query[1], query[2], query[3], constructs));
+        }
+    }
+}
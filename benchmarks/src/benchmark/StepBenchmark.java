@@ -0,0 +1,48 @@
+package benchmark;
+
+import model.GameEnvironment;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time of a full frame of the simulation, i.e. GameEnvironment.step(), in the middle of a melee.
+ *
+ * The battle is rebuilt before each iteration so that every iteration measures the same stretch of the battle, instead
+ * of later iterations measuring a battle where most troops are already dead.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(1)
+public class StepBenchmark {
+
+    @Param({"ai_config_1v1.json", "ai_config_2v2.json", "generated_10x100", "generated_40x100"})
+    public String battle;
+
+    private GameEnvironment env;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        env = BenchmarkBattles.createEngagedBattle(battle, BenchmarkBattles.createGameSettings());
+    }
+
+    @Benchmark
+    public void step() {
+        BenchmarkBattles.step(env);
+    }
+}
@@ -0,0 +1,61 @@
+package benchmark;
+
+import model.terrain.Terrain;
+import model.utils.MathUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time of Terrain.getZFromPos(), which is called for every troop in every frame. Each invocation queries the height at
+ * NUM_QUERIES random positions of the terrain, drawn once during setup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class TerrainBenchmark {
+
+    // Number of height queries per invocation
+    private static final int NUM_QUERIES = 10000;
+
+    @Param({"ai_config_2v2.json", "generated_40x100"})
+    public String battle;
+
+    private Terrain terrain;
+    private double[] xs;
+    private double[] ys;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        terrain = BenchmarkBattles.createBattle(battle, BenchmarkBattles.createGameSettings()).getTerrain();
+        xs = new double[NUM_QUERIES];
+        ys = new double[NUM_QUERIES];
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            xs[i] = MathUtils.randDouble(terrain.getTopX(), terrain.getBotX());
+            ys[i] = MathUtils.randDouble(terrain.getTopY(), terrain.getBotY());
+        }
+    }
+
+    @Benchmark
+    public void getZFromPos(Blackhole blackhole) {
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            blackhole.consume(terrain.getZFromPos(xs[i], ys[i]));
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package benchmark;
+
+import model.GameEnvironment;
+import model.units.BaseUnit;
+import model.utils.PhysicUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time of the unit vision of a whole frame, i.e. PhysicUtils.checkUnitVision() for every unit of the battle, which is
+ * what GameEnvironment does when unit vision is processed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class VisionBenchmark {
+
+    @Param({"ai_config_1v1.json", "ai_config_2v2.json", "generated_10x100", "generated_40x100"})
+    public String battle;
+
+    private GameEnvironment env;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        env = BenchmarkBattles.createEngagedBattle(battle, BenchmarkBattles.createGameSettings());
+    }
+
+    @Benchmark
+    public void checkUnitVision(Blackhole blackhole) {
+        for (BaseUnit unit : env.getUnits()) {
+            blackhole.consume(PhysicUtils.checkUnitVision(unit, env.getUnits(), env.getTerrain()));
+        }
+    }
+}
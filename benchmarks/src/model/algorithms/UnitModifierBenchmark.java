@@ -0,0 +1,84 @@
+package model.algorithms;
+
+import benchmark.BenchmarkBattles;
+import model.GameEnvironment;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time of the individual phases of UnitModifier.modifyObjects(), in the middle of a melee. This benchmark lives in the
+ * package of UnitModifier so that it can call the phases directly.
+ *
+ * The phases modify the battle, so that measuring the same phase over and over on the same frame would measure a
+ * different battle each time, e.g. a battle where every troop has been hit hundreds of times. Instead, the battle
+ * moves forward by one frame before each invocation, and the hashers are updated to the new positions just like
+ * modifyObjects() would do. The battle is rebuilt before each iteration, so that every iteration measures the same
+ * stretch of the battle.
+ *
+ * Since the setup runs before every invocation, these numbers are only meaningful for phases that take much longer
+ * than a microsecond, which is the case for battles of a few hundred troops and more.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(1)
+public class UnitModifierBenchmark {
+
+    @Param({"ai_config_1v1.json", "ai_config_2v2.json", "generated_10x100", "generated_40x100"})
+    public String battle;
+
+    private GameEnvironment env;
+    private UnitModifier unitModifier;
+
+    @Setup(Level.Iteration)
+    public void setUpBattle() throws IOException {
+        env = BenchmarkBattles.createEngagedBattle(battle, BenchmarkBattles.createGameSettings());
+        unitModifier = env.getUnitModifier();
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpFrame() {
+        BenchmarkBattles.step(env);
+        unitModifier.updateHashers();
+    }
+
+    @Benchmark
+    public void hashObjects() {
+        unitModifier.getTroopHasher().hashObjects();
+    }
+
+    @Benchmark
+    public void modifyProjectilesCollision() {
+        unitModifier.modifyProjectilesCollision();
+    }
+
+    @Benchmark
+    public void modifyTroopsCollision() {
+        unitModifier.modifyTroopsCollision();
+    }
+
+    @Benchmark
+    public void modifyCombat() {
+        unitModifier.modifyCombat();
+    }
+
+    @Benchmark
+    public void modifyUnitState() {
+        unitModifier.modifyUnitState();
+    }
+}
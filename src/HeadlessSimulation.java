@@ -0,0 +1,436 @@
+import ai.AIGeneral;
+import ai.AIUnitAgent;
+import model.GameEnvironment;
+import model.enums.PoliticalFaction;
+import model.replay.ReplayRecorder;
+import model.singles.BaseSingle;
+import model.enums.UnitState;
+import model.monitor.MonitorEnum;
+import model.settings.GameSettings;
+import model.settings.TroopHashingMode;
+import model.units.BaseUnit;
+import model.utils.MathUtils;
+import utils.ConfigUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Map;
+
+/**
+ * Headless battle runner. It steps a GameEnvironment as fast as possible without any rendering, which makes it usable
+ * on servers without a display, and reports the throughput of the simulation once the battle is over.
+ *
+ * Usage:
+ *   HeadlessSimulation [--game <game config>] [--battle <battle config>] [--frames <max frames>]
+ *                      [--warmup <frames>] [--seed <seed>] [--ai-all] [--no-ai] [--charge]
+ *                      [--hashing <HASH_MAP|UNIFORM_GRID|INCREMENTAL_GRID>] [--neighbor-skin <skin>]
+ *                      [--adaptive-cell <min size> <max size>] [--unit-vision] [--sound-bounce]
+ *                      [--vision-threshold <distance>] [--threads <n>] [--parallel-collision] [--parallel-combat]
+ *                      [--parallel-step] [--parallel-vision] [--off-heap] [--phase-times] [--record <replay file>]
+ *
+ * --charge orders every standing unit to attack the closest enemy unit, which guarantees that the battle reaches melee
+ * even when the AI agents decide to keep their distance.
+ *
+ * --phase-times adds the time spent in each phase of the step, as recorded by the monitor, to the report.
+ *
+ * --adaptive-cell lets the troop hasher tune its cell size within the given bounds, see CellSizeTuner.
+ *
+ * --unit-vision and --sound-bounce turn on the line of sight checks of the unit vision and of the sound, which are off
+ * in the interactive game. --vision-threshold sets how far a unit moves before its lines of sight are evaluated again,
+ * see UnitVisibility.
+ *
+ * --record records the replay of the battle to the given file, see ReplayRecorder. Recording is part of the step time.
+ */
+public class HeadlessSimulation {
+
+    /** Default configs, same as MainSimulation */
+    private final static String DEFAULT_GAME_CONFIG = "src/configs/game_configs/game_config.json";
+    private final static String DEFAULT_BATTLE_CONFIG = "src/configs/battle_configs/ai_config_1v1.json";
+    private final static int DEFAULT_MAX_FRAMES = 10000;
+
+    /** Run parameters */
+    String gameConfig = DEFAULT_GAME_CONFIG;
+    String battleConfig = DEFAULT_BATTLE_CONFIG;
+    int maxFrames = DEFAULT_MAX_FRAMES;
+    int warmupFrames = 0;
+    Long seed = null;
+    boolean aiAllFactions = false;
+    boolean createAIAgent = true;
+    boolean charge = false;
+    TroopHashingMode troopHashingMode = TroopHashingMode.HASH_MAP;
+    double neighborListSkin = 0;
+    int minCellSize = 0;
+    int maxCellSize = 0;
+    int numThreads = 0;
+    boolean parallelCollision = false;
+    boolean parallelCombat = false;
+    boolean parallelUnitStep = false;
+    boolean parallelUnitVision = false;
+    boolean offHeapSingleStore = false;
+    boolean processUnitVision = false;
+    double unitVisionMoveThreshold = 0;
+    boolean processSoundBounce = false;
+    boolean phaseTimes = false;
+    String replayPath = null;
+
+    /** Game variables */
+    GameSettings gameSettings;
+    GameEnvironment env;
+    AIGeneral aiGeneral;
+    ReplayRecorder replayRecorder;
+
+    /** Recorded time of each step, in nanoseconds */
+    long[] stepTimes;
+    int numSteps;
+    long totalTime;
+    long setupTime;
+
+    /** Number of troops of each faction at the start of the battle */
+    EnumMap<PoliticalFaction, Integer> initialTroops;
+
+    /**
+     * Create the game settings. These mirror the settings used by MainSimulation so that the benchmark numbers are
+     * representative of the interactive game.
+     */
+    GameSettings createGameSettings() {
+        GameSettings settings = new GameSettings();
+        settings.setApplyTerrainModifier(true);
+        settings.setBorderInwardCollision(false);
+        settings.setAllyCollision(true);
+        settings.setCollisionCheckingOnlyInCombat(false);
+        settings.setCavalryCollision(true);
+        settings.setEnableFlankingMechanics(true);
+        settings.setCountWrongFormationChanges(true);
+        settings.setProcessSoundBounce(processSoundBounce);
+        settings.setUseRoundedSurfaceCollision(true);
+        settings.setProcessUnitVision(processUnitVision);
+        settings.setUnitVisionMoveThreshold(unitVisionMoveThreshold);
+        settings.setCreateAIAgent(createAIAgent);
+        settings.setTroopHashingMode(troopHashingMode);
+        settings.setNeighborListSkin(neighborListSkin);
+        settings.setAdaptiveTroopCellSize(maxCellSize > 0);
+        settings.setMinTroopCellSize(minCellSize);
+        settings.setMaxTroopCellSize(maxCellSize);
+        settings.setNumThreads(numThreads);
+        settings.setParallelCollision(parallelCollision);
+        settings.setParallelCombat(parallelCombat);
+        settings.setParallelUnitStep(parallelUnitStep);
+        settings.setParallelUnitVision(parallelUnitVision);
+        settings.setOffHeapSingleStore(offHeapSingleStore);
+        return settings;
+    }
+
+    /**
+     * Build the environment and the AI agents.
+     */
+    void setup() {
+        if (seed != null) {
+            MathUtils.random.setSeed(seed);
+        }
+
+        long startTime = System.nanoTime();
+        gameSettings = createGameSettings();
+        env = new GameEnvironment(gameConfig, battleConfig, gameSettings);
+
+        // AI agents are the only thing that issue orders in a headless run, so they are what makes the battle happen.
+        ArrayList<AIUnitAgent> aiAgents = new ArrayList<>();
+        if (gameSettings.isCreateAIAgent()) {
+            PoliticalFaction aiPoliticalFaction = null;
+            if (!aiAllFactions) {
+                try {
+                    aiPoliticalFaction = ConfigUtils.readPoliticalFactionFromConfig(battleConfig);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            for (BaseUnit unit : env.getAliveUnits()) {
+                if (aiAllFactions || unit.getPoliticalFaction() == aiPoliticalFaction) {
+                    aiAgents.add(new AIUnitAgent(unit, env));
+                }
+            }
+        }
+        aiGeneral = new AIGeneral(aiAgents);
+
+        initialTroops = countTroops(env.getUnits(), false);
+        setupTime = System.nanoTime() - startTime;
+
+        // The replay starts with the state of the battle before the first step.
+        if (replayPath != null) {
+            try {
+                replayRecorder = new ReplayRecorder(env, replayPath);
+                replayRecorder.recordFrame();
+            } catch (IOException e) {
+                e.printStackTrace();
+                replayRecorder = null;
+            }
+        }
+    }
+
+    /**
+     * Step the environment until the frame limit is reached or until one faction has no alive unit left.
+     */
+    void run() {
+        for (int i = 0; i < warmupFrames && !isBattleOver(); i++) {
+            step();
+        }
+        env.getMonitor().resetPhaseHistograms();
+
+        stepTimes = new long[maxFrames];
+        numSteps = 0;
+        long startTime = System.nanoTime();
+        while (numSteps < maxFrames && !isBattleOver()) {
+            long stepStart = System.nanoTime();
+            step();
+            stepTimes[numSteps] = System.nanoTime() - stepStart;
+            numSteps += 1;
+        }
+        totalTime = System.nanoTime() - startTime;
+
+        if (replayRecorder != null) {
+            try {
+                replayRecorder.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * One frame of the game, the same way MainSimulation.draw() advances the backend.
+     */
+    private void step() {
+        env.step();
+        aiGeneral.commandAgents();
+        if (charge) {
+            orderCharges();
+        }
+        if (replayRecorder != null) {
+            try {
+                replayRecorder.recordFrame();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Order every standing unit to attack the closest alive enemy unit.
+     */
+    private void orderCharges() {
+        for (BaseUnit unit : env.getAliveUnits()) {
+            if (unit.getState() != UnitState.STANDING) continue;
+            BaseUnit closestEnemy = null;
+            double minDist = Double.MAX_VALUE;
+            for (BaseUnit other : env.getAliveUnits()) {
+                if (other.getPoliticalFaction() == unit.getPoliticalFaction()) continue;
+                double dist = MathUtils.squareDistance(
+                        unit.getAverageX(), unit.getAverageY(), other.getAverageX(), other.getAverageY());
+                if (dist < minDist) {
+                    minDist = dist;
+                    closestEnemy = other;
+                }
+            }
+            if (closestEnemy != null) {
+                unit.attackUnit(closestEnemy);
+            }
+        }
+    }
+
+    /**
+     * The battle is over when fewer than two factions still have alive units.
+     */
+    private boolean isBattleOver() {
+        HashSet<PoliticalFaction> aliveFactions = new HashSet<>();
+        for (BaseUnit unit : env.getAliveUnits()) {
+            aliveFactions.add(unit.getPoliticalFaction());
+        }
+        return aliveFactions.size() < 2;
+    }
+
+    /**
+     * Count the number of troops of each faction. If aliveOnly is true, only count the troops that are still alive.
+     */
+    private static EnumMap<PoliticalFaction, Integer> countTroops(ArrayList<BaseUnit> units, boolean aliveOnly) {
+        EnumMap<PoliticalFaction, Integer> counts = new EnumMap<>(PoliticalFaction.class);
+        for (BaseUnit unit : units) {
+            int count = aliveOnly ? unit.getNumAlives() : unit.getTroops().size();
+            counts.merge(unit.getPoliticalFaction(), count, Integer::sum);
+        }
+        return counts;
+    }
+
+    /**
+     * Checksum of the position and state of every troop. Two runs with the same seed and the same settings should
+     * produce the same checksum, which makes it easy to check that an optimization does not change the simulation.
+     */
+    private long stateChecksum() {
+        long checksum = 1;
+        for (BaseUnit unit : env.getUnits()) {
+            for (BaseSingle single : unit.getTroops()) {
+                checksum = 31 * checksum + Double.doubleToLongBits(single.getX());
+                checksum = 31 * checksum + Double.doubleToLongBits(single.getY());
+                checksum = 31 * checksum + single.getState().ordinal();
+            }
+        }
+        return checksum;
+    }
+
+    /**
+     * Return the p-th percentile (0 <= p <= 100) of a sorted array, using the nearest-rank method.
+     */
+    private static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) return 0;
+        int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+    }
+
+    /**
+     * Get a string report of the run: throughput, per-step latency percentiles and casualties.
+     */
+    String getReportString() {
+        long[] sorted = Arrays.copyOf(stepTimes, numSteps);
+        Arrays.sort(sorted);
+        double totalSeconds = totalTime / 1e9;
+
+        StringBuilder s = new StringBuilder();
+        s.append(String.format("%-32s: %s%n", "Game config", gameConfig));
+        s.append(String.format("%-32s: %s%n", "Battle config", battleConfig));
+        s.append(String.format("%-32s: %s%n", "Troop hashing", troopHashingMode));
+        s.append(String.format("%-32s: %s%n", "Neighbor list skin", neighborListSkin));
+        if (maxCellSize > 0) {
+            s.append(String.format("%-32s: %d - %d, final %d%n", "Adaptive cell size", minCellSize, maxCellSize,
+                    env.getUnitModifier().getTroopHasher().getXDiv()));
+        }
+        s.append(String.format("%-32s: %s%n", "Parallel collision", parallelCollision));
+        s.append(String.format("%-32s: %s%n", "Parallel combat", parallelCombat));
+        s.append(String.format("%-32s: %s%n", "Parallel unit step", parallelUnitStep));
+        s.append(String.format("%-32s: %s%n", "Parallel unit vision", parallelUnitVision));
+        s.append(String.format("%-32s: %s%n", "Off-heap single store", offHeapSingleStore));
+        s.append(String.format("%-32s: %s%n", "Unit vision", processUnitVision));
+        s.append(String.format("%-32s: %s%n", "Unit vision move threshold", unitVisionMoveThreshold));
+        s.append(String.format("%-32s: %s%n", "Sound bounce", processSoundBounce));
+        s.append(String.format("%-32s: %.1f%n", "Setup time (ms)", setupTime / 1e6));
+        s.append(String.format("%-32s: %d%n", "Steps", numSteps));
+        s.append(String.format("%-32s: %.3f%n", "Total time (s)", totalSeconds));
+        s.append(String.format("%-32s: %.1f%n", "Steps per second", totalSeconds > 0 ? numSteps / totalSeconds : 0));
+        s.append(String.format("%-32s: %.3f%n", "Step latency mean (ms)",
+                numSteps > 0 ? totalTime / 1e6 / numSteps : 0));
+        double[] percentiles = {50, 90, 99, 99.9, 100};
+        for (double p : percentiles) {
+            s.append(String.format("%-32s: %.3f%n",
+                    String.format("Step latency p%s (ms)", p == (int) p ? String.valueOf((int) p) : String.valueOf(p)),
+                    percentile(sorted, p) / 1e6));
+        }
+
+        EnumMap<PoliticalFaction, Integer> aliveTroops = countTroops(env.getUnits(), true);
+        for (Map.Entry<PoliticalFaction, Integer> entry : initialTroops.entrySet()) {
+            int alive = aliveTroops.getOrDefault(entry.getKey(), 0);
+            s.append(String.format("%-32s: %d / %d dead, %d alive%n",
+                    "Casualties " + entry.getKey(), entry.getValue() - alive, entry.getValue(), alive));
+        }
+        s.append(String.format("%-32s: %d%n", "Troops rehashed",
+                env.getMonitor().getTotalCount(MonitorEnum.TROOPS_REHASHED)));
+        s.append(String.format("%-32s: %d%n", "Unit vision pairs",
+                env.getMonitor().getTotalCount(MonitorEnum.UNIT_VISION_PAIRS)));
+        s.append(String.format("%-32s: %016x%n", "State checksum", stateChecksum()));
+        if (replayRecorder != null) {
+            s.append(String.format("%-32s: %s, %d frames%n",
+                    "Replay", replayPath, replayRecorder.getNumFrames()));
+        }
+        if (phaseTimes) {
+            s.append("\n");
+            s.append(env.getMonitor().dumpPhaseTimes());
+        }
+        return s.toString();
+    }
+
+    /**
+     * Parse command line arguments.
+     */
+    void parseArgs(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--game":
+                    gameConfig = args[++i];
+                    break;
+                case "--battle":
+                    battleConfig = args[++i];
+                    break;
+                case "--frames":
+                    maxFrames = Integer.parseInt(args[++i]);
+                    break;
+                case "--warmup":
+                    warmupFrames = Integer.parseInt(args[++i]);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                case "--ai-all":
+                    aiAllFactions = true;
+                    break;
+                case "--no-ai":
+                    createAIAgent = false;
+                    break;
+                case "--charge":
+                    charge = true;
+                    break;
+                case "--hashing":
+                    troopHashingMode = TroopHashingMode.valueOf(args[++i]);
+                    break;
+                case "--neighbor-skin":
+                    neighborListSkin = Double.parseDouble(args[++i]);
+                    break;
+                case "--adaptive-cell":
+                    minCellSize = Integer.parseInt(args[++i]);
+                    maxCellSize = Integer.parseInt(args[++i]);
+                    break;
+                case "--threads":
+                    numThreads = Integer.parseInt(args[++i]);
+                    break;
+                case "--parallel-collision":
+                    parallelCollision = true;
+                    break;
+                case "--parallel-combat":
+                    parallelCombat = true;
+                    break;
+                case "--parallel-step":
+                    parallelUnitStep = true;
+                    break;
+                case "--parallel-vision":
+                    parallelUnitVision = true;
+                    break;
+                case "--off-heap":
+                    offHeapSingleStore = true;
+                    break;
+                case "--unit-vision":
+                    processUnitVision = true;
+                    break;
+                case "--sound-bounce":
+                    processSoundBounce = true;
+                    break;
+                case "--vision-threshold":
+                    unitVisionMoveThreshold = Double.parseDouble(args[++i]);
+                    break;
+                case "--phase-times":
+                    phaseTimes = true;
+                    break;
+                case "--record":
+                    replayPath = args[++i];
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument: " + args[i]);
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        HeadlessSimulation simulation = new HeadlessSimulation();
+        simulation.parseArgs(args);
+        simulation.setup();
+        simulation.run();
+        System.out.print(simulation.getReportString());
+    }
+}
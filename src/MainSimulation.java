@@ -9,6 +9,7 @@ import model.logger.Log;
 import model.monitor.MonitorEnum;
 import model.projectile_objects.HitscanObject;
 import model.settings.GameSettings;
+import model.settings.TroopHashingMode;
 import model.surface.BaseSurface;
 import utils.ConfigUtils;
 import ai.AIUnitAgent;
@@ -138,6 +139,7 @@ public class MainSimulation extends PApplet {
         gameSettings.setUseRoundedSurfaceCollision(true);
         gameSettings.setProcessUnitVision(false);
         gameSettings.setCreateAIAgent(true);
+        gameSettings.setTroopHashingMode(TroopHashingMode.UNIFORM_GRID);
 
         // Graphic settings
         drawingSettings = new DrawingSettings();
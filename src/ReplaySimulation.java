@@ -0,0 +1,341 @@
+import model.GameEnvironment;
+import model.enums.SingleState;
+import model.logger.Log;
+import model.projectile_objects.BaseProjectile;
+import model.replay.ReplayPlayer;
+import model.settings.GameSettings;
+import model.singles.BaseSingle;
+import model.units.BaseUnit;
+import model.utils.MathUtils;
+import processing.core.PApplet;
+import processing.event.MouseEvent;
+import utils.ConfigUtils;
+import view.camera.BaseCamera;
+import view.camera.CameraConstants;
+import view.camera.TopDownCamera;
+import view.constants.DrawingConstants;
+import view.drawer.*;
+import view.settings.DrawingMode;
+import view.settings.DrawingSettings;
+import view.settings.RenderMode;
+import view.video.StaticElementPlayer;
+import view.video.VideoElementPlayer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+
+/**
+ * Play back a replay recorded by HeadlessSimulation --record. The game environment is built from the same configs as
+ * the recorded battle but is never stepped: the replay player moves its units and singles to the recorded state of
+ * each frame, so that the usual drawers portray the battle as if it was being simulated.
+ *
+ * Controls: space pauses, up and down double and halve the play speed, left and right jump 10 seconds backward and
+ * forward, wasd moves the camera and the mouse wheel zooms.
+ */
+public class ReplaySimulation extends PApplet {
+
+    /** Screen constants */
+    private final static int INPUT_WIDTH = 1920;
+    private final static int INPUT_HEIGHT = 1080;
+
+    /** Replay constants */
+    private final static String GAME_CONFIG = "src/configs/game_configs/game_config.json";
+    private final static String BATTLE_CONFIG = "src/configs/battle_configs/ai_config_2v2.json";
+    private final static String VISUAL_CONFIG = "src/configs/visual_configs/visual_config.json";
+    private final static String REPLAY = "replay.bin";
+    private final static int FRAMES_PER_SECOND = 60;
+    private final static int SEEK_SECONDS = 10;
+    private final static double MAXIMUM_SPEED = 16;
+    private final static double MINIMUM_SPEED = 1.0 / 16;
+
+    /** Drawers */
+    ShapeDrawer shapeDrawer;
+    MapDrawer mapDrawer;
+    InfoDrawer infoDrawer;
+    BattleSignalDrawer battleSignalDrawer;
+    ObjectDrawer objectDrawer;
+    SingleDrawer singleDrawer;
+
+    /** Video element players */
+    VideoElementPlayer videoElementPlayer;
+    StaticElementPlayer staticElementPlayer;
+
+    /** Key pressed set */
+    HashSet<Character> keyPressedSet;
+
+    /** Game variables. The environment only holds the state of the replay, and is never stepped. */
+    GameSettings gameSettings;
+    GameEnvironment env;
+    ReplayPlayer player;
+
+    /** Camera */
+    BaseCamera camera;
+    double cameraDx;
+    double cameraDy;
+    int zoomCounter;
+    double zoomGoal;
+
+    /** Some graphical settings */
+    DrawingSettings drawingSettings;
+
+    public void settings() {
+
+        // First log to initialize the logging tool
+        Log.info("Initialize the log");
+
+        // Window size
+        size(INPUT_WIDTH, INPUT_HEIGHT, P2D);
+
+        // Game settings. The units are built from the battle config exactly as when the replay was recorded.
+        gameSettings = new GameSettings();
+        gameSettings.setApplyTerrainModifier(true);
+        gameSettings.setBorderInwardCollision(false);
+        gameSettings.setProcessUnitVision(false);
+        gameSettings.setCreateAIAgent(false);
+
+        // Graphic settings
+        drawingSettings = new DrawingSettings();
+        drawingSettings.setRenderMode(RenderMode.MINIMALISTIC);
+        drawingSettings.setDrawEye(DrawingMode.NOT_DRAW);
+        drawingSettings.setDrawWeapon(DrawingMode.DRAW);
+        drawingSettings.setSmoothCameraMovement(true);
+        drawingSettings.setDrawHeightField(true);
+        drawingSettings.setDrawSmooth(true);
+        drawingSettings.setDrawDamageSustained(true);
+        drawingSettings.setDrawTroopShadow(true);
+        drawingSettings.setDrawVideoEffect(true);
+        drawingSettings.setDrawGameInfo(true);
+        smooth(4);
+    }
+
+    public void setup() {
+
+        /** Replay setup */
+        env = new GameEnvironment(GAME_CONFIG, BATTLE_CONFIG, gameSettings);
+        try {
+            player = new ReplayPlayer(env, REPLAY);
+        } catch (IOException e) {
+            e.printStackTrace();
+            exit();
+            return;
+        }
+
+        /** Keyboard setup */
+        keyPressedSet = new HashSet<>();
+
+        /** Camera setup */
+        double[] cameraPos = calculateAveragePositions(env.getUnits());
+        camera = new TopDownCamera(cameraPos[0], cameraPos[1], INPUT_WIDTH, INPUT_HEIGHT, env.getBroadcaster());
+        cameraDx = 0;
+        cameraDy = 0;
+        zoomGoal = camera.getZoom();
+
+        /** Drawer setup */
+        shapeDrawer = new ShapeDrawer(this, camera);
+        mapDrawer = new MapDrawer(this, camera);
+        infoDrawer = new InfoDrawer(this);
+        battleSignalDrawer = new BattleSignalDrawer(this, camera, drawingSettings);
+        objectDrawer = new ObjectDrawer(this, camera, shapeDrawer, drawingSettings);
+        singleDrawer = new SingleDrawer(this, env, camera, shapeDrawer, drawingSettings);
+
+        /** Setup video and static element players. They listen to the events rebroadcast by the replay player. */
+        try {
+            videoElementPlayer = ConfigUtils.readVideoElementConfig(
+                    VISUAL_CONFIG, camera, this, env.getBroadcaster()
+            );
+            staticElementPlayer = ConfigUtils.readStaticElementConfig(
+                    VISUAL_CONFIG, camera, this, env.getBroadcaster()
+            );
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Looping method required for a Processing Applet.
+     */
+    public void draw() {
+
+        /** Update the replay */
+        try {
+            player.update();
+        } catch (IOException e) {
+            e.printStackTrace();
+            player.setPaused(true);
+        }
+        if (!player.isPaused()) {
+            camera.update();
+        }
+
+        /** Update the camera */
+        shapeDrawer.preprocess();
+        mapDrawer.preprocess();
+        infoDrawer.preprocess();
+        battleSignalDrawer.preprocess();
+        objectDrawer.preprocess();
+        singleDrawer.preprocess();
+
+        if (zoomCounter >= 0) {
+            zoomCounter -= 1;
+            double zoom = zoomGoal + (camera.getZoom() - zoomGoal) * zoomCounter / CameraConstants.ZOOM_SMOOTHEN_STEPS;
+            camera.setZoom(zoom);
+        }
+
+        if (keyPressed) {
+            cameraDx = 0;
+            cameraDy = 0;
+            if (keyPressedSet.contains('a')) moveCamera(Math.PI + camera.getAngle());
+            if (keyPressedSet.contains('d')) moveCamera(camera.getAngle());
+            if (keyPressedSet.contains('w')) moveCamera(Math.PI * 3 / 2 + camera.getAngle());
+            if (keyPressedSet.contains('s')) moveCamera(Math.PI / 2 + camera.getAngle());
+        }
+        camera.move(cameraDx / camera.getZoom(), cameraDy / camera.getZoom());
+        cameraDx *= CameraConstants.CAMERA_MOVEMENT_DECELERATION_COEFFICIENT;
+        cameraDy *= CameraConstants.CAMERA_MOVEMENT_DECELERATION_COEFFICIENT;
+
+        /** Draw the replay */
+        background(230);
+        rectMode(CENTER);
+        if (drawingSettings.isDrawHeightField()) {
+            mapDrawer.drawTerrainLine(env.getTerrain());
+        }
+
+        if (drawingSettings.isDrawVideoEffect()) {
+            staticElementPlayer.processElementQueue();
+        }
+
+        // Dead troops. The environment is not stepped, so they are not in its dead container.
+        noStroke();
+        for (BaseUnit unit : env.getUnits()) {
+            for (BaseSingle single : unit.getTroops()) {
+                if (single.getState() == SingleState.DEAD) singleDrawer.drawDeadSingle(single);
+            }
+        }
+
+        // Alive troops
+        if (camera.getZoom() > CameraConstants.ZOOM_RENDER_LEVEL_TROOP) {
+            for (BaseUnit unit : env.getUnits()) {
+                for (BaseSingle single : unit.getAliveTroopsSet()) {
+                    singleDrawer.drawAliveSingle(single, false);
+                }
+            }
+        } else {
+            for (BaseUnit unit : env.getUnits()) {
+                if (unit.getNumAlives() == 0) continue;
+                battleSignalDrawer.drawUnitBlock(unit, env.getTerrain());
+            }
+        }
+
+        // Draw the arrow direction of the unit
+        for (BaseUnit unit : env.getUnits()) {
+            if (unit.getNumAlives() == 0) continue;
+            double unitX = MathUtils.quickCos((float) unit.getAnchorAngle());
+            double unitY = MathUtils.quickSin((float) unit.getAnchorAngle());
+            int[] color = DrawingConstants.COLOR_GOOD_BLACK;
+            fill(color[0], color[1], color[2], color[3]);
+            battleSignalDrawer.drawArrowAtHeight(
+                    unit.getAnchorX(), unit.getAnchorY(),
+                    unit.getAnchorX() + unitX * DrawingConstants.ANCHOR_ARROW_SIZE,
+                    unit.getAnchorY() + unitY * DrawingConstants.ANCHOR_ARROW_SIZE,
+                    env.getTerrain().getZFromPos(unit.getAnchorX(), unit.getAnchorY()));
+        }
+
+        // Draw the objects
+        for (BaseProjectile obj : player.getProjectiles()) {
+            objectDrawer.drawObject(obj, env.getTerrain());
+        }
+
+        if (drawingSettings.isDrawVideoEffect()) {
+            videoElementPlayer.processElementQueue();
+        }
+
+        // Replay info
+        if (drawingSettings.isDrawGameInfo()) {
+            StringBuilder s = new StringBuilder();
+            s.append("Frame                           : " + player.getCurrentFrame() + "/" +
+                    (player.getNumFrames() - 1) + "\n");
+            s.append("Time                            : " + String.format("%.1f", 1.0 * player.getCurrentFrame() /
+                    FRAMES_PER_SECOND) + "s\n");
+            s.append("Speed                           : " + String.format("%.3gx", player.getSpeed()) +
+                    (player.isPaused() ? " (paused)" : ""));
+            infoDrawer.drawTextBox(s.toString(), 5, INPUT_HEIGHT - 5, 400);
+        }
+    }
+
+    /**
+     * Accelerate the camera toward an angle.
+     */
+    private void moveCamera(double screenMoveAngle) {
+        cameraDx += CameraConstants.CAMERA_SPEED * MathUtils.quickCos((float) screenMoveAngle);
+        cameraDy += CameraConstants.CAMERA_SPEED * MathUtils.quickSin((float) screenMoveAngle);
+    }
+
+    @Override
+    public void mouseWheel(MouseEvent event) {
+        float scrollVal = event.getCount();
+        if (scrollVal < 0) {
+            zoomGoal = Math.min(zoomGoal * CameraConstants.ZOOM_PER_SCROLL, CameraConstants.MAXIMUM_ZOOM);
+        } else if (scrollVal > 0) {
+            zoomGoal = Math.max(zoomGoal / CameraConstants.ZOOM_PER_SCROLL, CameraConstants.MINIMUM_ZOOM);
+        }
+        zoomCounter = CameraConstants.ZOOM_SMOOTHEN_STEPS;
+    }
+
+    @Override
+    public void keyPressed() {
+        if (key == ' ') {
+            player.setPaused(!player.isPaused());
+        } else if (key == CODED) {
+            try {
+                if (keyCode == UP) {
+                    player.setSpeed(Math.min(player.getSpeed() * 2, MAXIMUM_SPEED));
+                } else if (keyCode == DOWN) {
+                    player.setSpeed(Math.max(player.getSpeed() / 2, MINIMUM_SPEED));
+                } else if (keyCode == LEFT) {
+                    player.seek(player.getCurrentFrame() - SEEK_SECONDS * FRAMES_PER_SECOND);
+                } else if (keyCode == RIGHT) {
+                    player.seek(player.getCurrentFrame() + SEEK_SECONDS * FRAMES_PER_SECOND);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        keyPressedSet.add(key);
+    }
+
+    @Override
+    public void keyReleased() {
+        keyPressedSet.remove(key);
+    }
+
+    @Override
+    public void exit() {
+        if (player != null) {
+            try {
+                player.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        super.exit();
+    }
+
+    private double[] calculateAveragePositions(ArrayList<BaseUnit> units) {
+        double sumX = 0;
+        double sumY = 0;
+        int count = 0;
+        for (BaseUnit unit : units) {
+            sumX += unit.getAnchorX() * unit.getNumAlives();
+            sumY += unit.getAnchorY() * unit.getNumAlives();
+            count += unit.getNumAlives();
+        }
+        return new double[] {
+                sumX / count, sumY / count
+        };
+    }
+
+    public static void main(String[] args){
+        PApplet.main("ReplaySimulation");
+    }
+}
@@ -3,8 +3,8 @@ package ai;
 import java.util.ArrayList;
 
 import model.GameEnvironment;
+import model.algorithms.UnitVisibility;
 import model.units.BaseUnit;
-import model.utils.PhysicUtils;
 
 /**
  * GameState denotes the state in which the AI Agent perceives the games.
@@ -40,14 +40,23 @@ public class AIView {
     public void updateState() {
         // Update visible units.
         if (env.getGameSettings().isProcessUnitVision()) {
-            visibleUnits = PhysicUtils.checkUnitVision(
-                    aiAgent.getUnit(), new ArrayList<>(env.getAliveUnits()), env.getTerrain());
+            UnitVisibility unitVisibility = env.getUnitModifier().getUnitVisibility();
+            unitVisibility.update();
+            unitVisibility.getVisibleUnits(aiAgent.getUnit(), env.getAliveUnits(), visibleUnits);
         } else {
-            visibleUnits = new ArrayList<>(env.getAliveUnits());
+            visibleUnits.clear();
+            visibleUnits.addAll(env.getAliveUnits());
+        }
+
+        // The lists are refilled rather than allocated on every update.
+        allyUnits.clear();
+        enemyUnits.clear();
+        for (BaseUnit visibleUnit : visibleUnits) {
+            if (visibleUnit.getPoliticalFaction() == unit.getPoliticalFaction()) {
+                allyUnits.add(visibleUnit);
+            } else {
+                enemyUnits.add(visibleUnit);
+            }
         }
-        allyUnits = new ArrayList<>(visibleUnits);
-        allyUnits.removeIf(x -> x.getPoliticalFaction() != unit.getPoliticalFaction());
-        enemyUnits = new ArrayList<>(visibleUnits);
-        enemyUnits.removeIf(x -> x.getPoliticalFaction() == unit.getPoliticalFaction());
     }
 }
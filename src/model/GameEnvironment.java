@@ -11,32 +11,55 @@ import model.events.EventType;
 import model.events.custom_events.CavalryMarchingEvent;
 import model.events.custom_events.SoldierMarchingEvent;
 import model.monitor.Monitor;
+import model.monitor.MonitorPhase;
 import model.singles.BaseSingle;
+import model.singles.SingleStore;
+import model.snapshot.SnapshotReader;
+import model.snapshot.SnapshotWriter;
 import model.sound.SoundSource;
 import model.surface.BaseSurface;
 import model.terrain.Terrain;
 import model.units.ArcherUnit;
 import model.units.BaseUnit;
 import model.units.CavalryUnit;
+import model.utils.MathUtils;
 import utils.ConfigUtils;
 import model.settings.GameSettings;
+import it.unimi.dsi.util.XoShiRo256PlusRandom;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.concurrent.ForkJoinPool;
 
 public class GameEnvironment {
     /**
      * The main game model that contains every information about the game backend.
      */
 
-    // Contain all units and troops
+    // Header of the snapshots. The version changes whenever the layout of the snapshots changes.
+    private static final int SNAPSHOT_MAGIC = 0x42534E50;
+    private static final int SNAPSHOT_VERSION = 1;
+
+    // Contain all units and troops. Unit sets are linked, so that they are iterated in a reproducible order.
     ArrayList<BaseUnit> units;
     HashSet<BaseUnit> deadUnits;
     HashSet<BaseUnit> aliveUnits;
     ArrayList<BaseSurface> surfaces;
     UnitModifier unitModifier;
     ArrayList<BaseSingle> deadContainer;
+    SingleStore singleStore;
 
     // Terrain
     Terrain terrain;
@@ -56,6 +79,12 @@ public class GameEnvironment {
     // Contains all sound sources in the environment
     ArrayList<SoundSource> soundSources;
 
+    // Worker pool of the parallel modes. Workers are only started once a parallel mode submits work.
+    ForkJoinPool forkJoinPool;
+
+    // Per unit RNG and buffers of the parallel unit step, indexed like units.
+    ArrayList<UnitStepContext> unitStepContexts;
+
     /**
      * @param battleConfig Path to the txt file that contains all the game information
      */
@@ -64,9 +93,13 @@ public class GameEnvironment {
         monitor = new Monitor(UniversalConstants.FRAME_STORAGE);
         gameSettings = inputGameSettings;
         deadContainer = new ArrayList<>();
-        deadUnits = new HashSet<>();
-        aliveUnits = new HashSet<>();
+        deadUnits = new LinkedHashSet<>();
+        aliveUnits = new LinkedHashSet<>();
         soundSources = new ArrayList<>();
+        singleStore = new SingleStore(gameSettings.isOffHeapSingleStore());
+        unitStepContexts = new ArrayList<>();
+        forkJoinPool = new ForkJoinPool(gameSettings.getNumThreads() > 0 ?
+                gameSettings.getNumThreads() : Runtime.getRuntime().availableProcessors());
 
         // Read game stats.
         try {
@@ -98,7 +131,7 @@ public class GameEnvironment {
             e.printStackTrace();
         }
         unitModifier = new UnitModifier(
-                deadContainer, terrain, constructs, surfaces, gameSettings, broadcaster, monitor);
+                deadContainer, terrain, constructs, surfaces, gameSettings, broadcaster, monitor, forkJoinPool);
 
         // Read battle configuration.
         try {
@@ -126,38 +159,61 @@ public class GameEnvironment {
     public void step() {
         // Reset counters
         monitor.clockTheData();
+        monitor.startPhase(MonitorPhase.FRAME);
 
         // Update intentions of all units
-        for (BaseUnit unit : units) {
-            unit.updateIntention();
+        monitor.startPhase(MonitorPhase.UNIT_INTENTION);
+        if (gameSettings.isParallelUnitStep()) {
+            prepareUnitStepContexts();
+            stepUnitsInParallel(true);
+        } else {
+            for (BaseUnit unit : units) {
+                unit.updateIntention();
+            }
         }
+        monitor.endPhase(MonitorPhase.UNIT_INTENTION);
 
         // Update the states of all units
         unitModifier.modifyObjects();
+        monitor.startPhase(MonitorPhase.UNIT_STATE);
+        if (gameSettings.isParallelUnitStep()) {
+            stepUnitsInParallel(false);
+        } else {
+            for (BaseUnit unit : units) {
+                unit.updateState();
+            }
+        }
         for (BaseUnit unit : units) {
-            unit.updateState();
             if (unit.getNumAlives() == 0) {
                 deadUnits.add(unit);
                 aliveUnits.remove(unit);
             }
         }
+        monitor.endPhase(MonitorPhase.UNIT_STATE);
 
         if (gameSettings.isProcessSoundBounce()) {
+            monitor.startPhase(MonitorPhase.SOUND);
+
             // Update sound source for all units
             for (BaseUnit unit : units) {
                 unit.updateSoundSource();
             }
 
-            // Update sound sinks for all units
+            // Update sound sinks for all units. The units moved since the unit vision was updated, so bring the
+            // visibility up to date first.
+            unitModifier.getUnitVisibility().update();
             for (BaseUnit unit : units) {
                 // Notice that each unit is a source for its sink as well. If it is too noisy,
                 // it might not be able to perceive the surrounding.
-                unit.getSoundSink().updateSoundSink(soundSources, terrain, surfaces, units, constructs, unit);
+                unit.getSoundSink().updateSoundSink(soundSources, terrain, surfaces, units,
+                        unitModifier.getBarrierHeightField(), unitModifier.getUnitVisibility(), unit);
                 unit.getSoundSink().updatePerceivedSoundSink();
             }
+            monitor.endPhase(MonitorPhase.SOUND);
         }
         
         // Broadcast running, marching and arrow fire event events
+        monitor.startPhase(MonitorPhase.EVENTS);
         for (BaseUnit unit : units) {
             int numMovings = unit.getNumMoving();
             if (numMovings > 0) {
@@ -192,7 +248,201 @@ public class GameEnvironment {
                                 firedUnit.getAverageZ()));
             }
         }
+        monitor.endPhase(MonitorPhase.EVENTS);
+        monitor.endPhase(MonitorPhase.FRAME);
+    }
+
+    /**
+     * Make sure there is one step context per unit, and reseed the RNG of each unit from the global RNG, in unit order.
+     */
+    private void prepareUnitStepContexts() {
+        while (unitStepContexts.size() < units.size()) {
+            unitStepContexts.add(new UnitStepContext());
+        }
+        for (int i = 0; i < units.size(); i++) {
+            unitStepContexts.get(i).setSeed(MathUtils.random.nextLong());
+        }
+    }
+
+    /**
+     * Update the intentions or the states of all units on the worker pool, then flush the buffered projectiles, hitscans
+     * and events of each unit in unit order.
+     */
+    private void stepUnitsInParallel(boolean intention) {
+        forkJoinPool.invoke(new UnitStepTask(this, intention, 0, units.size()));
+        for (int i = 0; i < units.size(); i++) {
+            unitStepContexts.get(i).flush(
+                    unitModifier.getProjectileHasher(), unitModifier.getHitscanHasher(), broadcaster);
+        }
+    }
+
+    /**
+     * Update the intention or the state of unit i, with the RNG and the shared sinks of the current thread redirected to
+     * the step context of the unit.
+     */
+    void stepUnit(int i, boolean intention) {
+        UnitStepContext context = unitStepContexts.get(i);
+        context.begin(unitModifier.getProjectileHasher(), unitModifier.getHitscanHasher(), broadcaster);
+        try {
+            if (intention) {
+                units.get(i).updateIntention();
+            } else {
+                units.get(i).updateState();
+            }
+        } finally {
+            context.end(unitModifier.getProjectileHasher(), unitModifier.getHitscanHasher(), broadcaster);
+        }
+    }
+
+    /**
+     * Save a snapshot of the game to a file, see writeSnapshot().
+     */
+    public void saveSnapshot(String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeSnapshot(channel);
+        }
+    }
+
+    /**
+     * Restore a snapshot of the game from a file, see readSnapshot().
+     */
+    public void restoreSnapshot(String path) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) break;
+            }
+        }
+        buffer.flip();
+        readSnapshot(buffer);
+    }
+
+    /**
+     * Write a snapshot of the entire mutable state of the game to a channel: the global RNG, the monitor counters, the
+     * terrain heights, every unit and every single, the dead container, and the unit modifier with its charge buffers,
+     * projectiles and hitscans. Everything that only depends on the configs and the settings, such as game stats,
+     * constructs, surfaces and the path finding graph, is left out.
+     *
+     * Snapshots are taken between two steps.
+     */
+    public void writeSnapshot(WritableByteChannel channel) throws IOException {
+        SnapshotWriter writer = new SnapshotWriter(units);
+
+        // Header, and the structure of the battle, which must match the environment the snapshot is restored into.
+        writer.writeInt(SNAPSHOT_MAGIC);
+        writer.writeInt(SNAPSHOT_VERSION);
+        writer.writeInt(units.size());
+        for (BaseUnit unit : units) {
+            writer.writeInt(unit.getUnitType().ordinal());
+            writer.writeInt(unit.getTroops().size());
+        }
+        writer.writeInt(singleStore.getNumSingles());
+
+        // Global RNG. The RNG does not expose its state, but it is serializable.
+        ByteArrayOutputStream rngBytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream rngStream = new ObjectOutputStream(rngBytes)) {
+            rngStream.writeObject(MathUtils.random);
+        }
+        writer.writeBytes(rngBytes.toByteArray());
+
+        monitor.writeSnapshot(writer);
+        terrain.writeSnapshot(writer);
+
+        // Units, then singles in single id order.
+        singleStore.writeSnapshot(writer);
+        for (BaseUnit unit : units) {
+            unit.writeSnapshot(writer);
+        }
+        for (BaseSingle single : getSinglesById()) {
+            single.writeSnapshot(writer);
+        }
+        writer.writeSingles(deadContainer);
+        writer.writeUnits(aliveUnits);
+        writer.writeUnits(deadUnits);
+
+        unitModifier.writeSnapshot(writer);
+        writer.writeTo(channel);
+    }
+
+    /**
+     * Restore a snapshot written by writeSnapshot(). The environment must have been created from the same configs and
+     * settings as the environment the snapshot was taken from, so that the snapshot only has to overwrite the mutable
+     * state. Stepping the environment after the restore gives the same frames as stepping the original environment
+     * after the snapshot.
+     */
+    public void readSnapshot(ByteBuffer buffer) throws IOException {
+        BaseSingle[] singles = getSinglesById();
+        SnapshotReader reader = new SnapshotReader(buffer, units, singles);
+        try {
+            // Header and structure of the battle
+            if (reader.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Not a snapshot");
+            }
+            int version = reader.readInt();
+            if (version != SNAPSHOT_VERSION) {
+                throw new IOException("Snapshot version " + version + " is not supported");
+            }
+            int numUnits = reader.readInt();
+            if (numUnits != units.size()) {
+                throw new IOException("Snapshot has " + numUnits + " units, but the battle has " + units.size());
+            }
+            for (BaseUnit unit : units) {
+                int unitType = reader.readInt();
+                int numTroops = reader.readInt();
+                if (unitType != unit.getUnitType().ordinal() || numTroops != unit.getTroops().size()) {
+                    throw new IOException("Snapshot units do not match the units of the battle");
+                }
+            }
+            if (reader.readInt() != singleStore.getNumSingles()) {
+                throw new IOException("Snapshot singles do not match the singles of the battle");
+            }
+
+            // Global RNG
+            try (ObjectInputStream rngStream = new ObjectInputStream(new ByteArrayInputStream(reader.readBytes()))) {
+                MathUtils.random = (XoShiRo256PlusRandom) rngStream.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException(e);
+            }
+
+            monitor.readSnapshot(reader);
+            terrain.readSnapshot(reader);
+
+            // Units and singles
+            singleStore.readSnapshot(reader);
+            for (BaseUnit unit : units) {
+                unit.readSnapshot(reader);
+            }
+            for (BaseSingle single : singles) {
+                single.readSnapshot(reader);
+            }
+            deadContainer.clear();
+            deadContainer.addAll(reader.readSingles());
+            aliveUnits.clear();
+            aliveUnits.addAll(reader.readUnits());
+            deadUnits.clear();
+            deadUnits.addAll(reader.readUnits());
+
+            unitModifier.readSnapshot(reader);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Snapshot is truncated", e);
+        }
     }
+
+    /**
+     * Every single of the game, indexed by single id.
+     */
+    private BaseSingle[] getSinglesById() {
+        BaseSingle[] singles = new BaseSingle[singleStore.getNumSingles()];
+        for (BaseUnit unit : units) {
+            for (BaseSingle single : unit.getTroops()) {
+                singles[single.getSingleId()] = single;
+            }
+        }
+        return singles;
+    }
+
     /**
      * Getter and setters
      */
@@ -220,6 +470,10 @@ public class GameEnvironment {
         return deadContainer;
     }
 
+    public SingleStore getSingleStore() {
+        return singleStore;
+    }
+
     public Terrain getTerrain() {
         return terrain;
     }
@@ -252,5 +506,9 @@ public class GameEnvironment {
         return surfaces;
     }
 
+    public ForkJoinPool getForkJoinPool() {
+        return forkJoinPool;
+    }
+
 
 }
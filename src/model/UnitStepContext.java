@@ -0,0 +1,71 @@
+package model;
+
+import it.unimi.dsi.util.XoShiRo256PlusRandom;
+import model.algorithms.HitscanHasher;
+import model.algorithms.ProjectileHasher;
+import model.events.Event;
+import model.events.EventBroadcaster;
+import model.projectile_objects.BaseProjectile;
+import model.projectile_objects.HitscanObject;
+import model.utils.MathUtils;
+
+import java.util.ArrayList;
+
+/**
+ * State of one unit during the parallel unit step. Each unit draws random numbers from its own RNG, and everything it
+ * sends to the shared projectile hasher, hitscan hasher and event broadcaster is buffered. The buffers are flushed in
+ * unit order once every unit is done, so the result does not depend on which thread processed which unit.
+ */
+class UnitStepContext {
+
+    // RNG of the unit, reseeded from the global RNG every frame.
+    private XoShiRo256PlusRandom random;
+
+    // Objects and events sent by the unit since the last flush.
+    private ArrayList<BaseProjectile> projectiles;
+    private ArrayList<HitscanObject> hitscans;
+    private ArrayList<Event> events;
+
+    UnitStepContext() {
+        random = new XoShiRo256PlusRandom(0);
+        projectiles = new ArrayList<>();
+        hitscans = new ArrayList<>();
+        events = new ArrayList<>();
+    }
+
+    /**
+     * Reseed the RNG of the unit.
+     */
+    void setSeed(long seed) {
+        random.setSeed(seed);
+    }
+
+    /**
+     * Redirect the RNG and the shared sinks of the current thread to this context.
+     */
+    void begin(ProjectileHasher projectileHasher, HitscanHasher hitscanHasher, EventBroadcaster broadcaster) {
+        MathUtils.setThreadRandom(random);
+        projectileHasher.startBuffering(projectiles);
+        hitscanHasher.startBuffering(hitscans);
+        broadcaster.startBuffering(events);
+    }
+
+    /**
+     * Point the RNG and the shared sinks of the current thread back to the global ones.
+     */
+    void end(ProjectileHasher projectileHasher, HitscanHasher hitscanHasher, EventBroadcaster broadcaster) {
+        MathUtils.setThreadRandom(null);
+        projectileHasher.stopBuffering();
+        hitscanHasher.stopBuffering();
+        broadcaster.stopBuffering();
+    }
+
+    /**
+     * Send everything buffered by the unit to the shared sinks.
+     */
+    void flush(ProjectileHasher projectileHasher, HitscanHasher hitscanHasher, EventBroadcaster broadcaster) {
+        projectileHasher.flushBuffer(projectiles);
+        hitscanHasher.flushBuffer(hitscans);
+        broadcaster.flushBuffer(events);
+    }
+}
@@ -0,0 +1,37 @@
+package model;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Fork join task that updates either the intention or the state of the units at indices [from, to) of the unit list.
+ * Within one phase, a unit only writes to itself and to its own troops, and only reads the other units, so units can be
+ * processed in any order once their shared sinks are buffered.
+ */
+class UnitStepTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private GameEnvironment env;
+    private boolean intention;
+    private int from;
+    private int to;
+
+    UnitStepTask(GameEnvironment inputEnv, boolean inputIntention, int inputFrom, int inputTo) {
+        env = inputEnv;
+        intention = inputIntention;
+        from = inputFrom;
+        to = inputTo;
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from <= 1) {
+            for (int i = from; i < to; i++) {
+                env.stepUnit(i, intention);
+            }
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        invokeAll(new UnitStepTask(env, intention, from, mid), new UnitStepTask(env, intention, mid, to));
+    }
+}
@@ -0,0 +1,250 @@
+package model.algorithms;
+
+import model.construct.Construct;
+import model.terrain.HeightPyramid;
+import model.terrain.Terrain;
+import model.utils.PhysicUtils;
+
+import java.util.ArrayList;
+
+/**
+ * Absolute height of the barriers over the map, which are the terrain, the trees of the forests and the constructs, for
+ * the lines of hearing of the sound.
+ *
+ * The trees and the constructs don't move, so bounds of the height they add are computed once per terrain tile and
+ * kept in a min-max height pyramid, next to the one the terrain keeps over its own height field. A block of samples of
+ * a line which is above the upper bounds can't be blocked by anything, and one below the lower bounds is blocked at
+ * every sample, so both are counted without looking up any barrier.
+ */
+public class BarrierHeightField {
+
+    // Number of consecutive samples below which a block of samples is checked sample by sample rather than split.
+    private static final int LEAF_SAMPLES = 8;
+
+    private Terrain terrain;
+    private SurfaceHasher surfaceHasher;
+    private ConstructHasher constructHasher;
+
+    // Bounds of the height added by the trees and the constructs on each terrain tile, over the tiles covered by the
+    // trees and the constructs. Tile (i, j) of the terrain is tile (i - minI, j - minJ) of the pyramid.
+    private HeightPyramid staticPyramid;
+    private int minI;
+    private int minJ;
+
+    public BarrierHeightField(Terrain inputTerrain, SurfaceHasher inputSurfaceHasher,
+                              ConstructHasher inputConstructHasher, ArrayList<Construct> constructs) {
+        terrain = inputTerrain;
+        surfaceHasher = inputSurfaceHasher;
+        constructHasher = inputConstructHasher;
+
+        // Tiles covered by each tree and each construct, as [minI, maxI, minJ, maxJ], and the bounds of the pyramid.
+        TreeIndex treeIndex = surfaceHasher.getTreeIndex();
+        int[][] treeTiles = new int[treeIndex.getNumTrees()][];
+        int[][] constructTiles = new int[constructs.size()][];
+        minI = Integer.MAX_VALUE;
+        minJ = Integer.MAX_VALUE;
+        int maxI = Integer.MIN_VALUE;
+        int maxJ = Integer.MIN_VALUE;
+        for (int slot = 0; slot < treeIndex.getNumTrees(); slot++) {
+            double radius = treeIndex.getRadius(slot);
+            treeTiles[slot] = new int[] {
+                    tileI(treeIndex.getX(slot) - radius), tileI(treeIndex.getX(slot) + radius),
+                    tileJ(treeIndex.getY(slot) - radius), tileJ(treeIndex.getY(slot) + radius)};
+        }
+        for (int c = 0; c < constructs.size(); c++) {
+            double[][] boundary = constructs.get(c).getBoundaryPoints();
+            if (boundary.length == 0) continue;
+            int[] tiles = {Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE};
+            for (double[] pt : boundary) {
+                tiles[0] = Math.min(tiles[0], tileI(pt[0]));
+                tiles[1] = Math.max(tiles[1], tileI(pt[0]));
+                tiles[2] = Math.min(tiles[2], tileJ(pt[1]));
+                tiles[3] = Math.max(tiles[3], tileJ(pt[1]));
+            }
+            constructTiles[c] = tiles;
+        }
+        for (int[] tiles : treeTiles) {
+            minI = Math.min(minI, tiles[0]);
+            maxI = Math.max(maxI, tiles[1]);
+            minJ = Math.min(minJ, tiles[2]);
+            maxJ = Math.max(maxJ, tiles[3]);
+        }
+        for (int[] tiles : constructTiles) {
+            if (tiles == null) continue;
+            minI = Math.min(minI, tiles[0]);
+            maxI = Math.max(maxI, tiles[1]);
+            minJ = Math.min(minJ, tiles[2]);
+            maxJ = Math.max(maxJ, tiles[3]);
+        }
+        if (maxI < minI) {
+            minI = 0;
+            minJ = 0;
+            maxI = -1;
+            maxJ = -1;
+        }
+        double[][] tileMinHeights = new double[maxI - minI + 1][maxJ - minJ + 1];
+        double[][] tileMaxHeights = new double[maxI - minI + 1][maxJ - minJ + 1];
+
+        // Each forest adds the height of its tallest tree containing the point, see SurfaceHasher, or nothing if no
+        // tree contains the point, so it adds between its lowest and its tallest tree over the tile, or 0.
+        for (int owner = 0; owner < treeIndex.getNumOwners(); owner++) {
+            if (treeIndex.getOwnerStart(owner) == treeIndex.getOwnerEnd(owner)) continue;
+            double[][] forestMinHeights = new double[maxI - minI + 1][maxJ - minJ + 1];
+            double[][] forestMaxHeights = new double[maxI - minI + 1][maxJ - minJ + 1];
+            for (int k = treeIndex.getOwnerStart(owner); k < treeIndex.getOwnerEnd(owner); k++) {
+                int slot = treeIndex.getOwnerSlot(k);
+                double height = treeIndex.getHeight(slot);
+                int[] tiles = treeTiles[slot];
+                for (int i = tiles[0] - minI; i <= tiles[1] - minI; i++) {
+                    for (int j = tiles[2] - minJ; j <= tiles[3] - minJ; j++) {
+                        forestMinHeights[i][j] = Math.min(forestMinHeights[i][j], height);
+                        forestMaxHeights[i][j] = Math.max(forestMaxHeights[i][j], height);
+                    }
+                }
+            }
+            for (int i = 0; i < tileMaxHeights.length; i++) {
+                for (int j = 0; j < tileMaxHeights[i].length; j++) {
+                    tileMinHeights[i][j] += forestMinHeights[i][j];
+                    tileMaxHeights[i][j] += forestMaxHeights[i][j];
+                }
+            }
+        }
+
+        // Constructs add up.
+        for (int c = 0; c < constructs.size(); c++) {
+            int[] tiles = constructTiles[c];
+            if (tiles == null) continue;
+            double height = constructs.get(c).getHeight();
+            for (int i = tiles[0] - minI; i <= tiles[1] - minI; i++) {
+                for (int j = tiles[2] - minJ; j <= tiles[3] - minJ; j++) {
+                    tileMinHeights[i][j] += Math.min(height, 0);
+                    tileMaxHeights[i][j] += Math.max(height, 0);
+                }
+            }
+        }
+        staticPyramid = new HeightPyramid(tileMinHeights, tileMaxHeights);
+    }
+
+    /**
+     * Terrain tile of a position, rounded down.
+     */
+    private int tileI(double x) {
+        return (int) Math.floor((x - terrain.getTopX()) / terrain.getDiv());
+    }
+
+    private int tileJ(double y) {
+        return (int) Math.floor((y - terrain.getTopY()) / terrain.getDiv());
+    }
+
+    /**
+     * Absolute height of the barriers at position (x, y).
+     */
+    public double getBarrierHeight(double x, double y) {
+        return PhysicUtils.getAbsoluteBarrierHeight(x, y, terrain, surfaceHasher, constructHasher);
+    }
+
+    /**
+     * Upper bound of getBarrierHeight over the rectangle [minX, maxX] x [minY, maxY].
+     */
+    private double getMaxBarrierHeightInRect(double minX, double maxX, double minY, double maxY) {
+        double max = terrain.getMaxZInRect(minX, maxX, minY, maxY);
+        int rectMinI = Math.max(tileI(minX) - minI, 0);
+        int rectMaxI = Math.min(tileI(maxX) - minI, staticPyramid.getNumX() - 1);
+        int rectMinJ = Math.max(tileJ(minY) - minJ, 0);
+        int rectMaxJ = Math.min(tileJ(maxY) - minJ, staticPyramid.getNumY() - 1);
+        if (rectMinI <= rectMaxI && rectMinJ <= rectMaxJ) {
+            double staticMax = staticPyramid.getMax(rectMinI, rectMaxI, rectMinJ, rectMaxJ);
+            max += staticMax + 1e-9 * (Math.abs(staticMax) + 1);
+        }
+        return max;
+    }
+
+    /**
+     * Lower bound of getBarrierHeight over the rectangle [minX, maxX] x [minY, maxY].
+     */
+    private double getMinBarrierHeightInRect(double minX, double maxX, double minY, double maxY) {
+        double min = terrain.getMinZInRect(minX, maxX, minY, maxY);
+        int rectMinI = Math.max(tileI(minX) - minI, 0);
+        int rectMaxI = Math.min(tileI(maxX) - minI, staticPyramid.getNumX() - 1);
+        int rectMinJ = Math.max(tileJ(minY) - minJ, 0);
+        int rectMaxJ = Math.min(tileJ(maxY) - minJ, staticPyramid.getNumY() - 1);
+        if (rectMinI <= rectMaxI && rectMinJ <= rectMaxJ) {
+            double staticMin = staticPyramid.getMin(rectMinI, rectMaxI, rectMinJ, rectMaxJ);
+            min += staticMin - 1e-9 * (Math.abs(staticMin) + 1);
+        }
+        return min;
+    }
+
+    /**
+     * Count the samples t = k / numSamples for k in [1, numSamples - 1] of the segment (x1, y1, z1) - (x2, y2, z2)
+     * which are strictly below the barriers, at positions ((x2 - x1) * t + x1, (y2 - y1) * t + y1).
+     *
+     * As with Terrain.isSegmentAboveTerrain, blocks of samples entirely above or below the bounds of the barriers
+     * around them are counted at once, and the result is the same as checking every sample.
+     */
+    public int countSamplesBelowBarriers(double x1, double y1, double z1, double x2, double y2, double z2,
+                                         int numSamples) {
+        if (numSamples < 2) return 0;
+        return countSamplesBelowBarriers(x1, y1, z1, x2, y2, z2, numSamples, 1, numSamples - 1);
+    }
+
+    /**
+     * Count the samples [first, last] of the segment below the barriers, see countSamplesBelowBarriers.
+     */
+    private int countSamplesBelowBarriers(double x1, double y1, double z1, double x2, double y2, double z2,
+                                          int numSamples, int first, int last) {
+        double tFirst = 1.0 * first / numSamples;
+        double tLast = 1.0 * last / numSamples;
+        double xFirst = (x2 - x1) * tFirst + x1;
+        double xLast = (x2 - x1) * tLast + x1;
+        double yFirst = (y2 - y1) * tFirst + y1;
+        double yLast = (y2 - y1) * tLast + y1;
+        double zFirst = (z2 - z1) * tFirst + z1;
+        double zLast = (z2 - z1) * tLast + z1;
+        double rectMinX = Math.min(xFirst, xLast);
+        double rectMaxX = Math.max(xFirst, xLast);
+        double rectMinY = Math.min(yFirst, yLast);
+        double rectMaxY = Math.max(yFirst, yLast);
+        if (Math.min(zFirst, zLast) >= getMaxBarrierHeightInRect(rectMinX, rectMaxX, rectMinY, rectMaxY)) return 0;
+        if (Math.max(zFirst, zLast) < getMinBarrierHeightInRect(rectMinX, rectMaxX, rectMinY, rectMaxY)) {
+            return last - first + 1;
+        }
+
+        // Blocks within a terrain tile are not bounded any tighter once split, so they are checked sample by sample,
+        // against the exact terrain plus the bounds of the trees and the constructs, which are only looked up for the
+        // samples between the bounds. Where the trees and the constructs add nothing, the barriers are the terrain.
+        if (last - first < LEAF_SAMPLES || (rectMaxX - rectMinX < terrain.getDiv() &&
+                rectMaxY - rectMinY < terrain.getDiv())) {
+            double staticMin = 0;
+            double staticMax = 0;
+            int rectMinI = Math.max(tileI(rectMinX) - minI, 0);
+            int rectMaxI = Math.min(tileI(rectMaxX) - minI, staticPyramid.getNumX() - 1);
+            int rectMinJ = Math.max(tileJ(rectMinY) - minJ, 0);
+            int rectMaxJ = Math.min(tileJ(rectMaxY) - minJ, staticPyramid.getNumY() - 1);
+            if (rectMinI <= rectMaxI && rectMinJ <= rectMaxJ) {
+                staticMin = staticPyramid.getMin(rectMinI, rectMaxI, rectMinJ, rectMaxJ);
+                staticMax = staticPyramid.getMax(rectMinI, rectMaxI, rectMinJ, rectMaxJ);
+            }
+            boolean terrainOnly = staticMin == 0 && staticMax == 0;
+            int count = 0;
+            for (int k = first; k <= last; k++) {
+                double t = 1.0 * k / numSamples;
+                double x = (x2 - x1) * t + x1;
+                double y = (y2 - y1) * t + y1;
+                double z = (z2 - z1) * t + z1;
+                double terrainZ = terrain.getZFromPos(x, y);
+                if (terrainOnly) {
+                    if (z < terrainZ) count += 1;
+                    continue;
+                }
+                double margin = 1e-9 * (Math.abs(terrainZ) + Math.abs(staticMin) + Math.abs(staticMax) + 1);
+                if (z >= terrainZ + staticMax + margin) continue;
+                if (z < terrainZ + staticMin - margin || z < getBarrierHeight(x, y)) count += 1;
+            }
+            return count;
+        }
+        int mid = (first + last) >>> 1;
+        return countSamplesBelowBarriers(x1, y1, z1, x2, y2, z2, numSamples, first, mid) +
+                countSamplesBelowBarriers(x1, y1, z1, x2, y2, z2, numSamples, mid + 1, last);
+    }
+}
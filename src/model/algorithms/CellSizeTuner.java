@@ -0,0 +1,136 @@
+package model.algorithms;
+
+import model.constants.UniversalConstants;
+import model.monitor.Monitor;
+import model.monitor.MonitorEnum;
+import model.terrain.Terrain;
+
+/**
+ * Tunes the cell size of the TroopHasher from the monitor counters. Small cells make the neighbor queries cheap in
+ * candidates but visit more cells and rehash more troops, since troops cross cell borders more often, while large cells
+ * do the opposite. Which size is best depends on the radius and the spacing of the troops, and on how fast they move,
+ * so a cavalry charge and a packed phalanx call for different sizes.
+ *
+ * Every TUNING_INTERVAL frames, the tuner samples the neighbor queries, the candidates streamed by those queries and
+ * the troops rehashed during the frames since the last tuning. The candidates give the density of troops around the
+ * queried troops, from which the cost of a frame is predicted for each cell size within the configured bounds:
+ * - The candidates, proportional to the area covered by a query.
+ * - The cells visited by the queries.
+ * - The troops rehashed, inversely proportional to the cell size for the incremental grid, and constant otherwise.
+ * - The cells of the uniform grid, which are all cleared and summed up every frame.
+ * The query of a troop must cover the neighbor cutoff whatever the cell size, so small cells cover the cutoff with more
+ * cells and large cells overshoot it, and the candidates and the cells visited are both predicted from the extent of
+ * the query with each size. The hasher switches to the cheapest size only if it is predicted to be substantially
+ * cheaper than the current one, so that the size doesn't flip back and forth on noise. A current size outside of the
+ * bounds is clamped into them before the troops are first hashed.
+ *
+ * Only counters are used, never timers, so the tuning is the same from one run to the next and the game stays
+ * deterministic. The size is part of the snapshot of the hasher, and the counters part of the snapshot of the monitor.
+ */
+public class CellSizeTuner {
+
+    // The counters of the stored frames are sampled, except those of the frame of the last tuning, which still reflect
+    // the previous cell size.
+    private static final int TUNING_INTERVAL = UniversalConstants.FRAME_STORAGE;
+
+    // Relative cost of a candidate, of a cell visited by a query in the grids and in the hash map, of a rehashed troop,
+    // and of a cell of the uniform grid, as timed with each hashing mode.
+    private static final double CANDIDATE_COST = 2.0;
+    private static final double CELL_VISIT_COST = 1.0;
+    private static final double MAP_CELL_VISIT_COST = 5.0;
+    private static final double REHASH_COST = 6.0;
+    private static final double GRID_CELL_COST = 0.1;
+
+    // A new size must be predicted to cost less than this fraction of the cost of the current size.
+    private static final double SWITCH_RATIO = 0.9;
+
+    private int minCellSize;
+    private int maxCellSize;
+    private Monitor monitor;
+
+    // Averages per frame of the sampled counters, and the density of troops around the queried troops.
+    private double queries;
+    private double candidates;
+    private double rehashed;
+    private double density;
+
+    public CellSizeTuner(int inputMinCellSize, int inputMaxCellSize, Monitor inputMonitor) {
+        minCellSize = Math.max(1, inputMinCellSize);
+        maxCellSize = Math.max(minCellSize, inputMaxCellSize);
+        monitor = inputMonitor;
+    }
+
+    /**
+     * Tune the cell size of the hasher, if this frame is a tuning frame. Must be called before the hasher hashes the
+     * troops of the frame.
+     */
+    public void tune(int frameCount, TroopHasher hasher, TroopNeighborList neighborList) {
+        // The size is kept within the bounds whatever the size the hasher started with.
+        int cellSize = hasher.getXDiv();
+        if (cellSize < minCellSize || cellSize > maxCellSize) {
+            int clampedSize = Math.min(Math.max(cellSize, minCellSize), maxCellSize);
+            hasher.setCellSize(clampedSize, clampedSize);
+            return;
+        }
+        if (frameCount <= TUNING_INTERVAL || frameCount % TUNING_INTERVAL != 0) return;
+
+        // Sample the counters of the frames since the last tuning.
+        long sumQueries = 0;
+        long sumCandidates = 0;
+        long sumRehashed = 0;
+        for (int framesAgo = 1; framesAgo < TUNING_INTERVAL; framesAgo++) {
+            sumQueries += monitor.getStoredCount(MonitorEnum.NEIGHBOR_QUERIES, framesAgo);
+            sumCandidates += monitor.getStoredCount(MonitorEnum.NEIGHBOR_CANDIDATES, framesAgo);
+            sumRehashed += monitor.getStoredCount(MonitorEnum.TROOPS_REHASHED, framesAgo);
+        }
+
+        // Without any query, there is no density to predict the candidates from.
+        if (sumQueries == 0) return;
+        int numFrames = TUNING_INTERVAL - 1;
+        queries = (double) sumQueries / numFrames;
+        candidates = (double) sumCandidates / numFrames;
+        rehashed = (double) sumRehashed / numFrames;
+
+        density = candidates / (queries * queryArea(cellSize, neighborList));
+
+        // Find the cheapest size within the bounds.
+        double currentCost = predictCost(cellSize, cellSize, hasher, neighborList);
+        int bestSize = cellSize;
+        double bestCost = currentCost;
+        for (int size = minCellSize; size <= maxCellSize; size++) {
+            double cost = predictCost(size, cellSize, hasher, neighborList);
+            if (cost < bestCost) {
+                bestSize = size;
+                bestCost = cost;
+            }
+        }
+        if (bestSize != cellSize && bestCost < currentCost * SWITCH_RATIO) {
+            hasher.setCellSize(bestSize, bestSize);
+        }
+    }
+
+    /**
+     * Predicted cost of a frame if the hasher had cells of the given size, based on the counters sampled with cells of
+     * the current size.
+     */
+    private double predictCost(int size, int currentSize, TroopHasher hasher, TroopNeighborList neighborList) {
+        int span = 2 * neighborList.getQueryExtension(size) + 1;
+        double cost = queries * (density * queryArea(size, neighborList) * CANDIDATE_COST +
+                span * span * (hasher.isHashMap() ? MAP_CELL_VISIT_COST : CELL_VISIT_COST));
+        cost += rehashed * (hasher.isIncremental() ? (double) currentSize / size : 1) * REHASH_COST;
+        if (hasher.isUniformGrid()) {
+            Terrain terrain = hasher.getTerrain();
+            double terrainArea = (terrain.getBotX() - terrain.getTopX()) * (terrain.getBotY() - terrain.getTopY());
+            cost += terrainArea / ((double) size * size) * GRID_CELL_COST;
+        }
+        return cost;
+    }
+
+    /**
+     * Area covered by the hasher query of a troop, with cells of the given size.
+     */
+    private double queryArea(int size, TroopNeighborList neighborList) {
+        double side = (2 * neighborList.getQueryExtension(size) + 1) * (double) size;
+        return side * side;
+    }
+}
@@ -1,42 +1,96 @@
 package model.algorithms;
 
 import model.construct.Construct;
-import model.projectile_objects.BaseProjectile;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 
+/**
+ * Static grid over the constructs. Constructs don't move, so they are hashed once, when the hasher is created: each
+ * construct is added to every cell overlapped by the bounding box of its boundary polygon. A point can only be inside a
+ * construct whose bounding box contains it, so the candidates of a point are the constructs of its cell, in the order
+ * of the construct list.
+ */
 public class ConstructHasher {
     // Height and width of each space (called xDiv and yDiv)
     private int xDiv;
     private int yDiv;
     private ArrayList<Construct> constructs;
 
-    // Hash view.map containing
-    private HashMap<Long, ArrayList<BaseProjectile>> hashMap;
+    // Grid covering the bounding boxes of all constructs. Cell (xHash, yHash) holds the constructs whose bounding box
+    // overlaps it, at grid[(xHash - gridMinXHash) * gridNumY + (yHash - gridMinYHash)]. Cells without any construct
+    // share the empty list.
+    private ArrayList<ArrayList<Construct>> grid;
+    private int gridMinXHash;
+    private int gridMinYHash;
+    private int gridNumX;
+    private int gridNumY;
+    private final ArrayList<Construct> emptyCell = new ArrayList<>();
 
     public ConstructHasher(int xDivision, int yDivision, ArrayList<Construct> inputConstructs) {
         xDiv = xDivision;
         yDiv = yDivision;
         constructs = inputConstructs;
-        hashMap = new HashMap<>();
+        grid = new ArrayList<>();
 
-        // TODO: Hash all constructs. Construct only needs to be hashed once.
-        //  Do this when there is a lot of objects. Currently, always doing the check is not too expensive.
-    }
+        // Find the cells covered by the bounding box of each construct, and the bounds of the grid.
+        int[][] constructCells = new int[constructs.size()][];
+        gridMinXHash = Integer.MAX_VALUE;
+        gridMinYHash = Integer.MAX_VALUE;
+        int gridMaxXHash = Integer.MIN_VALUE;
+        int gridMaxYHash = Integer.MIN_VALUE;
+        for (int c = 0; c < constructs.size(); c++) {
+            double[][] boundary = constructs.get(c).getBoundaryPoints();
+            if (boundary.length == 0) continue;
+            int minXHash = Integer.MAX_VALUE;
+            int maxXHash = Integer.MIN_VALUE;
+            int minYHash = Integer.MAX_VALUE;
+            int maxYHash = Integer.MIN_VALUE;
+            for (double[] pt : boundary) {
+                int xHash = (int) pt[0] / xDiv;
+                int yHash = (int) pt[1] / yDiv;
+                minXHash = Math.min(minXHash, xHash);
+                maxXHash = Math.max(maxXHash, xHash);
+                minYHash = Math.min(minYHash, yHash);
+                maxYHash = Math.max(maxYHash, yHash);
+            }
+            constructCells[c] = new int[] {minXHash, maxXHash, minYHash, maxYHash};
+            gridMinXHash = Math.min(gridMinXHash, minXHash);
+            gridMinYHash = Math.min(gridMinYHash, minYHash);
+            gridMaxXHash = Math.max(gridMaxXHash, maxXHash);
+            gridMaxYHash = Math.max(gridMaxYHash, maxYHash);
+        }
+        if (gridMaxXHash < gridMinXHash) {
+            gridNumX = 0;
+            gridNumY = 0;
+            return;
+        }
+        gridNumX = gridMaxXHash - gridMinXHash + 1;
+        gridNumY = gridMaxYHash - gridMinYHash + 1;
 
-    /**
-     * Return the list of potential collision candidates based on position (x, y).
-     */
-    public ArrayList<Construct> getCandidateConstructs(double x, double y) {
-        return constructs;
+        // Add each construct to its cells.
+        for (int cell = 0; cell < gridNumX * gridNumY; cell++) {
+            grid.add(emptyCell);
+        }
+        for (int c = 0; c < constructs.size(); c++) {
+            if (constructCells[c] == null) continue;
+            for (int i = constructCells[c][0]; i <= constructCells[c][1]; i++) {
+                for (int j = constructCells[c][2]; j <= constructCells[c][3]; j++) {
+                    int cell = (i - gridMinXHash) * gridNumY + (j - gridMinYHash);
+                    if (grid.get(cell) == emptyCell) grid.set(cell, new ArrayList<>());
+                    grid.get(cell).add(constructs.get(c));
+                }
+            }
+        }
     }
 
     /**
-     * Convert xHash and yHash into a single unique hash key
-     * The hash key is essentially a long integer with the left side xHash and the right side yHash
+     * Return the list of potential collision candidates based on position (x, y), which are the constructs whose
+     * bounding box overlaps the cell of (x, y). The list belongs to the hasher and must not be modified.
      */
-    private long pairHash(int xHash, int yHash) {
-        return ((long)xHash << 32) | (yHash & 0XFFFFFFFFL);
+    public ArrayList<Construct> getCandidateConstructs(double x, double y) {
+        int i = (int) x / xDiv - gridMinXHash;
+        int j = (int) y / yDiv - gridMinYHash;
+        if (i < 0 || i >= gridNumX || j < 0 || j >= gridNumY) return emptyCell;
+        return grid.get(i * gridNumY + j);
     }
 }
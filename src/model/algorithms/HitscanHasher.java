@@ -2,6 +2,8 @@ package model.algorithms;
 
 import model.projectile_objects.BaseProjectile;
 import model.projectile_objects.HitscanObject;
+import model.snapshot.SnapshotReader;
+import model.snapshot.SnapshotWriter;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -12,6 +14,9 @@ import java.util.HashMap;
 public class HitscanHasher {
     private ArrayList<HitscanObject> objects;
 
+    // Buffer of the current thread, see startBuffering().
+    private final ThreadLocal<ArrayList<HitscanObject>> threadBuffer = new ThreadLocal<>();
+
     public HitscanHasher() {
         objects = new ArrayList<>();
     }
@@ -20,9 +25,38 @@ public class HitscanHasher {
      * Add a BaseSingle objects to the space hasher
      */
     public void addObject(HitscanObject obj) {
+        ArrayList<HitscanObject> buffer = threadBuffer.get();
+        if (buffer != null) {
+            buffer.add(obj);
+            return;
+        }
         objects.add(obj);
     }
 
+    /**
+     * Make the current thread add objects to buffer instead of adding them directly, until stopBuffering() is called.
+     * Parallel code uses one buffer per task and flushes the buffers in a fixed order, which keeps the order of the
+     * objects deterministic.
+     */
+    public void startBuffering(ArrayList<HitscanObject> buffer) {
+        threadBuffer.set(buffer);
+    }
+
+    /**
+     * Make the current thread add objects directly again.
+     */
+    public void stopBuffering() {
+        threadBuffer.remove();
+    }
+
+    /**
+     * Add the buffered objects, and empty the buffer.
+     */
+    public void flushBuffer(ArrayList<HitscanObject> buffer) {
+        objects.addAll(buffer);
+        buffer.clear();
+    }
+
     /**
      * Hash all objects into the internal hashMap of the space hasher. Each object will be appended to an array list at
      * a certain key based on its position.
@@ -35,6 +69,27 @@ public class HitscanHasher {
         return;
     }
 
+    /**
+     * Write the objects to a snapshot, in order.
+     */
+    public void writeSnapshot(SnapshotWriter writer) {
+        writer.writeInt(objects.size());
+        for (HitscanObject obj : objects) {
+            obj.writeSnapshot(writer);
+        }
+    }
+
+    /**
+     * Replace the objects with the objects of a snapshot written by writeSnapshot().
+     */
+    public void readSnapshot(SnapshotReader reader) {
+        objects.clear();
+        int numObjects = reader.readInt();
+        for (int i = 0; i < numObjects; i++) {
+            objects.add(HitscanObject.createFromSnapshot(reader));
+        }
+    }
+
     /**
      * Getter and setters
      */
@@ -1,33 +1,152 @@
 package model.algorithms;
 
 import model.projectile_objects.BaseProjectile;
+import model.snapshot.SnapshotReader;
+import model.snapshot.SnapshotWriter;
+
+import java.io.IOException;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 
 /**
- * This class will hash all related projectiles
+ * This class will hash all related projectiles. The objects are kept in the order they were added, and the impactful
+ * ones are also sorted into buckets by the troop hasher cell they are in, so that the collisions of the projectiles
+ * landing in the same cell can be processed together. The objects of bucket b are
+ *   sortedObjects[bucketStarts[b]] ... sortedObjects[bucketStarts[b + 1] - 1]
+ * in the order they were added.
  */
 public class ProjectileHasher {
     private ArrayList<BaseProjectile> objects;
 
+    // Impactful objects sorted by cell, the start of each bucket, and the cell of each bucket. Cells are sorted by a 32 bit key,
+    // and the objects of a cell by their position in objects, which are packed into one long per object to sort them
+    // as primitives.
+    private BaseProjectile[] sortedObjects;
+    private int[] bucketStarts;
+    private int[] bucketXHashes;
+    private int[] bucketYHashes;
+    private int numBuckets;
+    private long[] sortKeys;
+
+    // Buffer of the current thread, see startBuffering().
+    private final ThreadLocal<ArrayList<BaseProjectile>> threadBuffer = new ThreadLocal<>();
+
     public ProjectileHasher() {
         objects = new ArrayList<>();
+        sortedObjects = new BaseProjectile[0];
+        bucketStarts = new int[1];
+        bucketXHashes = new int[0];
+        bucketYHashes = new int[0];
+        sortKeys = new long[0];
     }
 
     /**
      * Add a BaseSingle objects to the space hasher
      */
     public void addObject(BaseProjectile obj) {
+        ArrayList<BaseProjectile> buffer = threadBuffer.get();
+        if (buffer != null) {
+            buffer.add(obj);
+            return;
+        }
         objects.add(obj);
     }
 
     /**
-     * Hash all objects into the internal hashMap of the space hasher. Each object will be appended to an array list at
-     * a certain key based on its position.
+     * Make the current thread add objects to buffer instead of adding them directly, until stopBuffering() is called.
+     * Parallel code uses one buffer per task and flushes the buffers in a fixed order, which keeps the order of the
+     * objects deterministic.
+     */
+    public void startBuffering(ArrayList<BaseProjectile> buffer) {
+        threadBuffer.set(buffer);
+    }
+
+    /**
+     * Make the current thread add objects directly again.
+     */
+    public void stopBuffering() {
+        threadBuffer.remove();
+    }
+
+    /**
+     * Add the buffered objects, and empty the buffer.
      */
-    public void updateObjects() {
+    public void flushBuffer(ArrayList<BaseProjectile> buffer) {
+        objects.addAll(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * Remove the dead objects, and sort the impactful objects into the buckets of the cells of size xDiv x yDiv they
+     * are in. Objects in flight can't hit anything, so they are left out.
+     */
+    public void updateObjects(int xDiv, int yDiv) {
         objects.removeIf(obj -> !obj.isAlive());
+
+        // Make sure the arrays can hold every object
+        int numObjects = objects.size();
+        if (sortKeys.length < numObjects) {
+            int length = Math.max(numObjects, 2 * sortKeys.length);
+            sortKeys = new long[length];
+            sortedObjects = new BaseProjectile[length];
+            bucketStarts = new int[length + 1];
+            bucketXHashes = new int[length];
+            bucketYHashes = new int[length];
+        }
+
+        // Cells are keyed by the low 16 bits of their hashes. Distinct cells with the same key are rare, and only split
+        // a bucket into several, since the buckets are cut on the actual hashes below.
+        int numSorted = 0;
+        for (int i = 0; i < numObjects; i++) {
+            BaseProjectile obj = objects.get(i);
+            if (!obj.isImpactful()) continue;
+            int xHash = (int) obj.getX() / xDiv;
+            int yHash = (int) obj.getY() / yDiv;
+            long cellKey = ((xHash & 0xFFFFL) << 16) | (yHash & 0xFFFFL);
+            sortKeys[numSorted] = (cellKey << 32) | i;
+            numSorted += 1;
+        }
+        Arrays.sort(sortKeys, 0, numSorted);
+
+        numBuckets = 0;
+        for (int k = 0; k < numSorted; k++) {
+            BaseProjectile obj = objects.get((int) sortKeys[k]);
+            sortedObjects[k] = obj;
+            int xHash = (int) obj.getX() / xDiv;
+            int yHash = (int) obj.getY() / yDiv;
+            if (numBuckets == 0 || xHash != bucketXHashes[numBuckets - 1] || yHash != bucketYHashes[numBuckets - 1]) {
+                bucketStarts[numBuckets] = k;
+                bucketXHashes[numBuckets] = xHash;
+                bucketYHashes[numBuckets] = yHash;
+                numBuckets += 1;
+            }
+        }
+        bucketStarts[numBuckets] = numSorted;
+
+        // Release references to objects that are no longer sorted.
+        Arrays.fill(sortedObjects, numSorted, sortedObjects.length, null);
+    }
+
+    /**
+     * Write the objects to a snapshot, in order.
+     */
+    public void writeSnapshot(SnapshotWriter writer) {
+        writer.writeInt(objects.size());
+        for (BaseProjectile obj : objects) {
+            writer.writeProjectile(obj);
+        }
+    }
+
+    /**
+     * Replace the objects with the objects of a snapshot written by writeSnapshot().
+     */
+    public void readSnapshot(SnapshotReader reader) throws IOException {
+        objects.clear();
+        int numObjects = reader.readInt();
+        for (int i = 0; i < numObjects; i++) {
+            objects.add(reader.readProjectile());
+        }
     }
 
     /**
@@ -36,4 +155,20 @@ public class ProjectileHasher {
     public ArrayList<BaseProjectile> getObjects() {
         return objects;
     }
+
+    public int getNumBuckets() {
+        return numBuckets;
+    }
+
+    public int getBucketStart(int bucket) {
+        return bucketStarts[bucket];
+    }
+
+    public int getBucketEnd(int bucket) {
+        return bucketStarts[bucket + 1];
+    }
+
+    public BaseProjectile getSortedObject(int k) {
+        return sortedObjects[k];
+    }
 }
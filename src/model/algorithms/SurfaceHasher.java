@@ -7,119 +7,309 @@ import model.map_objects.Tree;
 import model.utils.PhysicUtils;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 
+/**
+ * Hashes the surfaces, and indexes the trees of the forests in a TreeIndex.
+ *
+ * Surfaces are rasterized once, when the hasher is created, into a grid of cells of size rasterXDiv x rasterYDiv. A
+ * cell crossed by the boundary of a surface is a boundary cell of the surface, and the points of the cell still need
+ * the exact polygon test. Any other cell of the bounding box of the surface is either entirely inside or entirely
+ * outside of the surface, which the test of its center tells. Looking up the surfaces at a point is then a single array
+ * read for the cells without any surface or entirely inside a single surface, which is most of them, and a few polygon
+ * tests for the boundary cells. The only points for which the raster may disagree with the polygon test are those
+ * exactly level with a vertex of the polygon, for which the crossing test of checkPolygonPointCollision is degenerate.
+ *
+ * With the rounded surface collision, the points of a boundary cell are taken to be inside the surfaces which contain
+ * the center of the cell, and no polygon test is done at all.
+ */
 public class SurfaceHasher {
-    // Height and width of each space (called xDiv and yDiv)
-    private int xDiv;
-    private int yDiv;
+
+    // Code of a raster cell without any surface. Cells with only one entry, entirely inside its surface, hold the index
+    // of the surface, and other cells hold -2 - offset, where entries[offset] is the number of entries of the cell and
+    // the entries follow.
+    private static final int EMPTY_CELL = -1;
+
+    // Each entry of a raster cell is the index of a surface shifted left by 2, with these flags.
+    private static final int BOUNDARY = 1;
+    private static final int CENTER_INSIDE = 2;
+
     private ArrayList<BaseSurface> surfaces;
-    private ArrayList<Tree> trees;
 
-    // Hash map containing trees
-    private HashMap<Long, ArrayList<Tree>> treeHashMap;
-    private HashMap<Long, ArrayList<BaseSurface>> surfaceHashMap;
+    // Index over the trees of the forests, owned by the index of their forest in the surface list.
+    private TreeIndex treeIndex;
+
+    // Surface raster, covering the bounding boxes of all surfaces. Cell (i, j) is at cells[i * rasterNumY + j].
+    private int rasterXDiv;
+    private int rasterYDiv;
+    private int rasterMinX;
+    private int rasterMinY;
+    private int rasterNumX;
+    private int rasterNumY;
+    private int[] cells;
+    private int[] entries;
 
-    public SurfaceHasher(int xDivision, int yDivision, ArrayList<BaseSurface> inputSurfaces) {
-        xDiv = xDivision;
-        yDiv = yDivision;
+    public SurfaceHasher(int rasterXDivision, int rasterYDivision, ArrayList<BaseSurface> inputSurfaces) {
+        rasterXDiv = rasterXDivision;
+        rasterYDiv = rasterYDivision;
         surfaces = inputSurfaces;
-        trees = new ArrayList<>();
-        treeHashMap = new HashMap<>();
-        surfaceHashMap = new HashMap<>();
 
-        // Add surface to surface hash map
+        rasterizeSurfaces();
+
+        // It it is a forest, we add the trees in
+        ArrayList<ArrayList<Tree>> treesBySurface = new ArrayList<>();
         for (BaseSurface surface : surfaces) {
-            int minXHash = Integer.MAX_VALUE;
-            int maxXHash = Integer.MIN_VALUE;
-            int minYHash = Integer.MAX_VALUE;
-            int maxYHash = Integer.MIN_VALUE;
-            for (double[] pt : surface.getSurfaceBoundary()) {
-                int xHash = (int) pt[0] / xDiv;
-                int yHash = (int) pt[1] / yDiv;
-                if (xHash > maxXHash) {
-                    maxXHash = xHash;
-                }
-                if (xHash < minXHash) {
-                    minXHash = xHash;
-                }
-                if (yHash > minYHash) {
-                    maxYHash = yHash;
-                }
-                if (yHash < minYHash) {
-                    minYHash = yHash;
-                }
+            if (surface.getType() == SurfaceType.FOREST) {
+                treesBySurface.add(((ForestSurface) surface).getTrees());
+            } else {
+                treesBySurface.add(new ArrayList<>());
+            }
+        }
+        treeIndex = new TreeIndex(treesBySurface);
+    }
+
+    /**
+     * Rasterize the surfaces. The boundary cells of each surface are found by clipping each of its edges against the
+     * cells of the bounding box of the edge, and the other cells of its bounding box by testing their center.
+     */
+    private void rasterizeSurfaces() {
+        // Bounding box of each surface, in cells, and the bounds of the raster.
+        int[][] boxes = new int[surfaces.size()][];
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int maxY = Integer.MIN_VALUE;
+        for (int s = 0; s < surfaces.size(); s++) {
+            double[][] boundary = surfaces.get(s).getSurfaceBoundary();
+            if (boundary.length == 0) continue;
+            int[] box = {Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE};
+            for (double[] pt : boundary) {
+                box[0] = Math.min(box[0], rasterX(pt[0]));
+                box[1] = Math.max(box[1], rasterX(pt[0]));
+                box[2] = Math.min(box[2], rasterY(pt[1]));
+                box[3] = Math.max(box[3], rasterY(pt[1]));
             }
+            boxes[s] = box;
+            minX = Math.min(minX, box[0]);
+            maxX = Math.max(maxX, box[1]);
+            minY = Math.min(minY, box[2]);
+            maxY = Math.max(maxY, box[3]);
+        }
+        if (maxX < minX) {
+            cells = new int[0];
+            entries = new int[0];
+            return;
+        }
+        rasterMinX = minX;
+        rasterMinY = minY;
+        rasterNumX = maxX - minX + 1;
+        rasterNumY = maxY - minY + 1;
 
-            for (int i = minXHash; i < maxXHash; i++) {
-                for (int j = minYHash; j < maxYHash; j++) {
-                    double x = i * xDiv + xDiv / 2;
-                    double y = j * yDiv + yDiv / 2;
-                    if (PhysicUtils.checkPolygonPointCollision(surface.getSurfaceBoundary(), x, y)) {
-                        long hash = pairHash(i, j);
-                        if (!surfaceHashMap.containsKey(hash)) surfaceHashMap.put(hash, new ArrayList<>());
-                        surfaceHashMap.get(hash).add(surface);
+        // Entries of each cell, in the order of the surfaces.
+        int[][] cellEntries = new int[rasterNumX * rasterNumY][];
+        int[] cellSizes = new int[rasterNumX * rasterNumY];
+        for (int s = 0; s < surfaces.size(); s++) {
+            if (boxes[s] == null) continue;
+            double[][] boundary = surfaces.get(s).getSurfaceBoundary();
+            int[] box = boxes[s];
+            int boxNumY = box[3] - box[2] + 1;
+            boolean[] isBoundary = new boolean[(box[1] - box[0] + 1) * boxNumY];
+            for (int k = 0; k < boundary.length; k++) {
+                double[] p1 = boundary[k];
+                double[] p2 = boundary[(k + 1) % boundary.length];
+                for (int i = rasterX(Math.min(p1[0], p2[0])); i <= rasterX(Math.max(p1[0], p2[0])); i++) {
+                    for (int j = rasterY(Math.min(p1[1], p2[1])); j <= rasterY(Math.max(p1[1], p2[1])); j++) {
+                        if (segmentCrossesCell(p1[0], p1[1], p2[0], p2[1], i, j)) {
+                            isBoundary[(i - box[0]) * boxNumY + (j - box[2])] = true;
+                        }
                     }
                 }
             }
-
-            // It it is a forest, we add the trees in
-            if (surface.getType() == SurfaceType.FOREST) {
-                for (Tree tree : ((ForestSurface) surface).getTrees()) {
-                    trees.add(tree);
+            for (int i = box[0]; i <= box[1]; i++) {
+                for (int j = box[2]; j <= box[3]; j++) {
+                    boolean centerInside = PhysicUtils.checkPolygonPointCollision(
+                            boundary, (i + 0.5) * rasterXDiv, centerTestY(boundary, j));
+                    int flags = (isBoundary[(i - box[0]) * boxNumY + (j - box[2])] ? BOUNDARY : 0) |
+                            (centerInside ? CENTER_INSIDE : 0);
+                    if (flags == 0) continue;
+                    int cell = (i - rasterMinX) * rasterNumY + (j - rasterMinY);
+                    if (cellEntries[cell] == null) {
+                        cellEntries[cell] = new int[2];
+                    } else if (cellSizes[cell] == cellEntries[cell].length) {
+                        cellEntries[cell] = Arrays.copyOf(cellEntries[cell], 2 * cellSizes[cell]);
+                    }
+                    cellEntries[cell][cellSizes[cell]] = (s << 2) | flags;
+                    cellSizes[cell] += 1;
                 }
             }
         }
 
-        // Add tree object to tree hash map
-        for (Tree tree : trees) {
-            int xHash = (int)tree.getX() / xDiv;
-            int yHash = (int)tree.getY() / yDiv;
-            long hash = pairHash(xHash, yHash);
-            if (!treeHashMap.containsKey(hash)) treeHashMap.put(hash, new ArrayList<>());
-            treeHashMap.get(hash).add(tree);
+        // Pack the cells. Only the cells with several entries or a boundary entry need the entries array.
+        cells = new int[rasterNumX * rasterNumY];
+        int numEntries = 0;
+        for (int cell = 0; cell < cells.length; cell++) {
+            if (cellSizes[cell] > 1 || (cellSizes[cell] == 1 && (cellEntries[cell][0] & BOUNDARY) != 0)) {
+                numEntries += 1 + cellSizes[cell];
+            }
+        }
+        entries = new int[numEntries];
+        int offset = 0;
+        for (int cell = 0; cell < cells.length; cell++) {
+            if (cellSizes[cell] == 0) {
+                cells[cell] = EMPTY_CELL;
+            } else if (cellSizes[cell] == 1 && (cellEntries[cell][0] & BOUNDARY) == 0) {
+                cells[cell] = cellEntries[cell][0] >> 2;
+            } else {
+                cells[cell] = -2 - offset;
+                entries[offset] = cellSizes[cell];
+                System.arraycopy(cellEntries[cell], 0, entries, offset + 1, cellSizes[cell]);
+                offset += 1 + cellSizes[cell];
+            }
         }
     }
 
     /**
-     * Return the list of potential surface candidates based on position (x, y).
+     * Y position at which the cells of row j are tested against a polygon: the center of the row, unless it is level
+     * with a vertex of the polygon, in which case the crossing test would be degenerate and could misclassify a whole
+     * interior cell. The test point is then moved within the row until it is level with no vertex.
      */
-    public ArrayList<BaseSurface> getCandidateSurfaces(double x, double y) {
-        int xHash = (int) x / xDiv;
-        int yHash = (int) y / yDiv;
-        long hash = pairHash(xHash, yHash);
-        if (surfaceHashMap.containsKey(hash)) {
-            return surfaceHashMap.get(hash);
-        } else {
-            return new ArrayList<>();
+    private double centerTestY(double[][] boundary, int j) {
+        double y = (j + 0.5) * rasterYDiv;
+        double step = rasterYDiv / 4.0;
+        boolean levelWithVertex = true;
+        while (levelWithVertex) {
+            levelWithVertex = false;
+            for (double[] pt : boundary) {
+                if (pt[1] == y) {
+                    levelWithVertex = true;
+                    y += step;
+                    step /= 2;
+                    break;
+                }
+            }
         }
+        return y;
     }
 
     /**
-     * Return the list of potential tree candidates based on position (x, y).
-     * @return
+     * Check whether the segment (x1, y1) - (x2, y2) crosses raster cell (i, j), borders included. The cell is slightly
+     * enlarged so that rounding errors can only make more cells boundary cells, which are always tested exactly.
      */
-    public ArrayList<Tree> getCandidateTrees(double x, double y) {
-        ArrayList<Tree> returnTrees = new ArrayList<>();
-        int xHash = (int) x / xDiv;
-        int yHash = (int) y / yDiv;
-        for (int i = xHash - 1; i < xHash + 2; i++) {
-            for (int j = yHash - 1; j < yHash + 2; j++) {
-                long hash = pairHash(i, j);
-                if (!treeHashMap.containsKey(hash)) continue;
-                for (Tree tree : treeHashMap.get(hash)) {
-                    returnTrees.add(tree);
+    private boolean segmentCrossesCell(double x1, double y1, double x2, double y2, int i, int j) {
+        double epsilon = 1e-6 * Math.max(rasterXDiv, rasterYDiv);
+        double minX = i * (double) rasterXDiv - epsilon;
+        double maxX = (i + 1) * (double) rasterXDiv + epsilon;
+        double minY = j * (double) rasterYDiv - epsilon;
+        double maxY = (j + 1) * (double) rasterYDiv + epsilon;
+
+        // Clip the parameter range [0, 1] of the segment against each slab of the cell (Liang-Barsky).
+        double t0 = 0;
+        double t1 = 1;
+        double[] p = {x1 - x2, x2 - x1, y1 - y2, y2 - y1};
+        double[] q = {x1 - minX, maxX - x1, y1 - minY, maxY - y1};
+        for (int k = 0; k < 4; k++) {
+            if (p[k] == 0) {
+                if (q[k] < 0) return false;
+            } else {
+                double t = q[k] / p[k];
+                if (p[k] < 0) {
+                    t0 = Math.max(t0, t);
+                } else {
+                    t1 = Math.min(t1, t);
                 }
+                if (t0 > t1) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Raster cell of a position. Unlike the other hashers, cells are rounded down, so that cells around 0 are not twice
+     * as large as the others.
+     */
+    private int rasterX(double x) {
+        return (int) Math.floor(x / rasterXDiv);
+    }
+
+    private int rasterY(double y) {
+        return (int) Math.floor(y / rasterYDiv);
+    }
+
+    /**
+     * Code of the raster cell of position (x, y).
+     */
+    private int cellCode(double x, double y) {
+        int i = rasterX(x) - rasterMinX;
+        int j = rasterY(y) - rasterMinY;
+        if (i < 0 || i >= rasterNumX || j < 0 || j >= rasterNumY) return EMPTY_CELL;
+        return cells[i * rasterNumY + j];
+    }
+
+    /**
+     * Check whether an entry of the raster cell of (x, y) contains (x, y).
+     */
+    private boolean entryContains(int entry, double x, double y, boolean rounded) {
+        if ((entry & BOUNDARY) == 0 || rounded) return (entry & CENTER_INSIDE) != 0;
+        return PhysicUtils.checkPolygonPointCollision(surfaces.get(entry >> 2).getSurfaceBoundary(), x, y);
+    }
+
+    /**
+     * Put the surfaces containing position (x, y) into result, in the order of the surface list. With rounded set, the
+     * surfaces of the boundary cells are those containing the center of the cell.
+     */
+    public void getSurfacesAt(double x, double y, boolean rounded, ArrayList<BaseSurface> result) {
+        result.clear();
+        int code = cellCode(x, y);
+        if (code == EMPTY_CELL) return;
+        if (code >= 0) {
+            result.add(surfaces.get(code));
+            return;
+        }
+        int offset = -2 - code;
+        for (int k = offset + 1; k <= offset + entries[offset]; k++) {
+            if (entryContains(entries[k], x, y, rounded)) {
+                result.add(surfaces.get(entries[k] >> 2));
             }
         }
-        return returnTrees;
     }
 
     /**
-     * Convert xHash and yHash into a single unique hash key
-     * The hash key is essentially a long integer with the left side xHash and the right side yHash
+     * Height of the barriers that the surfaces put at position (x, y), above the terrain. Only the trees of the forests
+     * are barriers for now.
+     */
+    public double getBarrierHeight(double x, double y) {
+        int code = cellCode(x, y);
+        if (code == EMPTY_CELL) return 0;
+        if (code >= 0) return getSurfaceBarrierHeight(code, x, y);
+        double height = 0;
+        int offset = -2 - code;
+        for (int k = offset + 1; k <= offset + entries[offset]; k++) {
+            // The height is cheaper to find than whether the surface contains the point, and adds nothing if it is 0.
+            double surfaceHeight = getSurfaceBarrierHeight(entries[k] >> 2, x, y);
+            if (surfaceHeight != 0 && entryContains(entries[k], x, y, false)) {
+                height += surfaceHeight;
+            }
+        }
+        return height;
+    }
+
+    /**
+     * Height of the barrier that surface s, containing position (x, y), puts at (x, y).
+     */
+    private double getSurfaceBarrierHeight(int s, double x, double y) {
+        // If surfaces is type FOREST, the tallest of its trees containing our point
+        if (surfaces.get(s).getType() == SurfaceType.FOREST) {
+            return treeIndex.getTreeHeightAt(x, y, s);
+        }
+
+        // [TODO] - (Trung): If surface in of type (city, wall etc.)
+        return 0;
+    }
+
+    /**
+     * Getter and setters
      */
-    private long pairHash(int xHash, int yHash) {
-        return ((long)xHash << 32) | (yHash & 0XFFFFFFFFL);
+    public TreeIndex getTreeIndex() {
+        return treeIndex;
     }
 }
@@ -0,0 +1,52 @@
+package model.algorithms;
+
+/**
+ * A reusable cursor over the candidates of a TreeIndex query, as slots of the index. Each caller keeps its own cursor
+ * and passes it to TreeIndex.queryTreesAt, then iterates with:
+ *
+ *   for (int slot = cursor.next(); slot >= 0; slot = cursor.next()) { ... }
+ *
+ * As with TroopCursor, a cursor only supports one query at a time.
+ */
+public class TreeCursor {
+
+    private TreeIndex index;
+
+    // Columns left to visit, and the rows of the query in each column.
+    private int nextI;
+    private int maxI;
+    private int minJ;
+    private int maxJ;
+
+    // Slots left in the current column.
+    private int pos;
+    private int end;
+
+    /**
+     * Start iterating over the trees of cells [minI, maxI] x [minJ, maxJ] of the index, relative to its grid.
+     */
+    void start(TreeIndex inputIndex, int inputMinI, int inputMaxI, int inputMinJ, int inputMaxJ) {
+        index = inputIndex;
+        nextI = inputMinI;
+        maxI = inputMaxI;
+        minJ = inputMinJ;
+        maxJ = inputMaxJ;
+        pos = 0;
+        end = 0;
+    }
+
+    /**
+     * Return the slot of the next candidate tree, or -1 if there is no candidate left.
+     */
+    public int next() {
+        while (pos == end) {
+            if (nextI > maxI || minJ > maxJ) return -1;
+            pos = index.getColumnStart(nextI, minJ);
+            end = index.getColumnEnd(nextI, maxJ);
+            nextI += 1;
+        }
+        int slot = pos;
+        pos += 1;
+        return slot;
+    }
+}
@@ -0,0 +1,223 @@
+package model.algorithms;
+
+import model.map_objects.Tree;
+
+import java.util.ArrayList;
+
+/**
+ * Static index over the trees of all forests. Trees don't move, so the index is built once, when the map is loaded, and
+ * never changes afterwards, which also makes it safe to query from several threads.
+ *
+ * The trees are packed into flat arrays sorted by cell, with cells of the size of the largest tree diameter. A point is
+ * inside a tree only if the center of the tree is within the largest radius of the point, so the trees containing a
+ * point are among those of the 2 x 2 cells around it. Cells are numbered column by column, so the trees of the cells of
+ * one column of a query are contiguous in the arrays, and a query reads at most two ranges of the arrays without
+ * following any reference or allocating anything.
+ *
+ * Each tree belongs to an owner, the index of its forest in the surface list, and the trees of each owner can be listed
+ * as well, for the drawers.
+ */
+public class TreeIndex {
+
+    // Trees sorted by cell, then by owner, then in the order of the forest. The trees of cell c are between
+    // cellStart[c] and cellStart[c + 1], where cell (xHash, yHash) is c = (xHash - minXHash) * numY + (yHash - minYHash).
+    private Tree[] trees;
+    private double[] treeX;
+    private double[] treeY;
+    private double[] treeRadius;
+    private double[] treeHeight;
+    private int[] treeOwner;
+    private int[] cellStart;
+
+    // Grid of the index, covering the centers of all trees.
+    private double cellSize;
+    private double maxRadius;
+    private int minXHash;
+    private int minYHash;
+    private int numX;
+    private int numY;
+
+    // Slots of the trees of owner o, between ownerSlots[ownerStart[o]] and ownerSlots[ownerStart[o + 1] - 1].
+    private int[] ownerStart;
+    private int[] ownerSlots;
+
+    /**
+     * Build the index over the trees of each owner. Owners without any tree have an empty list.
+     */
+    public TreeIndex(ArrayList<ArrayList<Tree>> treesByOwner) {
+        int numTrees = 0;
+        maxRadius = 0;
+        for (ArrayList<Tree> ownerTrees : treesByOwner) {
+            numTrees += ownerTrees.size();
+            for (Tree tree : ownerTrees) {
+                maxRadius = Math.max(maxRadius, tree.getRadius());
+            }
+        }
+        cellSize = Math.max(2 * maxRadius, 1);
+
+        // Flatten the trees in the order of the owners, and find the bounds of the grid.
+        Tree[] ownerOrder = new Tree[numTrees];
+        int[] ownerOf = new int[numTrees];
+        ownerStart = new int[treesByOwner.size() + 1];
+        minXHash = Integer.MAX_VALUE;
+        minYHash = Integer.MAX_VALUE;
+        int maxXHash = Integer.MIN_VALUE;
+        int maxYHash = Integer.MIN_VALUE;
+        int index = 0;
+        for (int owner = 0; owner < treesByOwner.size(); owner++) {
+            ownerStart[owner] = index;
+            for (Tree tree : treesByOwner.get(owner)) {
+                ownerOrder[index] = tree;
+                ownerOf[index] = owner;
+                index += 1;
+                minXHash = Math.min(minXHash, hash(tree.getX()));
+                maxXHash = Math.max(maxXHash, hash(tree.getX()));
+                minYHash = Math.min(minYHash, hash(tree.getY()));
+                maxYHash = Math.max(maxYHash, hash(tree.getY()));
+            }
+        }
+        ownerStart[treesByOwner.size()] = numTrees;
+        if (numTrees == 0) {
+            minXHash = 0;
+            minYHash = 0;
+            maxXHash = -1;
+            maxYHash = -1;
+        }
+        numX = maxXHash - minXHash + 1;
+        numY = maxYHash - minYHash + 1;
+
+        // Counting sort of the trees by cell, which keeps the order of the owners within each cell.
+        cellStart = new int[numX * numY + 1];
+        int[] treeCell = new int[numTrees];
+        for (int i = 0; i < numTrees; i++) {
+            treeCell[i] = (hash(ownerOrder[i].getX()) - minXHash) * numY + (hash(ownerOrder[i].getY()) - minYHash);
+            cellStart[treeCell[i] + 1] += 1;
+        }
+        for (int cell = 0; cell < numX * numY; cell++) {
+            cellStart[cell + 1] += cellStart[cell];
+        }
+        int[] cellFill = new int[numX * numY];
+        trees = new Tree[numTrees];
+        treeX = new double[numTrees];
+        treeY = new double[numTrees];
+        treeRadius = new double[numTrees];
+        treeHeight = new double[numTrees];
+        treeOwner = new int[numTrees];
+        ownerSlots = new int[numTrees];
+        for (int i = 0; i < numTrees; i++) {
+            int slot = cellStart[treeCell[i]] + cellFill[treeCell[i]];
+            cellFill[treeCell[i]] += 1;
+            Tree tree = ownerOrder[i];
+            trees[slot] = tree;
+            treeX[slot] = tree.getX();
+            treeY[slot] = tree.getY();
+            treeRadius[slot] = tree.getRadius();
+            treeHeight[slot] = tree.getHeight();
+            treeOwner[slot] = ownerOf[i];
+            ownerSlots[i] = slot;
+        }
+    }
+
+    /**
+     * Cell of a position. Cells are rounded down, so that cells around 0 are not twice as large as the others.
+     */
+    private int hash(double x) {
+        return (int) Math.floor(x / cellSize);
+    }
+
+    /**
+     * Start iterating over the candidate trees which may contain position (x, y), which are the trees of the cells
+     * within the largest radius of (x, y).
+     */
+    public TreeCursor queryTreesAt(double x, double y, TreeCursor cursor) {
+        int minI = Math.max(hash(x - maxRadius) - minXHash, 0);
+        int maxI = Math.min(hash(x + maxRadius) - minXHash, numX - 1);
+        int minJ = Math.max(hash(y - maxRadius) - minYHash, 0);
+        int maxJ = Math.min(hash(y + maxRadius) - minYHash, numY - 1);
+        cursor.start(this, minI, maxI, minJ, maxJ);
+        return cursor;
+    }
+
+    /**
+     * Height of the tallest tree of the given owner containing position (x, y), or 0 if there is none.
+     */
+    public double getTreeHeightAt(double x, double y, int owner) {
+        int minI = Math.max(hash(x - maxRadius) - minXHash, 0);
+        int maxI = Math.min(hash(x + maxRadius) - minXHash, numX - 1);
+        int minJ = Math.max(hash(y - maxRadius) - minYHash, 0);
+        int maxJ = Math.min(hash(y + maxRadius) - minYHash, numY - 1);
+        double height = 0;
+        if (minJ > maxJ) return height;
+        for (int i = minI; i <= maxI; i++) {
+            int end = cellStart[i * numY + maxJ + 1];
+            for (int slot = cellStart[i * numY + minJ]; slot < end; slot++) {
+                if (treeOwner[slot] != owner) continue;
+                double dx = x - treeX[slot];
+                double dy = y - treeY[slot];
+                if (dx * dx + dy * dy <= treeRadius[slot] * treeRadius[slot]) {
+                    height = Math.max(height, treeHeight[slot]);
+                }
+            }
+        }
+        return height;
+    }
+
+    /**
+     * The trees of the cells of column i between rows minJ and maxJ are between getColumnStart(i, minJ) and
+     * getColumnEnd(i, maxJ).
+     */
+    int getColumnStart(int i, int minJ) {
+        return cellStart[i * numY + minJ];
+    }
+
+    int getColumnEnd(int i, int maxJ) {
+        return cellStart[i * numY + maxJ + 1];
+    }
+
+    /**
+     * Getter and setters
+     */
+    public int getNumTrees() {
+        return trees.length;
+    }
+
+    public Tree getTree(int slot) {
+        return trees[slot];
+    }
+
+    public double getX(int slot) {
+        return treeX[slot];
+    }
+
+    public double getY(int slot) {
+        return treeY[slot];
+    }
+
+    public double getRadius(int slot) {
+        return treeRadius[slot];
+    }
+
+    public double getHeight(int slot) {
+        return treeHeight[slot];
+    }
+
+    public int getOwner(int slot) {
+        return treeOwner[slot];
+    }
+
+    public int getNumOwners() {
+        return ownerStart.length - 1;
+    }
+
+    public int getOwnerStart(int owner) {
+        return ownerStart[owner];
+    }
+
+    public int getOwnerEnd(int owner) {
+        return ownerStart[owner + 1];
+    }
+
+    public int getOwnerSlot(int k) {
+        return ownerSlots[k];
+    }
+}
@@ -0,0 +1,40 @@
+package model.algorithms;
+
+import model.constants.UniversalConstants;
+
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fork join task that resolves the collisions of the troops at positions [from, to) of the neighbor list iteration
+ * order, and computes the number of collision checks processed.
+ *
+ * Resolving the collision of a troop only changes the velocity and the speed of that troop, and only reads the
+ * positions of its candidates, which don't change until the next frame. Ranges of troops are therefore independent of
+ * each other and give the same result whatever thread resolves them.
+ */
+class TroopCollisionTask extends RecursiveTask<Integer> {
+
+    private static final long serialVersionUID = 1L;
+
+    private UnitModifier unitModifier;
+    private int from;
+    private int to;
+
+    TroopCollisionTask(UnitModifier inputUnitModifier, int inputFrom, int inputTo) {
+        unitModifier = inputUnitModifier;
+        from = inputFrom;
+        to = inputTo;
+    }
+
+    @Override
+    protected Integer compute() {
+        if (to - from <= UniversalConstants.PARALLEL_TROOP_CHUNK) {
+            return unitModifier.modifyTroopsPositionRange(from, to, new TroopCursor());
+        }
+        int mid = (from + to) >>> 1;
+        TroopCollisionTask left = new TroopCollisionTask(unitModifier, from, mid);
+        left.fork();
+        int numChecks = new TroopCollisionTask(unitModifier, mid, to).compute();
+        return numChecks + left.join();
+    }
+}
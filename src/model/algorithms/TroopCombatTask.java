@@ -0,0 +1,35 @@
+package model.algorithms;
+
+import model.constants.UniversalConstants;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Fork join task that picks the attack target of the troops at indices [from, to) of the neighbor list. This is the
+ * first phase of the two phase combat: nothing is modified except for the attack target of each troop, so ranges of
+ * troops are independent of each other.
+ */
+class TroopCombatTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private UnitModifier unitModifier;
+    private int from;
+    private int to;
+
+    TroopCombatTask(UnitModifier inputUnitModifier, int inputFrom, int inputTo) {
+        unitModifier = inputUnitModifier;
+        from = inputFrom;
+        to = inputTo;
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from <= UniversalConstants.PARALLEL_TROOP_CHUNK) {
+            unitModifier.selectAttackTargetsRange(from, to, new TroopCursor());
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        invokeAll(new TroopCombatTask(unitModifier, from, mid), new TroopCombatTask(unitModifier, mid, to));
+    }
+}
@@ -0,0 +1,142 @@
+package model.algorithms;
+
+import model.singles.BaseSingle;
+
+import java.util.ArrayList;
+
+/**
+ * A reusable cursor over the candidates of a TroopHasher query. The cursor streams the candidates directly out of the
+ * hasher cells, so a query does not allocate anything once the cursor has been created. Each caller keeps its own
+ * cursor and passes it to one of the query* methods of TroopHasher or TroopNeighborList, then iterates with:
+ *
+ *   for (BaseSingle candidate = cursor.next(); candidate != null; candidate = cursor.next()) { ... }
+ *
+ * A cursor only supports one query at a time. Starting a new query on the same cursor abandons the previous one, so
+ * nested queries need separate cursors.
+ */
+public class TroopCursor {
+
+    private TroopHasher hasher;
+    private BaseSingle excluded;
+
+    // Cells to visit. Either a rectangle of cells, visited column by column, or a list of cells (xHash, yHash) pairs.
+    private boolean visitCellList;
+    private int minXHash;
+    private int maxXHash;
+    private int minYHash;
+    private int maxYHash;
+    private int[] cellList;
+    private int numCells;
+    private int nextCell;
+
+    // Current cell. Candidates come either from an array between arrayPos and arrayEnd, or from a hash map list.
+    BaseSingle[] cellArray;
+    int arrayPos;
+    int arrayEnd;
+    ArrayList<BaseSingle> cellObjects;
+    int listPos;
+
+    public TroopCursor() {
+        cellList = new int[32];
+    }
+
+    /**
+     * Start iterating over cells [minXHash, maxXHash] x [minYHash, maxYHash] of the hasher.
+     */
+    void startRectangle(TroopHasher inputHasher, int inputMinXHash, int inputMaxXHash,
+                        int inputMinYHash, int inputMaxYHash, BaseSingle inputExcluded) {
+        hasher = inputHasher;
+        excluded = inputExcluded;
+        visitCellList = false;
+        minXHash = inputMinXHash;
+        maxXHash = inputMaxXHash;
+        minYHash = inputMinYHash;
+        maxYHash = inputMaxYHash;
+        numCells = (maxXHash - minXHash + 1) * (maxYHash - minYHash + 1);
+        nextCell = 0;
+        clearCell();
+    }
+
+    /**
+     * Start iterating over the cells previously added with addCell().
+     */
+    void startCellList(TroopHasher inputHasher, BaseSingle inputExcluded) {
+        hasher = inputHasher;
+        excluded = inputExcluded;
+        visitCellList = true;
+        nextCell = 0;
+        clearCell();
+    }
+
+    /**
+     * Start iterating over array[from] ... array[to - 1], without visiting any cell.
+     */
+    void startRange(BaseSingle[] array, int from, int to, BaseSingle inputExcluded) {
+        excluded = inputExcluded;
+        numCells = 0;
+        nextCell = 0;
+        clearCell();
+        cellArray = array;
+        arrayPos = from;
+        arrayEnd = to;
+    }
+
+    /**
+     * Empty the cell list, in preparation for addCell().
+     */
+    void clearCellList() {
+        numCells = 0;
+    }
+
+    /**
+     * Add cell (xHash, yHash) to the cell list.
+     */
+    void addCell(int xHash, int yHash) {
+        if (2 * numCells + 2 > cellList.length) {
+            int[] newCellList = new int[cellList.length * 2];
+            System.arraycopy(cellList, 0, newCellList, 0, cellList.length);
+            cellList = newCellList;
+        }
+        cellList[2 * numCells] = xHash;
+        cellList[2 * numCells + 1] = yHash;
+        numCells += 1;
+    }
+
+    private void clearCell() {
+        cellArray = null;
+        arrayPos = 0;
+        arrayEnd = 0;
+        cellObjects = null;
+        listPos = 0;
+    }
+
+    /**
+     * Return the next candidate of the query, or null if there is no candidate left.
+     */
+    public BaseSingle next() {
+        while (true) {
+            if (cellObjects != null) {
+                while (listPos < cellObjects.size()) {
+                    BaseSingle single = cellObjects.get(listPos++);
+                    if (single != excluded) return single;
+                }
+            } else {
+                while (arrayPos < arrayEnd) {
+                    BaseSingle single = cellArray[arrayPos++];
+                    if (single != excluded) return single;
+                }
+            }
+
+            // Move on to the next cell
+            if (nextCell >= numCells) return null;
+            clearCell();
+            if (visitCellList) {
+                hasher.openCell(this, cellList[2 * nextCell], cellList[2 * nextCell + 1]);
+            } else {
+                int numY = maxYHash - minYHash + 1;
+                hasher.openCell(this, minXHash + nextCell / numY, minYHash + nextCell % numY);
+            }
+            nextCell += 1;
+        }
+    }
+}
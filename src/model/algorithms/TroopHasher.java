@@ -2,12 +2,18 @@ package model.algorithms;
 
 import javafx.util.Pair;
 import model.settings.GameSettings;
+import model.settings.TroopHashingMode;
 import model.singles.BaseSingle;
 import model.singles.CavalrySingle;
+import model.singles.SingleStore;
+import model.snapshot.SnapshotReader;
+import model.snapshot.SnapshotWriter;
 import model.enums.SingleState;
+import model.terrain.Terrain;
 import model.units.*;
 import model.utils.PhysicUtils;
 
+import java.io.IOException;
 import java.util.*;
 
 /**
@@ -17,28 +23,120 @@ import java.util.*;
  */
 public class TroopHasher {
 
-    // Height and width of each space (called xDiv and yDiv)
+    // Cell of a troop that is not hashed, and of a troop hashed outside of the grid, in the incremental grid.
+    private static final int NOT_HASHED = -1;
+    private static final int OUTSIDE_GRID = -2;
+
+    // Height and width of each space (called xDiv and yDiv), and the size of the spaces the hasher was created with.
+    // The cell size may be changed by setCellSize(), so the neighborhood of a troop spans as many cells as it takes to
+    // cover at least the original size around it.
     private int xDiv;
     private int yDiv;
+    private int baseXDiv;
+    private int baseYDiv;
+    private int neighborhoodX;
+    private int neighborhoodY;
+    private Terrain terrain;
     private ArrayList<BaseSingle> activeTroops;
+    // Spare list that activeTroops is rebuilt into each frame, so that hashing does not allocate a new list.
+    private ArrayList<BaseSingle> spareTroops;
     private ArrayList<BaseUnit> units;
+    // Units whose troops are hashed. Active unit sets are linked, so that they are iterated in a reproducible order.
     private HashSet<BaseUnit> activeUnits;
+    private UnitBroadphase unitBroadphase;
+
+    // Largest radius of the troops added to the hasher, which bounds how far from its cell a troop can be hit by a ray.
+    private double maxTroopRadius;
+
+    // Active units and number of active troops of the previous hashObjects() call, used to tell whether the set of
+    // hashed troops changed since then.
+    private HashSet<BaseUnit> previousActiveUnits;
+    private int previousNumActiveTroops;
+    private boolean activeSetChanged;
 
     // Hash map containing hashed singles.
     private HashMap<Long, ArrayList<BaseSingle>> hashMap;
 
+    // Uniform grid containing hashed singles, used instead of the hash map when the hashing mode is UNIFORM_GRID.
+    // Singles are counting sorted by cell, so that the singles of cell c are
+    //   cellTroops[cellStarts[c]] ... cellTroops[cellStarts[c + 1] - 1]
+    // Troops that wander outside of the terrain (routing troops for example) are kept in the hash map instead.
+    private boolean useGrid;
+    private int gridMinXHash;
+    private int gridMinYHash;
+    private int gridNumX;
+    private int gridNumY;
+    private int[] cellStarts;
+    private BaseSingle[] cellTroops;
+    private int[] troopCells;
+    private BaseSingle[] hashedTroops;
+    private int numHashedTroops;
+
+    // Incremental grid, used instead of the counting sort when the hashing mode is INCREMENTAL_GRID. The singles of
+    // cell c are
+    //   cellBuckets[c][0] ... cellBuckets[c][cellSizes[c] - 1]
+    // and the buckets are kept from one frame to the next. Each troop remembers its cell and its slot in the bucket of
+    // the cell, indexed by single id, so that a troop which changed cell is moved in O(1) by swapping the last troop of
+    // its old cell into its slot. Troops which stay in their cell are not touched.
+    private boolean incremental;
+    private BaseSingle[][] cellBuckets;
+    private int[] cellSizes;
+    private int[] singleCells;
+    private int[] singleSlots;
+
+    // Number of troops put into a cell or into the hash map during the last hashObjects() call.
+    private int numRehashedTroops;
+
     // Experiment settings
     private GameSettings gameSettings;
 
-    public TroopHasher(int xDivision, int yDivision, GameSettings inputSettings) {
-        xDiv = xDivision;
-        yDiv = yDivision;
+    public TroopHasher(int xDivision, int yDivision, Terrain inputTerrain, GameSettings inputSettings) {
+        baseXDiv = xDivision;
+        baseYDiv = yDivision;
+        terrain = inputTerrain;
         activeTroops = new ArrayList<>();
+        spareTroops = new ArrayList<>();
         units = new ArrayList<>();
         hashMap = new HashMap<>();
-        activeUnits = new HashSet<>();
+        activeUnits = new LinkedHashSet<>();
+        unitBroadphase = new UnitBroadphase();
+        previousActiveUnits = new LinkedHashSet<>();
+        previousNumActiveTroops = -1;
 
         gameSettings = inputSettings;
+
+        incremental = gameSettings.getTroopHashingMode() == TroopHashingMode.INCREMENTAL_GRID;
+        useGrid = gameSettings.getTroopHashingMode() == TroopHashingMode.UNIFORM_GRID || incremental;
+        singleCells = new int[0];
+        singleSlots = new int[0];
+        setCellSize(xDivision, yDivision);
+    }
+
+    /**
+     * Change the size of the cells, and reallocate the grid over the terrain bounds, with one cell of margin on each
+     * side. The troops are hashed into the new cells by the next hashObjects() call, which rehashes every troop of the
+     * incremental grid.
+     */
+    public void setCellSize(int xDivision, int yDivision) {
+        xDiv = xDivision;
+        yDiv = yDivision;
+        neighborhoodX = (baseXDiv + xDiv - 1) / xDiv;
+        neighborhoodY = (baseYDiv + yDiv - 1) / yDiv;
+        if (useGrid) {
+            gridMinXHash = (int) terrain.getTopX() / xDiv - 1;
+            gridMinYHash = (int) terrain.getTopY() / yDiv - 1;
+            gridNumX = (int) terrain.getBotX() / xDiv + 1 - gridMinXHash + 1;
+            gridNumY = (int) terrain.getBotY() / yDiv + 1 - gridMinYHash + 1;
+            cellStarts = new int[gridNumX * gridNumY + 1];
+            cellTroops = new BaseSingle[0];
+            troopCells = new int[0];
+            hashedTroops = new BaseSingle[0];
+        }
+        if (incremental) {
+            cellBuckets = new BaseSingle[gridNumX * gridNumY][];
+            cellSizes = new int[gridNumX * gridNumY];
+            Arrays.fill(singleCells, NOT_HASHED);
+        }
     }
 
     /**
@@ -48,76 +146,151 @@ public class TroopHasher {
         units.add(unit);
         for (BaseSingle troop : unit.getTroops()) {
             activeTroops.add(troop);
+            maxTroopRadius = Math.max(maxTroopRadius, troop.getRadius());
+            if (incremental && troop.getSingleId() >= singleCells.length) {
+                int oldLength = singleCells.length;
+                int newLength = Math.max(troop.getSingleId() + 1, 2 * oldLength);
+                singleCells = Arrays.copyOf(singleCells, newLength);
+                singleSlots = Arrays.copyOf(singleSlots, newLength);
+                Arrays.fill(singleCells, oldLength, newLength, NOT_HASHED);
+            }
         }
+        previousNumActiveTroops = -1;
     }
 
     /**
      * Return the list of potential collision candidates of a BaseSingle obj
      */
     public ArrayList<BaseSingle> getCollisionObjects(BaseSingle obj) {
-        int xHash = (int)obj.getX() / xDiv;
-        int yHash = (int)obj.getY() / yDiv;
-
-        ArrayList<BaseSingle> collideList = new ArrayList<>();
-        for (int i = -1; i < 2; i++) {
-            for (int j = -1; j < 2; j++) {
-                long key = pairHash(xHash + i, yHash + j);
-                if (!hashMap.containsKey(key)) continue;
-                for (BaseSingle otherObj : hashMap.get(key)) {
-                    if (otherObj != obj) collideList.add(otherObj);
-                }
-            }
-        }
-        return collideList;
+        return collectCandidates(queryCollisionObjects(obj, new TroopCursor()));
     }
 
     /**
      * Return the list of potential collision candidates based on x, y positions
      */
     public ArrayList<BaseSingle> getCollisionObjects(double x, double y) {
-        int xHash = (int) x / xDiv;
-        int yHash = (int) y / yDiv;
+        return collectCandidates(queryCollisionObjects(x, y, new TroopCursor()));
+    }
+
+    /**
+     * Return the list of potential collision candidates based on x, y positions and impactDistance
+     */
+    public ArrayList<BaseSingle> getCollisionObjects(double x, double y, double impactDistance) {
+        return collectCandidates(queryCollisionObjects(x, y, impactDistance, new TroopCursor()));
+    }
+
+    /**
+     * Return the list of potential collision based on the line created by (x1, y1) and (x2, y2).
+     */
+    public ArrayList<BaseSingle> getCollisionObjectsFromLine(double x1, double y1, double x2, double y2) {
+        return collectCandidates(queryCollisionObjectsFromLine(x1, y1, x2, y2, new TroopCursor()));
+    }
 
+    /**
+     * Drain the cursor into a new list.
+     */
+    private ArrayList<BaseSingle> collectCandidates(TroopCursor cursor) {
         ArrayList<BaseSingle> collideList = new ArrayList<>();
-        for (int i = -1; i <= 1; i++) {
-            for (int j = -1; j <= 1; j++) {
-                long key = pairHash(xHash + i, yHash + j);
-                if (!hashMap.containsKey(key)) continue;
-                for (BaseSingle otherObj : hashMap.get(key)) {
-                    collideList.add(otherObj);
-                }
-            }
+        for (BaseSingle candidate = cursor.next(); candidate != null; candidate = cursor.next()) {
+            collideList.add(candidate);
         }
         return collideList;
     }
 
     /**
-     * Return the list of potential collision candidates based on x, y positions and impactDistance
+     * Start a query for the potential collision candidates of a BaseSingle obj, which are all objects in the 3x3 cells
+     * around obj except obj itself, or in as many cells as it takes to cover the original cell size if the cells were
+     * made smaller. The candidates are streamed by the returned cursor, without any allocation.
      */
-    public ArrayList<BaseSingle> getCollisionObjects(double x, double y, double impactDistance) {
+    public TroopCursor queryCollisionObjects(BaseSingle obj, TroopCursor cursor) {
+        int xHash = (int)obj.getX() / xDiv;
+        int yHash = (int)obj.getY() / yDiv;
+        cursor.startRectangle(this, xHash - neighborhoodX, xHash + neighborhoodX, yHash - neighborhoodY,
+                yHash + neighborhoodY, obj);
+        return cursor;
+    }
+
+    /**
+     * Start a query for the potential collision candidates based on x, y positions.
+     */
+    public TroopCursor queryCollisionObjects(double x, double y, TroopCursor cursor) {
+        int xHash = (int) x / xDiv;
+        int yHash = (int) y / yDiv;
+        cursor.startRectangle(this, xHash - neighborhoodX, xHash + neighborhoodX, yHash - neighborhoodY,
+                yHash + neighborhoodY, null);
+        return cursor;
+    }
+
+    /**
+     * Start a query for the potential collision candidates based on x, y positions and impactDistance.
+     */
+    public TroopCursor queryCollisionObjects(double x, double y, double impactDistance, TroopCursor cursor) {
         int xHash = (int) x / xDiv;
         int yHash = (int) y / yDiv;
         int extensionX = (int) (impactDistance / xDiv) + 1;
         int extensionY = (int) (impactDistance / yDiv) + 1;
+        cursor.startRectangle(this, xHash - extensionX, xHash + extensionX, yHash - extensionY, yHash + extensionY,
+                null);
+        return cursor;
+    }
 
-        ArrayList<BaseSingle> collideList = new ArrayList<>();
-        for (int i = -extensionX; i <= extensionX; i++) {
-            for (int j = -extensionY; j <= extensionY; j++) {
-                long key = pairHash(xHash + i, yHash + j);
-                if (!hashMap.containsKey(key)) continue;
-                for (BaseSingle otherObj : hashMap.get(key)) {
-                    collideList.add(otherObj);
-                }
+    /**
+     * Start a query for the potential collision based on the line created by (x1, y1) and (x2, y2). We will use the
+     * Bresenham's line algorithm for this job. Cells are visited from (x1, y1) to (x2, y2).
+     */
+    public TroopCursor queryCollisionObjectsFromLine(double x1, double y1, double x2, double y2,
+                                                     TroopCursor cursor) {
+
+        // Calculate the space hashes that contain collision objects.
+        // TODO: Check this algorithm. It is possible there might be something wrong with the way we round down the
+        //  x1, y1, x2, y2 position in the entire cells. The best way to check is to do a visualization of what cell
+        //  has been effected and by whom.
+        int xHash1 = (int) x1 / xDiv;
+        int yHash1 = (int) y1 / yDiv;
+        int xHash2 = (int) x2 / xDiv;
+        int yHash2 = (int) y2 / yDiv;
+        bresenhamLineAlgorithm(xHash1, yHash1, xHash2, yHash2, cursor);
+        cursor.startCellList(this, null);
+        return cursor;
+    }
+
+    /**
+     * Start a query for the troops hit by the segment (x1, y1) - (x2, y2), streamed by the returned cursor in the order
+     * the segment hits them. Unlike queryCollisionObjectsFromLine(), the troops are exactly those whose circle crosses
+     * the segment, and the cells past the first hits are only visited if the caller keeps iterating.
+     */
+    public TroopRayCursor queryTroopsAlongRay(double x1, double y1, double x2, double y2, TroopRayCursor cursor) {
+        cursor.start(this, x1, y1, x2, y2);
+        return cursor;
+    }
+
+    /**
+     * Point the cursor at the objects hashed in cell (xHash, yHash). Objects within a cell are streamed in the order
+     * they were hashed.
+     */
+    void openCell(TroopCursor cursor, int xHash, int yHash) {
+        if (useGrid && isInGrid(xHash, yHash)) {
+            int cell = gridCell(xHash, yHash);
+            if (incremental) {
+                cursor.cellArray = cellBuckets[cell];
+                cursor.arrayPos = 0;
+                cursor.arrayEnd = cellSizes[cell];
+                return;
             }
+            cursor.cellArray = cellTroops;
+            cursor.arrayPos = cellStarts[cell];
+            cursor.arrayEnd = cellStarts[cell + 1];
+            return;
         }
-        return collideList;
+        cursor.cellObjects = hashMap.get(pairHash(xHash, yHash));
     }
 
     /**
-     * Generate a list of integers that connect cell (x1, y1) to (x2, y2) based on Bresenham's line algorithm
+     * Add to the cell list of the cursor the cells that connect cell (x1, y1) to (x2, y2) based on Bresenham's line
+     * algorithm
      */
-    private ArrayList<int[]> bresenhamLineAlgorithm(int x1, int y1, int x2, int y2) {
-        ArrayList<int[]> hashList = new ArrayList<>();
+    private void bresenhamLineAlgorithm(int x1, int y1, int x2, int y2, TroopCursor cursor) {
+        cursor.clearCellList();
         int x, y;
         int dx, dy;
         int incx, incy;
@@ -146,7 +319,7 @@ public class TroopHasher {
             dx <<= 1;
 
             while (x != x2) {
-                hashList.add(new int[] {x, y});
+                cursor.addCell(x, y);
                 if (balance >= 0) {
                     y += incy;
                     balance -= dx;
@@ -154,14 +327,14 @@ public class TroopHasher {
                 balance += dy;
                 x += incx;
             }
-            hashList.add(new int[] {x, y});
+            cursor.addCell(x, y);
         } else {
             dx <<= 1;
             balance = dx - dy;
             dy <<= 1;
 
             while (y != y2) {
-                hashList.add(new int[] {x, y});
+                cursor.addCell(x, y);
                 if (balance >= 0) {
                     x += incx;
                     balance -= dy;
@@ -169,39 +342,8 @@ public class TroopHasher {
                 balance += dx;
                 y += incy;
             }
-            hashList.add(new int[] {x, y});
+            cursor.addCell(x, y);
         }
-        return hashList;
-    }
-
-    /**
-     * Return the list of potential collision based on the line created by (x1, y1) and (x2, y2). We will use the
-     * Bresenham's line algorithm for this job.
-     */
-    public ArrayList<BaseSingle> getCollisionObjectsFromLine(double x1, double y1, double x2, double y2) {
-
-        // Calculate the space hashes that contain collision objects.
-        // TODO: Check this algorithm. It is possible there might be something wrong with the way we round down the
-        //  x1, y1, x2, y2 position in the entire cells. The best way to check is to do a visualization of what cell
-        //  has been effected and by whom.
-        int xHash1 = (int) x1 / xDiv;
-        int yHash1 = (int) y1 / yDiv;
-        int xHash2 = (int) x2 / xDiv;
-        int yHash2 = (int) y2 / yDiv;
-        ArrayList<int[]> hashesList = bresenhamLineAlgorithm(xHash1, yHash1, xHash2, yHash2);
-
-        // Get the list of objects that are in the hash cells potentially collide able with the line.
-        ArrayList<BaseSingle> singles = new ArrayList<>();
-        for (int i = 0; i < hashesList.size(); i++) {
-            int[] hashCode = hashesList.get(i);
-            long key = pairHash(hashCode[0], hashCode[1]);
-            if (hashMap.containsKey(key)) {
-                for (BaseSingle single : hashMap.get(key)) {
-                    singles.add(single);
-                }
-            }
-        }
-        return singles;
     }
 
     /**
@@ -211,36 +353,255 @@ public class TroopHasher {
     public void hashObjects() {
 
         // First, filter out inactive model.units. We shall only hash objects that belong to an active unit.
+        HashSet<BaseUnit> temp = previousActiveUnits;
+        previousActiveUnits = activeUnits;
+        activeUnits = temp;
         filterActiveUnits();
 
+        if (incremental) {
+            hashObjectsIncrementally();
+        } else if (useGrid) {
+            hashObjectsToGrid();
+        } else {
+            hashObjectsToMap();
+        }
+
+        // Troops are only removed from activeTroops between two calls, unless a unit is added, so the same number of
+        // troops means the same troops.
+        activeSetChanged = activeTroops.size() != previousNumActiveTroops || !activeUnits.equals(previousActiveUnits);
+        previousNumActiveTroops = activeTroops.size();
+    }
+
+    /**
+     * Hash all activeTroops into the hash map.
+     */
+    private void hashObjectsToMap() {
+
         // Clear the hashmap
         hashMap.clear();
 
         // Add activeTroops into hashmap with key according to their position
-        ArrayList<BaseSingle> newTroops = new ArrayList<>();
+        ArrayList<BaseSingle> newTroops = spareTroops;
+        newTroops.clear();
+        numRehashedTroops = 0;
         for (BaseSingle troop : activeTroops) {
+            SingleStore store = troop.getStore();
+            int id = troop.getSingleId();
 
             // Ignore dead soldiers, they have already fallen
-            if (troop.getState() == SingleState.DEAD) continue;
+            if (store.getState(id) == SingleState.DEAD) continue;
             else newTroops.add(troop);
 
             // Don't hash non-active troops
             // Experiment might allow the hashing of cavalry
-            if (!activeUnits.contains(troop.getUnit()) &&
-                    !(gameSettings.isCavalryCollision() && (troop instanceof CavalrySingle))) continue;
+            if (!isHashable(troop)) continue;
 
             // Assign alive activeTroops to correct position
-            int xHash = (int) troop.getX() / xDiv;
-            int yHash = (int) troop.getY() / yDiv;
+            int xHash = (int) store.getX(id) / xDiv;
+            int yHash = (int) store.getY(id) / yDiv;
             long key = pairHash(xHash, yHash);
             if (!hashMap.containsKey(key)) {
                 hashMap.put(key, new ArrayList<>());
             }
             hashMap.get(key).add(troop);
+            numRehashedTroops += 1;
         }
+        spareTroops = activeTroops;
         activeTroops = newTroops;
     }
 
+    /**
+     * Hash all activeTroops into the uniform grid using a counting sort. The first pass computes the cell of each
+     * troop and counts the cell sizes, the prefix sum of the counts gives the start offset of each cell, and the second
+     * pass scatters the troop indices into their cells. The sort is stable, so troops within a cell keep the order of
+     * activeTroops, the same as in the hash map.
+     */
+    private void hashObjectsToGrid() {
+        // Make sure the arrays can hold every troop
+        int numTroops = activeTroops.size();
+        if (hashedTroops.length < numTroops) {
+            hashedTroops = new BaseSingle[numTroops];
+            troopCells = new int[numTroops];
+            cellTroops = new BaseSingle[numTroops];
+        }
+        int numCells = gridNumX * gridNumY;
+        Arrays.fill(cellStarts, 0);
+        hashMap.clear();
+
+        // First pass: filter out dead troops and count the number of hashed troops in each cell.
+        // Counts are stored shifted by one, so that the prefix sum directly gives the start offsets.
+        ArrayList<BaseSingle> newTroops = spareTroops;
+        newTroops.clear();
+        numHashedTroops = 0;
+        numRehashedTroops = 0;
+        for (BaseSingle troop : activeTroops) {
+            SingleStore store = troop.getStore();
+            int id = troop.getSingleId();
+
+            // Ignore dead soldiers, they have already fallen
+            if (store.getState(id) == SingleState.DEAD) continue;
+            else newTroops.add(troop);
+
+            // Don't hash non-active troops
+            if (!isHashable(troop)) continue;
+
+            // Troops outside of the grid go to the hash map
+            int xHash = (int) store.getX(id) / xDiv;
+            int yHash = (int) store.getY(id) / yDiv;
+            if (!isInGrid(xHash, yHash)) {
+                long key = pairHash(xHash, yHash);
+                if (!hashMap.containsKey(key)) {
+                    hashMap.put(key, new ArrayList<>());
+                }
+                hashMap.get(key).add(troop);
+                numRehashedTroops += 1;
+                continue;
+            }
+
+            int cell = gridCell(xHash, yHash);
+            hashedTroops[numHashedTroops] = troop;
+            troopCells[numHashedTroops] = cell;
+            cellStarts[cell + 1] += 1;
+            numHashedTroops += 1;
+        }
+        spareTroops = activeTroops;
+        activeTroops = newTroops;
+
+        // Prefix sum
+        for (int cell = 0; cell < numCells; cell++) {
+            cellStarts[cell + 1] += cellStarts[cell];
+        }
+
+        // Second pass: scatter each troop into its cell. cellStarts[cell] is used as the insertion cursor of the cell,
+        // which leaves it shifted by one cell at the end, so it is shifted back afterward.
+        for (int i = 0; i < numHashedTroops; i++) {
+            int cell = troopCells[i];
+            cellTroops[cellStarts[cell]] = hashedTroops[i];
+            cellStarts[cell] += 1;
+        }
+        System.arraycopy(cellStarts, 0, cellStarts, 1, numCells);
+        cellStarts[0] = 0;
+
+        // Release references to troops that are no longer hashed.
+        Arrays.fill(hashedTroops, numHashedTroops, hashedTroops.length, null);
+        Arrays.fill(cellTroops, numHashedTroops, cellTroops.length, null);
+        numRehashedTroops += numHashedTroops;
+    }
+
+    /**
+     * Update the incremental grid. Each active troop is checked against the cell it was hashed into during the previous
+     * frame, and only the troops which changed cell, became hashable or stopped being hashable are moved. Dead troops
+     * are swap-removed from activeTroops instead of rebuilding the list. Troops outside of the grid are rare, so they are
+     * rehashed into the hash map every frame.
+     */
+    private void hashObjectsIncrementally() {
+        hashMap.clear();
+        numRehashedTroops = 0;
+        int i = 0;
+        while (i < activeTroops.size()) {
+            BaseSingle troop = activeTroops.get(i);
+            SingleStore store = troop.getStore();
+            int id = troop.getSingleId();
+
+            // Remove dead soldiers, they have already fallen
+            if (store.getState(id) == SingleState.DEAD) {
+                moveToCell(troop, NOT_HASHED);
+                int last = activeTroops.size() - 1;
+                activeTroops.set(i, activeTroops.get(last));
+                activeTroops.remove(last);
+                continue;
+            }
+            i += 1;
+
+            // Find the cell of the troop. Non-active troops are not hashed, and troops outside of the grid go to the
+            // hash map.
+            int cell = NOT_HASHED;
+            if (isHashable(troop)) {
+                int xHash = (int) store.getX(id) / xDiv;
+                int yHash = (int) store.getY(id) / yDiv;
+                if (isInGrid(xHash, yHash)) {
+                    cell = gridCell(xHash, yHash);
+                } else {
+                    cell = OUTSIDE_GRID;
+                    long key = pairHash(xHash, yHash);
+                    if (!hashMap.containsKey(key)) {
+                        hashMap.put(key, new ArrayList<>());
+                    }
+                    hashMap.get(key).add(troop);
+                    numRehashedTroops += 1;
+                }
+            }
+            if (cell != singleCells[id]) {
+                moveToCell(troop, cell);
+            }
+        }
+    }
+
+    /**
+     * Move a troop from its cell in the incremental grid to another cell, or to no cell at all if the new cell is
+     * NOT_HASHED or OUTSIDE_GRID.
+     */
+    private void moveToCell(BaseSingle troop, int cell) {
+        int id = troop.getSingleId();
+        int oldCell = singleCells[id];
+        if (oldCell >= 0) {
+            // Swap the last troop of the old cell into the slot of the troop.
+            int slot = singleSlots[id];
+            int last = cellSizes[oldCell] - 1;
+            BaseSingle lastTroop = cellBuckets[oldCell][last];
+            cellBuckets[oldCell][slot] = lastTroop;
+            singleSlots[lastTroop.getSingleId()] = slot;
+            cellBuckets[oldCell][last] = null;
+            cellSizes[oldCell] = last;
+        }
+        if (cell >= 0) {
+            addToCell(troop, cell);
+            numRehashedTroops += 1;
+        }
+        singleCells[id] = cell;
+    }
+
+    /**
+     * Append a troop to the bucket of a cell of the incremental grid, growing the bucket if needed.
+     */
+    private void addToCell(BaseSingle troop, int cell) {
+        BaseSingle[] bucket = cellBuckets[cell];
+        if (bucket == null) {
+            bucket = new BaseSingle[8];
+            cellBuckets[cell] = bucket;
+        } else if (cellSizes[cell] == bucket.length) {
+            bucket = Arrays.copyOf(bucket, bucket.length * 2);
+            cellBuckets[cell] = bucket;
+        }
+        bucket[cellSizes[cell]] = troop;
+        singleSlots[troop.getSingleId()] = cellSizes[cell];
+        cellSizes[cell] += 1;
+    }
+
+    /**
+     * A troop is hashed if its unit is active. Experiment might allow the hashing of cavalry.
+     */
+    private boolean isHashable(BaseSingle troop) {
+        return activeUnits.contains(troop.getUnit()) ||
+                (gameSettings.isCavalryCollision() && (troop instanceof CavalrySingle));
+    }
+
+    /**
+     * Check whether cell (xHash, yHash) is covered by the grid.
+     */
+    private boolean isInGrid(int xHash, int yHash) {
+        int i = xHash - gridMinXHash;
+        int j = yHash - gridMinYHash;
+        return i >= 0 && i < gridNumX && j >= 0 && j < gridNumY;
+    }
+
+    /**
+     * Index of cell (xHash, yHash) in the grid. The cell must be covered by the grid.
+     */
+    private int gridCell(int xHash, int yHash) {
+        return (xHash - gridMinXHash) * gridNumY + (yHash - gridMinYHash);
+    }
+
     /**
      * Filter out only active model.units to hash. We shall consider a unit to be active if it fills out the following 3
      * criteria.
@@ -289,20 +650,20 @@ public class TroopHasher {
         }
 
         // Collide with an enemy bounding box.
-        // TODO: Stick with O(n ^ 2) check for now, but should change it to an O(n log n) check later.
-        for (BaseUnit unit1 : units) {
-            for (BaseUnit unit2 : units) {
-                // A unit can't collide with itself
-                if (unit1 == unit2) continue;
-
-                // A unit can't collide with their own faction if not in combat
-                if (unit1.getPoliticalFaction() == unit2.getPoliticalFaction()) continue;
-
-                // Check collision
-                if (unitRotatedBoundingBoxCollide(unit1, unit2)) {
-                    activeUnits.add(unit1);
-                    activeUnits.add(unit2);
-                }
+        // The broadphase only returns pairs of units whose axis-aligned bounding boxes overlap, and each pair only once,
+        // so the rotated bounding box check is only done on those pairs.
+        unitBroadphase.update(units);
+        for (int p = 0; p < unitBroadphase.getNumPairs(); p++) {
+            BaseUnit unit1 = unitBroadphase.getPairFirst(p);
+            BaseUnit unit2 = unitBroadphase.getPairSecond(p);
+
+            // A unit can't collide with their own faction if not in combat
+            if (unit1.getPoliticalFaction() == unit2.getPoliticalFaction()) continue;
+
+            // Check collision
+            if (unitRotatedBoundingBoxCollide(unit1, unit2)) {
+                activeUnits.add(unit1);
+                activeUnits.add(unit2);
             }
         }
         units = remainingUnits;
@@ -339,6 +700,69 @@ public class TroopHasher {
         return ((long)xHash << 32) | (yHash & 0XFFFFFFFFL);
     }
 
+    /**
+     * Write the hasher to a snapshot. The hash map and the grid are rebuilt from the troops at the start of each frame,
+     * so only what carries over from one frame to the next is written: the order of the active troops, which is
+     * shuffled every frame, the remaining units, and the active units used to tell whether the active set changed. The
+     * incremental grid does carry over, so the content of its cells is written as well, after the cell size.
+     */
+    public void writeSnapshot(SnapshotWriter writer) {
+        writer.writeInt(xDiv);
+        writer.writeInt(yDiv);
+        writer.writeSingles(activeTroops);
+        writer.writeUnits(units);
+        writer.writeUnits(activeUnits);
+        writer.writeUnits(previousActiveUnits);
+        writer.writeInt(previousNumActiveTroops);
+        writer.writeBoolean(activeSetChanged);
+        if (incremental) {
+            for (int cell = 0; cell < cellSizes.length; cell++) {
+                if (cellSizes[cell] == 0) continue;
+                writer.writeInt(cell);
+                writer.writeInt(cellSizes[cell]);
+                for (int slot = 0; slot < cellSizes[cell]; slot++) {
+                    writer.writeSingle(cellBuckets[cell][slot]);
+                }
+            }
+            writer.writeInt(NOT_HASHED);
+        }
+    }
+
+    /**
+     * Replace the state of the hasher with the state of a snapshot written by writeSnapshot().
+     */
+    public void readSnapshot(SnapshotReader reader) throws IOException {
+        int snapshotXDiv = reader.readInt();
+        int snapshotYDiv = reader.readInt();
+        if (snapshotXDiv != xDiv || snapshotYDiv != yDiv) {
+            setCellSize(snapshotXDiv, snapshotYDiv);
+        }
+        activeTroops = reader.readSingles();
+        spareTroops = new ArrayList<>();
+        units = reader.readUnits();
+        activeUnits.clear();
+        activeUnits.addAll(reader.readUnits());
+        previousActiveUnits.clear();
+        previousActiveUnits.addAll(reader.readUnits());
+        previousNumActiveTroops = reader.readInt();
+        activeSetChanged = reader.readBoolean();
+        if (incremental) {
+            Arrays.fill(cellSizes, 0);
+            for (BaseSingle[] bucket : cellBuckets) {
+                if (bucket != null) Arrays.fill(bucket, null);
+            }
+            Arrays.fill(singleCells, NOT_HASHED);
+            for (int cell = reader.readInt(); cell != NOT_HASHED; cell = reader.readInt()) {
+                int size = reader.readInt();
+                for (int slot = 0; slot < size; slot++) {
+                    BaseSingle troop = reader.readSingle();
+                    addToCell(troop, cell);
+                    singleCells[troop.getSingleId()] = cell;
+                }
+            }
+        }
+    }
+
     /**
      * Getter and setters
      */
@@ -349,4 +773,48 @@ public class TroopHasher {
     public HashSet<BaseUnit> getActiveUnits() {
         return activeUnits;
     }
+
+    public boolean isActiveSetChanged() {
+        return activeSetChanged;
+    }
+
+    public int getXDiv() {
+        return xDiv;
+    }
+
+    public int getYDiv() {
+        return yDiv;
+    }
+
+    int getNeighborhoodX() {
+        return neighborhoodX;
+    }
+
+    int getNeighborhoodY() {
+        return neighborhoodY;
+    }
+
+    boolean isHashMap() {
+        return !useGrid;
+    }
+
+    boolean isUniformGrid() {
+        return useGrid && !incremental;
+    }
+
+    boolean isIncremental() {
+        return incremental;
+    }
+
+    Terrain getTerrain() {
+        return terrain;
+    }
+
+    double getMaxTroopRadius() {
+        return maxTroopRadius;
+    }
+
+    public int getNumRehashedTroops() {
+        return numRehashedTroops;
+    }
 }
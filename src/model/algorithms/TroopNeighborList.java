@@ -0,0 +1,316 @@
+package model.algorithms;
+
+import model.singles.BaseSingle;
+import model.singles.SingleStore;
+import model.snapshot.SnapshotReader;
+import model.snapshot.SnapshotWriter;
+import model.utils.MathUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Per frame neighbor list of the active troops. The collision, combat and unit state modifiers all need the collision
+ * candidates of every active troop, so instead of each modifier querying the TroopHasher, the candidates are queried
+ * once after hashing and stored in a compressed sparse row structure: the candidates of troop i are
+ *   neighbors[offsets[i]] ... neighbors[offsets[i + 1] - 1]
+ *
+ * With a skin of 0, the list is rebuilt every frame from the 3x3 cell query of each troop, which gives exactly the same
+ * candidates, in the same order, as TroopHasher.queryCollisionObjects(troop).
+ *
+ * With a positive skin, the list is a Verlet list: the candidates of each troop are all hashed troops within
+ * cutoff + skin, where cutoff is the width of a hash cell (the distance that the 3x3 query always covers). The list is
+ * then reused across frames until some troop moves more than skin / 2 away from where it was when the list was built, or
+ * until the set of hashed troops changes. This saves most of the rebuilds when troops are moving slowly, at the cost of
+ * longer candidate lists.
+ *
+ * The candidates of each troop which belong to another faction are also stored in a second CSR structure, in the same
+ * order. Inside a dense formation most candidates are allies, so the modifiers which only care about enemies (combat and
+ * contact detection) query the enemy candidates and never touch the allies.
+ */
+public class TroopNeighborList {
+
+    // Troops covered by the list, in the order of TroopHasher.getActiveTroops() when the list was built.
+    private BaseSingle[] troops;
+    private int numTroops;
+
+    // CSR storage of the candidates of each troop.
+    private int[] offsets;
+    private BaseSingle[] neighbors;
+    private int numNeighbors;
+
+    // CSR storage of the enemy candidates of each troop, a subsequence of the candidates of the troop.
+    private int[] enemyOffsets;
+    private BaseSingle[] enemyNeighbors;
+    private int numEnemyNeighbors;
+
+    // Iteration order of the troops. This follows the order of TroopHasher.getActiveTroops(), which is shuffled by
+    // shuffleOrder() every frame.
+    private int[] order;
+
+    // Verlet skin, and the positions of the troops when the list was built.
+    private double cutoff;
+    private double skin;
+    private double[] builtX;
+    private double[] builtY;
+
+    // Whether the list was rebuilt during the last update, and the number of candidates streamed by the hasher queries
+    // of that rebuild, before any distance filtering.
+    private boolean rebuilt;
+    private int numCandidates;
+
+    private TroopCursor cursor;
+
+    public TroopNeighborList(double inputCutoff, double inputSkin) {
+        cutoff = inputCutoff;
+        skin = inputSkin;
+        troops = new BaseSingle[0];
+        offsets = new int[1];
+        neighbors = new BaseSingle[0];
+        enemyOffsets = new int[1];
+        enemyNeighbors = new BaseSingle[0];
+        order = new int[0];
+        builtX = new double[0];
+        builtY = new double[0];
+        cursor = new TroopCursor();
+    }
+
+    /**
+     * Update the neighbor list after the troop hasher has hashed the troops of the current frame.
+     */
+    public void update(TroopHasher troopHasher) {
+        ArrayList<BaseSingle> activeTroops = troopHasher.getActiveTroops();
+        rebuilt = skin <= 0 || troopHasher.isActiveSetChanged() || activeTroops.size() != numTroops ||
+                exceedsSkin();
+        if (!rebuilt) {
+            // The list still holds all candidates. Only the iteration order needs to follow the active troops, which
+            // are the same troops in the same order as in the previous frame.
+            return;
+        }
+
+        // Make sure the arrays can hold every troop
+        numTroops = activeTroops.size();
+        if (troops.length < numTroops) {
+            troops = new BaseSingle[numTroops];
+            offsets = new int[numTroops + 1];
+            enemyOffsets = new int[numTroops + 1];
+            order = new int[numTroops];
+            builtX = new double[numTroops];
+            builtY = new double[numTroops];
+        }
+
+        // Query the candidates of each troop and append them to the neighbors array.
+        numNeighbors = 0;
+        numCandidates = 0;
+        double squareRange = MathUtils.square(cutoff + skin);
+        for (int i = 0; i < numTroops; i++) {
+            BaseSingle troop = activeTroops.get(i);
+            troops[i] = troop;
+            order[i] = i;
+            builtX[i] = troop.getX();
+            builtY[i] = troop.getY();
+            offsets[i] = numNeighbors;
+
+            if (skin <= 0) {
+                troopHasher.queryCollisionObjects(troop, cursor);
+                for (BaseSingle candidate = cursor.next(); candidate != null; candidate = cursor.next()) {
+                    addNeighbor(candidate);
+                }
+                numCandidates += numNeighbors - offsets[i];
+            } else {
+                troopHasher.queryCollisionObjects(troop.getX(), troop.getY(), cutoff + skin, cursor);
+                for (BaseSingle candidate = cursor.next(); candidate != null; candidate = cursor.next()) {
+                    // The troop itself is not a candidate, as in the queries without a skin.
+                    if (candidate == troop) continue;
+                    numCandidates += 1;
+                    if (MathUtils.squareDistance(troop.getX(), troop.getY(), candidate.getX(), candidate.getY()) <
+                            squareRange) {
+                        addNeighbor(candidate);
+                    }
+                }
+            }
+        }
+        offsets[numTroops] = numNeighbors;
+
+        // Release references to troops that are no longer in the list.
+        for (int i = numTroops; i < troops.length; i++) troops[i] = null;
+        for (int i = numNeighbors; i < neighbors.length; i++) neighbors[i] = null;
+
+        partitionEnemies();
+    }
+
+    /**
+     * Build the enemy candidates of each troop from its candidates, keeping their order.
+     */
+    private void partitionEnemies() {
+        numEnemyNeighbors = 0;
+        for (int i = 0; i < numTroops; i++) {
+            SingleStore store = troops[i].getStore();
+            int faction = store.getFactionOrdinal(troops[i].getSingleId());
+            enemyOffsets[i] = numEnemyNeighbors;
+            for (int n = offsets[i]; n < offsets[i + 1]; n++) {
+                BaseSingle candidate = neighbors[n];
+                if (store.getFactionOrdinal(candidate.getSingleId()) == faction) continue;
+                if (numEnemyNeighbors == enemyNeighbors.length) {
+                    enemyNeighbors = Arrays.copyOf(enemyNeighbors, Math.max(16, enemyNeighbors.length * 2));
+                }
+                enemyNeighbors[numEnemyNeighbors] = candidate;
+                numEnemyNeighbors += 1;
+            }
+        }
+        enemyOffsets[numTroops] = numEnemyNeighbors;
+        Arrays.fill(enemyNeighbors, numEnemyNeighbors, enemyNeighbors.length, null);
+    }
+
+    /**
+     * Check whether some troop moved more than half of the skin since the list was built.
+     */
+    private boolean exceedsSkin() {
+        double squareHalfSkin = MathUtils.square(skin / 2);
+        for (int i = 0; i < numTroops; i++) {
+            if (MathUtils.squareDistance(troops[i].getX(), troops[i].getY(), builtX[i], builtY[i]) > squareHalfSkin) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Append a candidate to the neighbors array, growing it if needed.
+     */
+    private void addNeighbor(BaseSingle candidate) {
+        if (numNeighbors == neighbors.length) {
+            BaseSingle[] newNeighbors = new BaseSingle[Math.max(16, neighbors.length * 2)];
+            System.arraycopy(neighbors, 0, newNeighbors, 0, numNeighbors);
+            neighbors = newNeighbors;
+        }
+        neighbors[numNeighbors] = candidate;
+        numNeighbors += 1;
+    }
+
+    /**
+     * Shuffle the iteration order of the troops, and reorder activeTroops the same way. This shuffles activeTroops
+     * exactly like Collections.shuffle(activeTroops, random) would.
+     */
+    public void shuffleOrder(ArrayList<BaseSingle> activeTroops, Random random) {
+        for (int i = numTroops; i > 1; i--) {
+            int j = random.nextInt(i);
+            int temp = order[i - 1];
+            order[i - 1] = order[j];
+            order[j] = temp;
+        }
+        for (int k = 0; k < numTroops; k++) {
+            activeTroops.set(k, troops[order[k]]);
+        }
+    }
+
+    /**
+     * Start a query for the candidates of the troop at index i, streamed by the returned cursor.
+     */
+    public TroopCursor queryNeighbors(int i, TroopCursor inputCursor) {
+        inputCursor.startRange(neighbors, offsets[i], offsets[i + 1], null);
+        return inputCursor;
+    }
+
+    /**
+     * Start a query for the enemy candidates of the troop at index i, streamed by the returned cursor. These are the
+     * candidates of queryNeighbors() which belong to another faction, in the same order.
+     */
+    public TroopCursor queryEnemyNeighbors(int i, TroopCursor inputCursor) {
+        inputCursor.startRange(enemyNeighbors, enemyOffsets[i], enemyOffsets[i + 1], null);
+        return inputCursor;
+    }
+
+    /**
+     * Number of cells on each side of the cell of a troop covered by the hasher query of the troop, if the hasher cells
+     * had the given size.
+     */
+    public int getQueryExtension(int cellSize) {
+        if (skin <= 0) {
+            return (int) Math.ceil(cutoff / cellSize);
+        }
+        return (int) ((cutoff + skin) / cellSize) + 1;
+    }
+
+    /**
+     * Write the list to a snapshot. With a positive skin, the list and its iteration order carry over to the next
+     * frames, so they are part of the state of the game. The enemy candidates are derived from the candidates, so they
+     * are rebuilt when the snapshot is read.
+     */
+    public void writeSnapshot(SnapshotWriter writer) {
+        writer.writeInt(numTroops);
+        for (int i = 0; i < numTroops; i++) {
+            writer.writeSingle(troops[i]);
+            writer.writeInt(offsets[i]);
+            writer.writeInt(order[i]);
+            writer.writeDouble(builtX[i]);
+            writer.writeDouble(builtY[i]);
+        }
+        writer.writeInt(numNeighbors);
+        for (int i = 0; i < numNeighbors; i++) {
+            writer.writeSingle(neighbors[i]);
+        }
+        writer.writeBoolean(rebuilt);
+    }
+
+    /**
+     * Replace the list with the list of a snapshot written by writeSnapshot().
+     */
+    public void readSnapshot(SnapshotReader reader) throws IOException {
+        numTroops = reader.readInt();
+        troops = new BaseSingle[numTroops];
+        offsets = new int[numTroops + 1];
+        enemyOffsets = new int[numTroops + 1];
+        order = new int[numTroops];
+        builtX = new double[numTroops];
+        builtY = new double[numTroops];
+        for (int i = 0; i < numTroops; i++) {
+            troops[i] = reader.readSingle();
+            offsets[i] = reader.readInt();
+            order[i] = reader.readInt();
+            builtX[i] = reader.readDouble();
+            builtY[i] = reader.readDouble();
+        }
+        numNeighbors = reader.readInt();
+        offsets[numTroops] = numNeighbors;
+        neighbors = new BaseSingle[numNeighbors];
+        for (int i = 0; i < numNeighbors; i++) {
+            neighbors[i] = reader.readSingle();
+        }
+        rebuilt = reader.readBoolean();
+        partitionEnemies();
+    }
+
+    /**
+     * Getter and setters
+     */
+    public int getNumTroops() {
+        return numTroops;
+    }
+
+    public BaseSingle getTroop(int i) {
+        return troops[i];
+    }
+
+    public int getOrder(int k) {
+        return order[k];
+    }
+
+    public int getNumNeighbors() {
+        return numNeighbors;
+    }
+
+    public int getNumEnemyNeighbors() {
+        return numEnemyNeighbors;
+    }
+
+    public boolean isRebuilt() {
+        return rebuilt;
+    }
+
+    public int getNumCandidates() {
+        return numCandidates;
+    }
+}
@@ -0,0 +1,226 @@
+package model.algorithms;
+
+import model.enums.SingleState;
+import model.singles.BaseSingle;
+import model.singles.SingleStore;
+
+/**
+ * A reusable cursor over the troops hit by the segment (x1, y1) - (x2, y2), in the order the segment hits them. A troop
+ * is hit when the segment crosses the circle of its radius, at the distance from (x1, y1) where the segment enters the
+ * circle, or 0 if (x1, y1) is inside the circle.
+ *
+ * The cells crossed by the segment are visited in order with a DDA traversal (Amanatides and Woo). The point where the
+ * segment enters the circle of a troop lies in a crossed cell, and the center of the troop lies within the radius of
+ * that point, so the troop is hashed at most `extension` cells away from the crossed cell, where extension is the
+ * largest troop radius in cells. Each crossed cell therefore gathers the troops of the cells within extension of it,
+ * which are all new except for the strip already gathered by the previous crossed cells. Once a crossed cell has been
+ * gathered, every troop hit before the segment leaves the cell is known, so the troops are streamed in order without
+ * visiting the rest of the segment. A caller which stops at the first hit only pays for the cells up to that hit.
+ *
+ * Dead troops are skipped. As with TroopCursor, a cursor only supports one query at a time.
+ */
+public class TroopRayCursor {
+
+    private TroopHasher hasher;
+    private TroopCursor cellCursor;
+
+    // Segment, as a start point, a unit direction and a length.
+    private double startX;
+    private double startY;
+    private double unitX;
+    private double unitY;
+    private double length;
+
+    // DDA traversal. tMaxX and tMaxY are the distances along the segment at which it crosses the next vertical and
+    // horizontal cell border, and tDeltaX and tDeltaY the distances between two such borders. The hasher truncates
+    // coordinates towards 0, so cell 0 is twice as wide as the others and the borders of the cells below 0 are shifted
+    // by one cell, see cellBorder().
+    private int xHash;
+    private int yHash;
+    private int stepX;
+    private int stepY;
+    private double tMaxX;
+    private double tMaxY;
+    private double tDeltaX;
+    private double tDeltaY;
+    private int extension;
+    private boolean traversalDone;
+
+    // Troops hit that were gathered but not streamed yet, sorted by hit distance between pendingPos and numPending.
+    // Those hit before settledDistance are final, since every troop that the segment hits before that distance has been
+    // gathered.
+    private BaseSingle[] pending;
+    private double[] pendingDistances;
+    private int pendingPos;
+    private int numPending;
+    private double settledDistance;
+
+    // Hit distance of the last troop streamed.
+    private double hitDistance;
+
+    public TroopRayCursor() {
+        cellCursor = new TroopCursor();
+        pending = new BaseSingle[16];
+        pendingDistances = new double[16];
+    }
+
+    /**
+     * Start iterating over the troops of the hasher hit by the segment (x1, y1) - (x2, y2).
+     */
+    void start(TroopHasher inputHasher, double x1, double y1, double x2, double y2) {
+        hasher = inputHasher;
+        startX = x1;
+        startY = y1;
+        length = Math.sqrt((x2 - x1) * (x2 - x1) + (y2 - y1) * (y2 - y1));
+        unitX = length > 0 ? (x2 - x1) / length : 0;
+        unitY = length > 0 ? (y2 - y1) / length : 0;
+        for (int i = pendingPos; i < numPending; i++) pending[i] = null;
+        pendingPos = 0;
+        numPending = 0;
+
+        int xDiv = hasher.getXDiv();
+        int yDiv = hasher.getYDiv();
+        extension = (int) Math.ceil(hasher.getMaxTroopRadius() / Math.min(xDiv, yDiv));
+
+        // Set up the traversal in the cell containing (x1, y1), with the same rounding as the hasher.
+        xHash = (int) x1 / xDiv;
+        yHash = (int) y1 / yDiv;
+        stepX = unitX > 0 ? 1 : -1;
+        stepY = unitY > 0 ? 1 : -1;
+        if (unitX != 0) {
+            tMaxX = (cellBorder(xHash, stepX, xDiv) - x1) / unitX;
+            tDeltaX = xDiv / Math.abs(unitX);
+        } else {
+            tMaxX = Double.POSITIVE_INFINITY;
+            tDeltaX = Double.POSITIVE_INFINITY;
+        }
+        if (unitY != 0) {
+            tMaxY = (cellBorder(yHash, stepY, yDiv) - y1) / unitY;
+            tDeltaY = yDiv / Math.abs(unitY);
+        } else {
+            tMaxY = Double.POSITIVE_INFINITY;
+            tDeltaY = Double.POSITIVE_INFINITY;
+        }
+
+        gather(xHash - extension, xHash + extension, yHash - extension, yHash + extension);
+        settleCell();
+    }
+
+    /**
+     * Return the next troop hit by the segment, or null if there is no troop left.
+     */
+    public BaseSingle next() {
+        while (true) {
+            if (pendingPos < numPending && (traversalDone || pendingDistances[pendingPos] <= settledDistance)) {
+                hitDistance = pendingDistances[pendingPos];
+                BaseSingle troop = pending[pendingPos];
+                pending[pendingPos] = null;
+                pendingPos += 1;
+                return troop;
+            }
+            if (traversalDone) return null;
+            advance();
+        }
+    }
+
+    /**
+     * Move the traversal to the next crossed cell, and gather the strip of cells that it brings within extension.
+     */
+    private void advance() {
+        if (tMaxX < tMaxY) {
+            xHash += stepX;
+            tMaxX += xHash == 0 ? 2 * tDeltaX : tDeltaX;
+            int stripX = xHash + stepX * extension;
+            gather(stripX, stripX, yHash - extension, yHash + extension);
+        } else {
+            yHash += stepY;
+            tMaxY += yHash == 0 ? 2 * tDeltaY : tDeltaY;
+            int stripY = yHash + stepY * extension;
+            gather(xHash - extension, xHash + extension, stripY, stripY);
+        }
+        settleCell();
+    }
+
+    /**
+     * Coordinate of the border of a cell of the hasher, on the side of the given step. Cell k holds the coordinates
+     * that truncate to k when divided by div, which is [k * div, (k + 1) * div) above 0, (-div, div) for cell 0, and
+     * ((k - 1) * div, k * div] below 0.
+     */
+    private static double cellBorder(int hash, int step, int div) {
+        if (step > 0) {
+            return (hash >= 0 ? hash + 1 : hash) * (double) div;
+        }
+        return (hash > 0 ? hash : hash - 1) * (double) div;
+    }
+
+    /**
+     * Every troop hit before the segment leaves the current cell has been gathered.
+     */
+    private void settleCell() {
+        settledDistance = Math.min(Math.min(tMaxX, tMaxY), length);
+        traversalDone = settledDistance >= length;
+    }
+
+    /**
+     * Add the troops of cells [minXHash, maxXHash] x [minYHash, maxYHash] that the segment hits to the pending troops.
+     */
+    private void gather(int minXHash, int maxXHash, int minYHash, int maxYHash) {
+        cellCursor.startRectangle(hasher, minXHash, maxXHash, minYHash, maxYHash, null);
+        for (BaseSingle troop = cellCursor.next(); troop != null; troop = cellCursor.next()) {
+            SingleStore store = troop.getStore();
+            int id = troop.getSingleId();
+            if (store.getState(id) == SingleState.DEAD) continue;
+
+            // Distance along the segment of the closest point to the troop, and square distance from the troop to it.
+            double dx = store.getX(id) - startX;
+            double dy = store.getY(id) - startY;
+            double along = dx * unitX + dy * unitY;
+            double squareOffset = dx * dx + dy * dy - along * along;
+            double radius = troop.getRadius();
+            if (squareOffset > radius * radius) continue;
+            double halfChord = Math.sqrt(radius * radius - Math.max(squareOffset, 0));
+            if (along + halfChord < 0 || along - halfChord > length) continue;
+            addPending(troop, Math.max(along - halfChord, 0));
+        }
+    }
+
+    /**
+     * Insert a troop into the pending troops, keeping them sorted by hit distance. Troops hit at the same distance keep
+     * the order in which they were gathered.
+     */
+    private void addPending(BaseSingle troop, double distance) {
+        if (pendingPos == numPending) {
+            pendingPos = 0;
+            numPending = 0;
+        }
+        if (numPending == pending.length) {
+            // Compact before growing, the streamed troops at the front are not needed anymore.
+            int numLeft = numPending - pendingPos;
+            BaseSingle[] newPending = numLeft * 2 > pending.length ? new BaseSingle[pending.length * 2] : pending;
+            double[] newDistances = numLeft * 2 > pending.length ? new double[pending.length * 2] : pendingDistances;
+            System.arraycopy(pending, pendingPos, newPending, 0, numLeft);
+            System.arraycopy(pendingDistances, pendingPos, newDistances, 0, numLeft);
+            for (int i = numLeft; i < numPending; i++) newPending[i] = null;
+            pending = newPending;
+            pendingDistances = newDistances;
+            pendingPos = 0;
+            numPending = numLeft;
+        }
+        int i = numPending;
+        while (i > pendingPos && pendingDistances[i - 1] > distance) {
+            pending[i] = pending[i - 1];
+            pendingDistances[i] = pendingDistances[i - 1];
+            i--;
+        }
+        pending[i] = troop;
+        pendingDistances[i] = distance;
+        numPending += 1;
+    }
+
+    /**
+     * Getter and setters
+     */
+    public double getHitDistance() {
+        return hitDistance;
+    }
+}
@@ -0,0 +1,165 @@
+package model.algorithms;
+
+import model.units.BaseUnit;
+
+import java.util.ArrayList;
+
+/**
+ * Sweep and prune broadphase over the alive bounding boxes of the units. Each update computes the axis-aligned bounding
+ * box of every unit, sorts the boxes along the x axis, and sweeps through the sorted boxes to find every pair of units
+ * whose axis-aligned boxes overlap. Exact checks only need to be done on those pairs.
+ *
+ * Units move little between two frames, so the sort order of the previous frame is kept and fixed with an insertion
+ * sort, which is close to linear when the order barely changes.
+ */
+public class UnitBroadphase {
+
+    // Units in the order of the input list, and their axis-aligned bounding boxes.
+    private BaseUnit[] units;
+    private int numUnits;
+    private double[] minX;
+    private double[] maxX;
+    private double[] minY;
+    private double[] maxY;
+
+    // Indices of the units, sorted by minX.
+    private int[] sortedIndices;
+
+    // Candidate pairs of the last update. Pair p is made of units[pairFirst[p]] and units[pairSecond[p]].
+    private int[] pairFirst;
+    private int[] pairSecond;
+    private int numPairs;
+
+    public UnitBroadphase() {
+        units = new BaseUnit[0];
+        minX = new double[0];
+        maxX = new double[0];
+        minY = new double[0];
+        maxY = new double[0];
+        sortedIndices = new int[0];
+        pairFirst = new int[16];
+        pairSecond = new int[16];
+    }
+
+    /**
+     * Update the bounding boxes and the candidate pairs of the input units.
+     */
+    public void update(ArrayList<BaseUnit> inputUnits) {
+        updateUnits(inputUnits);
+
+        // Compute the axis-aligned bounding box of each unit
+        for (int i = 0; i < numUnits; i++) {
+            double[][] box = units[i].getAliveBoundingBox();
+            minX[i] = Math.min(Math.min(Math.min(box[0][0], box[1][0]), box[2][0]), box[3][0]);
+            maxX[i] = Math.max(Math.max(Math.max(box[0][0], box[1][0]), box[2][0]), box[3][0]);
+            minY[i] = Math.min(Math.min(Math.min(box[0][1], box[1][1]), box[2][1]), box[3][1]);
+            maxY[i] = Math.max(Math.max(Math.max(box[0][1], box[1][1]), box[2][1]), box[3][1]);
+        }
+
+        // Insertion sort by minX, starting from the order of the previous frame.
+        for (int a = 1; a < numUnits; a++) {
+            int index = sortedIndices[a];
+            double key = minX[index];
+            int b = a - 1;
+            while (b >= 0 && minX[sortedIndices[b]] > key) {
+                sortedIndices[b + 1] = sortedIndices[b];
+                b--;
+            }
+            sortedIndices[b + 1] = index;
+        }
+
+        // Sweep along the x axis. Boxes after box i in the sorted order overlap with it on the x axis as long as they
+        // start before it ends.
+        numPairs = 0;
+        for (int a = 0; a < numUnits; a++) {
+            int i = sortedIndices[a];
+            for (int b = a + 1; b < numUnits; b++) {
+                int j = sortedIndices[b];
+                if (minX[j] > maxX[i]) break;
+                if (minY[j] <= maxY[i] && minY[i] <= maxY[j]) {
+                    addPair(i, j);
+                }
+            }
+        }
+    }
+
+    /**
+     * Synchronize the units with the input list, keeping the sort order of the units that are still there. Units are
+     * only removed from or appended to the input list, so a single pass over both lists matches the units that stayed.
+     */
+    private void updateUnits(ArrayList<BaseUnit> inputUnits) {
+        boolean sameUnits = inputUnits.size() == numUnits;
+        for (int i = 0; sameUnits && i < numUnits; i++) {
+            sameUnits = inputUnits.get(i) == units[i];
+        }
+        if (sameUnits) return;
+
+        // Map the index of each old unit to its index in the input list, or -1 if it is gone.
+        int[] newIndices = new int[numUnits];
+        int q = 0;
+        for (int p = 0; p < numUnits; p++) {
+            if (q < inputUnits.size() && inputUnits.get(q) == units[p]) {
+                newIndices[p] = q;
+                q++;
+            } else {
+                newIndices[p] = -1;
+            }
+        }
+
+        // Keep the old sort order for the units that stayed, and append the new units at the end.
+        int newNumUnits = inputUnits.size();
+        int[] newSortedIndices = new int[newNumUnits];
+        int numSorted = 0;
+        for (int a = 0; a < numUnits; a++) {
+            int newIndex = newIndices[sortedIndices[a]];
+            if (newIndex >= 0) {
+                newSortedIndices[numSorted] = newIndex;
+                numSorted++;
+            }
+        }
+        for (int i = q; i < newNumUnits; i++) {
+            newSortedIndices[numSorted] = i;
+            numSorted++;
+        }
+
+        units = inputUnits.toArray(new BaseUnit[0]);
+        numUnits = newNumUnits;
+        sortedIndices = newSortedIndices;
+        minX = new double[numUnits];
+        maxX = new double[numUnits];
+        minY = new double[numUnits];
+        maxY = new double[numUnits];
+    }
+
+    /**
+     * Add pair (i, j) to the candidate pairs.
+     */
+    private void addPair(int i, int j) {
+        if (numPairs == pairFirst.length) {
+            int[] newPairFirst = new int[pairFirst.length * 2];
+            int[] newPairSecond = new int[pairSecond.length * 2];
+            System.arraycopy(pairFirst, 0, newPairFirst, 0, numPairs);
+            System.arraycopy(pairSecond, 0, newPairSecond, 0, numPairs);
+            pairFirst = newPairFirst;
+            pairSecond = newPairSecond;
+        }
+        pairFirst[numPairs] = i;
+        pairSecond[numPairs] = j;
+        numPairs++;
+    }
+
+    /**
+     * Getter and setters
+     */
+    public int getNumPairs() {
+        return numPairs;
+    }
+
+    public BaseUnit getPairFirst(int p) {
+        return units[pairFirst[p]];
+    }
+
+    public BaseUnit getPairSecond(int p) {
+        return units[pairSecond[p]];
+    }
+}
@@ -10,11 +10,13 @@ import model.events.EventBroadcaster;
 import model.events.EventType;
 import model.monitor.Monitor;
 import model.monitor.MonitorEnum;
+import model.monitor.MonitorPhase;
 import model.projectile_objects.*;
 import model.settings.GameSettings;
 import model.singles.*;
+import model.snapshot.SnapshotReader;
+import model.snapshot.SnapshotWriter;
 import model.surface.BaseSurface;
-import model.map_objects.Tree;
 import model.terrain.Terrain;
 import model.units.BaseUnit;
 import model.enums.UnitState;
@@ -23,15 +25,29 @@ import model.utils.MathUtils;
 import model.utils.PhysicUtils;
 import model.utils.SingleUtils;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 public class UnitModifier {
 
     private ProjectileHasher projectileHasher;
     private HitscanHasher hitscanHasher;
     private TroopHasher troopHasher;
+    private TroopNeighborList neighborList;
+
+    // Tunes the cell size of the troop hasher, if adaptive cell sizes are enabled.
+    private CellSizeTuner cellSizeTuner;
     private ConstructHasher constructHasher;
     private SurfaceHasher surfaceHasher;
+    private BarrierHeightField barrierHeightField;
+    private UnitVisibility unitVisibility;
+
+    // Surfaces containing the troop being checked, reused for every troop.
+    private ArrayList<BaseSurface> troopSurfaces;
+
+    // Cursor over the trees around the troop being checked.
+    private TreeCursor treeCursor;
     private ArrayList<BaseSingle> deadContainer;
     private HashSet<BaseUnit> unitToBeRemoved;
     private EventBroadcaster broadcaster;
@@ -43,27 +59,79 @@ public class UnitModifier {
     private ArrayList<Construct> constructs;
     private ArrayList<BaseSurface> surfaces;
     private HashMap<BaseUnit, Integer> recentlyChargedUnit;
+    private ForkJoinPool forkJoinPool;
+
+    // Number of frames processed so far.
+    private int frameCount;
+
+    // Attack target of each troop of the neighbor list, and the order in which attacks are applied, used by the two
+    // phase combat.
+    private BaseSingle[] attackTargets;
+    private long[] attackOrder;
+
+    // Reusable cursors for troop hasher queries. Explosions query the hasher while the candidates of the projectile
+    // are still being processed, so they use their own cursor. Hitscans walk the hasher along their path.
+    private TroopCursor troopCursor;
+    private TroopCursor explosionCursor;
+
+    // Number of collisions of the border troop being checked with its allies and with its enemies, reused for every
+    // troop.
+    private int[] borderCollisions;
+    private TroopRayCursor hitscanCursor;
+
+    // Collision candidates of the current projectile bucket, with their positions, and explosion candidates of the
+    // bucket. The counts are -1 until the candidates of the bucket are gathered.
+    private BaseSingle[] bucketCandidates;
+    private double[] bucketCandidateXs;
+    private double[] bucketCandidateYs;
+    private int numBucketCandidates;
+    private BaseSingle[] explosionCandidates;
+    private int numExplosionCandidates;
 
     public UnitModifier(ArrayList<BaseSingle> inputDeadContainer, Terrain inputTerrain,
                         ArrayList<Construct> inputConstructs, ArrayList<BaseSurface> inputSurfaces,
-                        GameSettings inputSettings, EventBroadcaster inputBroadcaster, Monitor inputMonitor) {
+                        GameSettings inputSettings, EventBroadcaster inputBroadcaster, Monitor inputMonitor,
+                        ForkJoinPool inputForkJoinPool) {
         broadcaster = inputBroadcaster;
+        forkJoinPool = inputForkJoinPool;
         monitor = inputMonitor;
         projectileHasher = new ProjectileHasher();
         hitscanHasher = new HitscanHasher();
-        troopHasher = new TroopHasher(UniversalConstants.X_HASH_DIV, UniversalConstants.Y_HASH_DIV, inputSettings);
+        troopHasher = new TroopHasher(
+                UniversalConstants.X_HASH_DIV, UniversalConstants.Y_HASH_DIV, inputTerrain, inputSettings);
+        neighborList = new TroopNeighborList(UniversalConstants.X_HASH_DIV, inputSettings.getNeighborListSkin());
+        if (inputSettings.isAdaptiveTroopCellSize()) {
+            cellSizeTuner = new CellSizeTuner(
+                    inputSettings.getMinTroopCellSize(), inputSettings.getMaxTroopCellSize(), inputMonitor);
+        }
         deadContainer = inputDeadContainer;
-        unitToBeRemoved = new HashSet<>();
+        unitToBeRemoved = new LinkedHashSet<>();
         unitList = new ArrayList<>();
         gameSettings = inputSettings;
         terrain = inputTerrain;
         constructs = inputConstructs;
         surfaces = inputSurfaces;
         constructHasher = new ConstructHasher(UniversalConstants.X_HASH_DIV, UniversalConstants.Y_HASH_DIV, constructs);
-        surfaceHasher = new SurfaceHasher(UniversalConstants.X_HASH_DIV_SURFACE_TREES, UniversalConstants.Y_HASH_DIV_SURFACE_TREES, surfaces);
-
-        // Initialize charged unit map.
-        recentlyChargedUnit = new HashMap<>();
+        surfaceHasher = new SurfaceHasher(UniversalConstants.X_HASH_DIV_SURFACE_RASTER,
+                UniversalConstants.Y_HASH_DIV_SURFACE_RASTER, surfaces);
+        barrierHeightField = new BarrierHeightField(terrain, surfaceHasher, constructHasher, constructs);
+        unitVisibility = new UnitVisibility(terrain, unitList, gameSettings, forkJoinPool);
+        treeCursor = new TreeCursor();
+        troopSurfaces = new ArrayList<>();
+
+        // Initialize charged unit map. The map is linked so that it is iterated in a reproducible order.
+        recentlyChargedUnit = new LinkedHashMap<>();
+
+        troopCursor = new TroopCursor();
+        borderCollisions = new int[2];
+        attackTargets = new BaseSingle[0];
+        attackOrder = new long[0];
+        bucketCandidates = new BaseSingle[0];
+        bucketCandidateXs = new double[0];
+        bucketCandidateYs = new double[0];
+        explosionCandidates = new BaseSingle[0];
+        explosionCursor = new TroopCursor();
+        hitscanCursor = new TroopRayCursor();
     }
 
     /**
@@ -82,20 +150,61 @@ public class UnitModifier {
      * - Unit state modifier: If two unit touch each other for a while, set both
      */
     public void modifyObjects() {
-        // First, update the hash based on current positions
-        troopHasher.hashObjects();
-        projectileHasher.updateObjects();
-        hitscanHasher.updateObjects();
+        frameCount += 1;
+        monitor.startPhase(MonitorPhase.MODIFY_OBJECTS);
+
+        // First, update the hash based on current positions, and the candidates of each troop. Troops don't move until
+        // the next frame, so the candidates are shared by the collision, combat and unit state modifiers.
+        monitor.startPhase(MonitorPhase.UPDATE_HASHERS);
+        updateHashers();
+        monitor.endPhase(MonitorPhase.UPDATE_HASHERS);
 
         // Then apply modifiers
+        monitor.startPhase(MonitorPhase.PROJECTILES_COLLISION);
         modifyProjectilesCollision();
+        monitor.endPhase(MonitorPhase.PROJECTILES_COLLISION);
+        monitor.startPhase(MonitorPhase.HITSCAN_COLLISION);
         modifyHitscanCollision();
+        monitor.endPhase(MonitorPhase.HITSCAN_COLLISION);
+        monitor.startPhase(MonitorPhase.TROOP_AND_SURFACE_COLLISION);
         modifyTroopsCollisionWithSurfaces();
+        monitor.endPhase(MonitorPhase.TROOP_AND_SURFACE_COLLISION);
+        monitor.startPhase(MonitorPhase.TROOPS_COLLISION);
         modifyTroopsCollision();
+        monitor.endPhase(MonitorPhase.TROOPS_COLLISION);
+        monitor.startPhase(MonitorPhase.COMBAT);
         modifyCombat();
+        monitor.endPhase(MonitorPhase.COMBAT);
+        monitor.startPhase(MonitorPhase.UNIT_STATE_MODIFIER);
         modifyUnitState();
+        monitor.endPhase(MonitorPhase.UNIT_STATE_MODIFIER);
+        monitor.startPhase(MonitorPhase.TROOP_AND_TREE_COLLISION);
         modifyTroopsTreesCollision();
+        monitor.endPhase(MonitorPhase.TROOP_AND_TREE_COLLISION);
+        monitor.startPhase(MonitorPhase.TROOP_AND_CONSTRUCT_COLLISION);
         modifyTroopsConstructsCollision();
+        monitor.endPhase(MonitorPhase.TROOP_AND_CONSTRUCT_COLLISION);
+
+        monitor.endPhase(MonitorPhase.MODIFY_OBJECTS);
+    }
+
+    /**
+     * Update the hashers and the neighbor list based on the current positions of the objects. The modifiers below rely
+     * on them being up to date.
+     */
+    void updateHashers() {
+        if (cellSizeTuner != null) {
+            cellSizeTuner.tune(frameCount, troopHasher, neighborList);
+        }
+        troopHasher.hashObjects();
+        monitor.count(MonitorEnum.TROOPS_REHASHED, troopHasher.getNumRehashedTroops());
+        neighborList.update(troopHasher);
+        if (neighborList.isRebuilt()) {
+            monitor.count(MonitorEnum.NEIGHBOR_QUERIES, neighborList.getNumTroops());
+            monitor.count(MonitorEnum.NEIGHBOR_CANDIDATES, neighborList.getNumCandidates());
+        }
+        projectileHasher.updateObjects(troopHasher.getXDiv(), troopHasher.getYDiv());
+        hitscanHasher.updateObjects();
     }
 
     /**
@@ -118,14 +227,14 @@ public class UnitModifier {
      * Modify collisions between troops and trees.
      */
     private void modifyTroopsTreesCollision() {
+        TreeIndex treeIndex = surfaceHasher.getTreeIndex();
+        if (treeIndex.getNumTrees() == 0) return;
         for (BaseSingle single : troopHasher.getActiveTroops()) {
-            ArrayList<Tree> trees =
-                    surfaceHasher.getCandidateTrees(single.getX(), single.getY());
-            if (trees == null) continue;
-            for (Tree tree : trees) {
-                if (PhysicUtils.checkPointCircleCollision(
-                        single.getX(), single.getY(), tree.getX(), tree.getY(), tree.getRadius())) {
-                    PhysicUtils.treePushSingle(tree, single);
+            treeIndex.queryTreesAt(single.getX(), single.getY(), treeCursor);
+            for (int slot = treeCursor.next(); slot >= 0; slot = treeCursor.next()) {
+                if (PhysicUtils.checkPointCircleCollision(single.getX(), single.getY(),
+                        treeIndex.getX(slot), treeIndex.getY(slot), treeIndex.getRadius(slot))) {
+                    PhysicUtils.treePushSingle(treeIndex.getTree(slot), single);
                 }
                 monitor.count(MonitorEnum.COLLISION_TROOP_AND_TREE);
             }
@@ -137,13 +246,10 @@ public class UnitModifier {
      */
     private void modifyTroopsCollisionWithSurfaces() {
         for (BaseSingle single : troopHasher.getActiveTroops()) {
-            ArrayList<BaseSurface> candidateSurfaces =
-                    surfaceHasher.getCandidateSurfaces(single.getX(), single.getY());
-            for (BaseSurface surface : candidateSurfaces) {
-                if (gameSettings.isUseRoundedSurfaceCollision() ||
-                        PhysicUtils.checkSurfaceAndTroopPositionCollision(surface, single)) {
-                    surface.impactSingle(single);
-                }
+            surfaceHasher.getSurfacesAt(single.getX(), single.getY(), gameSettings.isUseRoundedSurfaceCollision(),
+                    troopSurfaces);
+            for (BaseSurface surface : troopSurfaces) {
+                surface.impactSingle(single);
                 monitor.count(MonitorEnum.COLLISION_TROOP_AND_TERRAIN);
             }
         }
@@ -163,179 +269,228 @@ public class UnitModifier {
             double y1 = o.getStartY() + unitY * o.getMinRange();
             double x2 = o.getStartX() + unitX * o.getMaxRange();
             double y2 = o.getStartY() + unitY * o.getMaxRange();
-            ArrayList<BaseSingle> singles = troopHasher.getCollisionObjectsFromLine(x1, y1, x2, y2);
-            for (BaseSingle single : singles) {
-                if (PhysicUtils.checkLineCircleCollision(x1, y1, x2, y2, single.getX(), single.getY(), single.getRadius())) {
-                    single.setxVel(single.getxVel() +
-                            MathUtils.quickCos((float) o.getTheta()) * o.getPush());
-                    single.setyVel(single.getyVel() +
-                            MathUtils.quickSin((float) o.getTheta()) * o.getPush());
-                    single.switchState(SingleState.SLIDING);
-                    single.receiveDamage(o.getDamage(), o.getTheta());
-                    broadcaster.broadcastEvent(new Event(EventType.BLOOD_STAIN, single.getX(), single.getY(), single.getZ(), o.getTheta()));
-                    o.setImpactful(false);
-                    if (single.getState() == SingleState.DEAD) {
-                        deadContainer.add(single);
-                    }
-                    break;  // Break the loop because once the bullet hits, it is no long effective.
-                    // TODO: Consider adding a Hitscan that allow "shoot through mechanics". Even better if we specify
-                    //  how many objects the bullet can shoot through.
+            // Singles are hit in the order of the bullet path, and the bullet goes through as many singles as its
+            // penetration allows.
+            TroopRayCursor singles = troopHasher.queryTroopsAlongRay(x1, y1, x2, y2, hitscanCursor);
+            boolean hitSingle = false;
+            for (BaseSingle single = singles.next(); single != null; single = singles.next()) {
+                hitSingle = true;
+                single.setxVel(single.getxVel() + unitX * o.getPush());
+                single.setyVel(single.getyVel() + unitY * o.getPush());
+                single.switchState(SingleState.SLIDING);
+                single.receiveDamage(o.getDamage(), o.getTheta());
+                broadcaster.broadcastEvent(new Event(EventType.BLOOD_STAIN, single.getX(), single.getY(), single.getZ(), o.getTheta()));
+                if (single.getState() == SingleState.DEAD) {
+                    deadContainer.add(single);
                 }
+                o.hit();
+                if (!o.isImpactful()) break;
+            }
+
+            // The bullet has gone through every single on its path, and would hit the same singles again on the next
+            // frames of its lifetime.
+            if (hitSingle) {
+                o.setImpactful(false);
             }
         }
     }
 
     /**
-     * Modify collisions between objects and troops (arrow, spear tip)
+     * Modify collisions between objects and troops (arrow, spear tip). Objects are processed bucket by bucket, see
+     * ProjectileHasher. All objects of a bucket are in the same troop hasher cell, so they share the same collision
+     * candidates, which are gathered once per bucket, and their explosions share the same explosion candidates, which
+     * are gathered once per bucket for the largest explosion range of the bucket. Troops don't move until the end of
+     * the modifiers, so the candidates stay valid for the whole bucket.
+     */
+    void modifyProjectilesCollision() {
+        for (int bucket = 0; bucket < projectileHasher.getNumBuckets(); bucket++) {
+            int bucketStart = projectileHasher.getBucketStart(bucket);
+            int bucketEnd = projectileHasher.getBucketEnd(bucket);
+            numBucketCandidates = -1;
+            numExplosionCandidates = -1;
+            for (int k = bucketStart; k < bucketEnd; k++) {
+                modifyProjectileCollision(projectileHasher.getSortedObject(k), bucketStart, bucketEnd);
+            }
+        }
+    }
+
+    /**
+     * Modify collision between an object of the bucket [bucketStart, bucketEnd) and the troops.
      */
-    private void modifyProjectilesCollision() {
+    private void modifyProjectileCollision(BaseProjectile obj, int bucketStart, int bucketEnd) {
 
-        // Check collision of every object in the collision modifier and then modify information about such object
-        ArrayList<BaseProjectile> objects = projectileHasher.getObjects();
-        for (BaseProjectile obj : objects) {
-
-            // Check if the object makes any potential impact.
-            if (!obj.isImpactful()) continue;
-
-            // Get the collision candidate
-            // This way is potentially inaccurate but can save some resource.
-            ArrayList<BaseSingle> candidates = troopHasher.getCollisionObjects(obj.getX(), obj.getY());
-
-            // Modify velocity information based on collision with each candidate
-            // TODO(sonpham): Now that point-vs-circle collision is available. Modify the collision code to use that
-            //  method instead.
-            BaseSingle closestCandidate = null;
-            double closestDistance = Double.MAX_VALUE;
-            for (BaseSingle candidate : candidates) {
-                monitor.count(MonitorEnum.COLLISION_OBJECT);
-                double dx = candidate.getX() - obj.getX();
-                double dy = candidate.getY() - obj.getY();
-                double squareDistance = dx * dx + dy * dy;
-                if (squareDistance < closestDistance) {
-                    closestDistance = squareDistance;
-                    closestCandidate = candidate;
+        // Check if the object makes any potential impact.
+        if (!obj.isImpactful()) return;
+
+        // Get the collision candidate, shared with the other objects of the bucket.
+        // This way is potentially inaccurate but can save some resource.
+        if (numBucketCandidates < 0) {
+            gatherBucketCandidates(obj);
+        }
+
+        // Modify velocity information based on collision with each candidate
+        // TODO(sonpham): Now that point-vs-circle collision is available. Modify the collision code to use that
+        //  method instead.
+        BaseSingle closestCandidate = null;
+        double closestDistance = Double.MAX_VALUE;
+        double objX = obj.getX();
+        double objY = obj.getY();
+        for (int i = 0; i < numBucketCandidates; i++) {
+            double dx = bucketCandidateXs[i] - objX;
+            double dy = bucketCandidateYs[i] - objY;
+            double squareDistance = dx * dx + dy * dy;
+            if (squareDistance < closestDistance) {
+                closestDistance = squareDistance;
+                closestCandidate = bucketCandidates[i];
+            }
+        }
+        monitor.count(MonitorEnum.COLLISION_OBJECT, numBucketCandidates);
+
+        // Process based on the type of objects
+        if (obj instanceof Arrow) {
+            if (closestCandidate == null) return;
+            if (closestDistance < MathUtils.square(closestCandidate.getRadius()) / 4) {
+                // If distance to object is smaller than the diameter, count as an arrow hit
+                // Inflict some damage to the candidate
+                closestCandidate.receiveDamage(((Arrow) obj).getDamage(), obj.getAngle());
+                // Once hit, the arrow becomes dead
+                obj.setAlive(false);
+                if (closestCandidate.getState() != SingleState.DEAD) {
+                    // Cause extra delay if unit still alive
+                    // TODO: Internalize this to the soldier, count it as "injury delay"
+                    // closestCandidate.setCombatDelay(closestCandidate.getCombatDelay() + 5);
+
+                    // Apply arrow force
+                    double angle = obj.getAngle();
+                    double dx = MathUtils.quickCos((float) angle) * ((Arrow) obj).getPushDist();
+                    double dy = MathUtils.quickSin((float) angle) * ((Arrow) obj).getPushDist();
+                    closestCandidate.setxVel(closestCandidate.getxVel() + dx);
+                    closestCandidate.setyVel(closestCandidate.getyVel() + dy);
+
+                    // The soldier will absorb the arrow and carry it for a few frames.
+                    // TODO: Add bleeding effect to arrow.
+                    closestCandidate.absorbObject(obj);
+                } else {
+                    // Cause the unit to perform "deadMorph", which rearrange troops to match the frontline.
+                    deadContainer.add(closestCandidate);
                 }
             }
-
-            // Process based on the type of objects
-            if (obj instanceof Arrow) {
-                if (closestCandidate == null) continue;
-                if (closestDistance < MathUtils.square(closestCandidate.getRadius()) / 4) {
-                    // If distance to object is smaller than the diameter, count as an arrow hit
-                    // Inflict some damage to the candidate
-                    closestCandidate.receiveDamage(((Arrow) obj).getDamage(), obj.getAngle());
-                    // Once hit, the arrow becomes dead
-                    obj.setAlive(false);
-                    if (closestCandidate.getState() != SingleState.DEAD) {
-                        // Cause extra delay if unit still alive
-                        // TODO: Internalize this to the soldier, count it as "injury delay"
-                        // closestCandidate.setCombatDelay(closestCandidate.getCombatDelay() + 5);
-
-                        // Apply arrow force
-                        double angle = obj.getAngle();
-                        double dx = MathUtils.quickCos((float) angle) * ((Arrow) obj).getPushDist();
-                        double dy = MathUtils.quickSin((float) angle) * ((Arrow) obj).getPushDist();
-                        closestCandidate.setxVel(closestCandidate.getxVel() + dx);
-                        closestCandidate.setyVel(closestCandidate.getyVel() + dy);
-
-                        // The soldier will absorb the arrow and carry it for a few frames.
-                        // TODO: Add bleeding effect to arrow.
-                        closestCandidate.absorbObject(obj);
-                    } else {
-                        // Cause the unit to perform "deadMorph", which rearrange troops to match the frontline.
-                        deadContainer.add(closestCandidate);
-                    }
+        } else if (obj instanceof Ballista) {
+            if (closestCandidate == null) return;
+            boolean balistaHit = closestDistance < MathUtils.square(closestCandidate.getRadius()) / 4;
+
+            if (balistaHit) {
+                broadcaster.broadcastEvent(new Event(
+                        EventType.BALLISTA_HIT_FLESH, obj.getX(), obj.getY(),
+                        terrain.getZFromPos(obj.getX(), obj.getY())));
+
+                // Inflict explosion damage damage
+                explode(obj, ((Ballista) obj).getExplosionRange(), ((Ballista) obj).getExplosionPush(),
+                        ((Ballista) obj).getExplosionDamage(), bucketStart, bucketEnd);
+
+                // If distance to object is smaller than the diameter, count as an arrow hit
+                // Inflict some damage to the candidate
+                closestCandidate.receiveDamage(((Ballista) obj).getDamage(), obj.getAngle());
+
+                // Once hit, the arrow becomes dead
+                obj.setAlive(false);
+                if (closestCandidate.getState() != SingleState.DEAD) {
+                    // Apply arrow force
+                    double angle = obj.getAngle();
+                    double dx = MathUtils.quickCos((float) angle) * ((Ballista) obj).getPushForce();
+                    double dy = MathUtils.quickSin((float) angle) * ((Ballista) obj).getPushForce();
+                    closestCandidate.setxVel(closestCandidate.getxVel() + dx);
+                    closestCandidate.setyVel(closestCandidate.getyVel() + dy);
+
+                    // The soldier will absorb the arrow and carry it for a while
+                    closestCandidate.absorbObject(obj);
+                } else {
+                    // Cause the unit to perform "deadMorph", which rearrange troops to match the frontline.
+                    deadContainer.add(closestCandidate);
                 }
-            } else if (obj instanceof Ballista) {
-                if (closestCandidate == null) continue;
-                boolean balistaHit = closestDistance < MathUtils.square(closestCandidate.getRadius()) / 4;
-
-                if (balistaHit) {
-                    broadcaster.broadcastEvent(new Event(
-                            EventType.BALLISTA_HIT_FLESH, obj.getX(), obj.getY(),
-                            terrain.getZFromPos(obj.getX(), obj.getY())));
-
-                    // Inflict explosion damage damage
-                    ArrayList<BaseSingle> explosionCandidates = troopHasher.getCollisionObjects(
-                            obj.getX(), obj.getY(),
-                            ((Ballista) obj).getExplosionRange());
-                    double squareExplosionRange =
-                            ((Ballista) obj).getExplosionRange() * ((Ballista) obj).getExplosionRange();
-                    for (BaseSingle candidate : explosionCandidates) {
-                        double dx = candidate.getX() - obj.getX();
-                        double dy = candidate.getY() - obj.getY();
-                        double squareDistance = dx * dx + dy * dy;
-                        if (squareDistance < squareExplosionRange) {
-                            // Apply damage and send the objects flying
-                            double angle = MathUtils.atan2(dy, dx);
-                            candidate.setxVel(candidate.getxVel() +
-                                    MathUtils.quickCos((float) angle) * ((Ballista) obj).getExplosionPush());
-                            candidate.setyVel(candidate.getyVel() +
-                                    MathUtils.quickSin((float) angle) * ((Ballista) obj).getExplosionPush());
-                            candidate.switchState(SingleState.SLIDING);
-
-                            candidate.receiveDamage(((Ballista) obj).getExplosionDamage(), angle);
-                            if (candidate.getState() == SingleState.DEAD) {
-                                deadContainer.add(candidate);
-                            }
-                        }
-                    }
+            } else if (((Ballista) obj).isTouchGround()) {
+                broadcaster.broadcastEvent(new Event(
+                        EventType.BALLISTA_HIT_GROUND, obj.getX(), obj.getY(),
+                        terrain.getZFromPos(obj.getX(), obj.getY())));
+            }
+        } else if (obj instanceof Stone) {
+            if (((Stone) obj).isTouchGround()) {
+                // Inflict explosion damage damage
+                broadcaster.broadcastEvent(new Event(
+                        EventType.EXPLOSION, obj.getX(), obj.getY(),
+                        terrain.getZFromPos(obj.getX(), obj.getY())));
+                explode(obj, ((Stone) obj).getExplosionRange(), ((Stone) obj).getExplosionPush(),
+                        ((Stone) obj).getExplosionDamage(), bucketStart, bucketEnd);
+            }
+        }
+    }
 
-                    // If distance to object is smaller than the diameter, count as an arrow hit
-                    // Inflict some damage to the candidate
-                    closestCandidate.receiveDamage(((Ballista) obj).getDamage(), obj.getAngle());
-
-                    // Once hit, the arrow becomes dead
-                    obj.setAlive(false);
-                    if (closestCandidate.getState() != SingleState.DEAD) {
-                        // Apply arrow force
-                        double angle = obj.getAngle();
-                        double dx = MathUtils.quickCos((float) angle) * ((Ballista) obj).getPushForce();
-                        double dy = MathUtils.quickSin((float) angle) * ((Ballista) obj).getPushForce();
-                        closestCandidate.setxVel(closestCandidate.getxVel() + dx);
-                        closestCandidate.setyVel(closestCandidate.getyVel() + dy);
-
-                        // The soldier will absorb the arrow and carry it for a while
-                        closestCandidate.absorbObject(obj);
-                    } else {
-                        // Cause the unit to perform "deadMorph", which rearrange troops to match the frontline.
-                        deadContainer.add(closestCandidate);
-                    }
-                } else if (((Ballista) obj).isTouchGround()) {
-                    broadcaster.broadcastEvent(new Event(
-                            EventType.BALLISTA_HIT_GROUND, obj.getX(), obj.getY(),
-                            terrain.getZFromPos(obj.getX(), obj.getY())));
+    /**
+     * Gather the collision candidates of the bucket of an object, which are the collision candidates of the object.
+     */
+    private void gatherBucketCandidates(BaseProjectile obj) {
+        numBucketCandidates = 0;
+        TroopCursor candidates = troopHasher.queryCollisionObjects(obj.getX(), obj.getY(), troopCursor);
+        for (BaseSingle candidate = candidates.next(); candidate != null; candidate = candidates.next()) {
+            if (numBucketCandidates == bucketCandidates.length) {
+                int length = Math.max(16, 2 * bucketCandidates.length);
+                bucketCandidates = Arrays.copyOf(bucketCandidates, length);
+                bucketCandidateXs = Arrays.copyOf(bucketCandidateXs, length);
+                bucketCandidateYs = Arrays.copyOf(bucketCandidateYs, length);
+            }
+            bucketCandidates[numBucketCandidates] = candidate;
+            bucketCandidateXs[numBucketCandidates] = candidate.getX();
+            bucketCandidateYs[numBucketCandidates] = candidate.getY();
+            numBucketCandidates += 1;
+        }
+    }
+
+    /**
+     * Inflict the explosion of an object of the bucket [bucketStart, bucketEnd) on the troops within range, and send
+     * them flying. The explosion candidates are gathered at the first explosion of the bucket, with the largest range
+     * of the exploding objects of the bucket. Their query covers the query of every other explosion of the bucket, and
+     * streams the candidates of each of these queries in the same order, so every explosion hits the same troops in the
+     * same order as with its own query.
+     */
+    private void explode(BaseProjectile obj, double range, double push, double damage, int bucketStart, int bucketEnd) {
+        if (numExplosionCandidates < 0) {
+            double maxRange = 0;
+            for (int k = bucketStart; k < bucketEnd; k++) {
+                BaseProjectile other = projectileHasher.getSortedObject(k);
+                if (other instanceof Ballista) {
+                    maxRange = Math.max(maxRange, ((Ballista) other).getExplosionRange());
+                } else if (other instanceof Stone) {
+                    maxRange = Math.max(maxRange, ((Stone) other).getExplosionRange());
                 }
-            } else if (obj instanceof Stone) {
-                if (((Stone) obj).isTouchGround()) {
-                    // Inflict explosion damage damage
-                    broadcaster.broadcastEvent(new Event(
-                            EventType.EXPLOSION, obj.getX(), obj.getY(),
-                            terrain.getZFromPos(obj.getX(), obj.getY())));
-                    ArrayList<BaseSingle> explosionCandidates = troopHasher.getCollisionObjects(
-                            obj.getX(), obj.getY(),
-                            ((Stone) obj).getExplosionRange());
-                    double squareExplosionRange =
-                            ((Stone) obj).getExplosionRange() * ((Stone) obj).getExplosionRange();
-                    for (BaseSingle candidate : explosionCandidates) {
-                        double dx = candidate.getX() - obj.getX();
-                        double dy = candidate.getY() - obj.getY();
-                        double squareDistance = dx * dx + dy * dy;
-                        if (squareDistance < squareExplosionRange) {
-                            // Apply damage and send the objects flying
-                            double angle = MathUtils.atan2(dy, dx);
-                            candidate.setxVel(candidate.getxVel() +
-                                    MathUtils.quickCos((float) angle) * ((Stone) obj).getExplosionPush());
-                            candidate.setyVel(candidate.getyVel() +
-                                    MathUtils.quickSin((float) angle) * ((Stone) obj).getExplosionPush());
-                            candidate.switchState(SingleState.SLIDING);
-                            candidate.receiveDamage(((Stone) obj).getExplosionDamage(), angle);
-                            if (candidate.getState() == SingleState.DEAD) {
-                                // Cause the unit to perform "deadMorph", which rearrange troops to match the frontline.
-                                deadContainer.add(candidate);
-                            }
-                        }
-                    }
+            }
+            numExplosionCandidates = 0;
+            TroopCursor candidates =
+                    troopHasher.queryCollisionObjects(obj.getX(), obj.getY(), maxRange, explosionCursor);
+            for (BaseSingle candidate = candidates.next(); candidate != null; candidate = candidates.next()) {
+                if (numExplosionCandidates == explosionCandidates.length) {
+                    explosionCandidates = Arrays.copyOf(explosionCandidates, Math.max(16, 2 * numExplosionCandidates));
+                }
+                explosionCandidates[numExplosionCandidates] = candidate;
+                numExplosionCandidates += 1;
+            }
+        }
+
+        double squareExplosionRange = range * range;
+        for (int i = 0; i < numExplosionCandidates; i++) {
+            BaseSingle candidate = explosionCandidates[i];
+            double dx = candidate.getX() - obj.getX();
+            double dy = candidate.getY() - obj.getY();
+            double squareDistance = dx * dx + dy * dy;
+            if (squareDistance < squareExplosionRange) {
+                // Apply damage and send the objects flying
+                double angle = MathUtils.atan2(dy, dx);
+                candidate.setxVel(candidate.getxVel() + MathUtils.quickCos((float) angle) * push);
+                candidate.setyVel(candidate.getyVel() + MathUtils.quickSin((float) angle) * push);
+                candidate.switchState(SingleState.SLIDING);
+                candidate.receiveDamage(damage, angle);
+                if (candidate.getState() == SingleState.DEAD) {
+                    // Cause the unit to perform "deadMorph", which rearrange troops to match the frontline.
+                    deadContainer.add(candidate);
                 }
             }
         }
@@ -344,7 +499,8 @@ public class UnitModifier {
     /**
      * Modify unit position based on collision
      */
-    private void modifyTroopsCollision() {
+    void modifyTroopsCollision() {
+        int numChecks = 0;
 
         if (gameSettings.isBorderInwardCollision()) {
             // Check collision of every active unit from outside border and then inward.
@@ -357,9 +513,10 @@ public class UnitModifier {
 
                     // Get a troops
                     BaseSingle troop = troopsQueue.poll();
-                    long numCollisions = modifySingleTroopPosition(troop);
-                    int numAllyCollisions = MathUtils.getFirst(numCollisions);
-                    int numEnemyCollisions = MathUtils.getSecond(numCollisions);
+                    numChecks += modifySingleTroopPosition(
+                            troop, troopHasher.queryCollisionObjects(troop, troopCursor), borderCollisions);
+                    int numAllyCollisions = borderCollisions[0];
+                    int numEnemyCollisions = borderCollisions[1];
 
                     // If collide, all surrounding troops will also be in danger of colliding and is added to the collision
                     // queue.
@@ -386,42 +543,72 @@ public class UnitModifier {
             }
         } else {
             // Check collision of every object in the collision modifier and then modify information about such object
-            ArrayList<BaseSingle> troops = troopHasher.getActiveTroops();
-            for (BaseSingle troop : troops) {
-                modifySingleTroopPosition(troop);
+            // Each troop only modifies its own velocity, so in parallel mode ranges of troops are resolved concurrently.
+            if (gameSettings.isParallelCollision()) {
+                numChecks += forkJoinPool.invoke(new TroopCollisionTask(this, 0, neighborList.getNumTroops()));
+            } else {
+                numChecks += modifyTroopsPositionRange(0, neighborList.getNumTroops(), troopCursor);
             }
         }
+        monitor.count(MonitorEnum.COLLISION_TROOPS, numChecks);
     }
 
     /**
-     * Modify position of the troop due to collision with enemy and allies
-     * @return the number of collisions processed.
+     * Modify position of the troops at positions [from, to) of the neighbor list iteration order.
+     * @return the number of collision checks processed.
      */
-    private long modifySingleTroopPosition(BaseSingle troop) {
+    int modifyTroopsPositionRange(int from, int to, TroopCursor cursor) {
+        int numChecks = 0;
+        for (int k = from; k < to; k++) {
+            int i = neighborList.getOrder(k);
+            numChecks += modifySingleTroopPosition(
+                    neighborList.getTroop(i), neighborList.queryNeighbors(i, cursor), null);
+        }
+        return numChecks;
+    }
+
+    /**
+     * Modify position of the troop due to collision with enemy and allies. Only the velocity and speed of the troop
+     * are changed, so different troops can be processed concurrently.
+     * @param numCollisions if not null, receives the number of collisions with allies and with enemies.
+     * @return the number of collision checks processed.
+     */
+    private int modifySingleTroopPosition(BaseSingle troop, TroopCursor candidates, int[] numCollisions) {
 
         // Boolean value as to whether the troop collide at all
         int numAllyCollisions = 0;
         int numEnemyCollisions = 0;
+        int numChecks = 0;
 
-        // Get the collision candidate
-        ArrayList<BaseSingle> candidates = troopHasher.getCollisionObjects(troop);
+        // Attributes of the troop and of the candidates are read directly from the columns of the single store.
+        SingleStore store = troop.getStore();
+        int troopId = troop.getSingleId();
+        double troopX = store.getX(troopId);
+        double troopY = store.getY(troopId);
+        double troopRadius = store.getCollisionRadius(troopId);
+        double troopMass = store.getMass(troopId);
+        int troopFaction = store.getFactionOrdinal(troopId);
 
         // Modify velocity information based on collision with each candidate
-        double vxNew = troop.getxVel();
-        double vyNew = troop.getyVel();
+        double vxNew = store.getxVel(troopId);
+        double vyNew = store.getyVel(troopId);
         double vxAlly = vxNew;
         double vyAlly = vyNew;
         double vxEnemy = vxNew;
         double vyEnemy = vyNew;
-        for (BaseSingle candidate : candidates) {
-            if ((!gameSettings.isAllyCollision() && candidate.getPoliticalFaction() == troop.getPoliticalFaction()) &&
+        for (BaseSingle candidate = candidates.next(); candidate != null; candidate = candidates.next()) {
+            int candidateId = candidate.getSingleId();
+            boolean sameFaction = store.getFactionOrdinal(candidateId) == troopFaction;
+            if ((!gameSettings.isAllyCollision() && sameFaction) &&
                     !troop.getUnit().isInContactWithEnemy() &&
                     !(gameSettings.isCavalryCollision() && (candidate instanceof CavalrySingle))) continue;
-            double dx = candidate.getX() - troop.getX();
-            double dy = candidate.getY() - troop.getY();
+            double candidateX = store.getX(candidateId);
+            double candidateY = store.getY(candidateId);
+            double dx = candidateX - troopX;
+            double dy = candidateY - troopY;
             double squareDistance = dx*dx + dy*dy;
-            double minDist = candidate.getCollisionRadius() + troop.getCollisionRadius();
-            if (candidate.getPoliticalFaction() == troop.getPoliticalFaction()) {
+            double minDist = store.getCollisionRadius(candidateId) + troopRadius;
+            if (sameFaction) {
                 switch (candidate.getUnit().getState()) {
                     case FIGHTING:
                         minDist *= GameplayConstants.ALLY_COLLISION_RATIO_FIGHTING;
@@ -441,52 +628,57 @@ public class UnitModifier {
 
                 // If distance < minDist, they are collided
                 double angle = MathUtils.atan2(dy, dx);
-                double targetX = troop.getX() + MathUtils.quickCos((float) angle) * minDist;
-                double targetY = troop.getY() + MathUtils.quickSin((float) angle) * minDist;
+                double targetX = troopX + MathUtils.quickCos((float) angle) * minDist;
+                double targetY = troopY + MathUtils.quickSin((float) angle) * minDist;
                 double ax;
                 double ay;
-                if (troop.getPoliticalFaction() == candidate.getPoliticalFaction()) {
+                if (sameFaction) {
                     numAllyCollisions += 1;
-                    ax = (targetX - candidate.getX()) * UniversalConstants.PUSH_SPRING_ALLY;
-                    ay = (targetY - candidate.getY()) * UniversalConstants.PUSH_SPRING_ALLY;
+                    ax = (targetX - candidateX) * UniversalConstants.PUSH_SPRING_ALLY;
+                    ay = (targetY - candidateY) * UniversalConstants.PUSH_SPRING_ALLY;
                 } else {
                     numEnemyCollisions += 1;
-                    ax = (targetX - candidate.getX()) * UniversalConstants.PUSH_SPRING_ENEMY;
-                    ay = (targetY - candidate.getY()) * UniversalConstants.PUSH_SPRING_ENEMY;
+                    ax = (targetX - candidateX) * UniversalConstants.PUSH_SPRING_ENEMY;
+                    ay = (targetY - candidateY) * UniversalConstants.PUSH_SPRING_ENEMY;
                 }
-                ax *= candidate.getSingleStats().mass / troop.getSingleStats().mass;
+                ax *= store.getMass(candidateId) / troopMass;
                 vxNew -= ax;
                 vyNew -= ay;
-                if (troop.getPoliticalFaction() == candidate.getPoliticalFaction()) {
+                if (sameFaction) {
                     vxAlly -= ax;
                     vyAlly -= ay;
                 }
-                if (troop.getPoliticalFaction() != candidate.getPoliticalFaction()) {
+                if (!sameFaction) {
                     vxEnemy -= ax;
                     vyEnemy -= ay;
                 }
             }
-            monitor.count(MonitorEnum.COLLISION_TROOPS);
+            numChecks += 1;
         }
         // Set the new speed
-        troop.setxVel(vxNew);
-        troop.setyVel(vyNew);
+        store.setxVel(troopId, vxNew);
+        store.setyVel(troopId, vyNew);
         double pushedSpeed = MathUtils.quickRoot2((float)(vxNew * vxNew + vyNew * vyNew));
-        if (pushedSpeed < troop.getSpeed()) {
+        double speed = store.getSpeed(troopId);
+        if (pushedSpeed < speed) {
             if (troop instanceof CavalrySingle) {
-                troop.setSpeed(pushedSpeed + 0.1 * (troop.getSpeed() - pushedSpeed));
+                store.setSpeed(troopId, pushedSpeed + 0.1 * (speed - pushedSpeed));
             } else {
-                troop.setSpeed(pushedSpeed + 0.2 * (troop.getSpeed() - pushedSpeed));
+                store.setSpeed(troopId, pushedSpeed + 0.2 * (speed - pushedSpeed));
             }
         }
 
-        return MathUtils.pairInt(numAllyCollisions, numEnemyCollisions);
+        if (numCollisions != null) {
+            numCollisions[0] = numAllyCollisions;
+            numCollisions[1] = numEnemyCollisions;
+        }
+        return numChecks;
     }
 
     /**
      * Modify the state of each unit.
      */
-    private void modifyUnitState() {
+    void modifyUnitState() {
 
         // Update the charge buffer maps
         ArrayList<BaseUnit> unitsToBeMovedFromBuffer = new ArrayList<>();
@@ -503,24 +695,34 @@ public class UnitModifier {
         }
 
         // Check the vision of each unit.
+        monitor.startPhase(MonitorPhase.UNIT_VISION);
+        if (gameSettings.isProcessUnitVision()) {
+            monitor.count(MonitorEnum.UNIT_VISION_PAIRS, unitVisibility.update());
+        }
         for (BaseUnit unit : unitList) {
             if (gameSettings.isProcessUnitVision()) {
-                unit.setVisibleUnits(PhysicUtils.checkUnitVision(unit, unitList, terrain));
+                // Each unit keeps its own list of visible units from one frame to the next.
+                ArrayList<BaseUnit> visibleUnits = unit.getVisibleUnits();
+                if (visibleUnits == null || visibleUnits == unitList) {
+                    visibleUnits = new ArrayList<>();
+                    unit.setVisibleUnits(visibleUnits);
+                }
+                unitVisibility.getVisibleUnits(unit, unitList, visibleUnits);
             } else {
                 unit.setVisibleUnits(unitList);
             }
         }
+        monitor.endPhase(MonitorPhase.UNIT_VISION);
 
         // Dictionary of each unit and whether they touched the enemy.
         HashMap<BaseUnit, BaseUnit> unitTouchEnemy = new HashMap<>();
 
         // Check each troop in the unit
-        ArrayList<BaseSingle> objects = troopHasher.getActiveTroops();
-        for (BaseSingle obj : objects) {
-            ArrayList<BaseSingle> candidates = troopHasher.getCollisionObjects(obj);
-            for (BaseSingle candidate : candidates) {
-                // Skip collision check for ally if game setting allows.
-                if (candidate.getPoliticalFaction() == obj.getPoliticalFaction()) continue;
+        for (int k = 0; k < neighborList.getNumTroops(); k++) {
+            int i = neighborList.getOrder(k);
+            BaseSingle obj = neighborList.getTroop(i);
+            TroopCursor candidates = neighborList.queryEnemyNeighbors(i, troopCursor);
+            for (BaseSingle candidate = candidates.next(); candidate != null; candidate = candidates.next()) {
                 // No need to check if both already loses patience
                 if (unitTouchEnemy.containsKey(candidate.getUnit()) && unitTouchEnemy.containsKey(obj.getUnit())) continue;
                 // Check if opposing troop in attack range.
@@ -587,40 +789,27 @@ public class UnitModifier {
     /**
      * Modify unit stats based on combat
      */
-    private void modifyCombat() {
+    void modifyCombat() {
+        if (gameSettings.isParallelCombat()) {
+            modifyCombatInTwoPhases();
+            return;
+        }
+
         // Check collision of every object in the collision modifier and then modify information about such object
         ArrayList<BaseSingle> singles = troopHasher.getActiveTroops();
 
         // Shuffle to randomly settle tie between two singles about to hit at the same time.
-        Collections.shuffle(singles);
-        for (BaseSingle single : singles) {
-
-            // Ignore dead or routing soldiers. They can't deal damage.
-            if (single.getState() == SingleState.DEAD || single.getState() == SingleState.ROUTING) continue;
+        neighborList.shuffleOrder(singles, MathUtils.random);
+        for (int k = 0; k < neighborList.getNumTroops(); k++) {
+            int i = neighborList.getOrder(k);
+            BaseSingle single = neighborList.getTroop(i);
 
-
-            // Single must recharge attack delay
-            if (single.getCombatDelay() > 0) {
-                continue;
-            }
+            // Ignore dead or routing soldiers, and soldiers that must recharge attack delay.
+            if (!isReadyToAttack(single)) continue;
 
             // If the single is ready to attack, then it will hit the closest candidate, and cause an extra delay to the
             // attacked candidate.
-            ArrayList<BaseSingle> candidates = troopHasher.getCollisionObjects(single);
-            double minSquareDist = MathUtils.MAX_DOUBLE;
-            BaseSingle attackCandidate = null;
-            for (BaseSingle candidate : candidates) {
-                if (candidate.getPoliticalFaction() == single.getPoliticalFaction()) continue;
-                if (candidate.getState() == SingleState.DEAD) continue;
-                double squareDist = SingleUtils.squareDistBetweenSingles(single, candidate);
-                double squareCombatRange = MathUtils.square(single.getRadius() / 2 + single.getCombatRangeStat());
-                if (squareDist < minSquareDist) {
-                    minSquareDist = squareDist;
-                    if (minSquareDist < squareCombatRange) {
-                        attackCandidate = candidate;
-                    }
-                }
-            }
+            BaseSingle attackCandidate = findAttackTarget(single, neighborList.queryEnemyNeighbors(i, troopCursor));
 
             // If there is an attack candidate in range, inflict damage.
             if (attackCandidate != null) {
@@ -637,6 +826,139 @@ public class UnitModifier {
         }
     }
 
+    /**
+     * Modify unit stats based on combat, in two phases. In the first phase, every single that is ready to attack picks
+     * its target in parallel, while nothing else changes. In the second phase, the attacks are applied one by one in
+     * the order of a hash of the attacker id, the defender id and the frame number. The result therefore doesn't depend
+     * on the number of threads or on the random generator, and a battle replays identically.
+     * A single killed during the second phase doesn't attack anymore, and attacks on it are lost.
+     */
+    private void modifyCombatInTwoPhases() {
+        int numTroops = neighborList.getNumTroops();
+        if (attackTargets.length < numTroops) {
+            attackTargets = new BaseSingle[numTroops];
+            attackOrder = new long[numTroops];
+        }
+
+        // First phase: pick the targets.
+        forkJoinPool.invoke(new TroopCombatTask(this, 0, numTroops));
+
+        // Sort the attacks. The top half of each key is the hash, the bottom half is the index of the attacker, which
+        // settles the rare ties in the hash.
+        int numAttacks = 0;
+        long frameHash = MathUtils.mix64(frameCount);
+        for (int i = 0; i < numTroops; i++) {
+            if (attackTargets[i] == null) continue;
+            long hash = MathUtils.mix64(frameHash ^ MathUtils.pairInt(
+                    neighborList.getTroop(i).getSingleId(), attackTargets[i].getSingleId()));
+            attackOrder[numAttacks] = (hash & 0xFFFFFFFF00000000L) | i;
+            numAttacks += 1;
+        }
+        Arrays.sort(attackOrder, 0, numAttacks);
+
+        // Second phase: apply the attacks.
+        for (int a = 0; a < numAttacks; a++) {
+            int i = (int) attackOrder[a];
+            BaseSingle single = neighborList.getTroop(i);
+            BaseSingle attackCandidate = attackTargets[i];
+            attackTargets[i] = null;
+            if (single.getState() == SingleState.DEAD || attackCandidate.getState() == SingleState.DEAD) continue;
+
+            // Inflict some damage and reset combat delay
+            single.attack(attackCandidate);
+            single.resetCombatDelay();
+
+            if (attackCandidate.getState() == SingleState.DEAD) {
+                // Cause the unit to perform "deadMorph", which is to rearange troops to match the frontline.
+                deadContainer.add(attackCandidate);
+            }
+        }
+    }
+
+    /**
+     * Pick the attack target of the troops at indices [from, to) of the neighbor list. Only attackTargets[from] ...
+     * attackTargets[to - 1] are modified, so different ranges can be processed concurrently.
+     */
+    void selectAttackTargetsRange(int from, int to, TroopCursor cursor) {
+        for (int i = from; i < to; i++) {
+            BaseSingle single = neighborList.getTroop(i);
+            if (isReadyToAttack(single)) {
+                attackTargets[i] = findAttackTarget(single, neighborList.queryEnemyNeighbors(i, cursor));
+            }
+        }
+    }
+
+    /**
+     * A single can attack if it is not dead or routing, and its attack delay is recharged.
+     */
+    private boolean isReadyToAttack(BaseSingle single) {
+        if (single.getState() == SingleState.DEAD || single.getState() == SingleState.ROUTING) return false;
+        return single.getCombatDelay() <= 0;
+    }
+
+    /**
+     * Return the closest alive candidate if it is within combat range of the single, or null otherwise. The candidates
+     * must all be enemies of the single.
+     */
+    private BaseSingle findAttackTarget(BaseSingle single, TroopCursor candidates) {
+        double minSquareDist = MathUtils.MAX_DOUBLE;
+        BaseSingle attackCandidate = null;
+        for (BaseSingle candidate = candidates.next(); candidate != null; candidate = candidates.next()) {
+            if (candidate.getState() == SingleState.DEAD) continue;
+            double squareDist = SingleUtils.squareDistBetweenSingles(single, candidate);
+            double squareCombatRange = MathUtils.square(single.getRadius() / 2 + single.getCombatRangeStat());
+            if (squareDist < minSquareDist) {
+                minSquareDist = squareDist;
+                if (minSquareDist < squareCombatRange) {
+                    attackCandidate = candidate;
+                }
+            }
+        }
+        return attackCandidate;
+    }
+
+    /**
+     * Write the state of the modifier to a snapshot: the frame count, the charge buffers, the units, the projectiles,
+     * the hitscans, and the state of the troop hasher and of the neighbor list. The construct and surface hashers only
+     * depend on the configs, and the combat buffers are rebuilt every frame.
+     */
+    public void writeSnapshot(SnapshotWriter writer) {
+        writer.writeInt(frameCount);
+        writer.writeInt(recentlyChargedUnit.size());
+        for (Map.Entry<BaseUnit, Integer> entry : recentlyChargedUnit.entrySet()) {
+            writer.writeUnit(entry.getKey());
+            writer.writeInt(entry.getValue());
+        }
+        writer.writeUnits(unitToBeRemoved);
+        writer.writeUnits(unitList);
+        projectileHasher.writeSnapshot(writer);
+        hitscanHasher.writeSnapshot(writer);
+        troopHasher.writeSnapshot(writer);
+        neighborList.writeSnapshot(writer);
+    }
+
+    /**
+     * Replace the state of the modifier with the state of a snapshot written by writeSnapshot().
+     */
+    public void readSnapshot(SnapshotReader reader) throws IOException {
+        frameCount = reader.readInt();
+        recentlyChargedUnit.clear();
+        int numChargedUnits = reader.readInt();
+        for (int i = 0; i < numChargedUnits; i++) {
+            BaseUnit unit = reader.readUnit();
+            recentlyChargedUnit.put(unit, reader.readInt());
+        }
+        unitToBeRemoved.clear();
+        unitToBeRemoved.addAll(reader.readUnits());
+        unitList.clear();
+        unitList.addAll(reader.readUnits());
+        unitVisibility.invalidate();
+        projectileHasher.readSnapshot(reader);
+        hitscanHasher.readSnapshot(reader);
+        troopHasher.readSnapshot(reader);
+        neighborList.readSnapshot(reader);
+    }
+
     /**
      * Getter and setters
      */
@@ -644,6 +966,10 @@ public class UnitModifier {
         return troopHasher;
     }
 
+    public TroopNeighborList getNeighborList() {
+        return neighborList;
+    }
+
     public ProjectileHasher getProjectileHasher() {
         return projectileHasher;
     }
@@ -651,4 +977,20 @@ public class UnitModifier {
     public HitscanHasher getHitscanHasher() {
         return hitscanHasher;
     }
+
+    public SurfaceHasher getSurfaceHasher() {
+        return surfaceHasher;
+    }
+
+    public ConstructHasher getConstructHasher() {
+        return constructHasher;
+    }
+
+    public BarrierHeightField getBarrierHeightField() {
+        return barrierHeightField;
+    }
+
+    public UnitVisibility getUnitVisibility() {
+        return unitVisibility;
+    }
 }
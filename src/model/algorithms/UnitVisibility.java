@@ -0,0 +1,230 @@
+package model.algorithms;
+
+import model.settings.GameSettings;
+import model.terrain.Terrain;
+import model.units.BaseUnit;
+import model.utils.PhysicUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Shared visibility between the units, for the unit vision, the AI views and the sound labels. Lines of sight are
+ * symmetric, so the visibility is kept as the upper triangle of a bit matrix over the units, where bit j of row i is
+ * the line of sight from unit i to unit j, for i < j.
+ *
+ * Each unit remembers where it was when its pairs were last evaluated. On each update, only the pairs of the units that
+ * moved by more than the threshold of the game settings since then are evaluated again, so updating several times per
+ * frame, or on frames where few units move, is cheap. With a threshold of 0, pairs are evaluated again as soon as
+ * either unit moves at all, and the visibility is always that of the current positions.
+ */
+public class UnitVisibility {
+
+    private Terrain terrain;
+    private GameSettings gameSettings;
+    private ForkJoinPool forkJoinPool;
+
+    // Units in the order of the unit list, and their index in that order.
+    private ArrayList<BaseUnit> unitList;
+    private BaseUnit[] units;
+    private int numUnits;
+    private IdentityHashMap<BaseUnit, Integer> unitIndices;
+
+    // Upper triangle of the visibility matrix. Bit j of row i is bit (j & 63) of
+    // visibleWords[i * wordsPerRow + j / 64].
+    private long[] visibleWords;
+    private int wordsPerRow;
+
+    // Position of each unit at the last evaluation of its pairs, and the units to evaluate again on this update.
+    private double[] evaluatedX;
+    private double[] evaluatedY;
+    private double[] evaluatedZ;
+    private boolean[] moved;
+    private int[] movedIndices;
+    private int numMoved;
+
+    public UnitVisibility(Terrain inputTerrain, ArrayList<BaseUnit> inputUnitList, GameSettings inputSettings,
+                          ForkJoinPool inputForkJoinPool) {
+        terrain = inputTerrain;
+        unitList = inputUnitList;
+        gameSettings = inputSettings;
+        forkJoinPool = inputForkJoinPool;
+        units = new BaseUnit[0];
+        unitIndices = new IdentityHashMap<>();
+        visibleWords = new long[0];
+        evaluatedX = new double[0];
+        evaluatedY = new double[0];
+        evaluatedZ = new double[0];
+        moved = new boolean[0];
+        movedIndices = new int[0];
+    }
+
+    /**
+     * Evaluate again the pairs of the units that moved since the last evaluation of their pairs.
+     * @return the number of pairs evaluated.
+     */
+    public int update() {
+        updateUnits();
+
+        // Find the units that moved by more than the threshold. Units that were never evaluated are at NaN, and always
+        // count as moved.
+        double threshold = gameSettings.getUnitVisionMoveThreshold();
+        numMoved = 0;
+        for (int i = 0; i < numUnits; i++) {
+            double dx = units[i].getAverageX() - evaluatedX[i];
+            double dy = units[i].getAverageY() - evaluatedY[i];
+            double dz = units[i].getAverageZ() - evaluatedZ[i];
+            if (threshold == 0) {
+                moved[i] = !(dx == 0 && dy == 0 && dz == 0);
+            } else {
+                moved[i] = !(dx * dx + dy * dy + dz * dz <= threshold * threshold);
+            }
+            if (moved[i]) {
+                evaluatedX[i] = units[i].getAverageX();
+                evaluatedY[i] = units[i].getAverageY();
+                evaluatedZ[i] = units[i].getAverageZ();
+                movedIndices[numMoved] = i;
+                numMoved++;
+            }
+        }
+        if (numMoved == 0) return 0;
+
+        // Each row is only written by the evaluation of its own pairs, so rows can be evaluated concurrently.
+        if (gameSettings.isParallelUnitVision()) {
+            return forkJoinPool.invoke(new UnitVisionTask(this, 0, numUnits));
+        }
+        return updateRows(0, numUnits);
+    }
+
+    /**
+     * Evaluate again the pairs (i, j) with i < j of rows [from, to) where either unit moved.
+     * @return the number of pairs evaluated.
+     */
+    int updateRows(int from, int to) {
+        int numPairs = 0;
+        for (int i = from; i < to; i++) {
+            if (moved[i]) {
+                for (int j = i + 1; j < numUnits; j++) {
+                    setVisible(i, j, PhysicUtils.checkLineOfSight(units[i], units[j], terrain));
+                }
+                numPairs += numUnits - i - 1;
+            } else {
+                for (int k = 0; k < numMoved; k++) {
+                    int j = movedIndices[k];
+                    if (j <= i) continue;
+                    setVisible(i, j, PhysicUtils.checkLineOfSight(units[i], units[j], terrain));
+                    numPairs++;
+                }
+            }
+        }
+        return numPairs;
+    }
+
+    /**
+     * Synchronize the units with the unit list. If the units changed, every pair is evaluated again on this update.
+     */
+    private void updateUnits() {
+        boolean sameUnits = unitList.size() == numUnits;
+        for (int i = 0; sameUnits && i < numUnits; i++) {
+            sameUnits = unitList.get(i) == units[i];
+        }
+        if (sameUnits) return;
+
+        units = unitList.toArray(new BaseUnit[0]);
+        numUnits = units.length;
+        unitIndices.clear();
+        for (int i = 0; i < numUnits; i++) {
+            unitIndices.put(units[i], i);
+        }
+        wordsPerRow = (numUnits + 63) >>> 6;
+        visibleWords = new long[numUnits * wordsPerRow];
+        evaluatedX = new double[numUnits];
+        evaluatedY = new double[numUnits];
+        evaluatedZ = new double[numUnits];
+        moved = new boolean[numUnits];
+        movedIndices = new int[numUnits];
+        invalidate();
+    }
+
+    /**
+     * Evaluate every pair again on the next update, for instance after the terrain changed.
+     */
+    public void invalidate() {
+        for (int i = 0; i < numUnits; i++) {
+            evaluatedX[i] = Double.NaN;
+            evaluatedY[i] = Double.NaN;
+            evaluatedZ[i] = Double.NaN;
+        }
+    }
+
+    private void setVisible(int i, int j, boolean visible) {
+        int word = i * wordsPerRow + (j >>> 6);
+        if (visible) {
+            visibleWords[word] |= 1L << j;
+        } else {
+            visibleWords[word] &= ~(1L << j);
+        }
+    }
+
+    private boolean isVisible(int index, int queryIndex) {
+        int i = Math.min(index, queryIndex);
+        int j = Math.max(index, queryIndex);
+        return (visibleWords[i * wordsPerRow + (j >>> 6)] & (1L << j)) != 0;
+    }
+
+    /**
+     * Index of the unit, or -1 if it is not in the unit list. The units from hint on are tried first, which finds the
+     * units of a list in the order of the unit list without any lookup.
+     */
+    private int indexOf(BaseUnit unit, int hint) {
+        if (hint < numUnits && units[hint] == unit) return hint;
+        Integer index = unitIndices.get(unit);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Check whether the query unit was visible from the unit at the last update. Units that are not in the unit list
+     * are checked directly.
+     */
+    public boolean isVisible(BaseUnit unit, BaseUnit queryUnit) {
+        int index = indexOf(unit, 0);
+        int queryIndex = indexOf(queryUnit, 0);
+        if (index < 0 || queryIndex < 0) {
+            return PhysicUtils.checkLineOfSight(unit, queryUnit, terrain);
+        }
+        return isVisible(index, queryIndex);
+    }
+
+    /**
+     * Fill the visible units with the candidates visible from the unit, in the order of the candidates, leaving out the
+     * unit itself and the dead units, as PhysicUtils.checkUnitVision does. The list is cleared first, so callers can
+     * reuse the same list every frame.
+     */
+    public void getVisibleUnits(BaseUnit unit, Collection<BaseUnit> candidates, ArrayList<BaseUnit> visibleUnits) {
+        visibleUnits.clear();
+        int index = indexOf(unit, 0);
+        int queryIndex = -1;
+        for (BaseUnit queryUnit : candidates) {
+            if (queryUnit == unit || queryUnit.getNumAlives() == 0) continue;
+
+            // Candidates usually follow the order of the unit list, without the unit itself or the dead units.
+            int hint = queryIndex + 1;
+            while (hint < numUnits && units[hint] != queryUnit &&
+                    (units[hint] == unit || units[hint].getNumAlives() == 0)) {
+                hint++;
+            }
+            queryIndex = indexOf(queryUnit, hint);
+            boolean visible;
+            if (index < 0 || queryIndex < 0) {
+                visible = PhysicUtils.checkLineOfSight(unit, queryUnit, terrain);
+            } else {
+                visible = isVisible(index, queryIndex);
+            }
+            if (visible) {
+                visibleUnits.add(queryUnit);
+            }
+        }
+    }
+}
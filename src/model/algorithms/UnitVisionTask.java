@@ -0,0 +1,40 @@
+package model.algorithms;
+
+import model.constants.UniversalConstants;
+
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fork join task that evaluates again the stale pairs of rows [from, to) of the visibility matrix, and computes the
+ * number of pairs evaluated.
+ *
+ * The pairs of a row are only written to that row, and a line of sight only reads the positions of the units and the
+ * terrain, which don't change during the update. Ranges of rows are therefore independent of each other and give the
+ * same result whatever thread evaluates them.
+ */
+class UnitVisionTask extends RecursiveTask<Integer> {
+
+    private static final long serialVersionUID = 1L;
+
+    private UnitVisibility unitVisibility;
+    private int from;
+    private int to;
+
+    UnitVisionTask(UnitVisibility inputUnitVisibility, int inputFrom, int inputTo) {
+        unitVisibility = inputUnitVisibility;
+        from = inputFrom;
+        to = inputTo;
+    }
+
+    @Override
+    protected Integer compute() {
+        if (to - from <= UniversalConstants.PARALLEL_UNIT_CHUNK) {
+            return unitVisibility.updateRows(from, to);
+        }
+        int mid = (from + to) >>> 1;
+        UnitVisionTask left = new UnitVisionTask(unitVisibility, from, mid);
+        left.fork();
+        int numPairs = new UnitVisionTask(unitVisibility, mid, to).compute();
+        return numPairs + left.join();
+    }
+}
@@ -5,8 +5,14 @@ public class UniversalConstants {
     // Hashing div
     public final static int X_HASH_DIV = 25;
     public final static int Y_HASH_DIV = 25;
-    public final static int X_HASH_DIV_SURFACE_TREES = 300;
-    public final static int Y_HASH_DIV_SURFACE_TREES = 300;
+    public final static int X_HASH_DIV_SURFACE_RASTER = 25;
+    public final static int Y_HASH_DIV_SURFACE_RASTER = 25;
+
+    // Number of troops below which parallel tasks stop splitting their work.
+    public final static int PARALLEL_TROOP_CHUNK = 256;
+
+    // Number of rows of the unit visibility matrix below which parallel tasks stop splitting their work.
+    public final static int PARALLEL_UNIT_CHUNK = 4;
 
     // ---------------------------
     // Universal physics constants
@@ -7,6 +7,9 @@ public class EventBroadcaster {
     // The list of listener tuning in for the events.
     ArrayList<EventListener> listeners;
 
+    // Buffer of the current thread, see startBuffering().
+    private final ThreadLocal<ArrayList<Event>> threadBuffer = new ThreadLocal<>();
+
     public EventBroadcaster() {
         listeners = new ArrayList<>();
     }
@@ -16,8 +19,39 @@ public class EventBroadcaster {
     }
 
     public void broadcastEvent(Event e) {
+        ArrayList<Event> buffer = threadBuffer.get();
+        if (buffer != null) {
+            buffer.add(e);
+            return;
+        }
         for (EventListener listener : listeners) {
             listener.listenEvent(e);
         }
     }
+
+    /**
+     * Make the current thread add events to buffer instead of broadcasting them directly, until stopBuffering() is called.
+     * Parallel code uses one buffer per task and flushes the buffers in a fixed order, which keeps the order of the
+     * events deterministic.
+     */
+    public void startBuffering(ArrayList<Event> buffer) {
+        threadBuffer.set(buffer);
+    }
+
+    /**
+     * Make the current thread broadcast events directly again.
+     */
+    public void stopBuffering() {
+        threadBuffer.remove();
+    }
+
+    /**
+     * Broadcast the buffered events, and empty the buffer.
+     */
+    public void flushBuffer(ArrayList<Event> buffer) {
+        for (Event e : buffer) {
+            broadcastEvent(e);
+        }
+        buffer.clear();
+    }
 }
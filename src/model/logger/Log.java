@@ -49,9 +49,9 @@ public class Log {
     }
 
     /**
-     * Log method
+     * Log method. Synchronized, since units may log from the workers of the parallel unit step.
      */
-    public static void info(String s) {
+    public static synchronized void info(String s) {
         if (instance == null) {
             instance = new Log();
         }
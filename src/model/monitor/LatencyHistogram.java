@@ -0,0 +1,117 @@
+package model.monitor;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of latencies in nanoseconds, with buckets in the fashion of HdrHistogram: values are grouped by their power
+ * of two, and each power of two is split into SUB_BUCKET_COUNT linear sub-buckets. Every recorded value therefore falls
+ * in a bucket no wider than 1 / SUB_BUCKET_COUNT of the value, about 3%, whether it is a few microseconds or a few
+ * seconds, while the whole histogram only takes a thousand counters.
+ *
+ * Recording a value is constant time and does not allocate.
+ */
+public class LatencyHistogram {
+
+    // Number of sub-buckets per power of two, as a power of two itself.
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    // Largest trackable value, a little over 18 minutes. Larger values are recorded as this value.
+    private static final int MAX_VALUE_BITS = 40;
+    private static final long MAX_VALUE = (1L << MAX_VALUE_BITS) - 1;
+
+    private long[] counts;
+    private long totalCount;
+    private long totalValue;
+    private long minValue;
+    private long maxValue;
+
+    public LatencyHistogram() {
+        counts = new long[(MAX_VALUE_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT];
+        reset();
+    }
+
+    /**
+     * Record a latency, in nanoseconds.
+     */
+    public void record(long value) {
+        value = Math.max(0, Math.min(MAX_VALUE, value));
+        counts[getBucketIndex(value)] += 1;
+        totalCount += 1;
+        totalValue += value;
+        minValue = Math.min(minValue, value);
+        maxValue = Math.max(maxValue, value);
+    }
+
+    /**
+     * Remove all recorded values.
+     */
+    public void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        totalValue = 0;
+        minValue = Long.MAX_VALUE;
+        maxValue = 0;
+    }
+
+    /**
+     * Values smaller than SUB_BUCKET_COUNT have a bucket each. Larger values are shifted right until they have
+     * SUB_BUCKET_BITS + 1 significant bits, and the bucket is picked by the shift and the remaining bits.
+     */
+    private static int getBucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift);
+        return (shift + 1) * SUB_BUCKET_COUNT + subBucket - SUB_BUCKET_COUNT;
+    }
+
+    /**
+     * Largest value that falls in the bucket at the input index.
+     */
+    private static long getBucketHighestValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long subBucket = index % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * Return the p-th percentile (0 <= p <= 100) of the recorded values, using the nearest-rank method. The value is
+     * exact up to the width of its bucket.
+     */
+    public long getValueAtPercentile(double p) {
+        if (totalCount == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(p / 100.0 * totalCount));
+        long cumulativeCount = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulativeCount += counts[i];
+            if (cumulativeCount >= rank) {
+                return Math.max(minValue, Math.min(maxValue, getBucketHighestValue(i)));
+            }
+        }
+        return maxValue;
+    }
+
+    /**
+     * Getter and setters
+     */
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public double getMean() {
+        return totalCount == 0 ? 0 : (double) totalValue / totalCount;
+    }
+
+    public long getMin() {
+        return totalCount == 0 ? 0 : minValue;
+    }
+
+    public long getMax() {
+        return maxValue;
+    }
+}
@@ -1,21 +1,70 @@
 package model.monitor;
 
-import java.util.HashMap;
+import model.snapshot.SnapshotReader;
+import model.snapshot.SnapshotWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 
 public class Monitor {
 
+    // Counter keys and phases, indexed by ordinal
+    private static final MonitorEnum[] KEYS = MonitorEnum.values();
+    private static final MonitorPhase[] PHASES = MonitorPhase.values();
+
+    // Percentiles reported by the phase histograms
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
     private int index;
+    private int numStoredFrames;
+
+    // Counts of the current frame. Each thread counts in its own cell, indexed by the ordinal of the key, so that
+    // counting needs neither a lock nor an atomic operation. The cells are merged and zeroed when the data is clocked.
+    private ThreadLocal<long[]> counterCell;
+    private final ArrayList<long[]> counterCells;
 
-    HashMap<MonitorEnum, Integer>[] frameLevelDataStorage;
-    HashMap<MonitorEnum, Integer> counter;
-    HashMap<MonitorEnum, Integer> totalCounter;
+    // Counts of each of the stored frames, and counts through the entire duration of the game, up to the last clock.
+    long[][] frameLevelDataStorage;
+    long[] totalCounter;
+
+    // Phase timers. Time spent in each phase during the current frame, and start time of the phases currently running.
+    // Phases are only timed from the thread that steps the game, so the timers are not synchronized.
+    long[] phaseTimes;
+    private long[] phaseStartTimes;
+
+    // Time spent in each phase during each of the stored frames, stored alongside frameLevelDataStorage, and latency
+    // histogram of each phase through the entire duration of the game.
+    long[][] frameLevelPhaseTimes;
+    LatencyHistogram[] phaseHistograms;
 
     public Monitor(int storedFrames) {
-        counter = new HashMap<>();
-        totalCounter = new HashMap<>();
-        frameLevelDataStorage = new HashMap[storedFrames];
+        counterCells = new ArrayList<>();
+        counterCell = ThreadLocal.withInitial(this::createCounterCell);
+        totalCounter = new long[KEYS.length];
+        frameLevelDataStorage = new long[storedFrames][KEYS.length];
+
+        phaseTimes = new long[PHASES.length];
+        phaseStartTimes = new long[PHASES.length];
+        frameLevelPhaseTimes = new long[storedFrames][PHASES.length];
+        phaseHistograms = new LatencyHistogram[PHASES.length];
+        for (int i = 0; i < PHASES.length; i++) {
+            phaseHistograms[i] = new LatencyHistogram();
+        }
 
         index = 0;
+        numStoredFrames = 0;
+    }
+
+    /**
+     * Create the counter cell of the current thread.
+     */
+    private long[] createCounterCell() {
+        long[] cell = new long[KEYS.length];
+        synchronized (counterCells) {
+            counterCells.add(cell);
+        }
+        return cell;
     }
 
     /**
@@ -26,26 +75,128 @@ public class Monitor {
     }
 
     /**
-     * Increment counter by however many.
+     * Increment counter by however many. Any thread may count, e.g. the workers of the parallel unit step, as long as it
+     * does not count while the data is being clocked.
      */
     public void count(MonitorEnum key, int num) {
-        if (!counter.containsKey(key)) {
-            counter.put(key, 0);
-        }
-        if (!totalCounter.containsKey(key)) {
-            totalCounter.put(key, 0);
+        counterCell.get()[key.ordinal()] += num;
+    }
+
+    /**
+     * Sum of the counts of every thread during the current frame.
+     */
+    private long sumCounterCells(int ordinal) {
+        long sum = 0;
+        synchronized (counterCells) {
+            for (long[] cell : counterCells) {
+                sum += cell[ordinal];
+            }
         }
-        counter.put(key, counter.get(key) + num);
-        totalCounter.put(key, totalCounter.get(key) + num);
+        return sum;
+    }
+
+    /**
+     * Start timing a phase.
+     */
+    public void startPhase(MonitorPhase phase) {
+        phaseStartTimes[phase.ordinal()] = System.nanoTime();
+    }
+
+    /**
+     * Stop timing a phase, and add the time elapsed since its start to the time of the phase in the current frame. A
+     * phase may run several times per frame, in which case its times add up.
+     */
+    public void endPhase(MonitorPhase phase) {
+        phaseTimes[phase.ordinal()] += System.nanoTime() - phaseStartTimes[phase.ordinal()];
     }
 
     /**
-     * Clock the counter and store all the data of the frame to the storage.
+     * Clock the counter and store all the data of the frame to the storage. The phase times of the frame are recorded in
+     * the phase histograms. No thread may count during the clock, which is the case when it is called between two
+     * frames.
      */
-    public void clockTheData() {
+    public synchronized void clockTheData() {
         index = (index + 1) % frameLevelDataStorage.length;
-        frameLevelDataStorage[index] = counter;
-        counter = new HashMap<>();
+        numStoredFrames = Math.min(numStoredFrames + 1, frameLevelDataStorage.length);
+
+        long[] storedCounter = frameLevelDataStorage[index];
+        synchronized (counterCells) {
+            for (int i = 0; i < KEYS.length; i++) {
+                long sum = 0;
+                for (long[] cell : counterCells) {
+                    sum += cell[i];
+                    cell[i] = 0;
+                }
+                storedCounter[i] = sum;
+                totalCounter[i] += sum;
+            }
+        }
+
+        // The data is clocked at the start of each frame, so the first clock comes before any frame was timed.
+        boolean frameTimed = phaseTimes[MonitorPhase.FRAME.ordinal()] > 0;
+        long[] storedPhaseTimes = frameLevelPhaseTimes[index];
+        for (int i = 0; i < PHASES.length; i++) {
+            storedPhaseTimes[i] = phaseTimes[i];
+            if (frameTimed) {
+                phaseHistograms[i].record(phaseTimes[i]);
+            }
+            phaseTimes[i] = 0;
+        }
+    }
+
+    /**
+     * Clear the phase histograms, for example to leave the warm up frames out of them.
+     */
+    public void resetPhaseHistograms() {
+        for (LatencyHistogram histogram : phaseHistograms) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * Write the counters to a snapshot: the counts of the current frame, of the stored frames and of the entire game.
+     * Phase times are wall clock measurements rather than game state, so they are left out.
+     */
+    public synchronized void writeSnapshot(SnapshotWriter writer) {
+        writer.writeInt(KEYS.length);
+        writer.writeInt(frameLevelDataStorage.length);
+        writer.writeInt(index);
+        writer.writeInt(numStoredFrames);
+        for (int i = 0; i < KEYS.length; i++) {
+            writer.writeLong(sumCounterCells(i));
+        }
+        writer.writeLongArray(totalCounter);
+        for (long[] storedCounter : frameLevelDataStorage) {
+            writer.writeLongArray(storedCounter);
+        }
+    }
+
+    /**
+     * Replace the counters with the counters of a snapshot written by writeSnapshot(). The counts of the current frame
+     * go to the cell of the calling thread.
+     */
+    public synchronized void readSnapshot(SnapshotReader reader) throws IOException {
+        int numKeys = reader.readInt();
+        int storedFrames = reader.readInt();
+        if (numKeys != KEYS.length || storedFrames != frameLevelDataStorage.length) {
+            throw new IOException("Snapshot monitor has " + numKeys + " counters and " + storedFrames +
+                    " stored frames, but the monitor has " + KEYS.length + " and " + frameLevelDataStorage.length);
+        }
+        index = reader.readInt();
+        numStoredFrames = reader.readInt();
+        synchronized (counterCells) {
+            for (long[] cell : counterCells) {
+                Arrays.fill(cell, 0);
+            }
+        }
+        long[] cell = counterCell.get();
+        for (int i = 0; i < KEYS.length; i++) {
+            cell[i] = reader.readLong();
+        }
+        totalCounter = reader.readLongArray();
+        for (int i = 0; i < frameLevelDataStorage.length; i++) {
+            frameLevelDataStorage[i] = reader.readLongArray();
+        }
     }
 
     /**
@@ -55,7 +206,7 @@ public class Monitor {
         StringBuilder s = new StringBuilder();
         for (MonitorEnum e : enums) {
             s.append(String.format("%-32s: ", e.toString()));
-            s.append(counter.get(e));
+            s.append(getCount(e));
             s.append("\n");
         }
         return s.toString();
@@ -68,9 +219,114 @@ public class Monitor {
         StringBuilder s = new StringBuilder();
         for (MonitorEnum e : enums) {
             s.append(String.format("%-32s: ", e.toString()));
-            s.append(totalCounter.get(e));
+            s.append(getTotalCount(e));
             s.append("\n");
         }
         return s.toString();
     }
+
+    /**
+     * Get a string represents the time spent in each input phase during the current frame, in milliseconds.
+     */
+    public String getPhaseTimeString(MonitorPhase[] phases) {
+        StringBuilder s = new StringBuilder();
+        for (MonitorPhase phase : phases) {
+            s.append(String.format("%-32s: %.3fms%n", phase.toString(), phaseTimes[phase.ordinal()] / 1e6));
+        }
+        return s.toString();
+    }
+
+    /**
+     * Get a string represents the latency distribution of each input phase through the entire duration of the game:
+     * mean, percentiles and maximum time spent in the phase per frame, in milliseconds.
+     */
+    public String getPhaseHistogramString(MonitorPhase[] phases) {
+        StringBuilder s = new StringBuilder();
+        s.append(String.format("%-32s  %9s", "Phase (ms)", "mean"));
+        for (double p : PERCENTILES) {
+            s.append(String.format(" %9s", "p" + (p == (int) p ? String.valueOf((int) p) : String.valueOf(p))));
+        }
+        s.append(String.format(" %9s%n", "max"));
+        for (MonitorPhase phase : phases) {
+            LatencyHistogram histogram = phaseHistograms[phase.ordinal()];
+            s.append(String.format("%-32s: %9.3f", phase.toString(), histogram.getMean() / 1e6));
+            for (double p : PERCENTILES) {
+                s.append(String.format(" %9.3f", histogram.getValueAtPercentile(p) / 1e6));
+            }
+            s.append(String.format(" %9.3f%n", histogram.getMax() / 1e6));
+        }
+        return s.toString();
+    }
+
+    /**
+     * Get a string represents the time spent in each input phase during each of the stored frames, from the oldest to
+     * the most recent, in milliseconds. Frames that are not stored yet are left out.
+     */
+    public String getFrameBreakdownString(MonitorPhase[] phases) {
+        StringBuilder s = new StringBuilder();
+        s.append(String.format("%-32s ", "Phase (ms) / frames ago"));
+        for (int framesAgo = numStoredFrames; framesAgo >= 1; framesAgo--) {
+            s.append(String.format(" %8d", framesAgo));
+        }
+        s.append("\n");
+        for (MonitorPhase phase : phases) {
+            s.append(String.format("%-32s:", phase.toString()));
+            for (int framesAgo = numStoredFrames; framesAgo >= 1; framesAgo--) {
+                s.append(String.format(" %8.3f", getStoredPhaseTime(phase, framesAgo) / 1e6));
+            }
+            s.append("\n");
+        }
+        return s.toString();
+    }
+
+    /**
+     * Dump all the timing data of the monitor: the latency distribution of every phase, and the breakdown of the stored
+     * frames. This is what to look at to attribute a slow frame to a phase.
+     */
+    public String dumpPhaseTimes() {
+        return getPhaseHistogramString(PHASES) + "\n" + getFrameBreakdownString(PHASES);
+    }
+
+    /**
+     * Getter and setters
+     */
+    public long getCount(MonitorEnum key) {
+        return sumCounterCells(key.ordinal());
+    }
+
+    public long getTotalCount(MonitorEnum key) {
+        return totalCounter[key.ordinal()] + sumCounterCells(key.ordinal());
+    }
+
+    /**
+     * Count of the key during a stored frame. The current frame is not stored yet, so the most recently stored frame is
+     * 1 frame ago.
+     */
+    public long getStoredCount(MonitorEnum key, int framesAgo) {
+        return frameLevelDataStorage[getStorageIndex(framesAgo)][key.ordinal()];
+    }
+
+    public long getPhaseTime(MonitorPhase phase) {
+        return phaseTimes[phase.ordinal()];
+    }
+
+    /**
+     * Time spent in the phase during a stored frame, in nanoseconds. The current frame is not stored yet, so the most
+     * recently stored frame is 1 frame ago.
+     */
+    public long getStoredPhaseTime(MonitorPhase phase, int framesAgo) {
+        return frameLevelPhaseTimes[getStorageIndex(framesAgo)][phase.ordinal()];
+    }
+
+    /**
+     * Index of the storage slot of a stored frame.
+     */
+    private int getStorageIndex(int framesAgo) {
+        int n = frameLevelDataStorage.length;
+        return ((index - framesAgo + 1) % n + n) % n;
+    }
+
+    public LatencyHistogram getPhaseHistogram(MonitorPhase phase) {
+        return phaseHistograms[phase.ordinal()];
+    }
 }
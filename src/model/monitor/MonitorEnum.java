@@ -9,6 +9,14 @@ public enum MonitorEnum {
     COLLISION_TROOP_AND_TREE("Troop-vs-tree collision"),
     COLLISION_OBJECT("Object collision"),
 
+    // Hashing enums
+    TROOPS_REHASHED("Troops rehashed"),
+    NEIGHBOR_QUERIES("Neighbor queries"),
+    NEIGHBOR_CANDIDATES("Neighbor candidates"),
+
+    // Vision enums
+    UNIT_VISION_PAIRS("Unit vision pairs"),
+
     // Formation changes
     WRONG_FORMATION_CHANGES("Wrong formation changes");
 
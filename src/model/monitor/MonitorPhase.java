@@ -0,0 +1,42 @@
+package model.monitor;
+
+/**
+ * Phases of GameEnvironment.step() timed by the monitor. Phases are nested: FRAME covers the whole step,
+ * MODIFY_OBJECTS covers the phases of UnitModifier.modifyObjects(), and UNIT_VISION is part of UNIT_STATE_MODIFIER.
+ */
+public enum MonitorPhase {
+
+    // Whole step
+    FRAME("Frame"),
+
+    // Unit updates
+    UNIT_INTENTION("Unit intention"),
+    UNIT_STATE("Unit state"),
+
+    // Unit modifier
+    MODIFY_OBJECTS("Modify objects"),
+    UPDATE_HASHERS("Update hashers"),
+    PROJECTILES_COLLISION("Projectiles collision"),
+    HITSCAN_COLLISION("Hitscan collision"),
+    TROOP_AND_SURFACE_COLLISION("Troop-vs-surface collision"),
+    TROOPS_COLLISION("Troops collision"),
+    COMBAT("Combat"),
+    UNIT_STATE_MODIFIER("Unit state modifier"),
+    UNIT_VISION("Unit vision"),
+    TROOP_AND_TREE_COLLISION("Troop-vs-tree collision"),
+    TROOP_AND_CONSTRUCT_COLLISION("Troop-vs-construct collision"),
+
+    // Sound and events
+    SOUND("Sound"),
+    EVENTS("Events");
+
+    private String name;
+
+    MonitorPhase(String phaseName) {
+        name = phaseName;
+    }
+
+    public String toString() {
+        return name;
+    }
+}
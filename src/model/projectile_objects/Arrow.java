@@ -3,6 +3,8 @@ package model.projectile_objects;
 import model.utils.MathUtils;
 import model.utils.PhysicUtils;
 import javafx.util.Pair;
+import model.snapshot.SnapshotReader;
+import model.snapshot.SnapshotWriter;
 
 public class Arrow extends Projectile {
 
@@ -18,6 +20,11 @@ public class Arrow extends Projectile {
     protected boolean[] impact;
     protected int index;
 
+    /**
+     * Create an empty arrow, to be filled by readSnapshot().
+     */
+    Arrow() {}
+
     /**
      * Initialize instances of arrow with all positions pre-calculated.
      */
@@ -90,18 +97,62 @@ public class Arrow extends Projectile {
         return impact[index];
     }
 
+    @Override
+    void setFlight(double[][] inputPos, Double[] inputHeightOverTime, int inputIndex) {
+        pos = inputPos;
+        heightOverTime = inputHeightOverTime;
+        impact = new boolean[inputPos.length];
+        index = inputIndex;
+    }
+
+    @Override
+    byte getSnapshotType() {
+        return ARROW_SNAPSHOT_TYPE;
+    }
+
+    @Override
+    public void writeSnapshot(SnapshotWriter writer) {
+        super.writeSnapshot(writer);
+        writer.writeDouble(speed);
+        writer.writeDouble(damage);
+        writer.writeDouble(pushDist);
+        writer.writeDoubleMatrix(pos);
+        writer.writeBoxedDoubleArray(heightOverTime);
+        writer.writeBooleanArray(impact);
+        writer.writeInt(index);
+    }
+
+    @Override
+    void readSnapshot(SnapshotReader reader) {
+        super.readSnapshot(reader);
+        speed = reader.readDouble();
+        damage = reader.readDouble();
+        pushDist = reader.readDouble();
+        pos = reader.readDoubleMatrix();
+        heightOverTime = reader.readBoxedDoubleArray();
+        impact = reader.readBooleanArray();
+        index = reader.readInt();
+    }
+
     public double getSpeed() {
         return speed;
     }
 
+    @Override
     public double[][] getPos() {
         return pos;
     }
 
+    @Override
+    public Double[] getHeightOverTime() {
+        return heightOverTime;
+    }
+
     public boolean[] getImpact() {
         return impact;
     }
 
+    @Override
     public int getIndex() {
         return index;
     }
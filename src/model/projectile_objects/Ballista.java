@@ -3,6 +3,8 @@ package model.projectile_objects;
 import model.utils.MathUtils;
 import model.utils.PhysicUtils;
 import javafx.util.Pair;
+import model.snapshot.SnapshotReader;
+import model.snapshot.SnapshotWriter;
 
 public class Ballista extends Projectile {
 
@@ -22,6 +24,11 @@ public class Ballista extends Projectile {
     boolean touchGround;
     int index;
 
+    /**
+     * Create an empty ballista, to be filled by readSnapshot().
+     */
+    Ballista() {}
+
     /**
      * Initialize instances of arrow with all positions pre-calculated.
      */
@@ -102,18 +109,70 @@ public class Ballista extends Projectile {
         return impact[index];
     }
 
+    @Override
+    void setFlight(double[][] inputPos, Double[] inputHeightOverTime, int inputIndex) {
+        pos = inputPos;
+        heightOverTime = inputHeightOverTime;
+        impact = new boolean[inputPos.length];
+        index = inputIndex;
+    }
+
+    @Override
+    byte getSnapshotType() {
+        return BALLISTA_SNAPSHOT_TYPE;
+    }
+
+    @Override
+    public void writeSnapshot(SnapshotWriter writer) {
+        super.writeSnapshot(writer);
+        writer.writeDouble(speed);
+        writer.writeDouble(damage);
+        writer.writeDouble(explosionDamage);
+        writer.writeDouble(explosionRange);
+        writer.writeDouble(explosionPush);
+        writer.writeDouble(pushForce);
+        writer.writeDoubleMatrix(pos);
+        writer.writeBoxedDoubleArray(heightOverTime);
+        writer.writeBooleanArray(impact);
+        writer.writeBoolean(touchGround);
+        writer.writeInt(index);
+    }
+
+    @Override
+    void readSnapshot(SnapshotReader reader) {
+        super.readSnapshot(reader);
+        speed = reader.readDouble();
+        damage = reader.readDouble();
+        explosionDamage = reader.readDouble();
+        explosionRange = reader.readDouble();
+        explosionPush = reader.readDouble();
+        pushForce = reader.readDouble();
+        pos = reader.readDoubleMatrix();
+        heightOverTime = reader.readBoxedDoubleArray();
+        impact = reader.readBooleanArray();
+        touchGround = reader.readBoolean();
+        index = reader.readInt();
+    }
+
     public double getSpeed() {
         return speed;
     }
 
+    @Override
     public double[][] getPos() {
         return pos;
     }
 
+    @Override
+    public Double[] getHeightOverTime() {
+        return heightOverTime;
+    }
+
     public boolean[] getImpact() {
         return impact;
     }
 
+    @Override
     public int getIndex() {
         return index;
     }
@@ -1,7 +1,17 @@
 package model.projectile_objects;
 
+import model.snapshot.SnapshotReader;
+import model.snapshot.SnapshotWriter;
+
+import java.io.IOException;
+
 public abstract class BaseProjectile {
 
+    // Type of each projectile in snapshots
+    static final byte ARROW_SNAPSHOT_TYPE = 0;
+    static final byte STONE_SNAPSHOT_TYPE = 1;
+    static final byte BALLISTA_SNAPSHOT_TYPE = 2;
+
     // Positional attributes
     protected double x;
     protected double y;
@@ -52,4 +62,58 @@ public abstract class BaseProjectile {
     }
 
     public void update() { }
+
+    /**
+     * Type of the projectile in snapshots.
+     */
+    abstract byte getSnapshotType();
+
+    /**
+     * Write the projectile to a snapshot, starting with its type so that createFromSnapshot() knows which projectile
+     * to create.
+     */
+    public void writeSnapshot(SnapshotWriter writer) {
+        writer.writeByte(getSnapshotType());
+        writer.writeDouble(x);
+        writer.writeDouble(y);
+        writer.writeDouble(height);
+        writer.writeBoolean(alive);
+        writer.writeDouble(angle);
+        writer.writeBoolean(impactful);
+    }
+
+    /**
+     * Read the attributes written by writeSnapshot(), after the type.
+     */
+    void readSnapshot(SnapshotReader reader) {
+        x = reader.readDouble();
+        y = reader.readDouble();
+        height = reader.readDouble();
+        alive = reader.readBoolean();
+        angle = reader.readDouble();
+        impactful = reader.readBoolean();
+    }
+
+    /**
+     * Create a projectile from a snapshot written by writeSnapshot().
+     */
+    public static BaseProjectile createFromSnapshot(SnapshotReader reader) throws IOException {
+        byte type = reader.readByte();
+        BaseProjectile projectile;
+        switch (type) {
+            case ARROW_SNAPSHOT_TYPE:
+                projectile = new Arrow();
+                break;
+            case STONE_SNAPSHOT_TYPE:
+                projectile = new Stone();
+                break;
+            case BALLISTA_SNAPSHOT_TYPE:
+                projectile = new Ballista();
+                break;
+            default:
+                throw new IOException("Unknown projectile type in snapshot: " + type);
+        }
+        projectile.readSnapshot(reader);
+        return projectile;
+    }
 }
@@ -1,6 +1,8 @@
 package model.projectile_objects;
 
 import model.constants.GameplayConstants;
+import model.snapshot.SnapshotReader;
+import model.snapshot.SnapshotWriter;
 
 /**
  * A class of objects that represent projectile that flies so fast that it is more effective to just treatment as a line
@@ -27,12 +29,17 @@ public class HitscanObject {
     double damage;
     double push;
 
+    // Number of singles the hitscan object can still shoot through. It stops at the first single it hits once it has
+    // no penetration left.
+    int penetration;
+
     // Life time
     int lifetime;
     boolean impactful;
 
     public HitscanObject(
-            double x, double y, double z, double theta, double phi, double minRange, double maxRange, double damage, double push) {
+            double x, double y, double z, double theta, double phi, double minRange, double maxRange, double damage, double push,
+            int penetration) {
         this.startX = x;
         this.startY = y;
         this.startZ = z;
@@ -42,10 +49,54 @@ public class HitscanObject {
         this.maxRange = maxRange;
         this.damage = damage;
         this.push = push;
+        this.penetration = penetration;
         this.lifetime = GameplayConstants.BULLET_LIFETIME;
         this.impactful = true;
     }
 
+    /**
+     * Create an empty hitscan object, to be filled from a snapshot.
+     */
+    private HitscanObject() {}
+
+    /**
+     * Write the hitscan object to a snapshot.
+     */
+    public void writeSnapshot(SnapshotWriter writer) {
+        writer.writeDouble(startX);
+        writer.writeDouble(startY);
+        writer.writeDouble(startZ);
+        writer.writeDouble(theta);
+        writer.writeDouble(phi);
+        writer.writeDouble(minRange);
+        writer.writeDouble(maxRange);
+        writer.writeDouble(damage);
+        writer.writeDouble(push);
+        writer.writeInt(penetration);
+        writer.writeInt(lifetime);
+        writer.writeBoolean(impactful);
+    }
+
+    /**
+     * Create a hitscan object from a snapshot written by writeSnapshot().
+     */
+    public static HitscanObject createFromSnapshot(SnapshotReader reader) {
+        HitscanObject object = new HitscanObject();
+        object.startX = reader.readDouble();
+        object.startY = reader.readDouble();
+        object.startZ = reader.readDouble();
+        object.theta = reader.readDouble();
+        object.phi = reader.readDouble();
+        object.minRange = reader.readDouble();
+        object.maxRange = reader.readDouble();
+        object.damage = reader.readDouble();
+        object.push = reader.readDouble();
+        object.penetration = reader.readInt();
+        object.lifetime = reader.readInt();
+        object.impactful = reader.readBoolean();
+        return object;
+    }
+
     public double getStartX() {
         return startX;
     }
@@ -82,6 +133,22 @@ public class HitscanObject {
         return push;
     }
 
+    public int getPenetration() {
+        return penetration;
+    }
+
+    /**
+     * Register a single hit by the hitscan object. The object shoots through the single if it has penetration left,
+     * and stops being impactful otherwise.
+     */
+    public void hit() {
+        if (penetration > 0) {
+            penetration--;
+        } else {
+            impactful = false;
+        }
+    }
+
     public void decrementLifetime() {
         if (lifetime > 0) {
             lifetime--;
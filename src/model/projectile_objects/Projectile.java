@@ -1,5 +1,73 @@
 package model.projectile_objects;
 
+import model.constants.UniversalConstants;
+
+/**
+ * Projectile whose whole flight is pre-calculated when it is fired: it moves along its positions and heights, one index
+ * per frame.
+ */
 public abstract class Projectile extends BaseProjectile {
 
+    /**
+     * Create a projectile of the given type flying along a recorded flight, e.g. when playing a replay. The projectile
+     * starts at (startX, startY) and moves by (dx, dy) each frame, its height follows the arch of its initial vertical
+     * speed, and it is at the given index of its flight. Only the flight is set, the projectile deals no damage.
+     */
+    public static Projectile createFromFlight(Class<? extends Projectile> type,
+                                              double startX, double startY, double dx, double dy, double angle,
+                                              double verticalSpeed, int lifeTime, int index) {
+        Projectile projectile;
+        if (type == Arrow.class) {
+            projectile = new Arrow();
+        } else if (type == Stone.class) {
+            projectile = new Stone();
+        } else if (type == Ballista.class) {
+            projectile = new Ballista();
+        } else {
+            throw new IllegalArgumentException("Unknown projectile type " + type.getSimpleName());
+        }
+
+        double g = UniversalConstants.GRAVITATIONAL_CONSTANT_FPM2;
+        double[][] pos = new double[lifeTime][2];
+        Double[] heightOverTime = new Double[lifeTime];
+        for (int i = 0; i < lifeTime; i++) {
+            pos[i][0] = startX + dx * i;
+            pos[i][1] = startY + dy * i;
+            heightOverTime[i] = verticalSpeed * i - g * (i * i) / 2;
+        }
+        projectile.setFlight(pos, heightOverTime, index);
+        projectile.angle = angle;
+        projectile.moveTo(index);
+        return projectile;
+    }
+
+    /**
+     * Move the projectile to an index of its flight, e.g. when playing a replay. The projectile is dead once it is past
+     * the end of its flight.
+     */
+    public void moveTo(int index) {
+        double[][] pos = getPos();
+        Double[] heightOverTime = getHeightOverTime();
+        setFlight(pos, heightOverTime, index);
+        alive = 0 <= index && index < pos.length;
+        if (alive) {
+            x = pos[index][0];
+            y = pos[index][1];
+            height = heightOverTime[index];
+        }
+    }
+
+    /**
+     * Set the positions and heights of the flight, and the current index in the flight.
+     */
+    abstract void setFlight(double[][] pos, Double[] heightOverTime, int index);
+
+    /**
+     * Getter and setters
+     */
+    public abstract double[][] getPos();
+
+    public abstract Double[] getHeightOverTime();
+
+    public abstract int getIndex();
 }
@@ -3,6 +3,8 @@ package model.projectile_objects;
 import model.utils.MathUtils;
 import model.utils.PhysicUtils;
 import javafx.util.Pair;
+import model.snapshot.SnapshotReader;
+import model.snapshot.SnapshotWriter;
 
 public class Stone extends Projectile {
 
@@ -21,6 +23,11 @@ public class Stone extends Projectile {
     boolean touchGround;
     int index;
 
+    /**
+     * Create an empty stone, to be filled by readSnapshot().
+     */
+    Stone() {}
+
     /**
      * Initialize instances of arrow with all positions pre-calculated.
      */
@@ -87,6 +94,48 @@ public class Stone extends Projectile {
         height = heightOverTime[index];
     }
 
+    @Override
+    void setFlight(double[][] inputPos, Double[] inputHeightOverTime, int inputIndex) {
+        pos = inputPos;
+        heightOverTime = inputHeightOverTime;
+        index = inputIndex;
+    }
+
+    @Override
+    byte getSnapshotType() {
+        return STONE_SNAPSHOT_TYPE;
+    }
+
+    @Override
+    public void writeSnapshot(SnapshotWriter writer) {
+        super.writeSnapshot(writer);
+        writer.writeDouble(speed);
+        writer.writeDouble(damage);
+        writer.writeDouble(explosionDamage);
+        writer.writeDouble(explosionRange);
+        writer.writeDouble(explosionPush);
+        writer.writeDouble(pushForce);
+        writer.writeDoubleMatrix(pos);
+        writer.writeBoxedDoubleArray(heightOverTime);
+        writer.writeBoolean(touchGround);
+        writer.writeInt(index);
+    }
+
+    @Override
+    void readSnapshot(SnapshotReader reader) {
+        super.readSnapshot(reader);
+        speed = reader.readDouble();
+        damage = reader.readDouble();
+        explosionDamage = reader.readDouble();
+        explosionRange = reader.readDouble();
+        explosionPush = reader.readDouble();
+        pushForce = reader.readDouble();
+        pos = reader.readDoubleMatrix();
+        heightOverTime = reader.readBoxedDoubleArray();
+        touchGround = reader.readBoolean();
+        index = reader.readInt();
+    }
+
     /**
      * Indicate whether the arrow is slow enough to deal damange.
      */
@@ -95,14 +144,21 @@ public class Stone extends Projectile {
         return speed;
     }
 
+    @Override
     public double[][] getPos() {
         return pos;
     }
 
+    @Override
+    public Double[] getHeightOverTime() {
+        return heightOverTime;
+    }
+
     public boolean isTouchGround() {
         return touchGround;
     }
 
+    @Override
     public int getIndex() {
         return index;
     }
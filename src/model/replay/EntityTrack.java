@@ -0,0 +1,203 @@
+package model.replay;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Quantized position, angle and state of a group of entities, e.g. all the singles of a battle, as of the last frame
+ * written to or read from the replay. Each frame is encoded as the list of entities which changed since then.
+ *
+ * An entity is written as the gap between its id and the id of the previous entity written, as a variable length
+ * integer, then a mask telling which fields follow, then the fields. Positions are written as the smallest delta that
+ * fits, or in full when the delta does not fit in a short or when writing a keyframe.
+ */
+final class EntityTrack {
+
+    // Maximum number of bytes of one entity: gap, mask, absolute position, angle and state.
+    static final int MAX_ENTITY_BYTES = 5 + 1 + 3 * Integer.BYTES + Short.BYTES + 1;
+
+    private final int size;
+
+    // State as of the last frame written or read
+    private final int[] x;
+    private final int[] y;
+    private final int[] z;
+    private final short[] angle;
+    private final byte[] state;
+
+    // State of the frame being written
+    private final int[] nextX;
+    private final int[] nextY;
+    private final int[] nextZ;
+    private final short[] nextAngle;
+    private final byte[] nextState;
+
+    EntityTrack(int inputSize) {
+        size = inputSize;
+        x = new int[size];
+        y = new int[size];
+        z = new int[size];
+        angle = new short[size];
+        state = new byte[size];
+        nextX = new int[size];
+        nextY = new int[size];
+        nextZ = new int[size];
+        nextAngle = new short[size];
+        nextState = new byte[size];
+    }
+
+    /**
+     * Set the state of an entity in the frame being written.
+     */
+    void set(int id, double inputX, double inputY, double inputZ, double inputAngle, int inputState) {
+        nextX[id] = ReplayFormat.quantizePosition(inputX);
+        nextY[id] = ReplayFormat.quantizePosition(inputY);
+        nextZ[id] = ReplayFormat.quantizePosition(inputZ);
+        nextAngle[id] = ReplayFormat.quantizeAngle(inputAngle);
+        nextState[id] = (byte) inputState;
+    }
+
+    /**
+     * Write the entities of the frame being written to out, which must have MAX_ENTITY_BYTES bytes remaining per entity
+     * plus the count. A keyframe writes every entity in full, while a delta frame only writes the fields which changed.
+     */
+    void write(ByteBuffer out, boolean keyframe) {
+        int countPosition = out.position();
+        out.putInt(0);
+        int count = 0;
+        int previousId = -1;
+        for (int id = 0; id < size; id++) {
+            int dx = nextX[id] - x[id];
+            int dy = nextY[id] - y[id];
+            int dz = nextZ[id] - z[id];
+            int mask;
+            if (keyframe) {
+                mask = ReplayFormat.POSITION_ABSOLUTE | ReplayFormat.ANGLE | ReplayFormat.STATE;
+            } else {
+                mask = 0;
+                if (dx != 0 || dy != 0 || dz != 0) {
+                    if (fitsIn(dx, Byte.MIN_VALUE, Byte.MAX_VALUE) && fitsIn(dy, Byte.MIN_VALUE, Byte.MAX_VALUE) &&
+                            fitsIn(dz, Byte.MIN_VALUE, Byte.MAX_VALUE)) {
+                        mask |= ReplayFormat.POSITION_BYTE_DELTA;
+                    } else if (fitsIn(dx, Short.MIN_VALUE, Short.MAX_VALUE) &&
+                            fitsIn(dy, Short.MIN_VALUE, Short.MAX_VALUE) && fitsIn(dz, Short.MIN_VALUE, Short.MAX_VALUE)) {
+                        mask |= ReplayFormat.POSITION_SHORT_DELTA;
+                    } else {
+                        mask |= ReplayFormat.POSITION_ABSOLUTE;
+                    }
+                }
+                if (nextAngle[id] != angle[id]) mask |= ReplayFormat.ANGLE;
+                if (nextState[id] != state[id]) mask |= ReplayFormat.STATE;
+                if (mask == 0) continue;
+            }
+
+            putVarInt(out, id - previousId - 1);
+            out.put((byte) mask);
+            if ((mask & ReplayFormat.POSITION_BYTE_DELTA) != 0) {
+                out.put((byte) dx);
+                out.put((byte) dy);
+                out.put((byte) dz);
+            } else if ((mask & ReplayFormat.POSITION_SHORT_DELTA) != 0) {
+                out.putShort((short) dx);
+                out.putShort((short) dy);
+                out.putShort((short) dz);
+            } else if ((mask & ReplayFormat.POSITION_ABSOLUTE) != 0) {
+                out.putInt(nextX[id]);
+                out.putInt(nextY[id]);
+                out.putInt(nextZ[id]);
+            }
+            if ((mask & ReplayFormat.ANGLE) != 0) out.putShort(nextAngle[id]);
+            if ((mask & ReplayFormat.STATE) != 0) out.put(nextState[id]);
+
+            x[id] = nextX[id];
+            y[id] = nextY[id];
+            z[id] = nextZ[id];
+            angle[id] = nextAngle[id];
+            state[id] = nextState[id];
+            previousId = id;
+            count++;
+        }
+        out.putInt(countPosition, count);
+    }
+
+    /**
+     * Read the entities of a frame written by write(), and replace the state of each entity read. Entities which are
+     * not in the frame keep their state.
+     */
+    void read(ByteBuffer in) {
+        int count = in.getInt();
+        int id = -1;
+        for (int i = 0; i < count; i++) {
+            id += getVarInt(in) + 1;
+            int mask = in.get();
+            if ((mask & ReplayFormat.POSITION_BYTE_DELTA) != 0) {
+                x[id] += in.get();
+                y[id] += in.get();
+                z[id] += in.get();
+            } else if ((mask & ReplayFormat.POSITION_SHORT_DELTA) != 0) {
+                x[id] += in.getShort();
+                y[id] += in.getShort();
+                z[id] += in.getShort();
+            } else if ((mask & ReplayFormat.POSITION_ABSOLUTE) != 0) {
+                x[id] = in.getInt();
+                y[id] = in.getInt();
+                z[id] = in.getInt();
+            }
+            if ((mask & ReplayFormat.ANGLE) != 0) angle[id] = in.getShort();
+            if ((mask & ReplayFormat.STATE) != 0) state[id] = in.get();
+        }
+    }
+
+    private static boolean fitsIn(int value, int min, int max) {
+        return min <= value && value <= max;
+    }
+
+    /**
+     * Write a non-negative integer 7 bits at a time, the high bit of each byte telling whether more bytes follow.
+     */
+    private static void putVarInt(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static int getVarInt(ByteBuffer in) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    /**
+     * Getter and setters
+     */
+    int getSize() {
+        return size;
+    }
+
+    double getX(int id) {
+        return ReplayFormat.dequantizePosition(x[id]);
+    }
+
+    double getY(int id) {
+        return ReplayFormat.dequantizePosition(y[id]);
+    }
+
+    double getZ(int id) {
+        return ReplayFormat.dequantizePosition(z[id]);
+    }
+
+    double getAngle(int id) {
+        return ReplayFormat.dequantizeAngle(angle[id]);
+    }
+
+    int getState(int id) {
+        return state[id];
+    }
+}
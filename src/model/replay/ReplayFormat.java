@@ -0,0 +1,71 @@
+package model.replay;
+
+/**
+ * Layout of a replay file, shared by the recorder and the player. All values are little-endian.
+ *
+ * - Header, HEADER_SIZE bytes: magic, version, number of units, number of singles, keyframe interval, number of frames,
+ *   offset of the frame index, and quantization of positions.
+ * - Roster: unit type, political faction and number of troops of each unit, in the order of the unit list. Singles are
+ *   numbered by their single id.
+ * - Frames, one after the other. Each frame starts with its kind, its number and the length of its payload. The payload
+ *   holds the units, the singles, the projectiles fired, moved off their predicted flight or removed, and the events
+ *   broadcast during the frame.
+ * - Frame index: offset of each frame in the file, which gives the position of any frame in O(1).
+ *
+ * Keyframes hold the full state of every unit, single and flying projectile. Delta frames only hold the entities and
+ * the projectiles which changed since the previous frame. A keyframe is written every keyframe interval frames, so that
+ * seeking to any frame decodes at most one keyframe and keyframeInterval - 1 delta frames.
+ */
+final class ReplayFormat {
+
+    static final int MAGIC = 0x4C50524B;
+    static final int VERSION = 2;
+
+    // Header layout
+    static final int HEADER_SIZE = 64;
+    static final int NUM_FRAMES_OFFSET = 20;
+    static final int INDEX_OFFSET_OFFSET = 24;
+
+    // Kind of each frame
+    static final byte KEYFRAME = 0;
+    static final byte DELTA_FRAME = 1;
+
+    // Size of the frame header: kind, frame number and payload length.
+    static final int FRAME_HEADER_SIZE = Byte.BYTES + Integer.BYTES + Integer.BYTES;
+
+    // Positions are stored in fixed point, with POSITION_QUANTA quanta per distance unit.
+    static final double POSITION_QUANTA = 16;
+
+    // Angles are stored as unsigned 16 bit fractions of a full turn.
+    static final double ANGLE_QUANTA = 65536 / (2 * Math.PI);
+
+    // Bits of the mask that precedes each entity, telling which of its fields follow.
+    static final int POSITION_BYTE_DELTA = 1;
+    static final int POSITION_SHORT_DELTA = 1 << 1;
+    static final int POSITION_ABSOLUTE = 1 << 2;
+    static final int ANGLE = 1 << 3;
+    static final int STATE = 1 << 4;
+
+    // Type of each projectile
+    static final byte ARROW = 0;
+    static final byte STONE = 1;
+    static final byte BALLISTA = 2;
+
+    private ReplayFormat() {}
+
+    static int quantizePosition(double value) {
+        return (int) Math.round(value * POSITION_QUANTA);
+    }
+
+    static double dequantizePosition(int value) {
+        return value / POSITION_QUANTA;
+    }
+
+    static short quantizeAngle(double angle) {
+        return (short) Math.round(angle * ANGLE_QUANTA);
+    }
+
+    static double dequantizeAngle(short value) {
+        return (value & 0xFFFF) / ANGLE_QUANTA;
+    }
+}
@@ -0,0 +1,432 @@
+package model.replay;
+
+import model.GameEnvironment;
+import model.enums.SingleState;
+import model.enums.UnitState;
+import model.events.Event;
+import model.events.EventBroadcaster;
+import model.events.EventType;
+import model.events.custom_events.CavalryMarchingEvent;
+import model.events.custom_events.SoldierMarchingEvent;
+import model.projectile_objects.Arrow;
+import model.projectile_objects.Ballista;
+import model.projectile_objects.BaseProjectile;
+import model.projectile_objects.Projectile;
+import model.projectile_objects.Stone;
+import model.singles.BaseSingle;
+import model.units.BaseUnit;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+/**
+ * Player of a replay recorded by ReplayRecorder. The player drives an environment built from the same configs as the
+ * recorded battle, without ever stepping it: each frame played moves the units and the singles of the environment to
+ * their recorded state, so that the drawers render the environment as they would render a live battle. Projectiles in
+ * flight are kept by the player, and the events of each frame played are broadcast again to the listeners of the
+ * environment, e.g. the video element players, the audio speaker and the camera.
+ *
+ * The file is read through memory mapped windows, and frames are decoded straight from the mapped memory. Playing forward
+ * decodes the frames one after the other. Seeking decodes the keyframe before the frame and the delta frames after it,
+ * found in O(1) through the frame index, so that any frame is reached by decoding at most one keyframe interval.
+ */
+public class ReplayPlayer implements Closeable {
+
+    // Size of each memory mapped window of the file.
+    private static final long WINDOW_SIZE = 1 << 28;
+
+    // Enum values, indexed by the ordinals stored in the replay.
+    private static final SingleState[] SINGLE_STATES = SingleState.values();
+    private static final UnitState[] UNIT_STATES = UnitState.values();
+    private static final EventType[] EVENT_TYPES = EventType.values();
+
+    private GameEnvironment env;
+    private EventBroadcaster broadcaster;
+
+    // Units in the order of the unit list, and singles indexed by single id.
+    private ArrayList<BaseUnit> units;
+    private BaseSingle[] singles;
+
+    // Decoded state of the units and of the singles, as of the last frame decoded.
+    private EntityTrack unitTrack;
+    private EntityTrack singleTrack;
+
+    // Flights of the projectiles recorded and not removed yet as of the last frame decoded, by projectile id, and the
+    // projectiles in flight as of the last frame played.
+    private LinkedHashMap<Integer, Flight> flights;
+    private ArrayList<BaseProjectile> projectiles;
+
+    // File, current mapped window and position of the window in the file.
+    private FileChannel channel;
+    private long fileSize;
+    private ByteBuffer window;
+    private long windowStart;
+
+    // Offset of each frame
+    private LongBuffer frameOffsets;
+    private int numFrames;
+    private int keyframeInterval;
+
+    // Playback state. The play time is a fractional frame, which advances by the speed at each update.
+    private int currentFrame;
+    private double time;
+    private double speed;
+    private boolean paused;
+
+    public ReplayPlayer(GameEnvironment inputEnv, String path) throws IOException {
+        env = inputEnv;
+        broadcaster = env.getBroadcaster();
+        units = env.getUnits();
+        singles = new BaseSingle[env.getSingleStore().getNumSingles()];
+        for (BaseUnit unit : units) {
+            for (BaseSingle single : unit.getTroops()) {
+                singles[single.getSingleId()] = single;
+            }
+        }
+        unitTrack = new EntityTrack(units.size());
+        singleTrack = new EntityTrack(singles.length);
+        flights = new LinkedHashMap<>();
+        projectiles = new ArrayList<>();
+
+        channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+        fileSize = channel.size();
+        readHeader();
+
+        currentFrame = -1;
+        speed = 1;
+        seek(0);
+    }
+
+    /**
+     * Read the header and the roster, check that the replay was recorded from a battle with the same units as the
+     * environment, and map the frame index.
+     */
+    private void readHeader() throws IOException {
+        int rosterSize = units.size() * (2 + Integer.BYTES);
+        if (fileSize < ReplayFormat.HEADER_SIZE + rosterSize) {
+            throw new IOException("Replay is truncated");
+        }
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, ReplayFormat.HEADER_SIZE + rosterSize)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        if (header.getInt() != ReplayFormat.MAGIC) {
+            throw new IOException("Not a replay file");
+        }
+        int version = header.getInt();
+        if (version != ReplayFormat.VERSION) {
+            throw new IOException("Unsupported replay version " + version);
+        }
+        int numUnits = header.getInt();
+        int numSingles = header.getInt();
+        if (numUnits != units.size() || numSingles != singles.length) {
+            throw new IOException("Replay has " + numUnits + " units and " + numSingles + " singles, but the " +
+                    "environment has " + units.size() + " and " + singles.length);
+        }
+        keyframeInterval = header.getInt();
+        numFrames = header.getInt();
+        long indexOffset = header.getLong();
+        if (header.getDouble() != ReplayFormat.POSITION_QUANTA) {
+            throw new IOException("Unsupported replay position quantization");
+        }
+        header.position(ReplayFormat.HEADER_SIZE);
+        for (BaseUnit unit : units) {
+            int unitType = header.get();
+            int faction = header.get();
+            int numTroops = header.getInt();
+            if (unitType != unit.getUnitType().ordinal() || faction != unit.getPoliticalFaction().ordinal() ||
+                    numTroops != unit.getTroops().size()) {
+                throw new IOException("Replay was not recorded from the battle of the environment");
+            }
+        }
+
+        if (indexOffset != 0) {
+            frameOffsets = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, (long) numFrames * Long.BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN)
+                    .asLongBuffer();
+        } else {
+            buildIndex(ReplayFormat.HEADER_SIZE + rosterSize);
+        }
+        if (numFrames == 0) {
+            throw new IOException("Replay has no frame");
+        }
+    }
+
+    /**
+     * Rebuild the frame index of a replay which was not closed, e.g. because the recording crashed, by walking through
+     * the frames. The replay ends at the last complete frame.
+     */
+    private void buildIndex(long firstFrameOffset) throws IOException {
+        ArrayList<Long> offsets = new ArrayList<>();
+        long offset = firstFrameOffset;
+        ByteBuffer frameHeader = ByteBuffer.allocate(ReplayFormat.FRAME_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        while (offset + ReplayFormat.FRAME_HEADER_SIZE <= fileSize) {
+            frameHeader.clear();
+            channel.read(frameHeader, offset);
+            int frame = frameHeader.getInt(Byte.BYTES);
+            int length = frameHeader.getInt(Byte.BYTES + Integer.BYTES);
+            long end = offset + ReplayFormat.FRAME_HEADER_SIZE + length;
+            if (frame != offsets.size() || length <= 0 || end > fileSize) break;
+            offsets.add(offset);
+            offset = end;
+        }
+        numFrames = offsets.size();
+        frameOffsets = LongBuffer.allocate(numFrames);
+        for (long frameOffset : offsets) {
+            frameOffsets.put(frameOffset);
+        }
+    }
+
+    /**
+     * Get the payload of a frame, as a view over the mapped window holding it. The window is moved to the frame if the
+     * frame is not entirely inside of it.
+     */
+    private ByteBuffer getFrame(int frame) throws IOException {
+        long offset = frameOffsets.get(frame);
+        if (window == null || offset < windowStart ||
+                offset + ReplayFormat.FRAME_HEADER_SIZE > windowStart + window.capacity()) {
+            mapWindow(offset, ReplayFormat.FRAME_HEADER_SIZE);
+        }
+        int position = (int) (offset - windowStart);
+        int length = window.getInt(position + Byte.BYTES + Integer.BYTES);
+        if (offset + ReplayFormat.FRAME_HEADER_SIZE + length > windowStart + window.capacity()) {
+            mapWindow(offset, ReplayFormat.FRAME_HEADER_SIZE + length);
+            position = 0;
+        }
+        ByteBuffer payload = window.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        payload.position(position + ReplayFormat.FRAME_HEADER_SIZE);
+        payload.limit(position + ReplayFormat.FRAME_HEADER_SIZE + length);
+        return payload;
+    }
+
+    /**
+     * Map a window of the file starting at offset, which holds at least numBytes bytes.
+     */
+    private void mapWindow(long offset, int numBytes) throws IOException {
+        long size = Math.min(Math.max(WINDOW_SIZE, numBytes), fileSize - offset);
+        if (size < numBytes) {
+            throw new IOException("Replay is truncated");
+        }
+        window = channel.map(FileChannel.MapMode.READ_ONLY, offset, size).order(ByteOrder.LITTLE_ENDIAN);
+        windowStart = offset;
+    }
+
+    /**
+     * Decode a frame on top of the previous frame decoded. The events of the frame are broadcast if broadcastEvents is
+     * set.
+     */
+    private void decodeFrame(int frame, boolean broadcastEvents) throws IOException {
+        ByteBuffer payload = getFrame(frame);
+        boolean keyframe = frame % keyframeInterval == 0;
+
+        unitTrack.read(payload);
+        singleTrack.read(payload);
+
+        // A keyframe holds every projectile in flight, in place of the ones carried over from the previous frame. Otherwise
+        // every projectile moves at its predicted pace, unless the frame says otherwise.
+        if (keyframe) {
+            flights.clear();
+        } else {
+            for (Flight flight : flights.values()) {
+                flight.moveTo(flight.index + flight.step);
+            }
+        }
+        int numFired = payload.getInt();
+        for (int i = 0; i < numFired; i++) {
+            Flight flight = readFlight(payload);
+            flights.put(flight.id, flight);
+        }
+        int numMoved = payload.getInt();
+        for (int i = 0; i < numMoved; i++) {
+            Flight flight = flights.get(payload.getInt());
+            int index = payload.getShort();
+            if (flight == null) continue;
+            flight.step = index - (flight.index - flight.step);
+            flight.moveTo(index);
+        }
+        int numRemoved = payload.getInt();
+        for (int i = 0; i < numRemoved; i++) {
+            flights.remove(payload.getInt());
+        }
+
+        int numEvents = payload.getInt();
+        for (int i = 0; i < numEvents; i++) {
+            Event e = readEvent(payload);
+            if (broadcastEvents) {
+                broadcaster.broadcastEvent(e);
+            }
+        }
+        currentFrame = frame;
+    }
+
+    private Flight readFlight(ByteBuffer payload) throws IOException {
+        int id = payload.getInt();
+        byte type = payload.get();
+        Class<? extends Projectile> projectileClass;
+        switch (type) {
+            case ReplayFormat.ARROW:
+                projectileClass = Arrow.class;
+                break;
+            case ReplayFormat.STONE:
+                projectileClass = Stone.class;
+                break;
+            case ReplayFormat.BALLISTA:
+                projectileClass = Ballista.class;
+                break;
+            default:
+                throw new IOException("Unknown projectile type " + type + " in replay");
+        }
+        double startX = payload.getFloat();
+        double startY = payload.getFloat();
+        double dx = payload.getFloat();
+        double dy = payload.getFloat();
+        double angle = payload.getFloat();
+        double verticalSpeed = payload.getFloat();
+        int lifeTime = payload.getShort();
+        int index = payload.getShort();
+        int step = payload.get();
+        Projectile projectile = Projectile.createFromFlight(projectileClass, startX, startY, dx, dy, angle,
+                verticalSpeed, lifeTime, index);
+        return new Flight(id, projectile, index, step);
+    }
+
+    private Event readEvent(ByteBuffer payload) {
+        EventType eventType = EVENT_TYPES[payload.get()];
+        double x = ReplayFormat.dequantizePosition(payload.getInt());
+        double y = ReplayFormat.dequantizePosition(payload.getInt());
+        double z = ReplayFormat.dequantizePosition(payload.getInt());
+        double angle = ReplayFormat.dequantizeAngle(payload.getShort());
+        int numSingles = payload.getInt();
+        switch (eventType) {
+            case SOLDIER_MARCHING:
+                return new SoldierMarchingEvent(x, y, z, numSingles);
+            case CAVALRY_RUNNING:
+                return new CavalryMarchingEvent(x, y, z, numSingles);
+            default:
+                return new Event(eventType, x, y, z, angle);
+        }
+    }
+
+    /**
+     * Move the singles and then the units of the environment to their state in the last frame decoded, and gather the
+     * projectiles in flight.
+     */
+    private void applyFrame() {
+        for (int id = 0; id < singles.length; id++) {
+            singles[id].setRecordedState(singleTrack.getX(id), singleTrack.getY(id), singleTrack.getZ(id),
+                    singleTrack.getAngle(id), SINGLE_STATES[singleTrack.getState(id)]);
+        }
+        for (int i = 0; i < units.size(); i++) {
+            units.get(i).setRecordedState(unitTrack.getX(i), unitTrack.getY(i), unitTrack.getAngle(i),
+                    UNIT_STATES[unitTrack.getState(i)]);
+        }
+        projectiles.clear();
+        for (Flight flight : flights.values()) {
+            if (flight.projectile.isAlive()) {
+                projectiles.add(flight.projectile);
+            }
+        }
+    }
+
+    /**
+     * Jump to a frame. Frames skipped over do not broadcast their events.
+     */
+    public void seek(int frame) throws IOException {
+        frame = Math.max(0, Math.min(frame, numFrames - 1));
+        int keyframe = frame - frame % keyframeInterval;
+        int start = keyframe <= currentFrame && currentFrame <= frame ? currentFrame + 1 : keyframe;
+        for (int f = start; f <= frame; f++) {
+            decodeFrame(f, false);
+        }
+        applyFrame();
+        time = frame;
+    }
+
+    /**
+     * Advance the play time by the speed, and play up to the frame reached. Playing forward decodes every frame on the
+     * way and broadcasts its events. Playing backward, or skipping more than a keyframe interval at once, seeks instead.
+     */
+    public void update() throws IOException {
+        if (paused) return;
+        time = Math.max(0, Math.min(time + speed, numFrames - 1));
+        int frame = (int) time;
+        if (frame == currentFrame) return;
+        if (frame < currentFrame || frame - currentFrame > keyframeInterval) {
+            double playTime = time;
+            seek(frame);
+            time = playTime;
+            return;
+        }
+        for (int f = currentFrame + 1; f <= frame; f++) {
+            decodeFrame(f, true);
+        }
+        applyFrame();
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    /**
+     * Recorded projectile, with its index in its flight and its pace, in indices per frame.
+     */
+    private static class Flight {
+        int id;
+        Projectile projectile;
+        int index;
+        int step;
+
+        Flight(int inputId, Projectile inputProjectile, int inputIndex, int inputStep) {
+            id = inputId;
+            projectile = inputProjectile;
+            index = inputIndex;
+            step = inputStep;
+        }
+
+        void moveTo(int inputIndex) {
+            index = inputIndex;
+            projectile.moveTo(index);
+        }
+    }
+
+    /**
+     * Getter and setters
+     */
+    public int getCurrentFrame() {
+        return currentFrame;
+    }
+
+    public int getNumFrames() {
+        return numFrames;
+    }
+
+    public int getKeyframeInterval() {
+        return keyframeInterval;
+    }
+
+    public ArrayList<BaseProjectile> getProjectiles() {
+        return projectiles;
+    }
+
+    public double getSpeed() {
+        return speed;
+    }
+    public void setSpeed(double speed) {
+        this.speed = speed;
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+    public void setPaused(boolean paused) {
+        this.paused = paused;
+    }
+}
@@ -0,0 +1,395 @@
+package model.replay;
+
+import model.GameEnvironment;
+import model.constants.UniversalConstants;
+import model.events.Event;
+import model.events.EventListener;
+import model.events.custom_events.CavalryMarchingEvent;
+import model.events.custom_events.SoldierMarchingEvent;
+import model.projectile_objects.Arrow;
+import model.projectile_objects.Ballista;
+import model.projectile_objects.BaseProjectile;
+import model.projectile_objects.Projectile;
+import model.projectile_objects.Stone;
+import model.singles.BaseSingle;
+import model.units.BaseUnit;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Recorder of the replay of a battle, see ReplayFormat for the layout of the file. Call recordFrame() once after each
+ * step of the environment, and close() once the battle is over, which writes the frame index.
+ *
+ * Each frame is encoded in a heap buffer, then appended to the file through a memory mapped region, which is mapped
+ * further along the file whenever it is full. The recorder listens to the events of the environment, and stores the
+ * events broadcast during each step alongside the frame.
+ */
+public class ReplayRecorder extends EventListener implements Closeable {
+
+    // Keyframe interval used when none is given, in frames.
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 300;
+
+    // Size of each memory mapped region of the file.
+    private static final int REGION_SIZE = 1 << 24;
+
+    // Number of bytes of a projectile fired, of a projectile moved, of a projectile removed, and of an event.
+    private static final int PROJECTILE_BYTES = Integer.BYTES + 1 + 7 * Float.BYTES + 2 * Short.BYTES + 1;
+    private static final int PROJECTILE_MOVE_BYTES = Integer.BYTES + Short.BYTES;
+    private static final int PROJECTILE_REMOVAL_BYTES = Integer.BYTES;
+    private static final int EVENT_BYTES = 1 + 3 * Integer.BYTES + Short.BYTES + Integer.BYTES;
+
+    private GameEnvironment env;
+    private int keyframeInterval;
+
+    // Singles indexed by single id.
+    private BaseSingle[] singles;
+
+    // Quantized state of the units and of the singles, as of the last frame recorded.
+    private EntityTrack unitTrack;
+    private EntityTrack singleTrack;
+
+    // Projectiles recorded so far and still in flight, in the order they were fired, and the projectiles which moved
+    // off their predicted flight during the frame being recorded.
+    private LinkedHashMap<BaseProjectile, TrackedProjectile> trackedProjectiles;
+    private ArrayList<TrackedProjectile> movedProjectiles;
+    private int nextProjectileId;
+
+    // Events broadcast since the last frame recorded.
+    private ArrayList<Event> events;
+
+    // Buffer of the frame being recorded.
+    private ByteBuffer frame;
+
+    // File, current mapped region and position of the region in the file.
+    private FileChannel channel;
+    private MappedByteBuffer region;
+    private long regionStart;
+
+    // Offset of each frame recorded so far.
+    private long[] frameOffsets;
+    private int numFrames;
+    private boolean closed;
+
+    public ReplayRecorder(GameEnvironment inputEnv, String path) throws IOException {
+        this(inputEnv, path, DEFAULT_KEYFRAME_INTERVAL);
+    }
+
+    public ReplayRecorder(GameEnvironment inputEnv, String path, int inputKeyframeInterval) throws IOException {
+        super(inputEnv.getBroadcaster());
+        if (inputKeyframeInterval <= 0) {
+            throw new IllegalArgumentException("Keyframe interval must be positive, got " + inputKeyframeInterval);
+        }
+        env = inputEnv;
+        keyframeInterval = inputKeyframeInterval;
+
+        ArrayList<BaseUnit> units = env.getUnits();
+        singles = new BaseSingle[env.getSingleStore().getNumSingles()];
+        for (BaseUnit unit : units) {
+            for (BaseSingle single : unit.getTroops()) {
+                singles[single.getSingleId()] = single;
+            }
+        }
+        unitTrack = new EntityTrack(units.size());
+        singleTrack = new EntityTrack(singles.length);
+        trackedProjectiles = new LinkedHashMap<>();
+        movedProjectiles = new ArrayList<>();
+        events = new ArrayList<>();
+        frame = ByteBuffer.allocate(ReplayFormat.FRAME_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        frameOffsets = new long[1024];
+
+        channel = FileChannel.open(Paths.get(path),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        writeHeader();
+    }
+
+    /**
+     * Write the header, with no frame and no index yet, and the roster.
+     */
+    private void writeHeader() throws IOException {
+        ArrayList<BaseUnit> units = env.getUnits();
+        int rosterSize = units.size() * (2 + Integer.BYTES);
+        mapRegion(ReplayFormat.HEADER_SIZE + rosterSize);
+        region.putInt(ReplayFormat.MAGIC);
+        region.putInt(ReplayFormat.VERSION);
+        region.putInt(units.size());
+        region.putInt(singles.length);
+        region.putInt(keyframeInterval);
+        region.putInt(0);
+        region.putLong(0);
+        region.putDouble(ReplayFormat.POSITION_QUANTA);
+        region.position(ReplayFormat.HEADER_SIZE);
+        for (BaseUnit unit : units) {
+            region.put((byte) unit.getUnitType().ordinal());
+            region.put((byte) unit.getPoliticalFaction().ordinal());
+            region.putInt(unit.getTroops().size());
+        }
+    }
+
+    /**
+     * Make sure the mapped region can hold numBytes more bytes, mapping the next region of the file if it cannot.
+     */
+    private void mapRegion(int numBytes) throws IOException {
+        if (region != null && region.remaining() >= numBytes) return;
+        long start = region == null ? 0 : regionStart + region.position();
+        region = channel.map(FileChannel.MapMode.READ_WRITE, start, Math.max(REGION_SIZE, numBytes));
+        region.order(ByteOrder.LITTLE_ENDIAN);
+        regionStart = start;
+    }
+
+    /**
+     * Make sure the frame buffer can hold numBytes more bytes.
+     */
+    private void ensureFrameRemaining(int numBytes) {
+        if (frame.remaining() >= numBytes) return;
+        int newCapacity = frame.capacity();
+        while (newCapacity - frame.position() < numBytes) {
+            newCapacity *= 2;
+        }
+        ByteBuffer newFrame = ByteBuffer.allocate(newCapacity).order(ByteOrder.LITTLE_ENDIAN);
+        frame.flip();
+        newFrame.put(frame);
+        frame = newFrame;
+    }
+
+    @Override
+    protected void listenEvent(Event e) {
+        if (closed) return;
+        events.add(e);
+    }
+
+    /**
+     * Record the current state of the environment as the next frame, along with the events broadcast since the last
+     * frame recorded.
+     */
+    public void recordFrame() throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Replay recorder is closed");
+        }
+        boolean keyframe = numFrames % keyframeInterval == 0;
+
+        frame.clear();
+        frame.put(keyframe ? ReplayFormat.KEYFRAME : ReplayFormat.DELTA_FRAME);
+        frame.putInt(numFrames);
+        frame.putInt(0);
+
+        // Units
+        ArrayList<BaseUnit> units = env.getUnits();
+        for (int i = 0; i < units.size(); i++) {
+            BaseUnit unit = units.get(i);
+            unitTrack.set(i, unit.getAnchorX(), unit.getAnchorY(), 0, unit.getAnchorAngle(),
+                    unit.getState().ordinal());
+        }
+        ensureFrameRemaining(Integer.BYTES + units.size() * EntityTrack.MAX_ENTITY_BYTES);
+        unitTrack.write(frame, keyframe);
+
+        // Singles
+        for (BaseSingle single : singles) {
+            singleTrack.set(single.getSingleId(), single.getX(), single.getY(), single.getZ(),
+                    single.getFacingAngle(), single.getState().ordinal());
+        }
+        ensureFrameRemaining(Integer.BYTES + singles.length * EntityTrack.MAX_ENTITY_BYTES);
+        singleTrack.write(frame, keyframe);
+
+        // Projectiles
+        writeProjectiles(keyframe);
+
+        // Events
+        ensureFrameRemaining(Integer.BYTES + events.size() * EVENT_BYTES);
+        frame.putInt(events.size());
+        for (Event e : events) {
+            writeEvent(e);
+        }
+        events.clear();
+
+        // Append the frame to the file.
+        frame.putInt(Byte.BYTES + Integer.BYTES, frame.position() - ReplayFormat.FRAME_HEADER_SIZE);
+        frame.flip();
+        mapRegion(frame.remaining());
+        if (numFrames == frameOffsets.length) {
+            frameOffsets = Arrays.copyOf(frameOffsets, numFrames * 2);
+        }
+        frameOffsets[numFrames] = regionStart + region.position();
+        region.put(frame);
+        numFrames++;
+    }
+
+    /**
+     * Write the projectiles fired since the last frame, or every projectile in flight for a keyframe, then the
+     * projectiles which moved off their predicted flight, then the projectiles which are not in flight anymore.
+     *
+     * A projectile is predicted to move along its flight by as many indices per frame as it moved during its previous
+     * frame, starting at one index per frame, so a projectile is only written again when its pace changes.
+     */
+    private void writeProjectiles(boolean keyframe) {
+        ArrayList<BaseProjectile> projectiles = env.getUnitModifier().getProjectileHasher().getObjects();
+        ensureFrameRemaining(3 * Integer.BYTES + projectiles.size() * (PROJECTILE_BYTES + PROJECTILE_MOVE_BYTES) +
+                trackedProjectiles.size() * PROJECTILE_REMOVAL_BYTES);
+
+        int countPosition = frame.position();
+        frame.putInt(0);
+        int numFired = 0;
+        for (BaseProjectile object : projectiles) {
+            if (!object.isAlive() || !(object instanceof Projectile)) continue;
+            Projectile projectile = (Projectile) object;
+            TrackedProjectile tracked = trackedProjectiles.get(projectile);
+            if (tracked == null) {
+                tracked = new TrackedProjectile(nextProjectileId++, projectile.getIndex());
+                trackedProjectiles.put(projectile, tracked);
+            } else if (projectile.getIndex() != tracked.index + tracked.step) {
+                tracked.step = projectile.getIndex() - tracked.index;
+                tracked.index = projectile.getIndex();
+                if (!keyframe) movedProjectiles.add(tracked);
+            } else {
+                tracked.index = projectile.getIndex();
+            }
+            tracked.lastFrame = numFrames;
+            if (keyframe || tracked.firstFrame == numFrames) {
+                writeProjectile(projectile, tracked);
+                numFired++;
+            }
+        }
+        frame.putInt(countPosition, numFired);
+
+        frame.putInt(movedProjectiles.size());
+        for (TrackedProjectile tracked : movedProjectiles) {
+            frame.putInt(tracked.id);
+            frame.putShort((short) tracked.index);
+        }
+        movedProjectiles.clear();
+
+        countPosition = frame.position();
+        frame.putInt(0);
+        int numRemoved = 0;
+        Iterator<TrackedProjectile> iterator = trackedProjectiles.values().iterator();
+        while (iterator.hasNext()) {
+            TrackedProjectile tracked = iterator.next();
+            if (tracked.lastFrame == numFrames) continue;
+            frame.putInt(tracked.id);
+            iterator.remove();
+            numRemoved++;
+        }
+        frame.putInt(countPosition, numRemoved);
+    }
+
+    /**
+     * Write a projectile by its flight: its ground position at launch and its move per frame, its initial vertical
+     * speed and its lifetime, then its current index in the flight and its predicted pace. The player recalculates its
+     * position at any index from these.
+     */
+    private void writeProjectile(Projectile projectile, TrackedProjectile tracked) {
+        double[][] pos = projectile.getPos();
+        Double[] heightOverTime = projectile.getHeightOverTime();
+        int lifeTime = pos.length;
+        byte type;
+        if (projectile instanceof Arrow) {
+            type = ReplayFormat.ARROW;
+        } else if (projectile instanceof Ballista) {
+            type = ReplayFormat.BALLISTA;
+        } else if (projectile instanceof Stone) {
+            type = ReplayFormat.STONE;
+        } else {
+            throw new IllegalArgumentException("Unknown projectile " + projectile.getClass().getSimpleName());
+        }
+        frame.putInt(tracked.id);
+        frame.put(type);
+        frame.putFloat((float) pos[0][0]);
+        frame.putFloat((float) pos[0][1]);
+        frame.putFloat(lifeTime > 1 ? (float) (pos[1][0] - pos[0][0]) : 0);
+        frame.putFloat(lifeTime > 1 ? (float) (pos[1][1] - pos[0][1]) : 0);
+        frame.putFloat((float) projectile.getAngle());
+        frame.putFloat(heightOverTime.length > 1 ?
+                (float) (heightOverTime[1] - heightOverTime[0] + UniversalConstants.GRAVITATIONAL_CONSTANT_FPM2 / 2) :
+                0);
+        frame.putShort((short) lifeTime);
+        frame.putShort((short) tracked.index);
+        frame.put((byte) tracked.step);
+    }
+
+    /**
+     * Write an event: its type, position and angle, and the number of singles of the marching events.
+     */
+    private void writeEvent(Event e) {
+        int numSingles = 0;
+        if (e instanceof SoldierMarchingEvent) {
+            numSingles = ((SoldierMarchingEvent) e).getNumSingles();
+        } else if (e instanceof CavalryMarchingEvent) {
+            numSingles = ((CavalryMarchingEvent) e).getNumSingles();
+        }
+        frame.put((byte) e.getEventType().ordinal());
+        frame.putInt(ReplayFormat.quantizePosition(e.getX()));
+        frame.putInt(ReplayFormat.quantizePosition(e.getY()));
+        frame.putInt(ReplayFormat.quantizePosition(e.getZ()));
+        frame.putShort(ReplayFormat.quantizeAngle(e.getAngle()));
+        frame.putInt(numSingles);
+    }
+
+    /**
+     * Write the frame index, complete the header and trim the file to its content. The recorder stops listening to
+     * events, and no frame can be recorded after this.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        events.clear();
+
+        mapRegion(numFrames * Long.BYTES);
+        long indexOffset = regionStart + region.position();
+        for (int i = 0; i < numFrames; i++) {
+            region.putLong(frameOffsets[i]);
+        }
+        long end = regionStart + region.position();
+        region.force();
+
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, ReplayFormat.HEADER_SIZE);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(ReplayFormat.NUM_FRAMES_OFFSET, numFrames);
+        header.putLong(ReplayFormat.INDEX_OFFSET_OFFSET, indexOffset);
+        header.force();
+
+        region = null;
+        channel.truncate(end);
+        channel.close();
+    }
+
+    /**
+     * Projectile recorded and still in flight: its id in the replay, and its index and pace as of the last frame.
+     */
+    private class TrackedProjectile {
+        int id;
+        int index;
+        int step;
+        int firstFrame;
+        int lastFrame;
+
+        TrackedProjectile(int inputId, int inputIndex) {
+            id = inputId;
+            index = inputIndex;
+            step = 1;
+            firstFrame = numFrames;
+        }
+    }
+
+    /**
+     * Getter and setters
+     */
+    public int getNumFrames() {
+        return numFrames;
+    }
+
+    public int getKeyframeInterval() {
+        return keyframeInterval;
+    }
+}
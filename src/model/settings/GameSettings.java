@@ -34,6 +34,10 @@ public class GameSettings {
     // Process unit visions.
     private boolean processUnitVision;
 
+    // Distance a unit has to move before its lines of sight are evaluated again. With 0, they are evaluated again as
+    // soon as the unit moves at all.
+    private double unitVisionMoveThreshold;
+
     // Sound bouncing processing setting. Currently an experimental feature that is false by default.
     // Very heavy on processing.
     // TODO: Add some logging for sound bouncing processing.
@@ -42,6 +46,40 @@ public class GameSettings {
     // Create AI Agents
     private boolean createAIAgent;
 
+    // Backend used by the TroopHasher. UNIFORM_GRID sorts troops into flat arrays covering the terrain, which avoids
+    // boxing and per-cell lists and is a lot cheaper for large armies. Defaults to HASH_MAP if not set.
+    private TroopHashingMode troopHashingMode;
+
+    // Skin of the troop neighbor list. With a skin of 0 the neighbor list is rebuilt every frame. With a positive skin,
+    // the neighbor list is a Verlet list that is only rebuilt once some troop moved more than half of the skin.
+    private double neighborListSkin;
+
+    // Let the TroopHasher tune the size of its cells from the monitor counters, within [minTroopCellSize,
+    // maxTroopCellSize]. Off by default, in which case the cells keep the size of UniversalConstants.X_HASH_DIV.
+    private boolean adaptiveTroopCellSize;
+    private int minTroopCellSize;
+    private int maxTroopCellSize;
+
+    // Number of worker threads used by the parallel modes. 0 uses one thread per available processor.
+    private int numThreads;
+
+    // Resolve troop collisions in parallel.
+    private boolean parallelCollision;
+
+    // Resolve melee combat in two phases: targets are picked in parallel, then attacks are applied in a deterministic
+    // order that doesn't use the random generator.
+    private boolean parallelCombat;
+
+    // Evaluate the lines of sight between the units in parallel.
+    private boolean parallelUnitVision;
+
+    // Update the intentions and the states of the units in parallel. Each unit draws from its own random generator,
+    // seeded from the global one every frame.
+    private boolean parallelUnitStep;
+
+    // Keep the single store columns off-heap, in direct buffers, instead of in heap buffers.
+    private boolean offHeapSingleStore;
+
     public GameSettings() {}
 
     public boolean isAllyCollision() {
@@ -130,10 +168,94 @@ public class GameSettings {
         this.processUnitVision = processUnitVision;
     }
 
+    public double getUnitVisionMoveThreshold() {
+        return unitVisionMoveThreshold;
+    }
+    public void setUnitVisionMoveThreshold(double unitVisionMoveThreshold) {
+        this.unitVisionMoveThreshold = unitVisionMoveThreshold;
+    }
+
     public boolean isCreateAIAgent() {
         return createAIAgent;
     }
     public void setCreateAIAgent(boolean createAIAgent) {
         this.createAIAgent = createAIAgent;
     }
-}
\ No newline at end of file
+
+    public TroopHashingMode getTroopHashingMode() {
+        return troopHashingMode;
+    }
+    public void setTroopHashingMode(TroopHashingMode troopHashingMode) {
+        this.troopHashingMode = troopHashingMode;
+    }
+
+    public double getNeighborListSkin() {
+        return neighborListSkin;
+    }
+    public void setNeighborListSkin(double neighborListSkin) {
+        this.neighborListSkin = neighborListSkin;
+    }
+
+    public boolean isAdaptiveTroopCellSize() {
+        return adaptiveTroopCellSize;
+    }
+    public void setAdaptiveTroopCellSize(boolean adaptiveTroopCellSize) {
+        this.adaptiveTroopCellSize = adaptiveTroopCellSize;
+    }
+
+    public int getMinTroopCellSize() {
+        return minTroopCellSize;
+    }
+    public void setMinTroopCellSize(int minTroopCellSize) {
+        this.minTroopCellSize = minTroopCellSize;
+    }
+
+    public int getMaxTroopCellSize() {
+        return maxTroopCellSize;
+    }
+    public void setMaxTroopCellSize(int maxTroopCellSize) {
+        this.maxTroopCellSize = maxTroopCellSize;
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+    public void setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+    }
+
+    public boolean isParallelCollision() {
+        return parallelCollision;
+    }
+    public void setParallelCollision(boolean parallelCollision) {
+        this.parallelCollision = parallelCollision;
+    }
+
+    public boolean isParallelCombat() {
+        return parallelCombat;
+    }
+    public void setParallelCombat(boolean parallelCombat) {
+        this.parallelCombat = parallelCombat;
+    }
+
+    public boolean isParallelUnitVision() {
+        return parallelUnitVision;
+    }
+    public void setParallelUnitVision(boolean parallelUnitVision) {
+        this.parallelUnitVision = parallelUnitVision;
+    }
+
+    public boolean isParallelUnitStep() {
+        return parallelUnitStep;
+    }
+    public void setParallelUnitStep(boolean parallelUnitStep) {
+        this.parallelUnitStep = parallelUnitStep;
+    }
+
+    public boolean isOffHeapSingleStore() {
+        return offHeapSingleStore;
+    }
+    public void setOffHeapSingleStore(boolean offHeapSingleStore) {
+        this.offHeapSingleStore = offHeapSingleStore;
+    }
+}
@@ -0,0 +1,10 @@
+package model.settings;
+
+public enum TroopHashingMode {
+    // Hash troops into a hash map of array lists, keyed by cell.
+    HASH_MAP,
+    // Counting sort troops into a flat uniform grid covering the terrain.
+    UNIFORM_GRID,
+    // Keep troops in a flat uniform grid from one frame to the next, and only move the troops whose cell changed.
+    INCREMENTAL_GRID
+}
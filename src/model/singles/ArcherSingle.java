@@ -6,11 +6,15 @@ import model.enums.SingleState;
 import model.enums.PoliticalFaction;
 import model.enums.UnitState;
 import model.projectile_objects.Arrow;
+import model.snapshot.SnapshotReader;
+import model.snapshot.SnapshotWriter;
 import model.units.ArcherUnit;
 import model.units.BaseUnit;
 import model.utils.MathUtils;
 import model.utils.MovementUtils;
 
+import java.io.IOException;
+
 public class ArcherSingle extends BaseSingle {
 
     // These two delays are unique to archer.
@@ -39,22 +43,22 @@ public class ArcherSingle extends BaseSingle {
         hasher = inputHasher;
 
         // Positional attributes
-        x = xInit;
-        y = yInit;
+        setX(xInit);
+        setY(yInit);
         xGoal = xInit;
         yGoal = yInit;
 
         // Set up political faction
-        politicalFaction = faction;
+        setPoliticalFaction(faction);
 
         // Set default stat up stats
         singleStats = inputSingleStats;
 
         // Default constants
         speedGoal = 0;
-        speed = 0;
+        setSpeed(0);
         z = 0;
-        state = SingleState.IN_POSITION;
+        setState(SingleState.IN_POSITION);
 
         // Reload delay and bored delay
         reloadDelay = MathUtils.randint(0, singleStats.reloadDelay);
@@ -65,38 +69,39 @@ public class ArcherSingle extends BaseSingle {
     public void updateIntention() {
 
         // Can't have intention if already dead
-        if (state == SingleState.DEAD) return;
+        if (getState() == SingleState.DEAD) return;
 
         // Can't change intention if still sliding
-        if (state == SingleState.SLIDING) return;
+        if (getState() == SingleState.SLIDING) return;
 
         // Calculate intended speed
         double variation = 1;
-        if (speed != 0) variation = MathUtils.randDouble(0.9, 1.1);
-        if (speed < speedGoal) speed = Math.min(speed + singleStats.acceleration, speedGoal);
-        else if (speed > speedGoal) speed = Math.max(speed - singleStats.deceleration, speedGoal);
-        speed *= variation;
+        if (getSpeed() != 0) variation = MathUtils.randDouble(0.9, 1.1);
+        if (getSpeed() < speedGoal) setSpeed(Math.min(getSpeed() + singleStats.acceleration, speedGoal));
+        else if (getSpeed() > speedGoal) setSpeed(Math.max(getSpeed() - singleStats.deceleration, speedGoal));
+        setSpeed(getSpeed() * variation);
 
         // Apply speed modifier by terrain
-        double moveSpeedX = Math.cos(angle) * speed;
-        double moveSpeedY = Math.sin(angle) * speed;
-        double[] deltaVel = terrain.getDeltaVelFromPos(x, y);
+        double moveSpeedX = Math.cos(angle) * getSpeed();
+        double moveSpeedY = Math.sin(angle) * getSpeed();
+        double[] deltaVel = terrain.getDeltaVelFromPos(getX(), getY());
         double speedModifier = MathUtils.ratioProjection(deltaVel[0], deltaVel[1], moveSpeedX, moveSpeedY);
         speedModifier = MathUtils.capMinMax(speedModifier,
                 UniversalConstants.MINIMUM_TERRAIN_EFFECT,
                 UniversalConstants.MAXIMUM_TERRAIN_EFFECT);
-        speed *= (1 + speedModifier);
+        setSpeed(getSpeed() * (1 + speedModifier));
 
         // Calculate intended step
-        xVel = MathUtils.quickCos((float) angle) * speed;
-        yVel = MathUtils.quickSin((float) angle) * speed;
+        setxVel(MathUtils.quickCos((float) angle) * getSpeed());
+        setyVel(MathUtils.quickSin((float) angle) * getSpeed());
 
         // Update based on states
-        double distanceToGoal = MathUtils.quickRoot1((float)((x - xGoal) * (x - xGoal) + (y - yGoal) * (y - yGoal)));
-        switch (state) {
+        double distanceToGoal = MathUtils.quickRoot1(
+                (float)((getX() - xGoal) * (getX() - xGoal) + (getY() - yGoal) * (getY() - yGoal)));
+        switch (getState()) {
             case MOVING:
                 // Recalculate vx, vy
-                angle = MathUtils.atan2(yGoal - y, xGoal - x);
+                angle = MathUtils.atan2(yGoal - getY(), xGoal - getX());
 
                 // Out of position if it takes more than 3 steps to reach
                 if (distanceToGoal > singleStats.outOfReachDist) {
@@ -104,15 +109,15 @@ public class ArcherSingle extends BaseSingle {
                 } else if ((distanceToGoal > singleStats.standingDist) && (distanceToGoal < 10 * singleStats.speed)) {
                     speedGoal = singleStats.speed;
                 } else if (distanceToGoal < singleStats.standingDist) {
-                    state = SingleState.IN_POSITION;
+                    setState(SingleState.IN_POSITION);
                 }
                 boredDelay = singleStats.boredDelay;
                 break;
             case IN_POSITION:
-                speed = unit.isTurning() ? 0 : unit.getState() == UnitState.MOVING ? singleStats.speed : 0;
+                setSpeed(unit.isTurning() ? 0 : unit.getState() == UnitState.MOVING ? singleStats.speed : 0);
                 speedGoal = unit.getState() == UnitState.MOVING ? singleStats.speed : 0;
                 if (distanceToGoal > singleStats.standingDist) {
-                    state = SingleState.MOVING;
+                    setState(SingleState.MOVING);
                     speedGoal = singleStats.speed;
                 }
 
@@ -121,12 +126,12 @@ public class ArcherSingle extends BaseSingle {
 
                 // If archer becomes too bored, he shall switch to fire at will mode.
                 boredDelay -= 1;
-                if (boredDelay == 0) state = SingleState.FIRE_AT_WILL;
+                if (boredDelay == 0) setState(SingleState.FIRE_AT_WILL);
                 break;
             case FIRE_AT_WILL:
-                speed = 0;
+                setSpeed(0);
                 if (distanceToGoal > singleStats.standingDist) {
-                    state = SingleState.MOVING;
+                    setState(SingleState.MOVING);
                     speedGoal = singleStats.speed;
                 }
                 // Constantly reload and fire if there is a target in sight.
@@ -141,7 +146,7 @@ public class ArcherSingle extends BaseSingle {
                         if (shootingTarget == null) break;
 
                         // Shoot an arrow into the world
-                        hasher.addObject(new Arrow(x, y, shootingTarget.getX(), shootingTarget.getY(),
+                        hasher.addObject(new Arrow(getX(), getY(), shootingTarget.getX(), shootingTarget.getY(),
                                 singleStats.arrowSpeed,
                                 singleStats.arrowDamage,
                                 singleStats.arrowPushDist,
@@ -155,7 +160,7 @@ public class ArcherSingle extends BaseSingle {
         }
 
         // If not too far from intended position, face the position of the army
-        if (state != SingleState.FIRE_AT_WILL) {
+        if (getState() != SingleState.FIRE_AT_WILL) {
             if (distanceToGoal < singleStats.nonRotationDist) {
                 facingAngleGoal = angleGoal;
             } else {
@@ -166,8 +171,24 @@ public class ArcherSingle extends BaseSingle {
             if (shootingTarget == null) {
                 facingAngleGoal = angleGoal;
             } else {
-                facingAngleGoal = MathUtils.atan2(shootingTarget.getY() - y, shootingTarget.getX() - x);
+                facingAngleGoal = MathUtils.atan2(shootingTarget.getY() - getY(), shootingTarget.getX() - getX());
             }
         }
     }
+
+    @Override
+    public void writeSnapshot(SnapshotWriter writer) {
+        super.writeSnapshot(writer);
+        writer.writeInt(reloadDelay);
+        writer.writeInt(boredDelay);
+        writer.writeSingle(shootingTarget);
+    }
+
+    @Override
+    public void readSnapshot(SnapshotReader reader) throws IOException {
+        super.readSnapshot(reader);
+        reloadDelay = reader.readInt();
+        boredDelay = reader.readInt();
+        shootingTarget = reader.readSingle();
+    }
 }
@@ -9,28 +9,26 @@ import model.terrain.Terrain;
 import model.units.BaseUnit;
 import model.enums.PoliticalFaction;
 import model.enums.UnitState;
+import model.snapshot.SnapshotReader;
+import model.snapshot.SnapshotWriter;
 import model.utils.MathUtils;
 import model.utils.MovementUtils;
 import view.constants.DrawingConstants;
 
+import java.io.IOException;
 import java.util.HashMap;
+import java.util.Map;
 
 public class BaseSingle {
 
-    // Political attribute
-    PoliticalFaction politicalFaction;
+    // Political attribute. The political faction is stored in the single store.
     BaseUnit unit;  // The unit the individual belong to
 
     // Single stats
     SingleStats singleStats;
 
-    // Positional attributes
-    double x;
-    double y;
+    // Positional attributes. Position, velocity and speed are stored in the single store.
     double z;
-    double xVel;
-    double yVel;
-    double speed;
     double angle;
     double facingAngle;
     Terrain terrain;
@@ -45,9 +43,7 @@ public class BaseSingle {
     // Distance from goal
     double tempSquaredDistanceFromGoal;
 
-    // Currents state of the single
-    private double hp;
-    SingleState state;
+    // Currents state of the single. Hp and state are stored in the single store.
     int decisionDelay;
     int combatDelay;
     int justHit;
@@ -57,6 +53,11 @@ public class BaseSingle {
     boolean inDanger;  // The troop is in contact with enemy or is crushed by too many collisions
     HashMap<BaseProjectile, Integer> carriedObjects;  // Stuff carried with the single (arrows)
 
+    // Store holding the hot attributes of every single, and the dense id of this single in it. Ids are assigned in the
+    // order singles are created, and are also used for deterministic ordering.
+    SingleStore store;
+    int singleId;
+
     /**
      * Initialize a troop. Since this is the base objects. Attributed assign will be among the most basic shared stats
      * such as:
@@ -66,6 +67,11 @@ public class BaseSingle {
     public BaseSingle(SingleStats singleStats, BaseUnit baseUnit) {
         unit = baseUnit;
         terrain = unit.getTerrain();
+        store = unit.getEnv().getSingleStore();
+        singleId = store.addSingle();
+        this.singleStats = singleStats;
+        store.setCollisionRadius(singleId, singleStats.collisionRadius);
+        store.setMass(singleId, singleStats.mass);
 
         damageSustain = 0.0;
         justHit = 0;
@@ -73,7 +79,7 @@ public class BaseSingle {
         inPosition = true;
         inDanger = false;
         carriedObjects = new HashMap<>();
-        hp = singleStats.hp;
+        store.setHp(singleId, singleStats.hp);
     }
 
     /**
@@ -83,32 +89,32 @@ public class BaseSingle {
     public void updateIntention() {
 
         // Can't have intention if already dead
-        if (state == SingleState.DEAD) return;
+        if (getState() == SingleState.DEAD) return;
 
         // Can't change intention if still sliding
-        if (state == SingleState.SLIDING) return;
+        if (getState() == SingleState.SLIDING) return;
 
         // Calculate intended speed
         double variation = 1;
-        if (speed != 0) variation = MathUtils.randDouble(0.99, 1.01);
-        if (speed < speedGoal) speed = Math.min(speed + singleStats.acceleration, speedGoal);
-        else if (speed > speedGoal) speed = Math.max(speed - singleStats.deceleration, speedGoal);
-        speed *= variation;
+        if (getSpeed() != 0) variation = MathUtils.randDouble(0.99, 1.01);
+        if (getSpeed() < speedGoal) setSpeed(Math.min(getSpeed() + singleStats.acceleration, speedGoal));
+        else if (getSpeed() > speedGoal) setSpeed(Math.max(getSpeed() - singleStats.deceleration, speedGoal));
+        setSpeed(getSpeed() * variation);
 
         // Apply speed modifier by terrain
-        double moveSpeedX = Math.cos(angle) * speed;
-        double moveSpeedY = Math.sin(angle) * speed;
-        double[] deltaVel = terrain.getDeltaVelFromPos(x, y);
+        double moveSpeedX = Math.cos(angle) * getSpeed();
+        double moveSpeedY = Math.sin(angle) * getSpeed();
+        double[] deltaVel = terrain.getDeltaVelFromPos(getX(), getY());
         double speedModifier = MathUtils.ratioProjection(deltaVel[0], deltaVel[1], moveSpeedX, moveSpeedY);
         speedModifier = MathUtils.capMinMax(speedModifier,
                 UniversalConstants.MINIMUM_TERRAIN_EFFECT,
                 UniversalConstants.MAXIMUM_TERRAIN_EFFECT);;
-        speed *= (1 + speedModifier);
+        setSpeed(getSpeed() * (1 + speedModifier));
 
         // Update based on states
-        double distanceToGoal = MathUtils.quickDistance(x, y, xGoal, yGoal);
-        double towardAngle = MathUtils.atan2(yGoal - y, xGoal - x);
-        switch (state) {
+        double distanceToGoal = MathUtils.quickDistance(getX(), getY(), xGoal, yGoal);
+        double towardAngle = MathUtils.atan2(yGoal - getY(), xGoal - getX());
+        switch (getState()) {
             case MOVING:
                 // Out of position if it takes more than 3 steps to reach
                 speedGoal = singleStats.speed;
@@ -154,7 +160,7 @@ public class BaseSingle {
                 angle += MathUtils.randDouble(-GameplayConstants.ROUTING_ANGLE_VARIATION, GameplayConstants.ROUTING_ANGLE_VARIATION);
                 break;
             case IN_POSITION:
-                speed = unit.isTurning() ? 0 : unit.getState() == UnitState.MOVING ? singleStats.speed : 0;
+                setSpeed(unit.isTurning() ? 0 : unit.getState() == UnitState.MOVING ? singleStats.speed : 0);
                 speedGoal = unit.getState() == UnitState.MOVING ? singleStats.speed : 0;
                 if (distanceToGoal > singleStats.standingDist) {
                     switchState(SingleState.MOVING);
@@ -165,7 +171,7 @@ public class BaseSingle {
                 angle = MovementUtils.rotate(angle, angleGoal, singleStats.rotationSpeed);
                 break;
             case FIRE_AT_WILL:
-                speed = 0;
+                setSpeed(0);
                 if (distanceToGoal > singleStats.standingDist) {
                     switchState(SingleState.MOVING);
                     speedGoal = singleStats.speed;
@@ -184,8 +190,8 @@ public class BaseSingle {
         }
 
         // Calculate intended step
-        xVel = MathUtils.quickCos((float) angle) * speed;
-        yVel = MathUtils.quickSin((float) angle) * speed;
+        setxVel(MathUtils.quickCos((float) angle) * getSpeed());
+        setyVel(MathUtils.quickSin((float) angle) * getSpeed());
     }
 
     /**
@@ -193,12 +199,16 @@ public class BaseSingle {
      */
     public void updateState() {
         // Update position and height
-        if (state != SingleState.DEAD) {
-            x += xVel;
-            y += yVel;
-            if (state == SingleState.SLIDING) {
+        if (getState() != SingleState.DEAD) {
+            double xVel = getxVel();
+            double yVel = getyVel();
+            setX(getX() + xVel);
+            setY(getY() + yVel);
+            if (getState() == SingleState.SLIDING) {
                 xVel *= UniversalConstants.SLIDING_FRICTION;
                 yVel *= UniversalConstants.SLIDING_FRICTION;
+                setxVel(xVel);
+                setyVel(yVel);
                 if (MathUtils.quickRoot2((float) (xVel * xVel + yVel * yVel)) < UniversalConstants.STOP_SLIDING_DIST) {
                     if (unit.getState() == UnitState.ROUTING) {
                         switchState(SingleState.ROUTING);
@@ -208,7 +218,7 @@ public class BaseSingle {
                 }
             }
         }
-        z = terrain.getZFromPos(x, y);
+        z = terrain.getZFromPos(getX(), getY());
         facingAngle = MovementUtils.rotate(facingAngle, facingAngleGoal, singleStats.rotationSpeed);
 
         // Update combat statistics
@@ -218,8 +228,8 @@ public class BaseSingle {
         if (justHit < 0) justHit = 0;
 
         // Update in position
-        inPosition = Math.abs(xGoal - x) < singleStats.standingDist &&
-                Math.abs(yGoal - y) < singleStats.standingDist;
+        inPosition = Math.abs(xGoal - getX()) < singleStats.standingDist &&
+                Math.abs(yGoal - getY()) < singleStats.standingDist;
 
         // Update carried objects
         Object[] objects = carriedObjects.keySet().toArray();
@@ -251,15 +261,15 @@ public class BaseSingle {
                 GameplayConstants.HEIGHT_DIFF_MAX_BONUS_SCALE));
 
         // Bonus damage if attacking the single from the flank or from behind.
-        double damageAngle = MathUtils.atan2(y - other.y, x - other.x);
+        double damageAngle = MathUtils.atan2(getY() - other.getY(), getX() - other.getX());
 
         // Bonus damage if attacking the unit from the flank or from behind, and that the attack single is hitting
         // from the outside.
-        double angleFromUnit = MathUtils.atan2(y - other.unit.getAverageY(), x - other.unit.getAverageX());
+        double angleFromUnit = MathUtils.atan2(getY() - other.unit.getAverageY(), getX() - other.unit.getAverageX());
         angleDiff = MathUtils.signedAngleDifference(angleFromUnit, other.unit.getAnchorAngle());
-        double attackFromUnitDist = MathUtils.quickDistance(x, y,
+        double attackFromUnitDist = MathUtils.quickDistance(getX(), getY(),
                 other.unit.getAverageX(), other.unit.getAverageY());
-        double defenderFromUnitDist = MathUtils.quickDistance(other.x, other.y,
+        double defenderFromUnitDist = MathUtils.quickDistance(other.getX(), other.getY(),
                 other.unit.getAverageX(), other.unit.getAverageY());
         if (angleDiff < GameplayConstants.FLANKING_ANGLE_UNIT_THRESHOLD && attackFromUnitDist > defenderFromUnitDist) {
             damage *= GameplayConstants.FLANKING_BONUS_UNIT_SCALE;
@@ -282,10 +292,11 @@ public class BaseSingle {
 
         // Modify the damage by the single defense.
         damage = Math.max(GameplayConstants.MINIMUM_DAMAGE_RECEIVED, damage - singleStats.defense);
-        hp -= damage;
+        double hp = store.getHp(singleId) - damage;
+        store.setHp(singleId, hp);
         damageSustain += damage;
         justHit = 2;
-        if (hp < 0 && state != SingleState.DEAD) {
+        if (hp < 0 && getState() != SingleState.DEAD) {
             switchState(SingleState.DEAD);
             this.unit.processDeadSingle(this);
         }
@@ -296,9 +307,9 @@ public class BaseSingle {
      */
     public void switchState(SingleState newState) {
         // Can only switch state if the unit is not DEAD or not UNCONTROLLABLE
-        if (state != SingleState.DEAD) {
-            state = newState;
-            if (state == SingleState.DEAD) screamDeath = true;
+        if (getState() != SingleState.DEAD) {
+            setState(newState);
+            if (getState() == SingleState.DEAD) screamDeath = true;
         }
     }
 
@@ -307,8 +318,8 @@ public class BaseSingle {
      */
     public void absorbObject(BaseProjectile object) {
         // Recalculate position to be relative to the troop, standing at 0, 0 and angle 0
-        double dx = object.getX() - x;
-        double dy = object.getY() - y;
+        double dx = object.getX() - getX();
+        double dy = object.getY() - getY();
         double dAngle = (object.getAngle() - angle) % MathUtils.PIX2;
 
         // Rotate dx, dy vector to normalize object position to angle 0
@@ -323,6 +334,74 @@ public class BaseSingle {
         carriedObjects.put(object, UniversalConstants.CARRIED_OBJECT_LIFETIME);
     }
 
+    /**
+     * Write the state of the single to a snapshot. Attributes held by the single store are written with the store.
+     */
+    public void writeSnapshot(SnapshotWriter writer) {
+        writer.writeDouble(z);
+        writer.writeDouble(angle);
+        writer.writeDouble(facingAngle);
+        writer.writeDouble(xGoal);
+        writer.writeDouble(yGoal);
+        writer.writeDouble(speedGoal);
+        writer.writeDouble(angleGoal);
+        writer.writeDouble(facingAngleGoal);
+        writer.writeDouble(tempSquaredDistanceFromGoal);
+        writer.writeInt(decisionDelay);
+        writer.writeInt(combatDelay);
+        writer.writeInt(justHit);
+        writer.writeBoolean(screamDeath);
+        writer.writeDouble(damageSustain);
+        writer.writeBoolean(inPosition);
+        writer.writeBoolean(inDanger);
+        writer.writeInt(carriedObjects.size());
+        for (Map.Entry<BaseProjectile, Integer> entry : carriedObjects.entrySet()) {
+            writer.writeProjectile(entry.getKey());
+            writer.writeInt(entry.getValue());
+        }
+    }
+
+    /**
+     * Replace the state of the single with the state of a snapshot written by writeSnapshot().
+     */
+    public void readSnapshot(SnapshotReader reader) throws IOException {
+        z = reader.readDouble();
+        angle = reader.readDouble();
+        facingAngle = reader.readDouble();
+        xGoal = reader.readDouble();
+        yGoal = reader.readDouble();
+        speedGoal = reader.readDouble();
+        angleGoal = reader.readDouble();
+        facingAngleGoal = reader.readDouble();
+        tempSquaredDistanceFromGoal = reader.readDouble();
+        decisionDelay = reader.readInt();
+        combatDelay = reader.readInt();
+        justHit = reader.readInt();
+        screamDeath = reader.readBoolean();
+        damageSustain = reader.readDouble();
+        inPosition = reader.readBoolean();
+        inDanger = reader.readBoolean();
+        carriedObjects.clear();
+        int numCarriedObjects = reader.readInt();
+        for (int i = 0; i < numCarriedObjects; i++) {
+            BaseProjectile object = reader.readProjectile();
+            carriedObjects.put(object, reader.readInt());
+        }
+    }
+
+    /**
+     * Move the single to a recorded position, facing angle and state, e.g. when playing a replay. Nothing else about the
+     * single is updated.
+     */
+    public void setRecordedState(double inputX, double inputY, double inputZ, double inputFacingAngle,
+                                 SingleState inputState) {
+        store.setX(singleId, inputX);
+        store.setY(singleId, inputY);
+        z = inputZ;
+        facingAngle = inputFacingAngle;
+        store.setState(singleId, inputState);
+    }
+
     /** Getter and setter */
 
     public double getSpeedStat() {
@@ -330,24 +409,24 @@ public class BaseSingle {
     }
 
     public double getSpeed() {
-        return speed;
+        return store.getSpeed(singleId);
     }
     public void setSpeed(double speed) {
-        this.speed = speed;
+        store.setSpeed(singleId, speed);
     }
 
     public double getxVel() {
-        return xVel;
+        return store.getxVel(singleId);
     }
     public void setxVel(double xVel) {
-        this.xVel = xVel;
+        store.setxVel(singleId, xVel);
     }
 
     public double getyVel() {
-        return yVel;
+        return store.getyVel(singleId);
     }
     public void setyVel(double yVel) {
-        this.yVel = yVel;
+        store.setyVel(singleId, yVel);
     }
 
     public double getAngle() {
@@ -358,17 +437,17 @@ public class BaseSingle {
     }
 
     public double getX() {
-        return x;
+        return store.getX(singleId);
     }
     public void setX(double x) {
-        this.x = x;
+        store.setX(singleId, x);
     }
 
     public double getY() {
-        return y;
+        return store.getY(singleId);
     }
     public void setY(double y) {
-        this.y = y;
+        store.setY(singleId, y);
     }
 
     public double getZ() {
@@ -409,7 +488,10 @@ public class BaseSingle {
     }
 
     public SingleState getState() {
-        return state;
+        return store.getState(singleId);
+    }
+    void setState(SingleState state) {
+        store.setState(singleId, state);
     }
 
     public double getRadius() {
@@ -425,7 +507,10 @@ public class BaseSingle {
     }
 
     public PoliticalFaction getPoliticalFaction() {
-        return politicalFaction;
+        return store.getFaction(singleId);
+    }
+    void setPoliticalFaction(PoliticalFaction politicalFaction) {
+        store.setFaction(singleId, politicalFaction);
     }
 
     public int getDecisionDelay() {
@@ -436,6 +521,14 @@ public class BaseSingle {
         this.decisionDelay = decisionDelay;
     }
 
+    public int getSingleId() {
+        return singleId;
+    }
+
+    public SingleStore getStore() {
+        return store;
+    }
+
     public int getCombatDelay() {
         return combatDelay;
     }
@@ -487,7 +580,7 @@ public class BaseSingle {
     }
 
     public double getCollisionRadius() {
-        return singleStats.collisionRadius;
+        return store.getCollisionRadius(singleId);
     }
 
     public boolean isInPosition() {
@@ -507,6 +600,6 @@ public class BaseSingle {
     }
 
     public boolean isDead() {
-        return state == SingleState.DEAD;
+        return getState() == SingleState.DEAD;
     }
 }
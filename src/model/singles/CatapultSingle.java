@@ -7,11 +7,15 @@ import model.enums.SingleState;
 import model.enums.PoliticalFaction;
 import model.enums.UnitState;
 import model.projectile_objects.Stone;
+import model.snapshot.SnapshotReader;
+import model.snapshot.SnapshotWriter;
 import model.units.BaseUnit;
 import model.units.CatapultUnit;
 import model.utils.MathUtils;
 import model.utils.MovementUtils;
 
+import java.io.IOException;
+
 public class CatapultSingle extends BaseSingle {
 
     // These two delays are unique to archer.
@@ -40,22 +44,22 @@ public class CatapultSingle extends BaseSingle {
         hasher = inputHasher;
 
         // Positional attributes
-        x = xInit;
-        y = yInit;
+        setX(xInit);
+        setY(yInit);
         xGoal = xInit;
         yGoal = yInit;
 
         // Set up political faction
-        politicalFaction = faction;
+        setPoliticalFaction(faction);
 
         // Set default stat up stats
         singleStats = inputSingleStats;
 
         // Default constants
         speedGoal = 0;
-        speed = 0;
+        setSpeed(0);
         z = 0;
-        state = SingleState.IN_POSITION;
+        setState(SingleState.IN_POSITION);
 
         // Reload delay and bored delay
         reloadDelay = MathUtils.randint(0, singleStats.reloadDelay);
@@ -66,36 +70,36 @@ public class CatapultSingle extends BaseSingle {
     public void updateIntention() {
 
         // Can't have intention if already dead
-        if (state == SingleState.DEAD) return;
+        if (getState() == SingleState.DEAD) return;
 
         // Can't change intention if still sliding
-        if (state == SingleState.SLIDING) return;
+        if (getState() == SingleState.SLIDING) return;
 
         // Calculate intended speed
         double variation = 1;
-        if (speed != 0) variation = MathUtils.randDouble(0.9, 1.1);
-        if (speed < speedGoal) speed = Math.min(speed + singleStats.acceleration, speedGoal);
-        else if (speed > speedGoal) speed = Math.max(speed - singleStats.deceleration, speedGoal);
-        speed *= variation;
+        if (getSpeed() != 0) variation = MathUtils.randDouble(0.9, 1.1);
+        if (getSpeed() < speedGoal) setSpeed(Math.min(getSpeed() + singleStats.acceleration, speedGoal));
+        else if (getSpeed() > speedGoal) setSpeed(Math.max(getSpeed() - singleStats.deceleration, speedGoal));
+        setSpeed(getSpeed() * variation);
 
         // Apply speed modifier by terrain
-        double moveSpeedX = Math.cos(angle) * speed;
-        double moveSpeedY = Math.sin(angle) * speed;
-        double[] deltaVel = terrain.getDeltaVelFromPos(x, y);
+        double moveSpeedX = Math.cos(angle) * getSpeed();
+        double moveSpeedY = Math.sin(angle) * getSpeed();
+        double[] deltaVel = terrain.getDeltaVelFromPos(getX(), getY());
         double speedModifier = MathUtils.ratioProjection(deltaVel[0], deltaVel[1], moveSpeedX, moveSpeedY);
         speedModifier = MathUtils.capMinMax(speedModifier,
                 UniversalConstants.MINIMUM_TERRAIN_EFFECT,
                 UniversalConstants.MAXIMUM_TERRAIN_EFFECT);;
-        speed *= (1 + speedModifier);
+        setSpeed(getSpeed() * (1 + speedModifier));
 
         // Calculate intended step
-        xVel = MathUtils.quickCos((float) angle) * speed;
-        yVel = MathUtils.quickSin((float) angle) * speed;
+        setxVel(MathUtils.quickCos((float) angle) * getSpeed());
+        setyVel(MathUtils.quickSin((float) angle) * getSpeed());
 
         // Update based on states
-        double distanceToGoal = MathUtils.quickDistance(x, y, xGoal, yGoal);
-        double towardAngle = MathUtils.atan2(yGoal - y, xGoal - x);
-        switch (state) {
+        double distanceToGoal = MathUtils.quickDistance(getX(), getY(), xGoal, yGoal);
+        double towardAngle = MathUtils.atan2(yGoal - getY(), xGoal - getX());
+        switch (getState()) {
             case MOVING:
                 // Out of position if it takes more than 3 steps to reach
                 speedGoal = singleStats.speed;
@@ -141,7 +145,7 @@ public class CatapultSingle extends BaseSingle {
                 angle += MathUtils.randDouble(-GameplayConstants.ROUTING_ANGLE_VARIATION, GameplayConstants.ROUTING_ANGLE_VARIATION);
                 break;
             case IN_POSITION:
-                speed = unit.isTurning() ? 0 : unit.getState() == UnitState.MOVING ? singleStats.speed : 0;
+                setSpeed(unit.isTurning() ? 0 : unit.getState() == UnitState.MOVING ? singleStats.speed : 0);
                 speedGoal = unit.getState() == UnitState.MOVING ? singleStats.speed : 0;
                 if (distanceToGoal > singleStats.standingDist) {
                     switchState(SingleState.MOVING);
@@ -153,12 +157,12 @@ public class CatapultSingle extends BaseSingle {
 
                 // If archer becomes too bored, he shall switch to fire at will mode.
                 boredDelay -= 1;
-                if (boredDelay == 0) state = SingleState.FIRE_AT_WILL;
+                if (boredDelay == 0) setState(SingleState.FIRE_AT_WILL);
                 break;
             case FIRE_AT_WILL:
-                speed = 0;
+                setSpeed(0);
                 if (distanceToGoal > singleStats.standingDist) {
-                    state = SingleState.MOVING;
+                    setState(SingleState.MOVING);
                     speedGoal = singleStats.speed;
                 }
                 // Constantly reload and fire if there is a target in sight.
@@ -173,7 +177,7 @@ public class CatapultSingle extends BaseSingle {
                         if (shootingTarget == null) break;
 
                         // Shoot an arrow into the world
-                        hasher.addObject(new Stone(x, y, shootingTarget.getX(), shootingTarget.getY(),
+                        hasher.addObject(new Stone(getX(), getY(), shootingTarget.getX(), shootingTarget.getY(),
                                 singleStats.catapultSpeed,
                                 singleStats.catapultDamage,
                                 singleStats.catapultExplosionDamage,
@@ -189,7 +193,7 @@ public class CatapultSingle extends BaseSingle {
         }
 
         // If not too far from intended position, face the position of the army
-        if (state != SingleState.FIRE_AT_WILL) {
+        if (getState() != SingleState.FIRE_AT_WILL) {
             if (distanceToGoal < singleStats.nonRotationDist) {
                 facingAngleGoal = angleGoal;
             } else {
@@ -200,8 +204,24 @@ public class CatapultSingle extends BaseSingle {
             if (shootingTarget == null) {
                 facingAngleGoal = angleGoal;
             } else {
-                facingAngleGoal = MathUtils.atan2(shootingTarget.getY() - y, shootingTarget.getX() - x);
+                facingAngleGoal = MathUtils.atan2(shootingTarget.getY() - getY(), shootingTarget.getX() - getX());
             }
         }
     }
+
+    @Override
+    public void writeSnapshot(SnapshotWriter writer) {
+        super.writeSnapshot(writer);
+        writer.writeInt(reloadDelay);
+        writer.writeInt(boredDelay);
+        writer.writeSingle(shootingTarget);
+    }
+
+    @Override
+    public void readSnapshot(SnapshotReader reader) throws IOException {
+        super.readSnapshot(reader);
+        reloadDelay = reader.readInt();
+        boredDelay = reader.readInt();
+        shootingTarget = reader.readSingle();
+    }
 }
@@ -16,21 +16,21 @@ public class CavalrySingle extends BaseSingle {
         super(inputSingleStats, inputUnit);
 
         // Position attribute
-        x = xInit;
-        y = yInit;
+        setX(xInit);
+        setY(yInit);
         xGoal = xInit;
         yGoal = yInit;
 
         // Set up political faction
-        politicalFaction = faction;
+        setPoliticalFaction(faction);
 
         // Set default stat up stats
         singleStats = inputSingleStats;
 
         // Default model.constants;
         speedGoal = 0;
-        speed = 0;
+        setSpeed(0);
         z = 0;
-        state = SingleState.IN_POSITION;
+        setState(SingleState.IN_POSITION);
     }
 }
@@ -8,11 +8,15 @@ import model.enums.UnitState;
 import model.events.Event;
 import model.events.EventType;
 import model.projectile_objects.HitscanObject;
+import model.snapshot.SnapshotReader;
+import model.snapshot.SnapshotWriter;
 import model.units.BaseUnit;
 import model.units.GunInfantryUnit;
 import model.utils.MathUtils;
 import model.utils.MovementUtils;
 
+import java.io.IOException;
+
 public class GunInfantrySingle extends BaseSingle {
 
     // These two delays are unique to gun infantry.
@@ -36,23 +40,23 @@ public class GunInfantrySingle extends BaseSingle {
         super(inputSingleStats, inputUnit);
 
         // Positional attributes
-        x = xInit;
-        y = yInit;
+        setX(xInit);
+        setY(yInit);
         xGoal = xInit;
         yGoal = yInit;
         hitscanHasher = inputHitscanHasher;
 
         // Set up political faction
-        politicalFaction = faction;
+        setPoliticalFaction(faction);
 
         // Set default stat up stats
         singleStats = inputSingleStats;
 
         // Default constants
         speedGoal = 0;
-        speed = 0;
+        setSpeed(0);
         z = 0;
-        state = SingleState.IN_POSITION;
+        setState(SingleState.IN_POSITION);
 
         // Reload delay and bored delay
         reloadDelay = MathUtils.randint(0, singleStats.reloadDelay);
@@ -63,38 +67,39 @@ public class GunInfantrySingle extends BaseSingle {
     public void updateIntention() {
 
         // Can't have intention if already dead
-        if (state == SingleState.DEAD) return;
+        if (getState() == SingleState.DEAD) return;
 
         // Can't change intention if still sliding
-        if (state == SingleState.SLIDING) return;
+        if (getState() == SingleState.SLIDING) return;
 
         // Calculate intended speed
         double variation = 1;
-        if (speed != 0) variation = MathUtils.randDouble(0.9, 1.1);
-        if (speed < speedGoal) speed = Math.min(speed + singleStats.acceleration, speedGoal);
-        else if (speed > speedGoal) speed = Math.max(speed - singleStats.deceleration, speedGoal);
-        speed *= variation;
+        if (getSpeed() != 0) variation = MathUtils.randDouble(0.9, 1.1);
+        if (getSpeed() < speedGoal) setSpeed(Math.min(getSpeed() + singleStats.acceleration, speedGoal));
+        else if (getSpeed() > speedGoal) setSpeed(Math.max(getSpeed() - singleStats.deceleration, speedGoal));
+        setSpeed(getSpeed() * variation);
 
         // Apply speed modifier by terrain
-        double moveSpeedX = Math.cos(angle) * speed;
-        double moveSpeedY = Math.sin(angle) * speed;
-        double[] deltaVel = terrain.getDeltaVelFromPos(x, y);
+        double moveSpeedX = Math.cos(angle) * getSpeed();
+        double moveSpeedY = Math.sin(angle) * getSpeed();
+        double[] deltaVel = terrain.getDeltaVelFromPos(getX(), getY());
         double speedModifier = MathUtils.ratioProjection(deltaVel[0], deltaVel[1], moveSpeedX, moveSpeedY);
         speedModifier = MathUtils.capMinMax(speedModifier,
                 UniversalConstants.MINIMUM_TERRAIN_EFFECT,
                 UniversalConstants.MAXIMUM_TERRAIN_EFFECT);
-        speed *= (1 + speedModifier);
+        setSpeed(getSpeed() * (1 + speedModifier));
 
         // Calculate intended step
-        xVel = MathUtils.quickCos((float) angle) * speed;
-        yVel = MathUtils.quickSin((float) angle) * speed;
+        setxVel(MathUtils.quickCos((float) angle) * getSpeed());
+        setyVel(MathUtils.quickSin((float) angle) * getSpeed());
 
         // Update based on states
-        double distanceToGoal = MathUtils.quickRoot1((float)((x - xGoal) * (x - xGoal) + (y - yGoal) * (y - yGoal)));
-        switch (state) {
+        double distanceToGoal = MathUtils.quickRoot1(
+                (float)((getX() - xGoal) * (getX() - xGoal) + (getY() - yGoal) * (getY() - yGoal)));
+        switch (getState()) {
             case MOVING:
                 // Recalculate vx, vy
-                angle = MathUtils.atan2(yGoal - y, xGoal - x);
+                angle = MathUtils.atan2(yGoal - getY(), xGoal - getX());
 
                 // Out of position if it takes more than 3 steps to reach
                 if (distanceToGoal > singleStats.outOfReachDist) {
@@ -102,15 +107,15 @@ public class GunInfantrySingle extends BaseSingle {
                 } else if ((distanceToGoal > singleStats.standingDist) && (distanceToGoal < 10 * singleStats.speed)) {
                     speedGoal = singleStats.speed;
                 } else if (distanceToGoal < singleStats.standingDist) {
-                    state = SingleState.IN_POSITION;
+                    setState(SingleState.IN_POSITION);
                 }
                 boredDelay = singleStats.boredDelay;
                 break;
             case IN_POSITION:
-                speed = unit.isTurning() ? 0 : unit.getState() == UnitState.MOVING ? singleStats.speed : 0;
+                setSpeed(unit.isTurning() ? 0 : unit.getState() == UnitState.MOVING ? singleStats.speed : 0);
                 speedGoal = unit.getState() == UnitState.MOVING ? singleStats.speed : 0;
                 if (distanceToGoal > singleStats.standingDist) {
-                    state = SingleState.MOVING;
+                    setState(SingleState.MOVING);
                     speedGoal = singleStats.speed;
                 }
 
@@ -119,12 +124,12 @@ public class GunInfantrySingle extends BaseSingle {
 
                 // If archer becomes too bored, he shall switch to fire at will mode.
                 boredDelay -= 1;
-                if (boredDelay == 0) state = SingleState.FIRE_AT_WILL;
+                if (boredDelay == 0) setState(SingleState.FIRE_AT_WILL);
                 break;
             case FIRE_AT_WILL:
-                speed = 0;
+                setSpeed(0);
                 if (distanceToGoal > singleStats.standingDist) {
-                    state = SingleState.MOVING;
+                    setState(SingleState.MOVING);
                     speedGoal = singleStats.speed;
                 }
                 // Constantly reload and fire if there is a target in sight.
@@ -141,19 +146,20 @@ public class GunInfantrySingle extends BaseSingle {
                         // Shoot a bullet at the target direction
                         // TODO: Potentially add some randomization of the angle to simulate the fact that the shooter
                         //  can misaim a bit.
-                        double theta = MathUtils.atan2(shootingTarget.y - y, shootingTarget.x - x);
+                        double theta = MathUtils.atan2(shootingTarget.getY() - getY(), shootingTarget.getX() - getX());
                         double phi = MathUtils.atan2(
-                                MathUtils.quickDistance(x, y, shootingTarget.x, shootingTarget.y),
+                                MathUtils.quickDistance(getX(), getY(), shootingTarget.getX(), shootingTarget.getY()),
                                 shootingTarget.z - z
                         );
                         HitscanObject bullet = new HitscanObject(
-                                x, y, z, theta, phi,
+                                getX(), getY(), z, theta, phi,
                                 singleStats.bulletMinRange, singleStats.bulletMaxRange, singleStats.bulletDamage,
-                                singleStats.bulletPush
+                                singleStats.bulletPush, singleStats.bulletPenetration
                         );
                         hitscanHasher.addObject(bullet);
                         // TODO: Put the broadcaster into each single. Each single should be able to broadcast as well.
-                        unit.getBroadcaster().broadcastEvent(new Event(EventType.MATCHLOCK_FIRE, x, y, z, theta));
+                        unit.getBroadcaster().broadcastEvent(
+                                new Event(EventType.MATCHLOCK_FIRE, getX(), getY(), z, theta));
 
                         // Reload the fire
                         reloadDelay = singleStats.reloadDelay;
@@ -162,7 +168,7 @@ public class GunInfantrySingle extends BaseSingle {
         }
 
         // If not too far from intended position, face the position of the army
-        if (state != SingleState.FIRE_AT_WILL) {
+        if (getState() != SingleState.FIRE_AT_WILL) {
             if (distanceToGoal < singleStats.nonRotationDist) {
                 facingAngleGoal = angleGoal;
             } else {
@@ -173,9 +179,24 @@ public class GunInfantrySingle extends BaseSingle {
             if (shootingTarget == null) {
                 facingAngleGoal = angleGoal;
             } else {
-                facingAngleGoal = MathUtils.atan2(shootingTarget.getY() - y, shootingTarget.getX() - x);
+                facingAngleGoal = MathUtils.atan2(shootingTarget.getY() - getY(), shootingTarget.getX() - getX());
             }
         }
     }
-}
 
+    @Override
+    public void writeSnapshot(SnapshotWriter writer) {
+        super.writeSnapshot(writer);
+        writer.writeInt(reloadDelay);
+        writer.writeInt(boredDelay);
+        writer.writeSingle(shootingTarget);
+    }
+
+    @Override
+    public void readSnapshot(SnapshotReader reader) throws IOException {
+        super.readSnapshot(reader);
+        reloadDelay = reader.readInt();
+        boredDelay = reader.readInt();
+        shootingTarget = reader.readSingle();
+    }
+}
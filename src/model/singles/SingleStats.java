@@ -67,4 +67,5 @@ public class SingleStats {
     public double bulletMaxRange;
     public double bulletDamage;
     public double bulletPush;
+    public int bulletPenetration;
 }
@@ -0,0 +1,295 @@
+package model.singles;
+
+import model.enums.PoliticalFaction;
+import model.enums.SingleState;
+import model.snapshot.SnapshotReader;
+import model.snapshot.SnapshotWriter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+
+/**
+ * Structure of arrays storage of the attributes of the singles used by the physics hot path: position, velocity,
+ * speed, hp, collision radius, mass, political faction and state. Attributes are stored in primitive columns indexed by
+ * the dense single id, so the collision and combat loops read compact memory instead of chasing pointers to each
+ * BaseSingle, which only acts as a view over its row.
+ *
+ * Attributes that are always read together share a column, interleaved, so that reading them touches a single cache
+ * line:
+ * - position: x, y
+ * - motion: xVel, yVel, speed
+ * - body: collision radius, mass, hp
+ * - flags: political faction and state ordinals
+ *
+ * Columns are either plain arrays, or direct buffers allocated outside of the java heap. Off-heap columns let very
+ * large battles keep the heap small, at the cost of a slightly slower access.
+ */
+public class SingleStore {
+
+    // Initial number of rows. Columns double in size whenever they are full.
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // Number of values per row in each column.
+    private static final int POSITION_STRIDE = 2;
+    private static final int MOTION_STRIDE = 3;
+    private static final int BODY_STRIDE = 3;
+    private static final int FLAGS_STRIDE = 2;
+
+    // Enum values, indexed by the ordinals stored in the flags column.
+    private static final SingleState[] STATES = SingleState.values();
+    private static final PoliticalFaction[] FACTIONS = PoliticalFaction.values();
+
+    private boolean offHeap;
+    private int capacity;
+    private int numSingles;
+
+    // Heap columns
+    private double[] position;
+    private double[] motion;
+    private double[] body;
+    private byte[] flags;
+
+    // Off-heap columns, used instead of the heap columns when offHeap is set.
+    private DoubleBuffer positionBuffer;
+    private DoubleBuffer motionBuffer;
+    private DoubleBuffer bodyBuffer;
+    private ByteBuffer flagsBuffer;
+
+    public SingleStore(boolean inputOffHeap) {
+        offHeap = inputOffHeap;
+        grow(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Add a row for a new single.
+     * @return the id of the single, which is its row in every column.
+     */
+    public int addSingle() {
+        if (numSingles == capacity) {
+            grow(capacity * 2);
+        }
+        numSingles += 1;
+        return numSingles - 1;
+    }
+
+    /**
+     * Reallocate every column with newCapacity rows, keeping the existing rows.
+     */
+    private void grow(int newCapacity) {
+        if (offHeap) {
+            positionBuffer = growBuffer(positionBuffer, POSITION_STRIDE, newCapacity);
+            motionBuffer = growBuffer(motionBuffer, MOTION_STRIDE, newCapacity);
+            bodyBuffer = growBuffer(bodyBuffer, BODY_STRIDE, newCapacity);
+            flagsBuffer = growBuffer(flagsBuffer, FLAGS_STRIDE, newCapacity);
+        } else {
+            position = growArray(position, POSITION_STRIDE, newCapacity);
+            motion = growArray(motion, MOTION_STRIDE, newCapacity);
+            body = growArray(body, BODY_STRIDE, newCapacity);
+            flags = growArray(flags, FLAGS_STRIDE, newCapacity);
+        }
+        capacity = newCapacity;
+    }
+
+    private double[] growArray(double[] column, int stride, int newCapacity) {
+        return column == null ? new double[stride * newCapacity] : Arrays.copyOf(column, stride * newCapacity);
+    }
+
+    private byte[] growArray(byte[] column, int stride, int newCapacity) {
+        return column == null ? new byte[stride * newCapacity] : Arrays.copyOf(column, stride * newCapacity);
+    }
+
+    private DoubleBuffer growBuffer(DoubleBuffer column, int stride, int newCapacity) {
+        DoubleBuffer newColumn = ByteBuffer.allocateDirect(stride * newCapacity * Double.BYTES)
+                .order(ByteOrder.nativeOrder())
+                .asDoubleBuffer();
+        for (int i = 0; i < stride * numSingles; i++) {
+            newColumn.put(i, column.get(i));
+        }
+        return newColumn;
+    }
+
+    private ByteBuffer growBuffer(ByteBuffer column, int stride, int newCapacity) {
+        ByteBuffer newColumn = ByteBuffer.allocateDirect(stride * newCapacity);
+        for (int i = 0; i < stride * numSingles; i++) {
+            newColumn.put(i, column.get(i));
+        }
+        return newColumn;
+    }
+
+    private double getPosition(int index) {
+        return offHeap ? positionBuffer.get(index) : position[index];
+    }
+
+    private void setPosition(int index, double value) {
+        if (offHeap) {
+            positionBuffer.put(index, value);
+        } else {
+            position[index] = value;
+        }
+    }
+
+    private double getMotion(int index) {
+        return offHeap ? motionBuffer.get(index) : motion[index];
+    }
+
+    private void setMotion(int index, double value) {
+        if (offHeap) {
+            motionBuffer.put(index, value);
+        } else {
+            motion[index] = value;
+        }
+    }
+
+    private double getBody(int index) {
+        return offHeap ? bodyBuffer.get(index) : body[index];
+    }
+
+    private void setBody(int index, double value) {
+        if (offHeap) {
+            bodyBuffer.put(index, value);
+        } else {
+            body[index] = value;
+        }
+    }
+
+    private byte getFlags(int index) {
+        return offHeap ? flagsBuffer.get(index) : flags[index];
+    }
+
+    private void setFlags(int index, byte value) {
+        if (offHeap) {
+            flagsBuffer.put(index, value);
+        } else {
+            flags[index] = value;
+        }
+    }
+
+    /**
+     * Write the rows of every single to a snapshot.
+     */
+    public void writeSnapshot(SnapshotWriter writer) {
+        writer.writeInt(numSingles);
+        for (int id = 0; id < numSingles; id++) {
+            writer.writeDouble(getX(id));
+            writer.writeDouble(getY(id));
+            writer.writeDouble(getxVel(id));
+            writer.writeDouble(getyVel(id));
+            writer.writeDouble(getSpeed(id));
+            writer.writeDouble(getCollisionRadius(id));
+            writer.writeDouble(getMass(id));
+            writer.writeDouble(getHp(id));
+            writer.writeByte(getFlags(FLAGS_STRIDE * id));
+            writer.writeByte(getFlags(FLAGS_STRIDE * id + 1));
+        }
+    }
+
+    /**
+     * Overwrite the rows of every single with the rows of a snapshot written by writeSnapshot(). The store must hold as
+     * many singles as the snapshot.
+     */
+    public void readSnapshot(SnapshotReader reader) throws IOException {
+        int numSnapshotSingles = reader.readInt();
+        if (numSnapshotSingles != numSingles) {
+            throw new IOException("Snapshot has " + numSnapshotSingles + " singles, but the store has " + numSingles);
+        }
+        for (int id = 0; id < numSingles; id++) {
+            setX(id, reader.readDouble());
+            setY(id, reader.readDouble());
+            setxVel(id, reader.readDouble());
+            setyVel(id, reader.readDouble());
+            setSpeed(id, reader.readDouble());
+            setCollisionRadius(id, reader.readDouble());
+            setMass(id, reader.readDouble());
+            setHp(id, reader.readDouble());
+            setFlags(FLAGS_STRIDE * id, reader.readByte());
+            setFlags(FLAGS_STRIDE * id + 1, reader.readByte());
+        }
+    }
+
+    /**
+     * Getter and setters
+     */
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    public int getNumSingles() {
+        return numSingles;
+    }
+
+    public double getX(int id) {
+        return getPosition(POSITION_STRIDE * id);
+    }
+    public void setX(int id, double x) {
+        setPosition(POSITION_STRIDE * id, x);
+    }
+
+    public double getY(int id) {
+        return getPosition(POSITION_STRIDE * id + 1);
+    }
+    public void setY(int id, double y) {
+        setPosition(POSITION_STRIDE * id + 1, y);
+    }
+
+    public double getxVel(int id) {
+        return getMotion(MOTION_STRIDE * id);
+    }
+    public void setxVel(int id, double xVel) {
+        setMotion(MOTION_STRIDE * id, xVel);
+    }
+
+    public double getyVel(int id) {
+        return getMotion(MOTION_STRIDE * id + 1);
+    }
+    public void setyVel(int id, double yVel) {
+        setMotion(MOTION_STRIDE * id + 1, yVel);
+    }
+
+    public double getSpeed(int id) {
+        return getMotion(MOTION_STRIDE * id + 2);
+    }
+    public void setSpeed(int id, double speed) {
+        setMotion(MOTION_STRIDE * id + 2, speed);
+    }
+
+    public double getCollisionRadius(int id) {
+        return getBody(BODY_STRIDE * id);
+    }
+    public void setCollisionRadius(int id, double collisionRadius) {
+        setBody(BODY_STRIDE * id, collisionRadius);
+    }
+
+    public double getMass(int id) {
+        return getBody(BODY_STRIDE * id + 1);
+    }
+    public void setMass(int id, double mass) {
+        setBody(BODY_STRIDE * id + 1, mass);
+    }
+
+    public double getHp(int id) {
+        return getBody(BODY_STRIDE * id + 2);
+    }
+    public void setHp(int id, double hp) {
+        setBody(BODY_STRIDE * id + 2, hp);
+    }
+
+    public int getFactionOrdinal(int id) {
+        return getFlags(FLAGS_STRIDE * id);
+    }
+    public PoliticalFaction getFaction(int id) {
+        return FACTIONS[getFactionOrdinal(id)];
+    }
+    public void setFaction(int id, PoliticalFaction faction) {
+        setFlags(FLAGS_STRIDE * id, (byte) faction.ordinal());
+    }
+
+    public SingleState getState(int id) {
+        return STATES[getFlags(FLAGS_STRIDE * id + 1)];
+    }
+    public void setState(int id, SingleState state) {
+        setFlags(FLAGS_STRIDE * id + 1, (byte) state.ordinal());
+    }
+}
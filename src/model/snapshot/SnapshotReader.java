@@ -0,0 +1,191 @@
+package model.snapshot;
+
+import model.projectile_objects.BaseProjectile;
+import model.singles.BaseSingle;
+import model.units.BaseUnit;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+
+/**
+ * Reader of the binary snapshot of a GameEnvironment, see SnapshotWriter for the format. References to singles and
+ * units are resolved against the singles and the units of the environment the snapshot is restored into.
+ */
+public class SnapshotReader {
+
+    private ByteBuffer buffer;
+
+    // Singles indexed by single id, units indexed like the unit list, and projectiles of the projectile table read so
+    // far.
+    private BaseSingle[] singles;
+    private ArrayList<BaseUnit> units;
+    private ArrayList<BaseProjectile> projectiles;
+
+    public SnapshotReader(ByteBuffer inputBuffer, ArrayList<BaseUnit> inputUnits, BaseSingle[] inputSingles) {
+        buffer = inputBuffer.order(ByteOrder.LITTLE_ENDIAN);
+        units = inputUnits;
+        singles = inputSingles;
+        projectiles = new ArrayList<>();
+    }
+
+    public byte readByte() {
+        return buffer.get();
+    }
+
+    public boolean readBoolean() {
+        return buffer.get() != 0;
+    }
+
+    public int readInt() {
+        return buffer.getInt();
+    }
+
+    public long readLong() {
+        return buffer.getLong();
+    }
+
+    public double readDouble() {
+        return buffer.getDouble();
+    }
+
+    public byte[] readBytes() {
+        int length = buffer.getInt();
+        if (length < 0) return null;
+        byte[] values = new byte[length];
+        buffer.get(values);
+        return values;
+    }
+
+    public boolean[] readBooleanArray() {
+        int length = buffer.getInt();
+        if (length < 0) return null;
+        boolean[] values = new boolean[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = buffer.get() != 0;
+        }
+        return values;
+    }
+
+    public int[] readIntArray() {
+        int length = buffer.getInt();
+        if (length < 0) return null;
+        int[] values = new int[length];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + length * Integer.BYTES);
+        return values;
+    }
+
+    public long[] readLongArray() {
+        int length = buffer.getInt();
+        if (length < 0) return null;
+        long[] values = new long[length];
+        buffer.asLongBuffer().get(values);
+        buffer.position(buffer.position() + length * Long.BYTES);
+        return values;
+    }
+
+    public double[] readDoubleArray() {
+        int length = buffer.getInt();
+        if (length < 0) return null;
+        double[] values = new double[length];
+        buffer.asDoubleBuffer().get(values);
+        buffer.position(buffer.position() + length * Double.BYTES);
+        return values;
+    }
+
+    public Double[] readBoxedDoubleArray() {
+        int length = buffer.getInt();
+        if (length < 0) return null;
+        Double[] values = new Double[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = buffer.getDouble();
+        }
+        return values;
+    }
+
+    public double[][] readDoubleMatrix() {
+        int length = buffer.getInt();
+        if (length < 0) return null;
+        double[][] values = new double[length][];
+        for (int i = 0; i < length; i++) {
+            values[i] = readDoubleArray();
+        }
+        return values;
+    }
+
+    /**
+     * Read a reference to a single.
+     */
+    public BaseSingle readSingle() throws IOException {
+        int id = buffer.getInt();
+        if (id < 0) return null;
+        if (id >= singles.length) {
+            throw new IOException("Snapshot refers to single " + id + ", but there are only " + singles.length);
+        }
+        return singles[id];
+    }
+
+    /**
+     * Read a list of references to singles.
+     */
+    public ArrayList<BaseSingle> readSingles() throws IOException {
+        int size = buffer.getInt();
+        if (size < 0) return null;
+        ArrayList<BaseSingle> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(readSingle());
+        }
+        return list;
+    }
+
+    /**
+     * Read a reference to a unit.
+     */
+    public BaseUnit readUnit() throws IOException {
+        int index = buffer.getInt();
+        if (index < 0) return null;
+        if (index >= units.size()) {
+            throw new IOException("Snapshot refers to unit " + index + ", but there are only " + units.size());
+        }
+        return units.get(index);
+    }
+
+    /**
+     * Read a collection of references to units, in the order they were written.
+     */
+    public ArrayList<BaseUnit> readUnits() throws IOException {
+        int size = buffer.getInt();
+        if (size < 0) return null;
+        ArrayList<BaseUnit> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(readUnit());
+        }
+        return list;
+    }
+
+    /**
+     * Read a reference to a projectile, and the projectile itself if this is the first time it is referenced.
+     */
+    public BaseProjectile readProjectile() throws IOException {
+        int index = buffer.getInt();
+        if (index < 0) return null;
+        if (index < projectiles.size()) {
+            return projectiles.get(index);
+        }
+        if (index != projectiles.size()) {
+            throw new IOException("Snapshot refers to projectile " + index + " before it is defined");
+        }
+        BaseProjectile projectile = BaseProjectile.createFromSnapshot(this);
+        projectiles.add(projectile);
+        return projectile;
+    }
+
+    /**
+     * Getter and setters
+     */
+    public boolean hasRemaining() {
+        return buffer.hasRemaining();
+    }
+}
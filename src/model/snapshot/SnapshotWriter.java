@@ -0,0 +1,253 @@
+package model.snapshot;
+
+import model.projectile_objects.BaseProjectile;
+import model.singles.BaseSingle;
+import model.units.BaseUnit;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+
+/**
+ * Writer of the binary snapshot of a GameEnvironment. Values are appended to a growable buffer, which is then written
+ * to a channel in one go.
+ *
+ * References between objects are written as indices: singles by their single id, units by their index in the unit list
+ * of the environment, and projectiles by their index in the projectile table of the snapshot. A projectile is written
+ * in full the first time it is referenced, and by index after that, so that a projectile carried by a single and still
+ * held by the projectile hasher is restored as one object. A null reference is written as -1.
+ *
+ * Arrays are prefixed with their length, and a null array is written as a length of -1.
+ */
+public class SnapshotWriter {
+
+    // Initial size of the buffer. The buffer doubles in size whenever it is full.
+    private static final int INITIAL_CAPACITY = 1 << 16;
+
+    private ByteBuffer buffer;
+
+    // Index of each unit in the unit list, and index of each projectile written so far.
+    private IdentityHashMap<BaseUnit, Integer> unitIndices;
+    private IdentityHashMap<BaseProjectile, Integer> projectileIndices;
+
+    public SnapshotWriter(ArrayList<BaseUnit> units) {
+        buffer = ByteBuffer.allocate(INITIAL_CAPACITY).order(ByteOrder.LITTLE_ENDIAN);
+        unitIndices = new IdentityHashMap<>();
+        for (int i = 0; i < units.size(); i++) {
+            unitIndices.put(units.get(i), i);
+        }
+        projectileIndices = new IdentityHashMap<>();
+    }
+
+    /**
+     * Make sure the buffer can hold numBytes more bytes.
+     */
+    private void ensureRemaining(int numBytes) {
+        if (buffer.remaining() >= numBytes) return;
+        int newCapacity = buffer.capacity();
+        while (newCapacity - buffer.position() < numBytes) {
+            newCapacity *= 2;
+        }
+        ByteBuffer newBuffer = ByteBuffer.allocate(newCapacity).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.flip();
+        newBuffer.put(buffer);
+        buffer = newBuffer;
+    }
+
+    public void writeByte(byte value) {
+        ensureRemaining(Byte.BYTES);
+        buffer.put(value);
+    }
+
+    public void writeBoolean(boolean value) {
+        writeByte(value ? (byte) 1 : (byte) 0);
+    }
+
+    public void writeInt(int value) {
+        ensureRemaining(Integer.BYTES);
+        buffer.putInt(value);
+    }
+
+    public void writeLong(long value) {
+        ensureRemaining(Long.BYTES);
+        buffer.putLong(value);
+    }
+
+    public void writeDouble(double value) {
+        ensureRemaining(Double.BYTES);
+        buffer.putDouble(value);
+    }
+
+    public void writeBytes(byte[] values) {
+        if (values == null) {
+            writeInt(-1);
+            return;
+        }
+        writeInt(values.length);
+        ensureRemaining(values.length);
+        buffer.put(values);
+    }
+
+    public void writeBooleanArray(boolean[] values) {
+        if (values == null) {
+            writeInt(-1);
+            return;
+        }
+        writeInt(values.length);
+        ensureRemaining(values.length);
+        for (boolean value : values) {
+            buffer.put(value ? (byte) 1 : (byte) 0);
+        }
+    }
+
+    public void writeIntArray(int[] values) {
+        if (values == null) {
+            writeInt(-1);
+            return;
+        }
+        writeInt(values.length);
+        ensureRemaining(values.length * Integer.BYTES);
+        for (int value : values) {
+            buffer.putInt(value);
+        }
+    }
+
+    public void writeLongArray(long[] values) {
+        if (values == null) {
+            writeInt(-1);
+            return;
+        }
+        writeInt(values.length);
+        ensureRemaining(values.length * Long.BYTES);
+        for (long value : values) {
+            buffer.putLong(value);
+        }
+    }
+
+    public void writeDoubleArray(double[] values) {
+        if (values == null) {
+            writeInt(-1);
+            return;
+        }
+        writeInt(values.length);
+        ensureRemaining(values.length * Double.BYTES);
+        for (double value : values) {
+            buffer.putDouble(value);
+        }
+    }
+
+    public void writeBoxedDoubleArray(Double[] values) {
+        if (values == null) {
+            writeInt(-1);
+            return;
+        }
+        writeInt(values.length);
+        ensureRemaining(values.length * Double.BYTES);
+        for (Double value : values) {
+            buffer.putDouble(value);
+        }
+    }
+
+    public void writeDoubleMatrix(double[][] values) {
+        if (values == null) {
+            writeInt(-1);
+            return;
+        }
+        writeInt(values.length);
+        for (double[] row : values) {
+            writeDoubleArray(row);
+        }
+    }
+
+    /**
+     * Write a reference to a single, as its single id.
+     */
+    public void writeSingle(BaseSingle single) {
+        writeInt(single == null ? -1 : single.getSingleId());
+    }
+
+    /**
+     * Write a list of references to singles.
+     */
+    public void writeSingles(ArrayList<BaseSingle> singles) {
+        if (singles == null) {
+            writeInt(-1);
+            return;
+        }
+        writeInt(singles.size());
+        for (BaseSingle single : singles) {
+            writeSingle(single);
+        }
+    }
+
+    /**
+     * Write a reference to a unit, as its index in the unit list.
+     */
+    public void writeUnit(BaseUnit unit) {
+        if (unit == null) {
+            writeInt(-1);
+            return;
+        }
+        Integer index = unitIndices.get(unit);
+        if (index == null) {
+            throw new IllegalArgumentException("Unit is not part of the environment");
+        }
+        writeInt(index);
+    }
+
+    /**
+     * Write a collection of references to units, in iteration order.
+     */
+    public void writeUnits(Collection<BaseUnit> units) {
+        if (units == null) {
+            writeInt(-1);
+            return;
+        }
+        writeInt(units.size());
+        for (BaseUnit unit : units) {
+            writeUnit(unit);
+        }
+    }
+
+    /**
+     * Write a reference to a projectile. The projectile is written in full after its index if this is the first time
+     * it is referenced.
+     */
+    public void writeProjectile(BaseProjectile projectile) {
+        if (projectile == null) {
+            writeInt(-1);
+            return;
+        }
+        Integer index = projectileIndices.get(projectile);
+        if (index != null) {
+            writeInt(index);
+            return;
+        }
+        index = projectileIndices.size();
+        projectileIndices.put(projectile, index);
+        writeInt(index);
+        projectile.writeSnapshot(this);
+    }
+
+    /**
+     * Write the content of the buffer to the channel.
+     */
+    public void writeTo(WritableByteChannel channel) throws IOException {
+        ByteBuffer content = buffer.duplicate();
+        content.flip();
+        while (content.hasRemaining()) {
+            channel.write(content);
+        }
+    }
+
+    /**
+     * Getter and setters
+     */
+    public int getSize() {
+        return buffer.position();
+    }
+}
@@ -1,8 +1,9 @@
 package model.sound;
 
 import javafx.util.Pair;
+import model.algorithms.BarrierHeightField;
+import model.algorithms.UnitVisibility;
 import model.constants.GameplayConstants;
-import model.construct.Construct;
 import model.surface.BaseSurface;
 import model.terrain.Terrain;
 import model.units.BaseUnit;
@@ -34,13 +35,15 @@ public class SoundSink {
      * @param soundSources: this is a list of all the sound sources in the map
      */
     public void updateSoundSink(ArrayList<SoundSource> soundSources, Terrain terrain, ArrayList<BaseSurface> surfaces,
-                                ArrayList<BaseUnit> units, ArrayList<Construct> constructs, BaseUnit thisUnit){
+                                ArrayList<BaseUnit> units, BarrierHeightField barrierHeightField,
+                                UnitVisibility unitVisibility, BaseUnit thisUnit){
         soundSinkEverything.clear(); // Clearing and updating new Hashmap for every iteration
 
         for (SoundSource soundSource : soundSources){
-            String perceivedNoiseLabel = PhysicUtils.getPerceivedNoiseLabel(soundSource, terrain, surfaces,
+            String perceivedNoiseLabel = PhysicUtils.getPerceivedNoiseLabel(soundSource, unitVisibility, surfaces,
                     units, thisUnit);
-            Pair<Double, Double> perceivedNoise = PhysicUtils.getPerceivedNoise(soundSource, terrain, surfaces, constructs, thisUnit);
+            Pair<Double, Double> perceivedNoise = PhysicUtils.getPerceivedNoise(soundSource, terrain,
+                    barrierHeightField, thisUnit);
             soundSinkEverything.put(perceivedNoiseLabel, perceivedNoise);
         }
     }
@@ -1,6 +1,5 @@
 package model.surface;
 
-import model.algorithms.TreeHasher;
 import model.enums.SurfaceType;
 import model.map_objects.Tree;
 import model.singles.BaseSingle;
@@ -12,7 +11,6 @@ import java.util.ArrayList;
 public class ForestSurface extends BaseSurface {
 
     ArrayList<Tree> trees;
-    TreeHasher treeHasher;
     double averageTreeRadius;
     double sizeWiggling;
 
@@ -23,8 +21,7 @@ public class ForestSurface extends BaseSurface {
                          double averageDistance,
                          double distanceWiggling,
                          double averageTreeHeight,
-                         double heightWiggling,
-                         int treeHashDiv) {
+                         double heightWiggling) {
         super(type, points);
 
         this.averageTreeRadius = averageTreeRadius;
@@ -56,7 +53,6 @@ public class ForestSurface extends BaseSurface {
         double currX = startX;
         double currY = startY;
         trees = new ArrayList<>();
-        treeHasher = new TreeHasher(treeHashDiv, treeHashDiv);
         while (true) {
             if (PhysicUtils.checkPolygonPointCollision(surfaceBoundary, currX, currY)) {
                 Tree tree = new Tree(
@@ -76,9 +72,6 @@ public class ForestSurface extends BaseSurface {
                 currY = minY + (row % 2) * averageDistance / 2;
             }
         }
-
-        treeHasher.addObjectArray(trees);
-        treeHasher.hashObjects();
     }
 
     @Override
@@ -90,10 +83,6 @@ public class ForestSurface extends BaseSurface {
         return trees;
     }
 
-    public TreeHasher getTreeHasher() {
-        return treeHasher;
-    }
-
     public double getTreeMaxRadius() {
         double maxRadius = averageTreeRadius + sizeWiggling;
         return  maxRadius;
@@ -0,0 +1,140 @@
+package model.terrain;
+
+/**
+ * Min-max height mip pyramid over a grid of tiles. Level 0 holds the lowest and the highest height of each tile, and
+ * each block of level l + 1 holds the minimum and the maximum of the 2 x 2 blocks of level l under it, so block
+ * (bi, bj) of level l covers tiles [bi * 2^l, (bi + 1) * 2^l) x [bj * 2^l, (bj + 1) * 2^l). The top level is a single
+ * block.
+ *
+ * The heights over any rectangle of tiles are bounded by reading at most 2 x 2 blocks of the lowest level whose blocks
+ * are at least half as large as the rectangle, so the bounds cost the same whatever the size of the rectangle.
+ */
+public class HeightPyramid {
+
+    // Bounds of the blocks of level l, where block (bi, bj) is at [l][bi * levelNumY[l] + bj].
+    private double[][] maxLevels;
+    private double[][] minLevels;
+    private int[] levelNumX;
+    private int[] levelNumY;
+
+    /**
+     * Build the pyramid over tiles of a single height, where tileHeights[i][j] is the height of tile (i, j).
+     */
+    public HeightPyramid(double[][] tileHeights) {
+        this(tileHeights, tileHeights);
+    }
+
+    /**
+     * Build the pyramid over tiles whose heights range from tileMinHeights[i][j] to tileMaxHeights[i][j].
+     */
+    public HeightPyramid(double[][] tileMinHeights, double[][] tileMaxHeights) {
+        int numX = tileMaxHeights.length;
+        int numY = numX > 0 ? tileMaxHeights[0].length : 0;
+        int numLevels = 1;
+        while ((Math.max(numX, numY) - 1) >> (numLevels - 1) > 0) {
+            numLevels += 1;
+        }
+        maxLevels = new double[numLevels][];
+        minLevels = new double[numLevels][];
+        levelNumX = new int[numLevels];
+        levelNumY = new int[numLevels];
+        for (int l = 0; l < numLevels; l++) {
+            levelNumX[l] = l == 0 ? numX : (levelNumX[l - 1] + 1) / 2;
+            levelNumY[l] = l == 0 ? numY : (levelNumY[l - 1] + 1) / 2;
+            maxLevels[l] = new double[levelNumX[l] * levelNumY[l]];
+            minLevels[l] = new double[levelNumX[l] * levelNumY[l]];
+        }
+        for (int i = 0; i < numX; i++) {
+            for (int j = 0; j < numY; j++) {
+                maxLevels[0][i * numY + j] = tileMaxHeights[i][j];
+                minLevels[0][i * numY + j] = tileMinHeights[i][j];
+            }
+        }
+        for (int l = 1; l < numLevels; l++) {
+            for (int bi = 0; bi < levelNumX[l]; bi++) {
+                for (int bj = 0; bj < levelNumY[l]; bj++) {
+                    updateBlock(l, bi, bj);
+                }
+            }
+        }
+    }
+
+    /**
+     * Set block (bi, bj) of level l to the minimum and the maximum of the blocks of level l - 1 under it.
+     */
+    private void updateBlock(int l, int bi, int bj) {
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int ci = 2 * bi; ci <= Math.min(2 * bi + 1, levelNumX[l - 1] - 1); ci++) {
+            for (int cj = 2 * bj; cj <= Math.min(2 * bj + 1, levelNumY[l - 1] - 1); cj++) {
+                min = Math.min(min, minLevels[l - 1][ci * levelNumY[l - 1] + cj]);
+                max = Math.max(max, maxLevels[l - 1][ci * levelNumY[l - 1] + cj]);
+            }
+        }
+        minLevels[l][bi * levelNumY[l] + bj] = min;
+        maxLevels[l][bi * levelNumY[l] + bj] = max;
+    }
+
+    /**
+     * Change the heights of tile (i, j), and the blocks above it.
+     */
+    public void setTile(int i, int j, double minHeight, double maxHeight) {
+        minLevels[0][i * levelNumY[0] + j] = minHeight;
+        maxLevels[0][i * levelNumY[0] + j] = maxHeight;
+        for (int l = 1; l < maxLevels.length; l++) {
+            i >>= 1;
+            j >>= 1;
+            updateBlock(l, i, j);
+        }
+    }
+
+    /**
+     * Upper bound of the heights of tiles [minI, maxI] x [minJ, maxJ], which must be within the grid.
+     */
+    public double getMax(int minI, int maxI, int minJ, int maxJ) {
+        int l = getLevel(minI, maxI, minJ, maxJ);
+        double max = Double.NEGATIVE_INFINITY;
+        for (int bi = minI >> l; bi <= maxI >> l; bi++) {
+            for (int bj = minJ >> l; bj <= maxJ >> l; bj++) {
+                max = Math.max(max, maxLevels[l][bi * levelNumY[l] + bj]);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Lower bound of the heights of tiles [minI, maxI] x [minJ, maxJ], which must be within the grid.
+     */
+    public double getMin(int minI, int maxI, int minJ, int maxJ) {
+        int l = getLevel(minI, maxI, minJ, maxJ);
+        double min = Double.POSITIVE_INFINITY;
+        for (int bi = minI >> l; bi <= maxI >> l; bi++) {
+            for (int bj = minJ >> l; bj <= maxJ >> l; bj++) {
+                min = Math.min(min, minLevels[l][bi * levelNumY[l] + bj]);
+            }
+        }
+        return min;
+    }
+
+    /**
+     * Lowest level at which tiles [minI, maxI] x [minJ, maxJ] are covered by at most 2 x 2 blocks.
+     */
+    private int getLevel(int minI, int maxI, int minJ, int maxJ) {
+        int l = 0;
+        while ((maxI >> l) - (minI >> l) > 1 || (maxJ >> l) - (minJ >> l) > 1) {
+            l += 1;
+        }
+        return l;
+    }
+
+    /**
+     * Getter and setters
+     */
+    public int getNumX() {
+        return levelNumX[0];
+    }
+
+    public int getNumY() {
+        return levelNumY[0];
+    }
+}
@@ -1,7 +1,10 @@
 package model.terrain;
 
 import model.construct.Construct;
+import model.snapshot.SnapshotReader;
+import model.snapshot.SnapshotWriter;
 
+import java.io.IOException;
 import java.util.ArrayList;
 
 public class Terrain {
@@ -22,6 +25,15 @@ public class Terrain {
     double[][] dx;
     double[][] dy;
 
+    // Min-max height pyramid over the tiles of the height field, where the heights of tile (i, j) range between the
+    // lowest and the highest of its four corners. getZFromPos interpolates between the corners of a tile, so it stays
+    // within that range.
+    HeightPyramid heightPyramid;
+
+    // Number of consecutive line of sight samples below which a block of samples is checked sample by sample rather
+    // than split further.
+    private static final int LINE_OF_SIGHT_LEAF_SAMPLES = 8;
+
     /**
      * Initialize a completely plain field.
      */
@@ -37,6 +49,7 @@ public class Terrain {
         heightField = new double[numX][numY];
         dx = new double[numX-1][numY-1];
         dy = new double[numX-1][numY-1];
+        buildHeightPyramid();
     }
 
     /**
@@ -76,6 +89,127 @@ public class Terrain {
                 dy[i][j] = (heightField[i + 1][j] - heightField[i][j]) / div;
             }
         }
+        buildHeightPyramid();
+    }
+
+    /**
+     * Build the min-max height pyramid over the tiles of the height field.
+     */
+    private void buildHeightPyramid() {
+        double[][] tileMinHeights = new double[Math.max(numX - 1, 0)][Math.max(numY - 1, 0)];
+        double[][] tileMaxHeights = new double[Math.max(numX - 1, 0)][Math.max(numY - 1, 0)];
+        for (int i = 0; i < numX - 1; i++) {
+            for (int j = 0; j < numY - 1; j++) {
+                tileMinHeights[i][j] = getTileMinHeight(i, j);
+                tileMaxHeights[i][j] = getTileMaxHeight(i, j);
+            }
+        }
+        heightPyramid = new HeightPyramid(tileMinHeights, tileMaxHeights);
+    }
+
+    /**
+     * Lowest and highest of the four corners of tile (i, j).
+     */
+    private double getTileMinHeight(int i, int j) {
+        return Math.min(Math.min(heightField[i][j], heightField[i][j + 1]),
+                Math.min(heightField[i + 1][j], heightField[i + 1][j + 1]));
+    }
+
+    private double getTileMaxHeight(int i, int j) {
+        return Math.max(Math.max(heightField[i][j], heightField[i][j + 1]),
+                Math.max(heightField[i + 1][j], heightField[i + 1][j + 1]));
+    }
+
+    /**
+     * Upper bound of getZFromPos over the rectangle [minX, maxX] x [minY, maxY]. The bound is infinite if the rectangle
+     * reaches the strip of width div along the top and left borders, where getZFromPos extrapolates the first tiles.
+     */
+    public double getMaxZInRect(double minX, double maxX, double minY, double maxY) {
+        return getZBoundInRect(minX, maxX, minY, maxY, true);
+    }
+
+    /**
+     * Lower bound of getZFromPos over the rectangle [minX, maxX] x [minY, maxY], see getMaxZInRect.
+     */
+    public double getMinZInRect(double minX, double maxX, double minY, double maxY) {
+        return getZBoundInRect(minX, maxX, minY, maxY, false);
+    }
+
+    private double getZBoundInRect(double minX, double maxX, double minY, double maxY, boolean upper) {
+        int minI = (int) Math.floor((minX - topX) / div);
+        int maxI = (int) Math.floor((maxX - topX) / div);
+        int minJ = (int) Math.floor((minY - topY) / div);
+        int maxJ = (int) Math.floor((maxY - topY) / div);
+        if ((minI <= -1 && maxI >= -1) || (minJ <= -1 && maxJ >= -1)) {
+            return upper ? Double.POSITIVE_INFINITY : Double.NEGATIVE_INFINITY;
+        }
+
+        // Outside of the tiles, the height is 0.
+        int numTilesX = heightPyramid.getNumX();
+        int numTilesY = heightPyramid.getNumY();
+        double bound = upper ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+        if (minI < 0 || maxI >= numTilesX || minJ < 0 || maxJ >= numTilesY) bound = 0;
+        minI = Math.max(minI, 0);
+        maxI = Math.min(maxI, numTilesX - 1);
+        minJ = Math.max(minJ, 0);
+        maxJ = Math.min(maxJ, numTilesY - 1);
+        if (minI <= maxI && minJ <= maxJ) {
+            bound = upper ? Math.max(bound, heightPyramid.getMax(minI, maxI, minJ, maxJ)) :
+                    Math.min(bound, heightPyramid.getMin(minI, maxI, minJ, maxJ));
+        }
+
+        // The interpolation may round slightly beyond the corners.
+        double margin = 1e-9 * (Math.abs(bound) + 1);
+        return upper ? bound + margin : bound - margin;
+    }
+
+    /**
+     * Check whether the segment (x1, y1, z1) - (x2, y2, z2) passes strictly above the terrain at each of its samples
+     * t = k / numSamples for k in [1, numSamples - 1], i.e. at positions ((x2 - x1) * t + x1, (y2 - y1) * t + y1).
+     *
+     * Rather than sampling every point, the samples are checked block by block against the height pyramid: a block of
+     * samples entirely above the highest terrain around it is accepted at once, one entirely below the lowest terrain
+     * around it is rejected at once, and the other blocks are split in two, down to a few samples which are then
+     * checked one by one. The result is the same as checking every sample.
+     */
+    public boolean isSegmentAboveTerrain(double x1, double y1, double z1, double x2, double y2, double z2,
+                                         int numSamples) {
+        if (numSamples < 2) return true;
+        return isSegmentAboveTerrain(x1, y1, z1, x2, y2, z2, numSamples, 1, numSamples - 1);
+    }
+
+    /**
+     * Check samples [first, last] of the segment, see isSegmentAboveTerrain.
+     */
+    private boolean isSegmentAboveTerrain(double x1, double y1, double z1, double x2, double y2, double z2,
+                                          int numSamples, int first, int last) {
+        // Positions are monotonic in t, so the samples of the block lie between the first and the last one.
+        double tFirst = 1.0 * first / numSamples;
+        double tLast = 1.0 * last / numSamples;
+        double xFirst = (x2 - x1) * tFirst + x1;
+        double xLast = (x2 - x1) * tLast + x1;
+        double yFirst = (y2 - y1) * tFirst + y1;
+        double yLast = (y2 - y1) * tLast + y1;
+        double zFirst = (z2 - z1) * tFirst + z1;
+        double zLast = (z2 - z1) * tLast + z1;
+        double rectMinX = Math.min(xFirst, xLast);
+        double rectMaxX = Math.max(xFirst, xLast);
+        double rectMinY = Math.min(yFirst, yLast);
+        double rectMaxY = Math.max(yFirst, yLast);
+        if (Math.min(zFirst, zLast) > getMaxZInRect(rectMinX, rectMaxX, rectMinY, rectMaxY)) return true;
+        if (Math.max(zFirst, zLast) <= getMinZInRect(rectMinX, rectMaxX, rectMinY, rectMaxY)) return false;
+
+        // Blocks within a tile are not bounded any tighter once split, so they are checked sample by sample.
+        if (last - first < LINE_OF_SIGHT_LEAF_SAMPLES || (rectMaxX - rectMinX < div && rectMaxY - rectMinY < div)) {
+            for (int k = first; k <= last; k++) {
+                double t = 1.0 * k / numSamples;
+                if (!((z2 - z1) * t + z1 > getZFromPos((x2 - x1) * t + x1, (y2 - y1) * t + y1))) return false;
+            }
+            return true;
+        }
+        int mid = (first + last) >>> 1;
+        return isSegmentAboveTerrain(x1, y1, z1, x2, y2, z2, numSamples, first, mid) &&
+                isSegmentAboveTerrain(x1, y1, z1, x2, y2, z2, numSamples, mid + 1, last);
     }
 
     public double getTopX() {
@@ -175,6 +309,11 @@ public class Terrain {
      */
     public void changeHeightAtTile(int i, int j, double dHeight) {
         heightField[i][j] += dHeight;
+        for (int row = Math.max(i - 1, 0); row <= Math.min(i, numX - 2); row++) {
+            for (int col = Math.max(j - 1, 0); col <= Math.min(j, numY - 2); col++) {
+                heightPyramid.setTile(row, col, getTileMinHeight(row, col), getTileMaxHeight(row, col));
+            }
+        }
         for (int row = i - 1; row <= i + 1; row++) {
             for (int col = j - 1; col <= j + 1; col++) {
                 if (row < 0 || row >= numX - 2 || col < 0 || col >= numY - 2) {
@@ -185,4 +324,35 @@ public class Terrain {
             }
         }
     }
+
+    /**
+     * Write the height field and its slopes to a snapshot, since they can be changed during the game.
+     */
+    public void writeSnapshot(SnapshotWriter writer) {
+        writer.writeDoubleMatrix(heightField);
+        writer.writeDoubleMatrix(dx);
+        writer.writeDoubleMatrix(dy);
+    }
+
+    /**
+     * Replace the height field and its slopes with the ones of a snapshot written by writeSnapshot(). The terrain must
+     * have the same dimensions as the snapshot.
+     */
+    public void readSnapshot(SnapshotReader reader) throws IOException {
+        double[][] snapshotHeightField = reader.readDoubleMatrix();
+        if (snapshotHeightField.length != numX || snapshotHeightField[0].length != numY) {
+            throw new IOException("Snapshot terrain has " + snapshotHeightField.length + "x" +
+                    snapshotHeightField[0].length + " tiles, but the terrain has " + numX + "x" + numY);
+        }
+        double[][] snapshotDx = reader.readDoubleMatrix();
+        double[][] snapshotDy = reader.readDoubleMatrix();
+        for (int i = 0; i < numX; i++) {
+            System.arraycopy(snapshotHeightField[i], 0, heightField[i], 0, numY);
+        }
+        for (int i = 0; i < numX - 1; i++) {
+            System.arraycopy(snapshotDx[i], 0, dx[i], 0, numY - 1);
+            System.arraycopy(snapshotDy[i], 0, dy[i], 0, numY - 1);
+        }
+        buildHeightPyramid();
+    }
 }
@@ -6,11 +6,14 @@ import model.enums.PoliticalFaction;
 import model.singles.BallistaSingle;
 import model.singles.BaseSingle;
 import model.singles.SingleStats;
+import model.snapshot.SnapshotReader;
+import model.snapshot.SnapshotWriter;
 import model.units.unit_stats.UnitStats;
 import model.utils.MathUtils;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 
 public class BallistaUnit extends BaseUnit {
 
@@ -52,7 +55,7 @@ public class BallistaUnit extends BaseUnit {
         double topX = x - (width - 1) * unitStats.spacing * sideUnitX / 2;
         double topY = y - (width - 1) * unitStats.spacing * sideUnitY / 2;
         troops = new ArrayList<>();
-        aliveTroopsMap = new HashMap<>();
+        aliveTroopsMap = new LinkedHashMap<>();
         aliveTroopsFormation = new BaseSingle[depth][width];
         for (int i = 0; i < unitSize; i++) {
             int row = i / width;
@@ -135,4 +138,19 @@ public class BallistaUnit extends BaseUnit {
         return unitFiredAgainst;
     }
 
+    @Override
+    public void writeSnapshot(SnapshotWriter writer) {
+        super.writeSnapshot(writer);
+        writer.writeUnit(unitFiredAgainst);
+        writer.writeSingles(targetIterator);
+        writer.writeInt(iteratorIndex);
+    }
+
+    @Override
+    public void readSnapshot(SnapshotReader reader) throws IOException {
+        super.readSnapshot(reader);
+        unitFiredAgainst = reader.readUnit();
+        targetIterator = reader.readSingles();
+        iteratorIndex = reader.readInt();
+    }
 }
@@ -14,6 +14,8 @@ import model.logger.Log;
 import model.monitor.MonitorEnum;
 import model.settings.GameSettings;
 import model.singles.BaseSingle;
+import model.snapshot.SnapshotReader;
+import model.snapshot.SnapshotWriter;
 import model.enums.SingleState;
 import model.sound.SoundSink;
 import model.sound.SoundSource;
@@ -21,6 +23,7 @@ import model.terrain.Terrain;
 import model.units.unit_stats.UnitStats;
 import model.utils.*;
 
+import java.io.IOException;
 import java.util.*;
 
 /**
@@ -30,6 +33,8 @@ public class BaseUnit {
 
     // Troops and width
     ArrayList<BaseSingle> troops;
+    // Alive troops and their index in the formation. Subclasses use a LinkedHashMap, so that troops are always iterated
+    // in the same order, which keeps the consumption of random numbers reproducible.
     HashMap<BaseSingle, Integer> aliveTroopsMap;
     BaseSingle[][] aliveTroopsFormation;
     int width;
@@ -139,10 +144,7 @@ public class BaseUnit {
         // Set of flanker counts and frontline patient counters
         frontLinePatientCounters = new int[width];
         flankersCount = new int[width];
-        flankerOffsets = new ArrayList[width];
-        for (int i = 0; i < width; i++) {
-            flankerOffsets[i] = new ArrayList<>();
-        }
+        flankerOffsets = newFlankerOffsets(width);
     }
 
     /**
@@ -316,10 +318,7 @@ public class BaseUnit {
         // Reset the flankers
         frontLinePatientCounters = new int[width];
         flankersCount = new int[width];
-        flankerOffsets = new ArrayList[width];
-        for (int i = 0; i < width; i++) {
-            flankerOffsets[i] = new ArrayList<>();
-        }
+        flankerOffsets = newFlankerOffsets(width);
         resetFlanker();
     }
 
@@ -1166,6 +1165,282 @@ public class BaseUnit {
         return numMoving;
     }
 
+    /**
+     * Write the state of the unit to a snapshot. The state of the troops is written separately, in single id order.
+     */
+    public void writeSnapshot(SnapshotWriter writer) {
+        // Troops and formation
+        writer.writeSingles(troops);
+        writer.writeInt(aliveTroopsMap.size());
+        for (Map.Entry<BaseSingle, Integer> entry : aliveTroopsMap.entrySet()) {
+            writer.writeSingle(entry.getKey());
+            writer.writeInt(entry.getValue());
+        }
+        writer.writeInt(width);
+        writer.writeInt(depth);
+        writer.writeInt(aliveTroopsFormation.length);
+        writer.writeInt(aliveTroopsFormation.length == 0 ? 0 : aliveTroopsFormation[0].length);
+        for (BaseSingle[] row : aliveTroopsFormation) {
+            for (BaseSingle single : row) {
+                writer.writeSingle(single);
+            }
+        }
+
+        // Unit state
+        writer.writeInt(state.ordinal());
+        writer.writeDouble(morale);
+        writer.writeUnits(visibleUnits);
+        writer.writeInt(timeInFightingState);
+
+        // Flanking
+        writer.writeIntArray(flankersCount);
+        writer.writeIntArray(frontLinePatientCounters);
+        writeFlankerIndices(writer, leftFlankerIndices);
+        writer.writeInt(leftRingIndex);
+        writer.writeInt(rightRightIndex);
+        writeFlankerIndices(writer, rightFlankerIndices);
+        writer.writeInt(flankerOffsets.length);
+        for (ArrayList<double[]> offsets : flankerOffsets) {
+            writer.writeInt(offsets.size());
+            for (double[] offset : offsets) {
+                writer.writeDoubleArray(offset);
+            }
+        }
+
+        // Positions
+        writer.writeDouble(speed);
+        writer.writeDouble(goalX);
+        writer.writeDouble(goalY);
+        writer.writeDouble(goalAngle);
+        writer.writeDouble(anchorX);
+        writer.writeDouble(anchorY);
+        writer.writeDouble(anchorAngle);
+        writer.writeDouble(averageX);
+        writer.writeDouble(averageY);
+        writer.writeDouble(averageZ);
+
+        // Sound
+        writer.writeDouble(soundSource.getNoise());
+        writer.writeDouble(soundSource.getX());
+        writer.writeDouble(soundSource.getY());
+        writer.writeDouble(soundSource.getZ());
+        writer.writeDouble(soundSink.getX());
+        writer.writeDouble(soundSink.getY());
+        writer.writeDouble(soundSink.getZ());
+
+        // Path, with the current node as its index in the path
+        if (path == null) {
+            writer.writeInt(-1);
+        } else {
+            writer.writeInt(path.getNodes().size());
+            for (Node pathNode : path.getNodes()) {
+                writer.writeDouble(pathNode.getX());
+                writer.writeDouble(pathNode.getY());
+            }
+        }
+        writer.writeInt(path == null || node == null ? -1 : path.getNodes().indexOf(node));
+
+        // Collision attributes
+        writer.writeDoubleMatrix(boundingBox);
+        writer.writeDoubleMatrix(aliveBoundingBox);
+        writer.writeInt(inDanger == null ? -1 : inDanger.length);
+        if (inDanger != null) {
+            for (boolean[] row : inDanger) {
+                writer.writeBooleanArray(row);
+            }
+        }
+
+        // Patience and stamina
+        writer.writeInt(currUnitPatience);
+        writer.writeUnit(unitFoughtAgainst);
+        writer.writeBoolean(inContactWithEnemy);
+        writer.writeBoolean(isTurning);
+        writer.writeDouble(turningSpeedRatio);
+        writer.writeDouble(stamina);
+    }
+
+    /**
+     * Replace the state of the unit with the state of a snapshot written by writeSnapshot().
+     */
+    public void readSnapshot(SnapshotReader reader) throws IOException {
+        // Troops and formation
+        ArrayList<BaseSingle> snapshotTroops = reader.readSingles();
+        if (snapshotTroops.size() != troops.size()) {
+            throw new IOException("Snapshot unit has " + snapshotTroops.size() + " troops, but the unit has " +
+                    troops.size());
+        }
+        troops.clear();
+        troops.addAll(snapshotTroops);
+        aliveTroopsMap.clear();
+        int numAlives = reader.readInt();
+        for (int i = 0; i < numAlives; i++) {
+            BaseSingle single = reader.readSingle();
+            aliveTroopsMap.put(single, reader.readInt());
+        }
+        width = reader.readInt();
+        depth = reader.readInt();
+        aliveTroopsFormation = new BaseSingle[reader.readInt()][reader.readInt()];
+        for (BaseSingle[] row : aliveTroopsFormation) {
+            for (int j = 0; j < row.length; j++) {
+                row[j] = reader.readSingle();
+            }
+        }
+
+        // Unit state
+        state = UnitState.values()[reader.readInt()];
+        morale = reader.readDouble();
+        visibleUnits = reader.readUnits();
+        timeInFightingState = reader.readInt();
+
+        // Flanking
+        flankersCount = reader.readIntArray();
+        frontLinePatientCounters = reader.readIntArray();
+        leftFlankerIndices = readFlankerIndices(reader);
+        leftRingIndex = reader.readInt();
+        rightRightIndex = reader.readInt();
+        rightFlankerIndices = readFlankerIndices(reader);
+        flankerOffsets = newFlankerOffsets(reader.readInt());
+        for (int i = 0; i < flankerOffsets.length; i++) {
+            int numOffsets = reader.readInt();
+            flankerOffsets[i].ensureCapacity(numOffsets);
+            for (int j = 0; j < numOffsets; j++) {
+                flankerOffsets[i].add(reader.readDoubleArray());
+            }
+        }
+
+        // Positions
+        speed = reader.readDouble();
+        goalX = reader.readDouble();
+        goalY = reader.readDouble();
+        goalAngle = reader.readDouble();
+        anchorX = reader.readDouble();
+        anchorY = reader.readDouble();
+        anchorAngle = reader.readDouble();
+        averageX = reader.readDouble();
+        averageY = reader.readDouble();
+        averageZ = reader.readDouble();
+
+        // Sound
+        soundSource.setNoise(reader.readDouble());
+        soundSource.setX(reader.readDouble());
+        soundSource.setY(reader.readDouble());
+        soundSource.setZ(reader.readDouble());
+        soundSink.setX(reader.readDouble());
+        soundSink.setY(reader.readDouble());
+        soundSink.setZ(reader.readDouble());
+
+        // Path
+        int numNodes = reader.readInt();
+        path = null;
+        if (numNodes >= 0) {
+            path = new Path();
+            for (int i = 0; i < numNodes; i++) {
+                path.addNode(new Node(reader.readDouble(), reader.readDouble()));
+            }
+        }
+        int nodeIndex = reader.readInt();
+        node = nodeIndex < 0 ? null : path.getNodes().get(nodeIndex);
+
+        // Collision attributes
+        boundingBox = reader.readDoubleMatrix();
+        aliveBoundingBox = reader.readDoubleMatrix();
+        int numDangerRows = reader.readInt();
+        inDanger = null;
+        if (numDangerRows >= 0) {
+            inDanger = new boolean[numDangerRows][];
+            for (int i = 0; i < numDangerRows; i++) {
+                inDanger[i] = reader.readBooleanArray();
+            }
+        }
+
+        // Patience and stamina
+        currUnitPatience = reader.readInt();
+        unitFoughtAgainst = reader.readUnit();
+        inContactWithEnemy = reader.readBoolean();
+        isTurning = reader.readBoolean();
+        turningSpeedRatio = reader.readDouble();
+        stamina = reader.readDouble();
+    }
+
+    /**
+     * Write a set of flanker indices, in iteration order.
+     */
+    private static void writeFlankerIndices(SnapshotWriter writer, Set<Triplet<Integer, Integer, Integer>> indices) {
+        writer.writeInt(indices.size());
+        for (Triplet<Integer, Integer, Integer> triplet : indices) {
+            writer.writeInt(triplet.x);
+            writer.writeInt(triplet.y);
+            writer.writeInt(triplet.z);
+        }
+    }
+
+    /**
+     * Empty flanker offsets for each of the columns of the front line.
+     */
+    @SuppressWarnings("unchecked")
+    private static ArrayList<double[]>[] newFlankerOffsets(int numColumns) {
+        ArrayList<double[]>[] offsets = (ArrayList<double[]>[]) new ArrayList<?>[numColumns];
+        for (int i = 0; i < numColumns; i++) {
+            offsets[i] = new ArrayList<>();
+        }
+        return offsets;
+    }
+
+    /**
+     * Read a set of flanker indices. Flanker indices are always what remains of a hexagonal ring once some indices are
+     * removed, so the ring is generated again and reduced to the indices of the snapshot, which gives a set that is
+     * iterated in the same order as the set that was written.
+     */
+    private static Set<Triplet<Integer, Integer, Integer>> readFlankerIndices(SnapshotReader reader) {
+        int numIndices = reader.readInt();
+        Set<Triplet<Integer, Integer, Integer>> snapshotIndices = new HashSet<>();
+        int ring = 0;
+        for (int i = 0; i < numIndices; i++) {
+            int x = reader.readInt();
+            int y = reader.readInt();
+            int z = reader.readInt();
+            snapshotIndices.add(new Triplet<>(x, y, z));
+            ring = Math.max(ring, Math.max(Math.abs(x), Math.max(Math.abs(y), Math.abs(z))));
+        }
+        Set<Triplet<Integer, Integer, Integer>> indices = MathUtils.getHexagonalIndicesRingAtOffset(ring);
+        indices.retainAll(snapshotIndices);
+        return indices;
+    }
+
+    /**
+     * Move the unit to a recorded anchor and state, e.g. when playing a replay. The troops must be moved to their
+     * recorded state first, since the alive troops, the average position and the bounding box of the unit are counted
+     * again from them. Nothing else about the unit is updated.
+     */
+    public void setRecordedState(double inputAnchorX, double inputAnchorY, double inputAnchorAngle,
+                                 UnitState inputState) {
+        anchorX = inputAnchorX;
+        anchorY = inputAnchorY;
+        anchorAngle = inputAnchorAngle;
+        state = inputState;
+
+        // Troops that died or came back to life, when playing backward, leave or join the alive troops.
+        double sumX = 0;
+        double sumY = 0;
+        double sumZ = 0;
+        for (int i = 0; i < troops.size(); i++) {
+            BaseSingle single = troops.get(i);
+            if (single.getState() == SingleState.DEAD) {
+                aliveTroopsMap.remove(single);
+                continue;
+            }
+            aliveTroopsMap.putIfAbsent(single, i);
+            sumX += single.getX();
+            sumY += single.getY();
+            sumZ += single.getZ();
+        }
+        if (aliveTroopsMap.isEmpty()) return;
+        averageX = sumX / aliveTroopsMap.size();
+        averageY = sumY / aliveTroopsMap.size();
+        averageZ = sumZ / aliveTroopsMap.size();
+        updateBoundingBox();
+    }
+
     public void updateSoundSource(){
         soundSource.setNoise(unitStats.unitSoundStats.noise);
         soundSource.setX(averageX);
@@ -1331,4 +1606,8 @@ public class BaseUnit {
     public EventBroadcaster getBroadcaster() {
         return broadcaster;
     }
+
+    public GameEnvironment getEnv() {
+        return env;
+    }
 }
@@ -6,11 +6,14 @@ import model.enums.PoliticalFaction;
 import model.singles.BaseSingle;
 import model.singles.CatapultSingle;
 import model.singles.SingleStats;
+import model.snapshot.SnapshotReader;
+import model.snapshot.SnapshotWriter;
 import model.units.unit_stats.UnitStats;
 import model.utils.MathUtils;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 
 public class CatapultUnit extends BaseUnit {
 
@@ -53,7 +56,7 @@ public class CatapultUnit extends BaseUnit {
         double topY = y - (width - 1) * unitStats.spacing * sideUnitY / 2;
         troops = new ArrayList<>();
         aliveTroopsFormation = new BaseSingle[depth][width];
-        aliveTroopsMap = new HashMap<>();
+        aliveTroopsMap = new LinkedHashMap<>();
         for (int i = 0; i < unitSize; i++) {
             int row = i / width;
             int col = i % width;
@@ -133,4 +136,19 @@ public class CatapultUnit extends BaseUnit {
         return unitFiredAgainst;
     }
 
+    @Override
+    public void writeSnapshot(SnapshotWriter writer) {
+        super.writeSnapshot(writer);
+        writer.writeUnit(unitFiredAgainst);
+        writer.writeSingles(targetIterator);
+        writer.writeInt(iteratorIndex);
+    }
+
+    @Override
+    public void readSnapshot(SnapshotReader reader) throws IOException {
+        super.readSnapshot(reader);
+        unitFiredAgainst = reader.readUnit();
+        targetIterator = reader.readSingles();
+        iteratorIndex = reader.readInt();
+    }
 }
@@ -10,7 +10,7 @@ import model.units.unit_stats.UnitStats;
 import model.utils.MathUtils;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 
 public class PhalanxUnit extends BaseUnit{
 
@@ -47,7 +47,7 @@ public class PhalanxUnit extends BaseUnit{
         double topY = y - (width - 1) * unitStats.spacing * sideUnitY / 2;
         troops = new ArrayList<>();
         aliveTroopsFormation = new BaseSingle[depth][width];
-        aliveTroopsMap = new HashMap<>();
+        aliveTroopsMap = new LinkedHashMap<>();
         for (int i = 0; i < unitSize; i++) {
             int row = i / width;
             int col = i % width;
@@ -5,11 +5,14 @@ import model.enums.PoliticalFaction;
 import model.singles.BaseSingle;
 import model.singles.SingleStats;
 import model.singles.SkirmisherSingle;
+import model.snapshot.SnapshotReader;
+import model.snapshot.SnapshotWriter;
 import model.units.unit_stats.UnitStats;
 import model.utils.MathUtils;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 
 public class SkirmisherUnit extends BaseUnit {
 
@@ -53,7 +56,7 @@ public class SkirmisherUnit extends BaseUnit {
         double topY = y - (width - 1) * unitStats.spacing * sideUnitY / 2;
         troops = new ArrayList<>();
         aliveTroopsFormation = new BaseSingle[depth][width];
-        aliveTroopsMap = new HashMap<>();
+        aliveTroopsMap = new LinkedHashMap<>();
         for (int i = 0; i < unitSize; i++) {
             int row = i / width;
             int col = i % width;
@@ -116,4 +119,18 @@ public class SkirmisherUnit extends BaseUnit {
             depthVariation[i] = MathUtils.randDouble(- unitStats.depthVariation, unitStats.depthVariation);
         }
     }
+
+    @Override
+    public void writeSnapshot(SnapshotWriter writer) {
+        super.writeSnapshot(writer);
+        writer.writeDoubleArray(widthVariation);
+        writer.writeDoubleArray(depthVariation);
+    }
+
+    @Override
+    public void readSnapshot(SnapshotReader reader) throws IOException {
+        super.readSnapshot(reader);
+        widthVariation = reader.readDoubleArray();
+        depthVariation = reader.readDoubleArray();
+    }
 }
@@ -13,6 +13,10 @@ public final class MathUtils {
     // RNG
     public static XoShiRo256PlusRandom random = new XoShiRo256PlusRandom();
 
+    // RNG override of the current thread. The parallel modes point it to the RNG of the unit being processed, so that
+    // each unit draws from its own stream no matter which thread processes it.
+    private static final ThreadLocal<XoShiRo256PlusRandom> threadRandom = new ThreadLocal<>();
+
     // Hackish number
     static final double sq2p1 = 2.414213562373095048802e0;
     static final double sq2m1 = .414213562373095048802e0;
@@ -82,20 +86,42 @@ public final class MathUtils {
      * Uniformly random between 0.0 and 1.0
      */
     public static double randUniform() {
-        return random.nextDoubleFast();
+        return currentRandom().nextDoubleFast();
     }
 
     /**
      * Uniformly random integer between min and max
      */
     public static int randint(int min, int max) {
-        return min + (int)(random.nextDoubleFast() * ((max - min) + 1));
+        return min + (int)(currentRandom().nextDoubleFast() * ((max - min) + 1));
     }
 
     /**
      * Uniformly random double between min and max
      */
-    public static double randDouble(double min, double max) { return min + (random.nextDoubleFast() * (max - min));}
+    public static double randDouble(double min, double max) {
+        return min + (currentRandom().nextDoubleFast() * (max - min));
+    }
+
+    /**
+     * Make the current thread draw random numbers from threadRng instead of the global RNG, or from the global RNG again
+     * if threadRng is null.
+     */
+    public static void setThreadRandom(XoShiRo256PlusRandom threadRng) {
+        if (threadRng == null) {
+            threadRandom.remove();
+        } else {
+            threadRandom.set(threadRng);
+        }
+    }
+
+    /**
+     * RNG used by the current thread.
+     */
+    private static XoShiRo256PlusRandom currentRandom() {
+        XoShiRo256PlusRandom threadRng = threadRandom.get();
+        return threadRng != null ? threadRng : random;
+    }
 
     /**
      * Magnitude of vector (vx, vy)
@@ -258,6 +284,16 @@ public final class MathUtils {
         return (int) pairInt;
     }
 
+    /**
+     * Scramble the bits of a long, using the finalizer of SplitMix64. Close inputs give unrelated outputs, which makes
+     * it useful to derive deterministic pseudo random orders from ids.
+     */
+    public static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
     /**
      * Rotate vector (x, y) to a certain angle
      */
@@ -1,14 +1,16 @@
 package model.utils;
 
+import model.algorithms.BarrierHeightField;
+import model.algorithms.ConstructHasher;
+import model.algorithms.SurfaceHasher;
+import model.algorithms.UnitVisibility;
 import model.constants.GameplayConstants;
 import model.constants.UniversalConstants;
 import model.construct.Construct;
-import model.enums.SurfaceType;
 import model.singles.BaseSingle;
 import model.sound.SoundSink;
 import model.sound.SoundSource;
 import model.surface.BaseSurface;
-import model.surface.ForestSurface;
 import model.map_objects.Tree;
 import model.terrain.Terrain;
 import model.units.BaseUnit;
@@ -169,11 +171,6 @@ public final class PhysicUtils {
     public static ArrayList<BaseUnit> checkUnitVision(BaseUnit unit, ArrayList<BaseUnit> allUnits, Terrain terrain) {
         ArrayList<BaseUnit> allVisibleUnits = new ArrayList<BaseUnit>();
 
-        // Getting the coordinate of the current unit
-        double averageX = unit.getAverageX();
-        double averageY = unit.getAverageY();
-        double averageZ = unit.getAverageZ();
-
         // Looping through the list of units
         for (BaseUnit queryUnit : allUnits) {
             // If it is the same unit, there is no need to check.
@@ -186,54 +183,44 @@ public final class PhysicUtils {
                 continue;
             }
 
-            // Getting the coordinate of the queryUnit
-            double queryAverageX = queryUnit.getAverageX();
-            double queryAverageY = queryUnit.getAverageY();
-            double queryAverageZ = queryUnit.getAverageZ();
-            double div = terrain.getDiv();
-
-            // Creating a parameter p in [0, 1] to get the line segment from the current unit to the queryUnit
-            // https://math.stackexchange.com/questions/2876828/the-equation-of-the-line-pass-through-2-points-in-3d-space
-            double temp = MathUtils.squareDistance(queryAverageX, queryAverageY, averageX, averageY);
-            temp = GameplayConstants.TERRAIN_COLLISION_CHECK_PER_DIV * Math.ceil(MathUtils.quickRoot2((float) temp) / div);
-            if (temp == 0) {
+            if (checkLineOfSight(unit, queryUnit, terrain)) {
                 allVisibleUnits.add(queryUnit);
-                continue;
             }
+        }
+        return allVisibleUnits;
+    }
 
-            // Parameter p is used for the parametric equation of the line segment from current unit to query unit
-            double[] p = new double[(int) temp];
-            for (int i = 1; i < p.length; i++) {
-                p[i] = p[i-1] + 1.0 / p.length;
-            }
+    /**
+     * Checks whether the line of sight from the center of the unit to the center of the query unit passes above the
+     * terrain.
+     * @param unit The unit whose vision we are checking.
+     * @param queryUnit The unit that is looked at.
+     * @param terrain The terrain that all the units are operate on.
+     * @return Whether the query unit is visible from the unit.
+     */
+    public static boolean checkLineOfSight(BaseUnit unit, BaseUnit queryUnit, Terrain terrain) {
+        // Getting the coordinate of the current unit
+        double averageX = unit.getAverageX();
+        double averageY = unit.getAverageY();
+        double averageZ = unit.getAverageZ();
 
-            // Declaring the terrain height at certain coordinate and the visibility boolean
-            double[] terrainArrayZ = new double[p.length];
-            boolean[] visibilityArray = new boolean[p.length];
-
-            // Finding the coordinate for the line of sight
-            double[] arrayX = new double[p.length];
-            double[] arrayY = new double[p.length];
-            double[] arrayZ = new double[p.length];
-
-            for (int j = 1; j < p.length; j++) {
-                // This is a line equation
-                arrayX[j] = (queryAverageX - averageX) * p[j] + averageX;
-                arrayY[j] = (queryAverageY - averageY) * p[j] + averageY;
-                arrayZ[j] = (queryAverageZ - averageZ) * p[j] + averageZ;
-                terrainArrayZ[j] = terrain.getZFromPos(arrayX[j], arrayY[j]);
-                visibilityArray[j] = arrayZ[j] > terrainArrayZ[j];
-            }
-            // Finding whether the queryUnit is visible
-            boolean visibility = true;
-            for (int j = 1; j < p.length; j++) {
-                visibility = visibility && visibilityArray[j];
-            }
-            if (visibility) {
-                allVisibleUnits.add(queryUnit);
-            }
+        // Getting the coordinate of the queryUnit
+        double queryAverageX = queryUnit.getAverageX();
+        double queryAverageY = queryUnit.getAverageY();
+        double queryAverageZ = queryUnit.getAverageZ();
+        double div = terrain.getDiv();
+
+        // Creating a parameter p in [0, 1] to get the line segment from the current unit to the queryUnit
+        // https://math.stackexchange.com/questions/2876828/the-equation-of-the-line-pass-through-2-points-in-3d-space
+        double temp = MathUtils.squareDistance(queryAverageX, queryAverageY, averageX, averageY);
+        temp = GameplayConstants.TERRAIN_COLLISION_CHECK_PER_DIV * Math.ceil(MathUtils.quickRoot2((float) temp) / div);
+        if (temp == 0) {
+            return true;
         }
-        return allVisibleUnits;
+
+        // Check the samples of the line of sight from the current unit to the query unit against the terrain.
+        return terrain.isSegmentAboveTerrain(
+                averageX, averageY, averageZ, queryAverageX, queryAverageY, queryAverageZ, (int) temp);
     }
 
     /**
@@ -274,34 +261,9 @@ public final class PhysicUtils {
                 continue;
             }
 
-            double[] t = new double[(int) temp];
-            t[0] = 0;
-            for (int i = 1; i < t.length; i++) {
-                t[i] = 1.0 * i / t.length;
-            }
-
-            // Declaring the terrain height at certain coordinate and the visibility boolean
-            double[] terrainArrayZ = new double[t.length];
-            boolean[] visibilityArray = new boolean[t.length];
-
-            // Finding the coordinate for the line of sight
-            double[] arrayX = new double[t.length];
-            double[] arrayY = new double[t.length];
-            double[] arrayZ = new double[t.length];
-
-            for (int j = 1; j < t.length; j++) {
-                // This is a line equation
-                arrayX[j] = (querySingleX - singleX) * t[j] + singleX;
-                arrayY[j] = (querySingleY - singleY) * t[j] + singleY;
-                arrayZ[j] = (querySingleZ - singleZ) * t[j] + singleZ;
-                terrainArrayZ[j] = terrain.getZFromPos(arrayX[j], arrayY[j]);
-                visibilityArray[j] = arrayZ[j] > terrainArrayZ[j];
-            }
-            // Finding whether the queryUnit is visible
-            boolean visibility = true;
-            for (int j = 1; j < t.length; j++) {
-                visibility = visibility && visibilityArray[j];
-            }
+            // Check the samples of the line of sight from the current single to the query single against the terrain.
+            boolean visibility = terrain.isSegmentAboveTerrain(
+                    singleX, singleY, singleZ, querySingleX, querySingleY, querySingleZ, (int) temp);
             if (visibility) {
                 allVisibleSingles.add(querySingle);
             }
@@ -666,7 +628,7 @@ public final class PhysicUtils {
     }
 
     public static Pair<Double, Double> getPerceivedNoise(SoundSource soundSource, Terrain terrain,
-                                                         ArrayList<BaseSurface> surfaces, ArrayList<Construct> constructs, BaseUnit thisUnit) {
+                                                         BarrierHeightField barrierHeightField, BaseUnit thisUnit) {
         // Calculating the directional vector of the unit
         double anchorAngle = thisUnit.getAnchorAngle();
         double xComponent = MathUtils.quickSin((float) anchorAngle);
@@ -707,14 +669,16 @@ public final class PhysicUtils {
 
             // Calculating perceived noise level
             // TODO: Make an if statement, that we calculate only the direct noise level for ambient sound
-            double  perceivedNoiseLevel = calculateBouncedNoiseLevel(soundSource, terrain, surfaces, constructs, thisUnit.getSoundSink());
+            double  perceivedNoiseLevel = calculateBouncedNoiseLevel(soundSource, terrain, barrierHeightField,
+                    thisUnit.getSoundSink());
             Pair<Double, Double> perceivedNoise = new Pair(perceivedNoiseLevel, relativePerceivedAngle);
             return perceivedNoise;
         }
 
     }
 
-    public static double calculateDirectNoiseLevel(SoundSource soundSource, Terrain terrain, ArrayList<BaseSurface> surfaces, ArrayList<Construct> constructs, SoundSink soundSink) {
+    public static double calculateDirectNoiseLevel(SoundSource soundSource, Terrain terrain,
+                                                   BarrierHeightField barrierHeightField, SoundSink soundSink) {
         // Noise level and coordinate at the sound source
         double startingNoiseLevel = soundSource.getNoise();
         double sourceX = soundSource.getX();
@@ -744,34 +708,11 @@ public final class PhysicUtils {
         double div = terrain.getDiv();
         double granularity = GameplayConstants.TERRAIN_COLLISION_CHECK_PER_DIV * Math.ceil(travelLengthPixel/div);
 
-        // Counting the number of passes through the terrain and modify the sound for each pass
-        // Parameter p is used for the parametric equation of the line segment from sink to source
-        double[] p = new double[(int) granularity];
-        for (int i = 1; i < p.length; i++) {
-            p[i] = 1.0 * i / p.length;
-        }
-
-        // Declaring the terrain height at certain coordinate and the visibility (or the direct line of hearing/sight)
-        double[] terrainArrayZ = new double[p.length];
-
-        // Finding the coordinate for the sample point on the line of hearing/sight
-        double[] arrayX = new double[p.length];
-        double[] arrayY = new double[p.length];
-        double[] arrayZ = new double[p.length];
-
+        // Counting the number of samples of the line of hearing from sink to source which pass through the barriers,
+        // and modify the sound for each pass
         // TODO: In the future, may be have an array for soundModifyingCounter to take into account different surfaces
-        double soundModifyingCounter = 0; // Just a counter to see how much sound to reduce
-        for (int j = 1; j < p.length; j++) {
-            // This is a line equation
-            arrayX[j] = (sourceX - sinkX) * p[j] + sinkX;
-            arrayY[j] = (sourceY - sinkY) * p[j] + sinkY;
-            arrayZ[j] = (sourceZ - sinkZ) * p[j] + sinkZ;
-            terrainArrayZ[j] = getAbsoluteBarrierHeight(arrayX[j], arrayY[j], terrain, surfaces, constructs);
-
-            if (arrayZ[j] < terrainArrayZ[j]){
-                soundModifyingCounter = soundModifyingCounter +1;
-            }
-        }
+        double soundModifyingCounter = barrierHeightField.countSamplesBelowBarriers(
+                sinkX, sinkY, sinkZ, sourceX, sourceY, sourceZ, (int) granularity);
         endingNoiseLevel = endingNoiseLevel - GameplayConstants.TERRAIN_MODIFYING_SOUND * soundModifyingCounter;
 
         // Returning value
@@ -782,11 +723,12 @@ public final class PhysicUtils {
      * This should calculate different paths and sum them up for the total sound level
      * @param soundSource
      * @param terrain
-     * @param surfaces
+     * @param barrierHeightField
      * @param soundSink
      * @return
      */
-    public static double calculateBouncedNoiseLevel(SoundSource soundSource, Terrain terrain, ArrayList<BaseSurface> surfaces, ArrayList<Construct> constructs, SoundSink soundSink) {
+    public static double calculateBouncedNoiseLevel(SoundSource soundSource, Terrain terrain,
+                                                    BarrierHeightField barrierHeightField, SoundSink soundSink) {
         // Getting the coordinate of the unit and the soundSource
         double sinkX = soundSink.getX();
         double sinkY = soundSink.getY();
@@ -849,14 +791,14 @@ public final class PhysicUtils {
             dummySoundSink.setX(bouncePoints[i][0]);
             dummySoundSink.setY(bouncePoints[i][1]);
             dummySoundSink.setZ(terrain.getZFromPos(bouncePoints[i][0], bouncePoints[i][1]));
-            double tempNoiseLevel = calculateDirectNoiseLevel(soundSource, terrain, surfaces, constructs,  dummySoundSink);
+            double tempNoiseLevel = calculateDirectNoiseLevel(soundSource, terrain, barrierHeightField, dummySoundSink);
 
             SoundSource dummySoundSource = new SoundSource();
             dummySoundSource.setNoise(tempNoiseLevel);
             dummySoundSource.setX(bouncePoints[i][0]);
             dummySoundSource.setY(bouncePoints[i][1]);
             dummySoundSource.setZ(terrain.getZFromPos(bouncePoints[i][0], bouncePoints[i][1]));
-            tempNoiseLevel = calculateDirectNoiseLevel(dummySoundSource, terrain, surfaces, constructs, soundSink);
+            tempNoiseLevel = calculateDirectNoiseLevel(dummySoundSource, terrain, barrierHeightField, soundSink);
 
             // Since tempNoise level is calculated in dB, we have to convert it to the normal scale.
             endingNoiseLevel = endingNoiseLevel + Math.pow(10, tempNoiseLevel);
@@ -868,30 +810,31 @@ public final class PhysicUtils {
 
     /**
      * @param soundSource
-     * @param terrain
+     * @param unitVisibility
      * @param surfaces
      * @param units
      * @param thisBaseUnit
      * @return
      */
-    public static String getPerceivedNoiseLabel(SoundSource soundSource, Terrain terrain, ArrayList<BaseSurface> surfaces,
-                                                ArrayList<BaseUnit> units, BaseUnit thisBaseUnit){
+    public static String getPerceivedNoiseLabel(SoundSource soundSource, UnitVisibility unitVisibility,
+                                                ArrayList<BaseSurface> surfaces, ArrayList<BaseUnit> units,
+                                                BaseUnit thisBaseUnit){
         // Get soundSource label
         String perceivedNoiseLabel = soundSource.getNoiseLabel();
 
-        // Get a list of all visible unit
-        ArrayList<BaseUnit> visibleUnits = checkUnitVision(thisBaseUnit, units, terrain);
-
         // TODO: Reduce long-term dependency on floating-point check
-        for (BaseUnit unit : visibleUnits) {
+        for (BaseUnit unit : units) {
+            if (unit == thisBaseUnit || unit.getNumAlives() == 0) continue;
+
             // Check if the soundSource is a visible unit or not through its coordinate (its very hard that 2 sound
             // sources have the same coordinate
             boolean equalX = unit.getAverageX() == soundSource.getX();
             boolean equalY = unit.getAverageY() == soundSource.getY();
             boolean equalZ = unit.getAverageZ() == soundSource.getZ();
 
-            // If sound source is a visible unit, get its political faction as well
-            if (equalX && equalY && equalZ) {
+            // If sound source is a visible unit, get its political faction as well. Only the units at the sound source
+            // are checked for visibility.
+            if (equalX && equalY && equalZ && unitVisibility.isVisible(thisBaseUnit, unit)) {
                 perceivedNoiseLabel = perceivedNoiseLabel + "-" + unit.getPoliticalFaction();
             }
         }
@@ -910,38 +853,26 @@ public final class PhysicUtils {
     }
 
     /**
-     * This functions get the absol
+     * This functions get the absolute height of the barriers at position (x, y): the height of the terrain, plus that
+     * of the trees and the constructs at (x, y). The surfaces come from the raster of the surface hasher, and the
+     * constructs from the grid of the construct hasher, so the cost doesn't grow with the number of surfaces and
+     * constructs on the map.
      * @param x
      * @param y
      * @param terrain
-     * @param surfaces
-     * @param constructs
+     * @param surfaceHasher
+     * @param constructHasher
      * @return
      */
-    public static double getAbsoluteBarrierHeight(double x, double y, Terrain terrain, ArrayList<BaseSurface> surfaces, ArrayList<Construct> constructs) {
+    public static double getAbsoluteBarrierHeight(double x, double y, Terrain terrain, SurfaceHasher surfaceHasher,
+                                                  ConstructHasher constructHasher) {
         double barrierHeight = terrain.getZFromPos(x, y);
 
         // Adding barrierHeight from surfaces
-        // Looping through surfaces
-        for (BaseSurface surface : surfaces){
-            // Check if our point is in the surface, then we start checking if our point is in that surface
-            if (checkPolygonPointCollision(surface.getSurfaceBoundary(), x, y)) {
-
-                // If surfaces is type FOREST, check each tree to see if our point is within the radius
-                if (surface.getType() == SurfaceType.FOREST) {
-                        Tree tree = ((ForestSurface) surface).getTreeHasher().getSingleTreeByCoordinate(x,y);
-                        if (tree != null){
-                            barrierHeight = barrierHeight + tree.getHeight();
-                        }
-                }
-
-                // [TODO] - (Trung): If surface in of type (city, wall etc.)
-            }
-        }
+        barrierHeight = barrierHeight + surfaceHasher.getBarrierHeight(x, y);
 
-        // Looping through constructs
-        for (Construct construct : constructs){
-            // If our point is in the FOREST surface, then we loop through and check each tree to see if our point is within the radius
+        // Looping through the constructs whose bounding box contains our point
+        for (Construct construct : constructHasher.getCandidateConstructs(x, y)) {
             if (checkPolygonPointCollision(construct.getBoundaryPoints(), x, y)) {
                 barrierHeight = barrierHeight + construct.getHeight();
             }
@@ -105,6 +105,9 @@ public class GameStatsIO extends JsonIO<GameStats> {
                         singleStats.bulletMaxRange = getDouble(statsObject.get("bullet_max_range"));
                         singleStats.bulletDamage = getDouble(statsObject.get("bullet_damage"));
                         singleStats.bulletPush = getDouble(statsObject.get("bullet_push"));
+                        if (statsObject.containsKey("bullet_penetration")) {
+                            singleStats.bulletPenetration = getInt(statsObject.get("bullet_penetration"));
+                        }
                         break;
                     case CAVALRY:
                     case HORSE_ARCHER:
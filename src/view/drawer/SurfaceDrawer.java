@@ -1,10 +1,9 @@
 package view.drawer;
 
 import model.GameEnvironment;
+import model.algorithms.TreeIndex;
 import model.enums.SurfaceType;
-import model.map_objects.Tree;
 import model.surface.BaseSurface;
-import model.surface.ForestSurface;
 import processing.core.PApplet;
 import view.camera.BaseCamera;
 import view.constants.DrawingConstants;
@@ -20,6 +19,8 @@ public class SurfaceDrawer extends BaseDrawer {
     BaseCamera camera;
     GameEnvironment env;
     HashMap<BaseSurface, double[][]> surfacePts;
+    HashMap<BaseSurface, double[]> treeHeights;
+    HashMap<BaseSurface, Integer> treeOwners;
 
     public SurfaceDrawer(PApplet inputApplet, GameEnvironment inputEnv, BaseCamera inputCamera) {
         // Inject the applet and the camera to the surface.
@@ -27,6 +28,8 @@ public class SurfaceDrawer extends BaseDrawer {
         camera = inputCamera;
         env = inputEnv;
         surfacePts = new HashMap<>();
+        treeHeights = new HashMap<>();
+        treeOwners = new HashMap<>();
     }
 
     public void drawSurface(BaseSurface surface) {
@@ -50,15 +53,43 @@ public class SurfaceDrawer extends BaseDrawer {
         }
         applet.endShape(PApplet.CLOSE);
         if (surface.getType() == SurfaceType.FOREST) {
-            for (Tree tree : ((ForestSurface) surface).getTrees()) {
-                int[] treeColor = DrawingConstants.TREE_COLOR;
-                double height = env.getTerrain().getZFromPos(tree.getX(), tree.getY());
-                applet.fill(treeColor[0], treeColor[1], treeColor[2], treeColor[3]);
-                double[] drawingPosition = camera.getDrawingPosition(tree.getX(), tree.getY(),
-                        height);
-                applet.circle((float) drawingPosition[0], (float) drawingPosition[1],
-                        (float) (tree.getRadius() * 2 * camera.getZoomAtHeight(height)));
+            drawTrees(surface);
+        }
+    }
+
+    /**
+     * Draw the trees of a forest from the tree index, skipping those entirely off screen.
+     */
+    private void drawTrees(BaseSurface surface) {
+        TreeIndex treeIndex = env.getUnitModifier().getSurfaceHasher().getTreeIndex();
+        if (!treeHeights.containsKey(surface)) {
+            // The owner of the trees of a forest in the index is its index in the surface list.
+            int owner = env.getSurfaces().indexOf(surface);
+            treeOwners.put(surface, owner);
+
+            // The ground height of each tree, in the order of the trees of the forest in the index.
+            double[] heights = new double[treeIndex.getOwnerEnd(owner) - treeIndex.getOwnerStart(owner)];
+            for (int k = treeIndex.getOwnerStart(owner); k < treeIndex.getOwnerEnd(owner); k++) {
+                int slot = treeIndex.getOwnerSlot(k);
+                heights[k - treeIndex.getOwnerStart(owner)] =
+                        env.getTerrain().getZFromPos(treeIndex.getX(slot), treeIndex.getY(slot));
+            }
+            treeHeights.put(surface, heights);
+        }
+        int owner = treeOwners.get(surface);
+        double[] heights = treeHeights.get(surface);
+        int[] treeColor = DrawingConstants.TREE_COLOR;
+        applet.fill(treeColor[0], treeColor[1], treeColor[2], treeColor[3]);
+        for (int k = treeIndex.getOwnerStart(owner); k < treeIndex.getOwnerEnd(owner); k++) {
+            int slot = treeIndex.getOwnerSlot(k);
+            double height = heights[k - treeIndex.getOwnerStart(owner)];
+            double[] drawingPosition = camera.getDrawingPosition(treeIndex.getX(slot), treeIndex.getY(slot), height);
+            double drawingRadius = treeIndex.getRadius(slot) * camera.getZoomAtHeight(height);
+            if (drawingPosition[0] + drawingRadius < 0 || drawingPosition[0] - drawingRadius > camera.getWidth() ||
+                    drawingPosition[1] + drawingRadius < 0 || drawingPosition[1] - drawingRadius > camera.getHeight()) {
+                continue;
             }
+            applet.circle((float) drawingPosition[0], (float) drawingPosition[1], (float) (drawingRadius * 2));
         }
     }
 